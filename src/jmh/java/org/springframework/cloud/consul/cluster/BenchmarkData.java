@@ -0,0 +1,79 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.HealthService;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+/**
+ * 基准测试数据
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class BenchmarkData {
+
+  public static final String SERVICE_NAME = "bench-service";
+
+  /**
+   * 生成服务实例列表，每个实例重复copies次(模拟同一实例注册在多个consul节点上)
+   */
+  public static List<HealthService> healthServices(int instances, int copies) {
+    List<HealthService> healthServices = new ArrayList<>(instances * copies);
+    for (int copy = 0; copy < copies; copy++) {
+      for (int i = 0; i < instances; i++) {
+        healthServices.add(healthService(i, copy));
+      }
+    }
+
+    return healthServices;
+  }
+
+  private static HealthService healthService(int index, int copy) {
+    HealthService.Node node = new HealthService.Node();
+    node.setNode("consul-" + copy);
+    node.setAddress("10.0." + copy + ".1");
+
+    HealthService.Service service = new HealthService.Service();
+    service.setId(SERVICE_NAME + "-" + index);
+    service.setService(SERVICE_NAME);
+    service.setAddress("172.16." + (index / 250) + "." + (index % 250));
+    service.setPort(8080);
+    service.setTags(Arrays.asList("secure=false", "zone=zone-" + (index % 3)));
+
+    HealthService healthService = new HealthService();
+    healthService.setNode(node);
+    healthService.setService(service);
+    healthService.setChecks(Collections.emptyList());
+
+    return healthService;
+  }
+
+  /**
+   * 使用固定数据响应健康服务查询的ConsulClient桩
+   */
+  public static class StubHealthConsulClient extends com.ecwid.consul.v1.ConsulClient {
+
+    private final Response<List<HealthService>> response;
+
+    public StubHealthConsulClient(List<HealthService> healthServices) {
+      this.response = new Response<>(healthServices, 1L, true, 0L);
+    }
+
+    @Override
+    public Response<List<HealthService>> getHealthServices(String serviceName, String tag, boolean onlyPassing,
+        QueryParams queryParams) {
+      return this.response;
+    }
+
+    @Override
+    public Response<List<HealthService>> getHealthServices(String serviceName, String tag, boolean onlyPassing,
+        QueryParams queryParams, String token) {
+      return this.response;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.ecwid.consul.v1.ConsulClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.context.RetryContextSupport;
+
+/**
+ * ClusterConsulClient.getRetryConsulClient 多线程竞争下的基准测试
+ *
+ * healthy: 当前节点健康，每次调用直接返回当前节点；
+ * allUnhealthy: 所有节点都不健康(集群故障期间)，每次调用都要竞争chooseLock重新选择节点
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ClusterConsulClientBenchmark {
+
+  @Param({"healthy", "allUnhealthy"})
+  private String scenario;
+
+  private final List<StubConsulAgent> agents = new ArrayList<>();
+
+  private ClusterConsulClient clusterConsulClient;
+
+  @Setup
+  public void setup() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      this.agents.add(new StubConsulAgent());
+    }
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.agents.stream().map(StubConsulAgent::getAddress).collect(Collectors.toList()));
+    properties.setClusterClientKey("benchmark");
+    // 测量期间不做定时健康检测，保持场景设定的节点状态
+    properties.setHealthCheckInterval(TimeUnit.HOURS.toMillis(1));
+    this.clusterConsulClient = new ClusterConsulClient(properties);
+
+    if ("allUnhealthy".equals(this.scenario)) {
+      this.clusterConsulClient.getConsulClients().forEach(consulClient -> consulClient.setHealthy(false));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.clusterConsulClient.getConsulClientsExecutor().shutdownNow();
+    this.agents.forEach(StubConsulAgent::stop);
+  }
+
+  @State(Scope.Thread)
+  public static class ContextState {
+
+    private final RetryContext context = new RetryContextSupport(null);
+  }
+
+  @Benchmark
+  public ConsulClient getRetryConsulClient(ContextState state) {
+    return this.clusterConsulClient.getRetryConsulClient(state.context);
+  }
+}
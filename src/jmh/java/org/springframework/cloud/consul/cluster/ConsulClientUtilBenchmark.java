@@ -0,0 +1,47 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConsulClientUtil.chooseClient 基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsulClientUtilBenchmark {
+
+  @Param({"3", "7", "15"})
+  private int nodeCount;
+
+  private List<String> clients;
+
+  @Setup
+  public void setup() {
+    this.clients = new ArrayList<>();
+    for (int i = 0; i < this.nodeCount; i++) {
+      this.clients.add("172.16.18." + i + ":8500");
+    }
+  }
+
+  @Benchmark
+  public String chooseClient() {
+    return ConsulClientUtil.chooseClient("172.16.18.174", this.clients);
+  }
+}
@@ -0,0 +1,67 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ecwid.consul.v1.health.model.HealthService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.ConsulServer;
+
+/**
+ * 服务实例去重的基准测试：CustomConsulServerList.transformResponse 及 CustomConsulDiscoveryClient.getInstances
+ *
+ * 每个实例在3个consul节点上重复注册
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DedupBenchmark {
+
+  private static final int COPIES = 3;
+
+  @Param({"10", "1000", "10000"})
+  private int instances;
+
+  private List<HealthService> healthServices;
+
+  private CustomConsulServerList serverList;
+
+  private CustomConsulDiscoveryClient discoveryClient;
+
+  @Setup
+  public void setup() {
+    this.healthServices = BenchmarkData.healthServices(this.instances, COPIES);
+    BenchmarkData.StubHealthConsulClient consulClient = new BenchmarkData.StubHealthConsulClient(
+        this.healthServices);
+    ConsulDiscoveryProperties properties = new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties()));
+    this.serverList = new CustomConsulServerList(consulClient, properties);
+    this.discoveryClient = new CustomConsulDiscoveryClient(consulClient, properties);
+  }
+
+  @Benchmark
+  public List<ConsulServer> transformResponse() {
+    return this.serverList.transformResponse(this.healthServices);
+  }
+
+  @Benchmark
+  public List<ServiceInstance> getInstances() {
+    return this.discoveryClient.getInstances(BenchmarkData.SERVICE_NAME);
+  }
+}
@@ -0,0 +1,73 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.consul.ConsulProperties;
+
+/**
+ * ListUtil.isSame 基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListUtilBenchmark {
+
+  @Param({"3", "7", "15"})
+  private int nodeCount;
+
+  private final List<StubConsulAgent> agents = new ArrayList<>();
+
+  private List<ConsulClientHolder> clients;
+
+  private List<ConsulClientHolder> reversedClients;
+
+  @Setup
+  public void setup() throws IOException {
+    this.clients = new ArrayList<>();
+    for (int i = 0; i < this.nodeCount; i++) {
+      StubConsulAgent agent = new StubConsulAgent();
+      this.agents.add(agent);
+      String[] connects = agent.getAddress().split(CommonConstant.SEPARATOR_COLON);
+      ConsulProperties properties = new ConsulProperties();
+      properties.setHost(connects[0]);
+      properties.setPort(Integer.parseInt(connects[1]));
+      this.clients.add(new ConsulClientHolder(properties));
+    }
+    this.reversedClients = new ArrayList<>(this.clients);
+    Collections.reverse(this.reversedClients);
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.agents.forEach(StubConsulAgent::stop);
+  }
+
+  @Benchmark
+  public boolean isSame() {
+    return ListUtil.isSame(this.clients, this.clients);
+  }
+
+  @Benchmark
+  public boolean isSameReordered() {
+    return ListUtil.isSame(this.clients, this.reversedClients);
+  }
+}
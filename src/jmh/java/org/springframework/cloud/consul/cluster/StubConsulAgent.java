@@ -0,0 +1,40 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 进程内的consul agent桩，仅用于让ClusterConsulClient完成节点创建及健康检测
+ */
+public class StubConsulAgent {
+
+  private final HttpServer server;
+
+  public StubConsulAgent() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      byte[] body = (path.startsWith("/v1/catalog/services") ? "{\"consul\":[]}" : "{}")
+          .getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.getResponseHeaders().add("X-Consul-Index", "1");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    this.server.start();
+  }
+
+  public String getAddress() {
+    return "127.0.0.1" + CommonConstant.SEPARATOR_COLON + this.server.getAddress().getPort();
+  }
+
+  public void stop() {
+    this.server.stop(0);
+  }
+}
@@ -0,0 +1,46 @@
+package org.springframework.cloud.consul.cluster;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * ClusterConsulClient的actuator端点及指标配置，仅在引入spring-boot-actuator时生效
+ */
+@Configuration
+@ConditionalOnConsulEnabled
+@ConditionalOnClass(Endpoint.class)
+@ConditionalOnBean(ClusterConsulClient.class)
+public class ClusterConsulActuatorConfiguration {
+
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnAvailableEndpoint
+  public ClusterConsulFailoverEndpoint clusterConsulFailoverEndpoint(ClusterConsulClient clusterConsulClient) {
+    return new ClusterConsulFailoverEndpoint(clusterConsulClient);
+  }
+
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnAvailableEndpoint
+  public ClusterConsulEndpoint clusterConsulEndpoint(ClusterConsulClient clusterConsulClient) {
+    return new ClusterConsulEndpoint(clusterConsulClient);
+  }
+
+  @Configuration
+  @ConditionalOnClass(MeterRegistry.class)
+  static class ClusterConsulMetricsConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ClusterConsulMetrics clusterConsulMetrics(ClusterConsulClient clusterConsulClient) {
+      return new ClusterConsulMetrics(clusterConsulClient);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import lombok.AllArgsConstructor;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+
+/**
+ * 带随机抖动的指数退避(full jitter)
+ *
+ * 第n次重试前等待[0, min(maxBackoff, initialBackoff * 2^(n-1))]之间的随机时间，
+ * 且不超过本次调用距离截止时间的剩余时间，避免大量客户端在节点故障时同时重试
+ */
+public class ClusterConsulBackOffPolicy implements BackOffPolicy {
+
+  private final long initialBackoffMillis;
+
+  private final long maxBackoffMillis;
+
+  public ClusterConsulBackOffPolicy(long initialBackoffMillis, long maxBackoffMillis) {
+    this.initialBackoffMillis = Math.max(0L, initialBackoffMillis);
+    this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+  }
+
+  @Override
+  public BackOffContext start(RetryContext context) {
+    return new JitterBackOffContext(context);
+  }
+
+  @Override
+  public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+    RetryContext context = ((JitterBackOffContext) backOffContext).retryContext;
+    long sleepMillis = Math.min(nextBackoffMillis(context.getRetryCount()),
+        ClusterConsulRetryPolicy.getRemainingMillis(context));
+    if (sleepMillis <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(sleepMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BackOffInterruptedException("Thread interrupted while sleeping", e);
+    }
+  }
+
+  /**
+   * 第retryCount次重试前的退避时间
+   */
+  protected long nextBackoffMillis(int retryCount) {
+    if (this.initialBackoffMillis == 0) {
+      return 0L;
+    }
+    int exponent = Math.min(Math.max(0, retryCount - 1), 20);
+    long ceiling = Math.min(this.maxBackoffMillis, this.initialBackoffMillis << exponent);
+
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  @AllArgsConstructor
+  private static class JitterBackOffContext implements BackOffContext {
+
+    private final RetryContext retryContext;
+  }
+}
@@ -47,6 +47,7 @@ public class ClusterConsulBootstrapConfiguration {
     clusterConsulProperties.setHealthCheckInterval(consulRetryConfiguration.getInitialInterval());
     clusterConsulProperties.setClusterClientKey(hostInfo.getIpAddress());
     clusterConsulProperties.setClusterNodes(clusterConsulConfiguration.getClusterNodes());
+    clusterConsulProperties.setZone(clusterConsulConfiguration.getZone());
 
     return clusterConsulProperties;
   }
@@ -2,25 +2,46 @@ package org.springframework.cloud.consul.cluster;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import com.ecwid.consul.SingleUrlParameters;
+import com.ecwid.consul.json.GsonFactory;
+import com.ecwid.consul.transport.RawResponse;
 import com.ecwid.consul.transport.TransportException;
+import com.ecwid.consul.v1.ConsistencyMode;
 import com.ecwid.consul.v1.ConsulClient;
 import com.ecwid.consul.v1.OperationException;
 import com.ecwid.consul.v1.QueryParams;
@@ -60,6 +81,9 @@ import com.ecwid.consul.v1.session.SessionClient;
 import com.ecwid.consul.v1.session.model.NewSession;
 import com.ecwid.consul.v1.session.model.Session;
 import com.ecwid.consul.v1.status.StatusClient;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -70,7 +94,6 @@ import org.springframework.cloud.consul.ConsulProperties;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.RetryContext;
 import org.springframework.retry.RetryListener;
-import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 
 /**
@@ -127,21 +150,57 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   private static final String CURRENT_CLIENT_KEY = "currentClient";
 
+  private static final String ATTEMPT_BEGIN_KEY = "attemptBegin";
+
+  private static final String ATTEMPT_PERMIT_KEY = "attemptPermit";
+
+  private static final String REJECTED_CLIENTS_KEY = "rejectedClients";
+
+  private static final String TXN_ENDPOINT = "/v1/txn";
+
+  /**
+   * consul限制单个事务最多包含的操作数
+   */
+  private static final int MAX_TXN_OPERATIONS = 64;
+
+  /**
+   * 一致性读取，不经过请求合并及缓存
+   */
+  private static final QueryParams CONSISTENT_QUERY_PARAMS = new QueryParams(ConsistencyMode.CONSISTENT);
+
   @Getter
   private final ScheduledExecutorService consulClientsExecutor = Executors
       .newScheduledThreadPool(Runtime.getRuntime().availableProcessors() * 4);
 
+  /**
+   * 集群广播(fan-out)专用的有界线程池，慢节点不会占用健康检测等后台任务的线程
+   */
+  @Getter
+  private final ThreadPoolExecutor fanOutExecutor;
+
+  /**
+   * 事务批次专用的线程池，线程数为txn.maxInFlightBatches，多个批量写入同时执行时批次排队等待，不占用后台任务的线程
+   */
+  @Getter
+  private final ThreadPoolExecutor txnExecutor;
+
   /**
    * ConsulClient配置
    */
   @Getter
   private final ClusterConsulProperties clusterConsulProperties;
 
+  /**
+   * 所有节点共享的HTTP传输层
+   */
+  @Getter
+  private final ConsulTransportFactory transportFactory;
+
   /**
    * 所有ConsulClient
    */
   @Getter
-  private List<ConsulClientHolder> consulClients;
+  private volatile List<ConsulClientHolder> consulClients;
 
   /**
    * 重试RetryTemplate
@@ -169,19 +228,131 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
    */
   private final Lock chooseLock = new ReentrantLock();
 
+  /**
+   * session注册表，记录session所在节点及依赖session的锁
+   */
+  @Getter
+  private final ConsulSessionRegistry sessionRegistry = new ConsulSessionRegistry();
+
+  /**
+   * 故障转移时间线记录器
+   */
+  @Getter
+  private final FailoverTimelineRecorder failoverRecorder;
+
+  /**
+   * clientId -> 节点请求统计
+   */
+  private final Map<String, ConsulNodeStats> nodeStatsMap = Maps.newConcurrentMap();
+
+  /**
+   * 已摘除(drain)的节点，不再被选为当前节点
+   */
+  private final Set<String> drainedClientIds = Sets.newConcurrentHashSet();
+
+  /**
+   * 运维强制切换(forceFailover)的目标节点，它是当前节点且可用时不再切回本可用区
+   */
+  private volatile ConsulClientHolder pinnedClient;
+
+  /**
+   * 保持预热连接的备用节点，按故障转移时的选择顺序排列
+   */
+  @Getter
+  private volatile List<String> standbyClientIds = Collections.emptyList();
+
+  /**
+   * clientId -> 节点并发请求隔离
+   */
+  private final Map<String, ConsulNodeBulkhead> bulkheadMap = Maps.newConcurrentMap();
+
+  /**
+   * 相同的getHealthServices/getKVValues并发调用合并为一次请求
+   */
+  @Getter
+  private final SingleFlight<List<Object>> readFlight = new SingleFlight<>();
+
+  /**
+   * 集群重试预算
+   */
+  @Getter
+  private final ConsulRetryBudget retryBudget;
+
+  /**
+   * 请求错误分类
+   */
+  @Getter
+  private final ConsulErrorClassifier errorClassifier;
+
+  /**
+   * 读请求最近一次成功结果的缓存，集群不可用时降级返回，未启用时为null
+   */
+  @Getter
+  private final ConsulStaleCache staleCache;
+
+  /**
+   * 旧数据缓存的本地快照，未启用时为null
+   */
+  @Getter
+  private final ConsulSnapshotStore snapshotStore;
+
+  /**
+   * 同主机多进程共享的读请求缓存，未启用时为null
+   */
+  @Getter
+  private final ConsulHostSharedCache hostSharedCache;
+
   public ClusterConsulClient(ClusterConsulProperties clusterConsulProperties) {
     super();
     this.clusterConsulProperties = clusterConsulProperties;
+    this.fanOutExecutor = createFanOutExecutor(clusterConsulProperties);
+    this.txnExecutor = createTxnExecutor(clusterConsulProperties);
+    this.failoverRecorder = new FailoverTimelineRecorder(clusterConsulProperties.getFailoverHistorySize());
+    this.retryBudget = new ConsulRetryBudget(clusterConsulProperties.getRetryPolicy().getBudgetRatio(),
+        clusterConsulProperties.getRetryPolicy().getMinRetriesPerSecond());
     this.consulClientHealthMap = Maps.newConcurrentMap();
-    this.clientIdSet = Sets.newHashSet();
-    // 创建所有集群节点
-    this.consulClients = createConsulClients();
+    this.clientIdSet = Sets.newConcurrentHashSet();
+    // 创建共享的HTTP连接池
+    this.transportFactory = new ConsulTransportFactory(clusterConsulProperties);
+    // 创建错误分类及旧数据缓存，启用本地快照时先加载上次的快照，集群不可用也能完成启动
+    this.errorClassifier = createErrorClassifier();
+    this.staleCache = clusterConsulProperties.getStaleCache().isEnabled()
+        ? new ConsulStaleCache(clusterConsulProperties.getStaleCache(), this.errorClassifier) : null;
+    this.snapshotStore = ObjectUtils.isNotEmpty(this.staleCache) && clusterConsulProperties.getSnapshot().isEnabled()
+        ? new ConsulSnapshotStore(clusterConsulProperties.getSnapshot()) : null;
+    if (ObjectUtils.isNotEmpty(this.snapshotStore)) {
+      this.snapshotStore.load(this.staleCache);
+    }
+    this.hostSharedCache = createHostSharedCache();
     // 创建重试模板
     this.retryTemplate = createRetryTemplate();
-    // 初始化客户端
-    this.currentClient = initCurrentConsulClient();
+    // 并行创建所有集群节点并初始化当前节点，第一个健康节点就绪后即可使用；
+    // 后台线程会回调本实例，所有字段须在此之前完成赋值
+    bootstrapConsulClients();
     this.scheduleConsulClientsHealthCheck();
     this.scheduleConsulClientsCreate();
+    this.scheduleIdleConnectionsEviction();
+    this.scheduleStandbyConnectionsWarmup();
+    this.scheduleSnapshotFlush();
+  }
+
+  private static ThreadPoolExecutor createFanOutExecutor(ClusterConsulProperties clusterConsulProperties) {
+    int threads = Math.max(1, clusterConsulProperties.getFanOutThreads());
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(Math.max(1, clusterConsulProperties.getFanOutQueueSize())),
+        new ThreadFactoryBuilder().setNameFormat("consul-fan-out-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
+  }
+
+  private static ThreadPoolExecutor createTxnExecutor(ClusterConsulProperties clusterConsulProperties) {
+    int threads = Math.max(1, clusterConsulProperties.getTxn().getMaxInFlightBatches());
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat("consul-txn-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+
+    return executor;
   }
 
   //重新注册
@@ -213,27 +384,128 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   }
 
   /**
-   * 创建所有ConsulClient
+   * 启动时并行创建所有ConsulClient
+   *
+   * 第一个同可用区的健康节点返回(或到达bootstrapTimeout)后立即在已就绪的健康节点中选取当前节点，
+   * 其余节点在后台完成健康检测后再加入
+   */
+  protected void bootstrapConsulClients() {
+    List<CompletableFuture<ConsulClientHolder>> clientFutures = createConsulClientsAsync();
+    CompletableFuture<Void> firstHealthy = new CompletableFuture<>();
+    clientFutures.forEach(clientFuture -> clientFuture.thenAccept(consulClient -> {
+      if (consulClient.isHealthy() && isLocalZone(consulClient)) {
+        firstHealthy.complete(null);
+      }
+    }));
+    CompletableFuture<Void> allCompleted = CompletableFuture.allOf(clientFutures.toArray(new CompletableFuture[0]));
+    allCompleted.whenComplete((ignored, throwable) -> firstHealthy.complete(null));
+
+    try {
+      firstHealthy.get(this.clusterConsulProperties.getBootstrapTimeout(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> No healthy consul client within {}ms, continue in background <<<",
+          this.clusterConsulProperties.getBootstrapTimeout());
+    }
+
+    try {
+      this.chooseLock.lock();
+      this.consulClients = collectHealthyClients(clientFutures);
+      log.info(CommonConstant.LOG_PREFIX + ">>> Bootstrap cluster consul clients: {} <<<", this.consulClients);
+      // 初始化客户端
+      this.currentClient = initCurrentConsulClient();
+    } finally {
+      this.chooseLock.unlock();
+    }
+    // 启动期间可能有节点在收集健康节点之后才完成，总是在全部完成后再检查一次
+    allCompleted.whenComplete((ignored, throwable) -> onBootstrapCompleted(clientFutures));
+  }
+
+  /**
+   * 后台完成全部节点的健康检测后，加入启动时尚未就绪的节点
+   */
+  private void onBootstrapCompleted(List<CompletableFuture<ConsulClientHolder>> clientFutures) {
+    List<ConsulClientHolder> tmpConsulClients = collectHealthyClients(clientFutures);
+    try {
+      this.chooseLock.lock();
+      if (ListUtil.isSame(this.consulClients, tmpConsulClients)) {
+        return;
+      }
+      checkConsulClientsNum(tmpConsulClients);
+      log.info(CommonConstant.LOG_PREFIX + ">>> Bootstrap completed, cluster consul clients: {} <<<",
+          tmpConsulClients);
+      this.consulClients = tmpConsulClients;
+      if (ObjectUtils.isEmpty(this.currentClient)) {
+        this.currentClient = initCurrentConsulClient();
+      }
+    } finally {
+      this.chooseLock.unlock();
+    }
+    failbackToLocalZone();
+    // 启动期间已完成注册的服务需在新加入的节点上注册
+    agentServiceReregister();
+  }
+
+  private static List<ConsulClientHolder> collectHealthyClients(
+      List<CompletableFuture<ConsulClientHolder>> clientFutures) {
+    return clientFutures.stream()
+        .filter(clientFuture -> clientFuture.isDone() && !clientFuture.isCompletedExceptionally())
+        .map(CompletableFuture::join).filter(ConsulClientHolder::isHealthy).sorted() // 排序
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * 创建所有ConsulClient，各节点的连接及健康检测并行进行
    *
-   * @return 返回所有节点
+   * @return 返回所有健康节点
    */
   protected List<ConsulClientHolder> createConsulClients() {
-    List<String> connectList = prepareConnectList();
-    List<ConsulClientHolder> tmpConsulClients = connectList.stream().map(connect -> {
-      String[] connects = connect.split(CommonConstant.SEPARATOR_COLON);
-      ConsulProperties properties = new ConsulProperties();
-      properties.setEnabled(clusterConsulProperties.isEnabled());
-      properties.setScheme(clusterConsulProperties.getScheme());
-      properties.setTls(clusterConsulProperties.getTls());
-      properties.setHost(connects[0]);
-      properties.setPort(Integer.parseInt(connects[1]));
-
-      ConsulClientHolder consulClientHolder = new ConsulClientHolder(properties);
-      clientIdSet.add(consulClientHolder.getClientId());
-
-      return consulClientHolder;
-    }).filter(ConsulClientHolder::isHealthy).sorted().collect(Collectors.toList()); // 排序
+    List<ConsulClientHolder> tmpConsulClients = createConsulClientsAsync().stream()
+        .map(clientFuture -> clientFuture.exceptionally(throwable -> null).join())
+        .filter(ObjectUtils::isNotEmpty).filter(ConsulClientHolder::isHealthy).sorted() // 排序
+        .collect(Collectors.toList());
+    checkConsulClientsNum(tmpConsulClients);
+
+    List<String> clientIdList = tmpConsulClients.stream().map(ConsulClientHolder::getClientId)
+        .collect(Collectors.toList());
+    log.info(CommonConstant.LOG_PREFIX + ">>> Creating cluster consul clients: {} <<<", clientIdList);
+
+    return tmpConsulClients;
+  }
+
+  /**
+   * 在consulClientsExecutor上并行创建各节点
+   */
+  protected List<CompletableFuture<ConsulClientHolder>> createConsulClientsAsync() {
+    return prepareConnectList().stream()
+        .map(connect -> CompletableFuture.supplyAsync(() -> createConsulClient(connect), this.consulClientsExecutor))
+        .collect(Collectors.toList());
+  }
 
+  /**
+   * 创建单个节点，创建时同步进行一次健康检测
+   *
+   * @param connect - 节点配置 host:port[;zone=xxx][;weight=n]
+   */
+  protected ConsulClientHolder createConsulClient(String connect) {
+    ConsulNodeSpec nodeSpec = ConsulNodeSpec.parse(connect);
+    ConsulProperties properties = new ConsulProperties();
+    properties.setEnabled(clusterConsulProperties.isEnabled());
+    properties.setScheme(clusterConsulProperties.getScheme());
+    properties.setTls(clusterConsulProperties.getTls());
+    properties.setHost(nodeSpec.getHost());
+    properties.setPort(nodeSpec.getPort());
+
+    ConsulClientHolder consulClientHolder = new ConsulClientHolder(properties, this.transportFactory);
+    consulClientHolder.setZone(nodeSpec.getZone());
+    consulClientHolder.setWeight(nodeSpec.getWeight());
+    clientIdSet.add(consulClientHolder.getClientId());
+
+    return consulClientHolder;
+  }
+
+  private void checkConsulClientsNum(List<ConsulClientHolder> tmpConsulClients) {
     //consul agent数小于配置的consul agent数，说明有consul节点不可用。告警。
     if (tmpConsulClients.size() < this.clusterConsulProperties.getClusterNodes().size()) {
       log.warn(CommonConstant.LOG_PREFIX + ">>> Some consul clients are not available. Please check.");
@@ -248,12 +520,6 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     if (tmpConsulClients.size() < 2) {
       log.error(CommonConstant.LOG_PREFIX + ">>> The consul cluster is not available. Please check and repair.");
     }
-
-    List<String> clientIdList = tmpConsulClients.stream().map(ConsulClientHolder::getClientId)
-        .collect(Collectors.toList());
-    log.info(CommonConstant.LOG_PREFIX + ">>> Creating cluster consul clients: {} <<<", clientIdList);
-
-    return tmpConsulClients;
   }
 
   /**
@@ -267,9 +533,27 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   }
 
   /**
-   * 创建重试 RetryTemplate， 默认使用SimpleRetryPolicy(maxAttempts定为consulClients.size() + 1)
+   * 创建重试 RetryTemplate，使用ClusterConsulRetryPolicy(最多尝试clusterNodes.size()次，受截止时间及重试预算限制)
+   * 及带随机抖动的指数退避
    */
   protected RetryTemplate createRetryTemplate() {
+    ClusterConsulProperties.RetryPolicyConfig retryPolicyConfig = this.clusterConsulProperties.getRetryPolicy();
+    RetryTemplate tmpRetryTemplate = new RetryTemplate();
+    ClusterConsulRetryPolicy retryPolicy = new ClusterConsulRetryPolicy(
+        this.clusterConsulProperties.getClusterNodes().size(), retryPolicyConfig.getDeadline(),
+        this.errorClassifier, this.retryBudget, this::hasAvailableClient);
+    tmpRetryTemplate.setRetryPolicy(retryPolicy);
+    tmpRetryTemplate.setBackOffPolicy(new ClusterConsulBackOffPolicy(retryPolicyConfig.getInitialBackoff(),
+        retryPolicyConfig.getMaxBackoff()));
+    tmpRetryTemplate.setListeners(new RetryListener[]{this});
+
+    return tmpRetryTemplate;
+  }
+
+  /**
+   * 创建错误分类，retryableExceptions之外的异常视为调用方错误，不重试也不影响节点健康状态
+   */
+  protected ConsulErrorClassifier createErrorClassifier() {
     Map<Class<? extends Throwable>, Boolean> retryableExceptions = null;
 
     if (CollectionUtils.isNotEmpty(clusterConsulProperties.getRetryableExceptions())) {
@@ -281,14 +565,28 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     if (MapUtils.isEmpty(retryableExceptions)) {
       retryableExceptions = createDefaultRetryableExceptions();
     }
+    // bulkhead拒绝的请求总是转到其他节点重试
+    retryableExceptions.put(ConsulBulkheadFullException.class, true);
 
-    RetryTemplate tmpRetryTemplate = new RetryTemplate();
-    SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy(this.clusterConsulProperties.getClusterNodes().size(),
-        retryableExceptions, true);
-    tmpRetryTemplate.setRetryPolicy(retryPolicy);
-    tmpRetryTemplate.setListeners(new RetryListener[]{this});
+    return new ConsulErrorClassifier(retryableExceptions);
+  }
 
-    return tmpRetryTemplate;
+  /**
+   * 创建同主机共享缓存，共享文件无法创建时不启用
+   */
+  protected ConsulHostSharedCache createHostSharedCache() {
+    ClusterConsulProperties.HostCacheConfig hostCacheConfig = this.clusterConsulProperties.getHostCache();
+    if (!hostCacheConfig.isEnabled()) {
+      return null;
+    }
+    try {
+      return new ConsulHostSharedCache(hostCacheConfig);
+    } catch (IOException e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Host shared cache {} is not available: {} <<<",
+          hostCacheConfig.getPath(), e.toString());
+
+      return null;
+    }
   }
 
   /**
@@ -316,23 +614,87 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     return chooseClient;
   }
 
+  /**
+   * 优先在同可用区的节点中按权重通过哈希一致性算法选取，同可用区没有候选节点时才跨可用区选取
+   */
   private ConsulClientHolder chooseClient(String key, List<ConsulClientHolder> clients) {
-    ConsulClientHolder chooseClient = ConsulClientUtil.chooseClient(key, clients);
+    ConsulClientHolder chooseClient = selectClient(key, clients);
     log.info(CommonConstant.LOG_PREFIX + ">>>  Hash Key: {}  ==== Hash List: {}  ====  Hash Result: {} <<<", key, clients, chooseClient);
 
     return chooseClient;
   }
 
+  private ConsulClientHolder selectClient(String key, List<ConsulClientHolder> clients) {
+    List<ConsulClientHolder> localClients = clients.stream().filter(this::isLocalZone).collect(Collectors.toList());
+    List<ConsulClientHolder> candidates = ObjectUtils.isNotEmpty(localClients) ? localClients : clients;
+
+    return ConsulClientUtil.chooseClient(key, candidates, ConsulClientHolder::getWeight);
+  }
+
+  /**
+   * 当前节点故障时依次会被选中的备用节点
+   *
+   * @param count - 备用节点数
+   */
+  protected List<ConsulClientHolder> getStandbyClients(int count) {
+    ConsulClientHolder tmpCurrentClient = this.currentClient;
+    List<ConsulClientHolder> candidates = this.consulClients.stream()
+        .filter(this::isAvailable).filter(consulClient -> consulClient != tmpCurrentClient).sorted()
+        .collect(Collectors.toList());
+    List<ConsulClientHolder> standbyClients = new ArrayList<>();
+    while (standbyClients.size() < count && ObjectUtils.isNotEmpty(candidates)) {
+      ConsulClientHolder standbyClient = selectClient(this.clusterConsulProperties.getClusterClientKey(), candidates);
+      standbyClients.add(standbyClient);
+      candidates.remove(standbyClient);
+    }
+
+    return standbyClients;
+  }
+
+  /**
+   * 节点是否与本服务在同一可用区，未配置本服务可用区时所有节点都视为同可用区
+   */
+  protected boolean isLocalZone(ConsulClientHolder consulClient) {
+    String zone = this.clusterConsulProperties.getZone();
+
+    return ObjectUtils.isEmpty(zone) || zone.equals(consulClient.getZone());
+  }
+
+  /**
+   * 当前节点不在本可用区时，若本可用区已有可用节点则切换回来；当前节点是强制切换的目标节点时保持不变
+   */
+  protected void failbackToLocalZone() {
+    if (ObjectUtils.isEmpty(this.currentClient) || isLocalZone(this.currentClient)
+        || this.currentClient == this.pinnedClient) {
+      return;
+    }
+    try {
+      this.chooseLock.lock();
+      List<ConsulClientHolder> localClients = this.consulClients.stream()
+          .filter(this::isAvailable).filter(this::isLocalZone).sorted()
+          .collect(Collectors.toList());
+      if (ObjectUtils.isNotEmpty(localClients) && !isLocalZone(this.currentClient)) {
+        ConsulClientHolder choosedClient = chooseClient(this.clusterConsulProperties.getClusterClientKey(),
+            localClients);
+        log.info(CommonConstant.LOG_PREFIX + ">>> Fail back from {} to local zone ConsulClient {} <<<",
+            this.currentClient, choosedClient);
+        this.currentClient = choosedClient;
+      }
+    } finally {
+      this.chooseLock.unlock();
+    }
+  }
+
   /**
    * 通过哈希一致性算法选择一个健康的ConsulClient
    */
   protected void chooseConsulClient() {
     try {
       this.chooseLock.lock();
-      if (!this.currentClient.isHealthy()) {
-        // 过滤出健康节点
+      if (!isAvailable(this.currentClient)) {
+        // 过滤出健康且未被摘除的节点
         List<ConsulClientHolder> availableClients = this.consulClients.stream()
-            .filter(ConsulClientHolder::isHealthy).sorted()
+            .filter(this::isAvailable).sorted()
             .collect(Collectors.toList());
         log.info(CommonConstant.LOG_PREFIX + ">>> Available ConsulClients: " + availableClients + " <<<");
 
@@ -343,7 +705,12 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
           if (ObjectUtils.isNotEmpty(choosedClient)) {
             log.info(CommonConstant.LOG_PREFIX + ">>> Successfully choosed a new ConsulClient : {} <<<",
                 choosedClient);
+            if (ObjectUtils.isNotEmpty(this.currentClient)) {
+              this.failoverRecorder.onSwitched(this.currentClient.getClientId(), choosedClient.getClientId());
+            }
             this.currentClient = choosedClient;
+            // 强制切换的目标节点不可用后恢复正常的可用区选择
+            this.pinnedClient = null;
           } else {
             log.warn(CommonConstant.LOG_PREFIX + ">>> Choosed New ConsulClient Fail!!!");
           }
@@ -362,20 +729,517 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
    * @param context - 重试上下文
    */
   protected ConsulClient getRetryConsulClient(RetryContext context) {
-    context.setAttribute(CURRENT_CLIENT_KEY, this.currentClient);
+    return getRetryConsulClientHolder(context).getClient();
+  }
+
+  /**
+   * 获取重试的ConsulClientHolder
+   *
+   * @param context - 重试上下文
+   */
+  protected ConsulClientHolder getRetryConsulClientHolder(RetryContext context) {
+    return getRetryConsulClientHolder(context, true);
+  }
+
+  /**
+   * 获取重试的ConsulClientHolder
+   *
+   * 当前节点在本次请求中已被bulkhead拒绝时，仅本次请求转到其他可用节点，当前节点保持不变
+   *
+   * @param context - 重试上下文
+   * @param limited - 是否受节点bulkhead限制(阻塞查询不受限制)
+   */
+  @SuppressWarnings("unchecked")
+  protected ConsulClientHolder getRetryConsulClientHolder(RetryContext context, boolean limited) {
     int retryCount = context.getRetryCount();
-    if ((!this.currentClient.isHealthy())
+    if ((!isAvailable(this.currentClient))
         && (CollectionUtils.isNotEmpty(this.consulClients))) {
-      log.info(CommonConstant.LOG_PREFIX + ">>> Current ConsulClient[{}] Is Unhealthy. Choose Again! <<<",
+      log.info(CommonConstant.LOG_PREFIX + ">>> Current ConsulClient[{}] Is Unavailable. Choose Again! <<<",
           this.currentClient);
       chooseConsulClient();
     }
-    if (retryCount > 0) {
+    ConsulClientHolder consulClient = this.currentClient;
+    if (ObjectUtils.isEmpty(consulClient)) {
+      // 启动时集群不可用，尚未选出当前节点
+      throw new TransportException(new ConnectException("No consul client is available"));
+    }
+    Set<String> rejectedClientIds = (Set<String>) context.getAttribute(REJECTED_CLIENTS_KEY);
+    if (ObjectUtils.isNotEmpty(rejectedClientIds) && rejectedClientIds.contains(consulClient.getClientId())) {
+      List<ConsulClientHolder> spilloverClients = this.consulClients.stream()
+          .filter(this::isAvailable).filter(holder -> !rejectedClientIds.contains(holder.getClientId())).sorted()
+          .collect(Collectors.toList());
+      if (ObjectUtils.isNotEmpty(spilloverClients)) {
+        consulClient = chooseClient(this.clusterConsulProperties.getClusterClientKey(), spilloverClients);
+        log.info(CommonConstant.LOG_PREFIX + ">>> Current ConsulClient[{}] is saturated, spill over to {} <<<",
+            this.currentClient, consulClient);
+      }
+    } else if (retryCount > 0) {
       log.info(CommonConstant.LOG_PREFIX + ">>> Using current ConsulClient[{}] for retry {} <<<",
-          this.currentClient, retryCount);
+          consulClient, retryCount);
     }
+    beginAttempt(context, consulClient, limited);
+
+    return consulClient;
+  }
 
-    return this.currentClient.getClient();
+  /**
+   * 本次尝试开始，记录使用的节点(失败时由onError标记为不健康)及开始时间
+   */
+  protected void beginAttempt(RetryContext context, ConsulClientHolder consulClient) {
+    beginAttempt(context, consulClient, true);
+  }
+
+  /**
+   * 本次尝试开始
+   *
+   * @param limited - 是否需要获取节点bulkhead许可，获取失败时抛出ConsulBulkheadFullException
+   */
+  protected void beginAttempt(RetryContext context, ConsulClientHolder consulClient, boolean limited) {
+    endAttempt(context, null);
+    context.setAttribute(CURRENT_CLIENT_KEY, consulClient);
+    if (limited && this.clusterConsulProperties.getBulkhead().isEnabled()) {
+      ConsulNodeBulkhead bulkhead = getBulkhead(consulClient.getClientId());
+      bulkhead.acquire();
+      context.setAttribute(ATTEMPT_PERMIT_KEY, bulkhead);
+    }
+    context.setAttribute(ATTEMPT_BEGIN_KEY, getNodeStats(consulClient.getClientId()).begin());
+  }
+
+  /**
+   * 本次尝试结束，记录节点统计
+   *
+   * @param throwable - 失败的异常，成功为null
+   */
+  protected void endAttempt(RetryContext context, Throwable throwable) {
+    Object begin = context.removeAttribute(ATTEMPT_BEGIN_KEY);
+    Object permit = context.removeAttribute(ATTEMPT_PERMIT_KEY);
+    if (permit != null) {
+      ((ConsulNodeBulkhead) permit).release();
+    }
+    ConsulClientHolder consulClient = (ConsulClientHolder) context.getAttribute(CURRENT_CLIENT_KEY);
+    if (begin != null && ObjectUtils.isNotEmpty(consulClient)) {
+      getNodeStats(consulClient.getClientId()).end((Long) begin, throwable);
+    }
+  }
+
+  /**
+   * 节点的请求统计
+   */
+  public ConsulNodeStats getNodeStats(String clientId) {
+    return this.nodeStatsMap.computeIfAbsent(clientId, ConsulNodeStats::new);
+  }
+
+  /**
+   * 节点的并发请求隔离
+   */
+  public ConsulNodeBulkhead getBulkhead(String clientId) {
+    return this.bulkheadMap.computeIfAbsent(clientId,
+        key -> new ConsulNodeBulkhead(key, this.clusterConsulProperties.getBulkhead()));
+  }
+
+  /**
+   * 节点是否可以被选为当前节点：健康且未被摘除
+   */
+  protected boolean isAvailable(ConsulClientHolder consulClient) {
+    return ObjectUtils.isNotEmpty(consulClient) && consulClient.isHealthy() && !isDrained(consulClient.getClientId());
+  }
+
+  /**
+   * 是否还有可用节点，没有时不再重试
+   */
+  protected boolean hasAvailableClient() {
+    return this.consulClients.stream().anyMatch(this::isAvailable);
+  }
+
+  public boolean isDrained(String clientId) {
+    return this.drainedClientIds.contains(clientId);
+  }
+
+  /**
+   * 摘除节点：不再将其选为当前节点(服务注册等广播操作仍会发往该节点)，摘除的是当前节点时立即切换
+   *
+   * @return 节点不存在时返回false
+   */
+  public boolean drain(String clientId) {
+    if (ObjectUtils.isEmpty(findConsulClient(clientId))) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Drain unknown ConsulClient[{}] ignored <<<", clientId);
+      return false;
+    }
+    this.drainedClientIds.add(clientId);
+    log.warn(CommonConstant.LOG_PREFIX + ">>> ConsulClient[{}] drained <<<", clientId);
+    ConsulClientHolder oldClient = this.currentClient;
+    if (ObjectUtils.isNotEmpty(oldClient) && clientId.equals(oldClient.getClientId())) {
+      chooseConsulClient();
+    }
+
+    return true;
+  }
+
+  /**
+   * 恢复被摘除的节点
+   *
+   * @return 节点不存在且未被摘除时返回false
+   */
+  public boolean undrain(String clientId) {
+    if (this.drainedClientIds.remove(clientId)) {
+      log.info(CommonConstant.LOG_PREFIX + ">>> ConsulClient[{}] undrained <<<", clientId);
+      return true;
+    }
+
+    return ObjectUtils.isNotEmpty(findConsulClient(clientId));
+  }
+
+  /**
+   * 强制切换当前节点
+   *
+   * 切换到其他可用区的节点后，在该节点不可用或再次强制切换之前不会被切回本可用区
+   *
+   * @param targetClientId - 目标节点，为空时在其他可用节点中通过哈希一致性算法选取
+   * @return 切换后的当前节点，目标节点不存在或没有可切换的节点时返回null
+   */
+  public ConsulClientHolder forceFailover(String targetClientId) {
+    try {
+      this.chooseLock.lock();
+      ConsulClientHolder oldClient = this.currentClient;
+      List<ConsulClientHolder> candidates = this.consulClients.stream()
+          .filter(this::isAvailable).filter(consulClient -> consulClient != oldClient).sorted()
+          .collect(Collectors.toList());
+      ConsulClientHolder target = ObjectUtils.isNotEmpty(targetClientId)
+          ? candidates.stream().filter(consulClient -> consulClient.getClientId().equals(targetClientId))
+              .findFirst().orElse(null)
+          : chooseClient(this.clusterConsulProperties.getClusterClientKey(), candidates);
+      if (ObjectUtils.isEmpty(target)) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Force failover from {} failed, no available target in {} <<<",
+            oldClient, candidates);
+        return null;
+      }
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Force failover from {} to {} <<<", oldClient, target);
+      this.currentClient = target;
+      this.pinnedClient = target;
+
+      return target;
+    } finally {
+      this.chooseLock.unlock();
+    }
+  }
+
+  /**
+   * 获取session所在节点的ConsulClient，该节点不可用时使用当前节点
+   *
+   * @param context - 重试上下文
+   * @param session - sessionId
+   */
+  protected ConsulClient getSessionConsulClient(RetryContext context, String session) {
+    ConsulSessionRegistry.SessionRecord sessionRecord = this.sessionRegistry.getSessionRecord(session);
+    if (ObjectUtils.isNotEmpty(sessionRecord) && context.getRetryCount() == 0) {
+      ConsulClientHolder sessionClient = findConsulClient(sessionRecord.getClientId());
+      if (ObjectUtils.isNotEmpty(sessionClient) && sessionClient.isHealthy()) {
+        beginAttempt(context, sessionClient);
+        return sessionClient.getClient();
+      }
+    }
+
+    return getRetryConsulClient(context);
+  }
+
+  /**
+   * 根据clientId查找节点
+   */
+  protected ConsulClientHolder findConsulClient(String clientId) {
+    return this.consulClients.stream().filter(consulClient -> consulClient.getClientId().equals(clientId))
+        .findFirst().orElse(null);
+  }
+
+  private boolean isSessionClientHealthy(ConsulSessionRegistry.SessionRecord sessionRecord) {
+    ConsulClientHolder sessionClient = findConsulClient(sessionRecord.getClientId());
+    return ObjectUtils.isNotEmpty(sessionClient) && sessionClient.isHealthy();
+  }
+
+  /**
+   * 对所在节点已失效的session进行故障转移，注销已过期或在consul中已不存在的session
+   */
+  protected void failoverSessions() {
+    for (ConsulSessionRegistry.SessionRecord sessionRecord : this.sessionRegistry.getSessionRecords()) {
+      if (unregisterIfExpired(sessionRecord)) {
+        continue;
+      }
+      if (!isSessionClientHealthy(sessionRecord)) {
+        failoverSession(sessionRecord);
+      } else if (verifySession(sessionRecord)) {
+        reacquireLocks(sessionRecord);
+      }
+    }
+  }
+
+  /**
+   * 超过2倍TTL未续约的session已被consul销毁(例如调用方不再续约)，注销而不是重建
+   */
+  private boolean unregisterIfExpired(ConsulSessionRegistry.SessionRecord sessionRecord) {
+    if (!sessionRecord.isExpired()) {
+      return false;
+    }
+    log.warn(CommonConstant.LOG_PREFIX + ">>> Session {} expired without renewal, unregistered <<<",
+        sessionRecord.getSessionId());
+    this.sessionRegistry.unregister(sessionRecord.getSessionId());
+
+    return true;
+  }
+
+  /**
+   * 在session所在节点上确认session仍然存在，已被销毁(例如通过其他客户端)时注销
+   *
+   * @return session是否仍然存在，无法确认时视为存在
+   */
+  private boolean verifySession(ConsulSessionRegistry.SessionRecord sessionRecord) {
+    ConsulClientHolder sessionClient = findConsulClient(sessionRecord.getClientId());
+    if (ObjectUtils.isEmpty(sessionClient)) {
+      return true;
+    }
+    String session = sessionRecord.getSessionId();
+    try {
+      Session sessionInfo = sessionClient.getClient().getSessionInfo(session, CONSISTENT_QUERY_PARAMS,
+          sessionRecord.getToken()).getValue();
+      if (ObjectUtils.isEmpty(sessionInfo)) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Session {} no longer exists, unregistered <<<", session);
+        this.sessionRegistry.unregister(session);
+        return false;
+      }
+    } catch (Exception e) {
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Verify session {} failed: {} <<<", session, e.getMessage());
+    }
+
+    return true;
+  }
+
+  /**
+   * 在当前可用节点上重建session，并重新获取依赖该session的锁
+   */
+  protected void failoverSession(ConsulSessionRegistry.SessionRecord sessionRecord) {
+    synchronized (sessionRecord) {
+      if (isSessionClientHealthy(sessionRecord)) {
+        return;
+      }
+      try {
+        String oldSession = sessionRecord.getSessionId();
+        NewSession newSession = failoverNewSession(sessionRecord.getNewSession());
+        ConsulClientHolder newClient = this.retryTemplate.execute(context -> {
+          ConsulClientHolder consulClient = getRetryConsulClientHolder(context);
+          String recreatedSession = consulClient.getClient().sessionCreate(newSession,
+              sessionRecord.getQueryParams(), sessionRecord.getToken()).getValue();
+          sessionRecord.getLocks().values().forEach(lockRecord -> lockRecord.setPending(true));
+          this.sessionRegistry.onSessionRecreated(sessionRecord, recreatedSession, consulClient.getClientId());
+
+          return consulClient;
+        });
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Session {} failover to {} as {} <<<", oldSession, newClient,
+            sessionRecord.getSessionId());
+        // 尽力销毁旧session，使其持有的锁立即释放，而不是等待consul判定其失效
+        try {
+          newClient.getClient().sessionDestroy(oldSession, QueryParams.DEFAULT, sessionRecord.getToken());
+        } catch (Exception e) {
+          log.debug(CommonConstant.LOG_PREFIX + ">>> Destroy old session {} failed: {} <<<", oldSession,
+              e.getMessage());
+        }
+        reacquireLocks(sessionRecord);
+      } catch (Exception e) {
+        log.error(CommonConstant.LOG_PREFIX + ">>> Session {} failover failed: {} <<<", sessionRecord,
+            e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * 重建session使用的参数：显式指定的node是已失效的节点，重建时由新节点使用其自身的node
+   */
+  private static NewSession failoverNewSession(NewSession newSession) {
+    if (ObjectUtils.isEmpty(newSession.getNode())) {
+      return newSession;
+    }
+    NewSession failoverSession = new NewSession();
+    failoverSession.setLockDelay(newSession.getLockDelay());
+    failoverSession.setName(newSession.getName());
+    failoverSession.setChecks(newSession.getChecks());
+    failoverSession.setBehavior(newSession.getBehavior());
+    failoverSession.setTtl(newSession.getTtl());
+
+    return failoverSession;
+  }
+
+  /**
+   * 使用当前有效的session重新获取待恢复的锁
+   *
+   * 旧session尚未被consul判定失效时获取会失败，将在下次健康检测时再次尝试；
+   * 锁已被其他session获取时放弃该锁
+   */
+  protected void reacquireLocks(ConsulSessionRegistry.SessionRecord sessionRecord) {
+    String session = sessionRecord.getSessionId();
+    for (ConsulSessionRegistry.LockRecord lockRecord : sessionRecord.getLocks().values()) {
+      if (!lockRecord.isPending()) {
+        continue;
+      }
+      try {
+        GetValue current = getKVValueConsistent(lockRecord.getKey(), lockRecord.getToken()).getValue();
+        String holder = ObjectUtils.isEmpty(current) ? null : current.getSession();
+        if (session.equals(holder)) {
+          lockRecord.setPending(false);
+          continue;
+        }
+        if (ObjectUtils.isNotEmpty(holder) && this.sessionRegistry.getSessionRecord(holder) != sessionRecord) {
+          sessionRecord.getLocks().remove(lockRecord.getKey());
+          log.warn(CommonConstant.LOG_PREFIX + ">>> Lock {} has been acquired by other session {} <<<",
+              lockRecord.getKey(), holder);
+          continue;
+        }
+        PutParams putParams = new PutParams();
+        putParams.setFlags(lockRecord.getFlags());
+        putParams.setAcquireSession(session);
+        Boolean acquired = this.retryTemplate.execute(context -> getSessionConsulClient(context, session)
+            .setKVBinaryValue(lockRecord.getKey(), lockRecord.getValue(), lockRecord.getToken(), putParams).getValue());
+        lockRecord.setPending(!Boolean.TRUE.equals(acquired));
+        log.info(CommonConstant.LOG_PREFIX + ">>> Reacquire lock {} with session {} : {} <<<", lockRecord.getKey(),
+            session, acquired);
+      } catch (Exception e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Reacquire lock {} with session {} failed: {} <<<",
+            lockRecord.getKey(), session, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * 获取重试的ConsulClient, 阻塞查询使用独立的watch连接池
+   *
+   * @param context - 重试上下文
+   * @param queryParams - 查询参数
+   */
+  protected ConsulClient getRetryConsulClient(RetryContext context, QueryParams queryParams) {
+    if (isBlockingQuery(queryParams)) {
+      context.setAttribute(ClusterConsulRetryPolicy.BLOCKING_QUERY_KEY, true);
+      return getRetryConsulClientHolder(context, false).getWatchClient();
+    }
+
+    return getRetryConsulClient(context);
+  }
+
+  /**
+   * 获取重试的流式解析客户端，阻塞查询与getRetryConsulClient(context, queryParams)一样使用独立的连接池
+   *
+   * @param context - 重试上下文
+   * @param queryParams - 查询参数
+   */
+  protected ConsulStreamingClient getRetryStreamingClient(RetryContext context, QueryParams queryParams) {
+    if (isBlockingQuery(queryParams)) {
+      context.setAttribute(ClusterConsulRetryPolicy.BLOCKING_QUERY_KEY, true);
+      return getRetryConsulClientHolder(context, false).getStreamingClient();
+    }
+
+    return getRetryConsulClientHolder(context).getStreamingClient();
+  }
+
+  /**
+   * 合并相同的并发读请求，合并的调用方共享同一个结果：列表以只读视图返回，列表中的元素同样是共享的，调用方不应修改。
+   * 一致性读取(CONSISTENT)不合并，刚完成写入的调用方不会加入写入之前发出的读请求而读到旧值
+   *
+   * @param key - 由flightKey(...)生成
+   * @param queryParams - 查询参数
+   */
+  protected <T> Response<T> coalesce(List<Object> key, QueryParams queryParams, Supplier<Response<T>> supplier) {
+    if (!this.clusterConsulProperties.isCoalesceReads() || isConsistentRead(queryParams)) {
+      return supplier.get();
+    }
+
+    return this.readFlight.execute(key, () -> readOnly(supplier.get()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Response<T> readOnly(Response<T> response) {
+    if (ObjectUtils.isEmpty(response) || !(response.getValue() instanceof List)) {
+      return response;
+    }
+
+    return new Response<>((T) Collections.unmodifiableList((List<?>) response.getValue()), response.getConsulIndex(),
+        response.isConsulKnownLeader(), response.getConsulLastContact());
+  }
+
+  /**
+   * 执行读请求：同主机共享缓存中有未过期的结果时直接返回；成功时记录结果并发布到共享缓存，
+   * 重试耗尽时通过RecoveryCallback降级返回未过期的旧数据(阻塞查询除外)。
+   * 一致性读取(CONSISTENT)不读取也不发布共享缓存
+   *
+   * @param key - 由flightKey(...)生成
+   * @param queryParams - 查询参数，阻塞查询不使用缓存
+   */
+  protected <T> Response<T> executeRead(List<Object> key, QueryParams queryParams,
+      RetryCallback<Response<T>, RuntimeException> callback) {
+    if (isBlockingQuery(queryParams)) {
+      return this.retryTemplate.execute(callback);
+    }
+    boolean shared = ObjectUtils.isNotEmpty(this.hostSharedCache) && !isConsistentRead(queryParams);
+    if (shared) {
+      Response<T> sharedResponse = this.hostSharedCache.get(key);
+      if (ObjectUtils.isNotEmpty(sharedResponse)) {
+        recordRead(key, sharedResponse, false);
+        return sharedResponse;
+      }
+    }
+    RetryCallback<Response<T>, RuntimeException> recordingCallback = context -> {
+      Response<T> response = callback.doWithRetry(context);
+      recordRead(key, response, shared);
+
+      return response;
+    };
+    if (ObjectUtils.isEmpty(this.staleCache)) {
+      return this.retryTemplate.execute(recordingCallback);
+    }
+
+    return this.retryTemplate.execute(recordingCallback,
+        context -> this.staleCache.recover(key, context.getLastThrowable()));
+  }
+
+  /**
+   * 记录读请求的结果
+   *
+   * @param publish - 是否发布到同主机共享缓存(结果来自共享缓存时不再发布)
+   */
+  private void recordRead(List<Object> key, Response<?> response, boolean publish) {
+    if (ObjectUtils.isNotEmpty(this.staleCache)) {
+      this.staleCache.put(key, response);
+    }
+    if (publish && ObjectUtils.isNotEmpty(this.hostSharedCache)) {
+      this.hostSharedCache.put(key, response);
+    }
+  }
+
+  /**
+   * 由方法名及参数生成合并请求的key，QueryParams按其URL参数比较
+   */
+  protected static List<Object> flightKey(Object... parts) {
+    List<Object> key = new ArrayList<>(parts.length);
+    for (Object part : parts) {
+      key.add(part instanceof QueryParams ? ((QueryParams) part).toUrlParameters() : part);
+    }
+
+    return key;
+  }
+
+  /**
+   * ACL token以摘要参与key，避免token明文保存在缓存及本地快照中
+   */
+  protected static String tokenKey(String token) {
+    return ObjectUtils.isEmpty(token) ? null : Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * 是否是一致性读取，一致性读取不使用同主机共享缓存，也不合并
+   */
+  protected static boolean isConsistentRead(QueryParams queryParams) {
+    return ObjectUtils.isNotEmpty(queryParams) && queryParams.getConsistencyMode() == ConsistencyMode.CONSISTENT;
+  }
+
+  /**
+   * 是否是阻塞查询(带有index参数的查询)
+   */
+  protected boolean isBlockingQuery(QueryParams queryParams) {
+    return ObjectUtils.isNotEmpty(queryParams) && queryParams.getIndex() > 0;
   }
 
   @Override
@@ -387,6 +1251,10 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public final <T, E extends Throwable> void close(RetryContext context,
       RetryCallback<T, E> callback, Throwable throwable) {
+    endAttempt(context, throwable);
+    if (throwable == null) {
+      this.retryBudget.deposit();
+    }
     context.removeAttribute(CURRENT_CLIENT_KEY);
   }
 
@@ -394,13 +1262,35 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
    * 每次ConsulClient调用出错之后且在下次重试之前调用该方法
    */
   @Override
+  @SuppressWarnings("unchecked")
   public <T, E extends Throwable> void onError(RetryContext context,
       RetryCallback<T, E> callback, Throwable throwable) {
+    endAttempt(context, throwable);
     ConsulClientHolder tmpCurrentClient = (ConsulClientHolder) context
         .getAttribute(CURRENT_CLIENT_KEY);
-    if (ObjectUtils.isNotEmpty(tmpCurrentClient)) {
-      tmpCurrentClient.setHealthy(false);
+    if (ObjectUtils.isEmpty(tmpCurrentClient)) {
+      return;
+    }
+    ConsulErrorClassifier.ErrorType errorType = this.errorClassifier.classify(throwable);
+    if (errorType == ConsulErrorClassifier.ErrorType.CLIENT_ERROR) {
+      // 调用方错误(如ACL拒绝)，节点本身正常
+      log.debug(CommonConstant.LOG_PREFIX + ">>> ConsulClient[{}] rejected the request: {} <<<", tmpCurrentClient,
+          throwable.getMessage());
+      return;
+    }
+    if (errorType == ConsulErrorClassifier.ErrorType.NODE_BUSY) {
+      // 节点繁忙而非故障，仅本次请求转到其他节点
+      Set<String> rejectedClientIds = (Set<String>) context.getAttribute(REJECTED_CLIENTS_KEY);
+      if (rejectedClientIds == null) {
+        rejectedClientIds = Sets.newHashSet();
+        context.setAttribute(REJECTED_CLIENTS_KEY, rejectedClientIds);
+      }
+      rejectedClientIds.add(tmpCurrentClient.getClientId());
+      return;
     }
+    tmpCurrentClient.setHealthy(false);
+    this.failoverRecorder.onMarkedUnhealthy(tmpCurrentClient.getClientId(), tmpCurrentClient == this.currentClient,
+        String.valueOf(throwable));
   }
 
   /**
@@ -418,11 +1308,71 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
         clusterConsulProperties.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * 定期将有变化的旧数据缓存写入本地快照
+   */
+  protected void scheduleSnapshotFlush() {
+    long flushInterval = clusterConsulProperties.getSnapshot().getFlushInterval();
+    if (ObjectUtils.isEmpty(this.snapshotStore) || flushInterval <= 0) {
+      return;
+    }
+    consulClientsExecutor.scheduleWithFixedDelay(() -> this.snapshotStore.flush(this.staleCache), flushInterval,
+        flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 定期通过备用节点保持预热连接
+   */
+  protected void scheduleStandbyConnectionsWarmup() {
+    ClusterConsulProperties.TransportConfig transportConfig = clusterConsulProperties.getTransport();
+    if (transportConfig.getStandbyNodes() <= 0 || transportConfig.getStandbyWarmInterval() <= 0) {
+      return;
+    }
+    consulClientsExecutor.scheduleAtFixedRate(this::warmStandbyConnections, 0L,
+        transportConfig.getStandbyWarmInterval(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 定期通过备用节点发送轻量请求(/v1/status/leader)，使共享连接池中保持到备用节点的已建立连接，
+   * 故障转移后的首次请求无需重新建立TCP/TLS连接
+   */
+  protected void warmStandbyConnections() {
+    ClusterConsulProperties.TransportConfig transportConfig = clusterConsulProperties.getTransport();
+    List<ConsulClientHolder> standbyClients = getStandbyClients(transportConfig.getStandbyNodes());
+    this.standbyClientIds = standbyClients.stream().map(ConsulClientHolder::getClientId)
+        .collect(Collectors.toList());
+
+    // 同时发出多个请求，连接池才会为同一节点保持多个连接
+    for (ConsulClientHolder standbyClient : standbyClients) {
+      for (int i = 0; i < Math.max(1, transportConfig.getStandbyConnections()); i++) {
+        CompletableFuture.runAsync(() -> {
+          try {
+            standbyClient.getClient().getStatusLeader();
+          } catch (Exception e) {
+            log.debug(CommonConstant.LOG_PREFIX + ">>> Warm standby ConsulClient[{}] failed: {} <<<",
+                standbyClient.getClientId(), e.getMessage());
+          }
+        }, this.consulClientsExecutor);
+      }
+    }
+    log.debug(CommonConstant.LOG_PREFIX + ">>> Warming standby ConsulClients: {} <<<", this.standbyClientIds);
+  }
+
+  protected void scheduleIdleConnectionsEviction() {
+    long idleTimeout = clusterConsulProperties.getTransport().getIdleTimeout();
+    consulClientsExecutor.scheduleAtFixedRate(
+        this.transportFactory::evictIdleConnections, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+  }
+
   /**
    * 对全部的ConsulClient检测一次健康状况
    */
   protected void checkConsulClientsHealth() {
     this.consulClientHealthMap = checkAllConsulClientsHealth();
+    // session所在节点失效时进行故障转移
+    failoverSessions();
+    // 跨可用区故障转移后，本可用区节点恢复时切换回来
+    failbackToLocalZone();
 
     boolean allHealthy = isAllConsulClientsHealthy();
     if (allHealthy) {
@@ -453,9 +1403,15 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     //consul节点有变化
     if (!flag) {
       this.consulClients = tmpConsulClients;
+      // 启动时集群不可用，节点恢复后选择当前节点
+      if (ObjectUtils.isEmpty(this.currentClient)) {
+        this.currentClient = initCurrentConsulClient();
+      }
       //重新注册
       agentServiceReregister();
+      this.failoverRecorder.onReregistered();
     }
+    tmpConsulClients.forEach(this::recordHealth);
   }
 
   private Map<String, Boolean> checkAllConsulClientsHealth() {
@@ -463,12 +1419,25 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     for (ConsulClientHolder consulClient : this.consulClients) {
       consulClient.checkHealth();
       tmpConsulClientHealthMap.put(consulClient.getClientId(), consulClient.isHealthy());
+      recordHealth(consulClient);
     }
     log.info(CommonConstant.LOG_PREFIX + ">>> check all consul clients healthy: {} <<<", tmpConsulClientHealthMap);
 
     return tmpConsulClientHealthMap;
   }
 
+  /**
+   * 将健康检测结果记录到故障转移时间线
+   */
+  private void recordHealth(ConsulClientHolder consulClient) {
+    if (consulClient.isHealthy()) {
+      this.failoverRecorder.onRecovered(consulClient.getClientId());
+    } else {
+      this.failoverRecorder.onMarkedUnhealthy(consulClient.getClientId(), consulClient == this.currentClient,
+          "health check failed");
+    }
+  }
+
   /**
    * 判断全部的ConsulClient是否都是健康的?
    */
@@ -502,21 +1471,19 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<String> sessionCreate(NewSession newSession, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<String> sessionCreate = getRetryConsulClient(context).sessionCreate(newSession, queryParams);
-      log.debug(CommonConstant.LOG_PREFIX + ">>> function sessionCreate => newSession: {} === queryParams: {} === sessionCreate: {} <<<", newSession,
-          queryParams,
-          sessionCreate);
-
-      return sessionCreate;
-    });
+    return sessionCreate(newSession, queryParams, null);
   }
 
+  /**
+   * 在当前节点上创建session，并记录创建该session的节点
+   */
   @Override
   public Response<String> sessionCreate(NewSession newSession, QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<String> sessionCreate = getRetryConsulClient(context).sessionCreate(newSession,
-          queryParams, token);
+      ConsulClientHolder consulClient = getRetryConsulClientHolder(context);
+      Response<String> sessionCreate = consulClient.getClient().sessionCreate(newSession, queryParams, token);
+      this.sessionRegistry.register(sessionCreate.getValue(), consulClient.getClientId(), newSession, queryParams,
+          token);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function sessionCreate => newSession: {} === queryParams: {} === token: {} === sessionCreate: {} <<<",
           newSession,
@@ -528,27 +1495,30 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Void> sessionDestroy(String session, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      log.debug(CommonConstant.LOG_PREFIX + ">>> function sessionDestroy => session: {} === queryParams: {}  <<<", session, queryParams);
-
-      return getRetryConsulClient(context).sessionDestroy(session, queryParams);
-    });
+    return sessionDestroy(session, queryParams, null);
   }
 
+  /**
+   * 在创建session的节点上销毁session
+   */
   @Override
   public Response<Void> sessionDestroy(String session, QueryParams queryParams, String token) {
-    return this.retryTemplate.execute(context -> {
+    String resolvedSession = this.sessionRegistry.resolveSessionId(session);
+    Response<Void> response = this.retryTemplate.execute(context -> {
       log.debug(CommonConstant.LOG_PREFIX + ">>> function sessionDestroy => session: {} === queryParams: {}  === token: {} <<<", session,
           queryParams, token);
 
-      return getRetryConsulClient(context).sessionDestroy(session, queryParams, token);
+      return getSessionConsulClient(context, resolvedSession).sessionDestroy(resolvedSession, queryParams, token);
     });
+    this.sessionRegistry.unregister(session);
+
+    return response;
   }
 
   @Override
   public Response<Session> getSessionInfo(String session, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<Session> sessionInfo = getRetryConsulClient(context).getSessionInfo(session, queryParams);
+      Response<Session> sessionInfo = getRetryConsulClient(context, queryParams).getSessionInfo(session, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionInfo => session: {} === queryParams: {}  === sessionInfo: {} <<<", session,
           queryParams,
           sessionInfo);
@@ -560,7 +1530,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Session> getSessionInfo(String session, QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<Session> sessionInfo = getRetryConsulClient(context).getSessionInfo(session, queryParams, token);
+      Response<Session> sessionInfo = getRetryConsulClient(context, queryParams).getSessionInfo(session, queryParams, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionInfo => session: {} === queryParams: {}  === sessionInfo: {} <<<", session,
           queryParams,
           sessionInfo);
@@ -572,7 +1542,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Session>> getSessionNode(String node, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Session>> sessionNode = getRetryConsulClient(context).getSessionNode(node, queryParams);
+      Response<List<Session>> sessionNode = getRetryConsulClient(context, queryParams).getSessionNode(node, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionNode => node: {} === queryParams: {}  === sessionNode: {} <<<", node,
           queryParams, sessionNode);
 
@@ -583,7 +1553,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Session>> getSessionNode(String node, QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Session>> sessionNode = getRetryConsulClient(context).getSessionNode(node,
+      Response<List<Session>> sessionNode = getRetryConsulClient(context, queryParams).getSessionNode(node,
           queryParams, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionNode => node: {} === queryParams: {}  === token: {}  === sessionNode: {} <<<",
           node, queryParams,
@@ -596,7 +1566,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Session>> getSessionList(QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Session>> sessionList = getRetryConsulClient(context).getSessionList(queryParams);
+      Response<List<Session>> sessionList = getRetryConsulClient(context, queryParams).getSessionList(queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionList => queryParams: {}   === sessionList: {} <<<", queryParams, sessionList);
 
       return sessionList;
@@ -606,7 +1576,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Session>> getSessionList(QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Session>> sessionList = getRetryConsulClient(context).getSessionList(queryParams, token);
+      Response<List<Session>> sessionList = getRetryConsulClient(context, queryParams).getSessionList(queryParams, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getSessionList => queryParams: {}   === token: {} === sessionList: {} <<<", queryParams,
           token,
           sessionList);
@@ -617,35 +1587,49 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Session> renewSession(String session, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Session> renewSession = getRetryConsulClient(context).renewSession(session,
-          queryParams);
-      log.debug(CommonConstant.LOG_PREFIX + ">>> function renewSession => session: {}   ===  queryParams: {}   === renewSession: {} <<<", session,
-          queryParams,
-          renewSession);
-
-      return renewSession;
-    });
+    return renewSession(session, queryParams, null);
   }
 
+  /**
+   * 在创建session的节点上续约session，如果该节点已失效则先在其他节点上重建session
+   */
   @Override
   public Response<Session> renewSession(String session, QueryParams queryParams, String token) {
-    return this.retryTemplate.execute(context -> {
-      Response<Session> renewSession = getRetryConsulClient(context).renewSession(session,
-          queryParams, token);
-      log.debug(
-          CommonConstant.LOG_PREFIX + ">>> function renewSession => session: {}   ===  queryParams: {}   === token: {} === renewSession: {} <<<",
-          session,
-          queryParams, token, renewSession);
+    ConsulSessionRegistry.SessionRecord sessionRecord = this.sessionRegistry.getSessionRecord(session);
+    if (ObjectUtils.isNotEmpty(sessionRecord) && !isSessionClientHealthy(sessionRecord)) {
+      failoverSession(sessionRecord);
+    }
+    String resolvedSession = this.sessionRegistry.resolveSessionId(session);
 
-      return renewSession;
-    });
+    try {
+      Response<Session> response = this.retryTemplate.execute(context -> {
+        Response<Session> renewSession = getSessionConsulClient(context, resolvedSession).renewSession(resolvedSession,
+            queryParams, token);
+        log.debug(
+            CommonConstant.LOG_PREFIX + ">>> function renewSession => session: {}   ===  queryParams: {}   === token: {} === renewSession: {} <<<",
+            session,
+            queryParams, token, renewSession);
+
+        return renewSession;
+      });
+      if (ObjectUtils.isNotEmpty(sessionRecord)) {
+        sessionRecord.renewed();
+      }
+
+      return response;
+    } catch (OperationException e) {
+      // session已被销毁或已过期
+      if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+        this.sessionRegistry.unregister(session);
+      }
+      throw e;
+    }
   }
 
   @Override
   public Response<QueryExecution> executePreparedQuery(String uuid, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<QueryExecution> queryExecution = getRetryConsulClient(context).executePreparedQuery(uuid,
+      Response<QueryExecution> queryExecution = getRetryConsulClient(context, queryParams).executePreparedQuery(uuid,
           queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function executePreparedQuery => uuid: {}   ===  queryParams: {}   === queryExecution: {}  <<<",
           uuid,
@@ -655,9 +1639,22 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     });
   }
 
+  /**
+   * 一致性读取KV，不经过请求合并、同主机共享缓存及旧数据降级，用于锁持有者等必须读到最新值的判断
+   */
+  public Response<GetValue> getKVValueConsistent(String key, String token) {
+    return this.retryTemplate.execute(context -> {
+      Response<GetValue> value = getRetryConsulClient(context).getKVValue(key, token, CONSISTENT_QUERY_PARAMS);
+      log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValueConsistent => key: {}   ===  value: {} <<<", key,
+          value);
+
+      return value;
+    });
+  }
+
   @Override
   public Response<GetValue> getKVValue(String key) {
-    return this.retryTemplate.execute(context -> {
+    return executeRead(flightKey("getKVValue", key, null, null), null, context -> {
       Response<GetValue> value = getRetryConsulClient(context).getKVValue(key);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValue => key: {}   ===  value: {} <<<", key, value);
 
@@ -667,7 +1664,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<GetValue> getKVValue(String key, String token) {
-    return this.retryTemplate.execute(context -> {
+    return executeRead(flightKey("getKVValue", key, tokenKey(token), null), null, context -> {
       Response<GetValue> value = getRetryConsulClient(context).getKVValue(key, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValue => key: {}   ===  token: {}  ===  value: {} <<<", key, token, value);
 
@@ -677,8 +1674,8 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<GetValue> getKVValue(String key, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<GetValue> value = getRetryConsulClient(context).getKVValue(key, queryParams);
+    return executeRead(flightKey("getKVValue", key, null, queryParams), queryParams, context -> {
+      Response<GetValue> value = getRetryConsulClient(context, queryParams).getKVValue(key, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValue => key: {}   ===  queryParams: {}  ===  value: {} <<<", key, queryParams,
           value);
 
@@ -688,8 +1685,8 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<GetValue> getKVValue(String key, String token, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<GetValue> value = getRetryConsulClient(context).getKVValue(key, token,
+    return executeRead(flightKey("getKVValue", key, tokenKey(token), queryParams), queryParams, context -> {
+      Response<GetValue> value = getRetryConsulClient(context, queryParams).getKVValue(key, token,
           queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValue => key: {}   ===  token: {}  ===  queryParams: {}  ===  value: {} <<<", key,
           token, queryParams,
@@ -723,7 +1720,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<GetBinaryValue> getKVBinaryValue(String key, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<GetBinaryValue> binaryValue = getRetryConsulClient(context).getKVBinaryValue(key,
+      Response<GetBinaryValue> binaryValue = getRetryConsulClient(context, queryParams).getKVBinaryValue(key,
           queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVBinaryValue => key: {}  ===  queryParams: {}  ===  binaryValue: {} <<<", key,
           queryParams,
@@ -736,7 +1733,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<GetBinaryValue> getKVBinaryValue(String key, String token, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<GetBinaryValue> binaryValue = getRetryConsulClient(context).getKVBinaryValue(key, token,
+      Response<GetBinaryValue> binaryValue = getRetryConsulClient(context, queryParams).getKVBinaryValue(key, token,
           queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getKVBinaryValue => key: {}  ===  token: {}  ===  queryParams: {}  ===  binaryValue: {} <<<",
@@ -747,55 +1744,115 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     });
   }
 
+  /**
+   * raw模式读取KV的value，响应体直接读入buffer，不经过JSON及base64
+   *
+   * raw模式的响应不包含flags、session等元数据，key不存在时返回null值
+   *
+   * @param buffer - 调用方提供的缓冲区，容量不足或为null时分配新的缓冲区
+   * @return 读取了value的缓冲区，调用方下次读取时可以传入复用
+   */
+  public Response<ByteBuffer> getKVRawValue(String key, String token, QueryParams queryParams, ByteBuffer buffer) {
+    return this.retryTemplate.execute(context -> {
+      Response<ByteBuffer> rawValue = getRetryStreamingClient(context, queryParams).getKVRawValue(key, queryParams,
+          token, buffer);
+      log.debug(
+          CommonConstant.LOG_PREFIX + ">>> function getKVRawValue => key: {}  ===  queryParams: {}  ===  rawValue: {} <<<",
+          key, queryParams, rawValue);
+
+      return rawValue;
+    });
+  }
+
   @Override
   public Response<List<GetValue>> getKVValues(String keyPrefix) {
-    return this.retryTemplate.execute(context -> {
+    List<Object> key = flightKey("getKVValues", keyPrefix, null, null);
+    return coalesce(key, null, () -> executeRead(key, null, context -> {
       Response<List<GetValue>> valueList = getRetryConsulClient(context).getKVValues(keyPrefix);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValues => keyPrefix: {}  ===  valueList: {} <<<", keyPrefix, valueList);
 
       return valueList;
-    });
+    }));
   }
 
   @Override
   public Response<List<GetValue>> getKVValues(String keyPrefix, String token) {
-    return this.retryTemplate.execute(context -> {
+    List<Object> key = flightKey("getKVValues", keyPrefix, tokenKey(token), null);
+    return coalesce(key, null, () -> executeRead(key, null, context -> {
       Response<List<GetValue>> valueList = getRetryConsulClient(context).getKVValues(keyPrefix,
           token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValues => keyPrefix: {}  ===  token: {}  ===  valueList: {} <<<", keyPrefix, token,
           valueList);
 
       return valueList;
-    });
+    }));
   }
 
   @Override
   public Response<List<GetValue>> getKVValues(String keyPrefix, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<GetValue>> valueList = getRetryConsulClient(context).getKVValues(keyPrefix,
+    List<Object> key = flightKey("getKVValues", keyPrefix, null, queryParams);
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<GetValue>> valueList = getRetryConsulClient(context, queryParams).getKVValues(keyPrefix,
           queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVValues => keyPrefix: {}  ===  queryParams: {}  ===  valueList: {} <<<", keyPrefix,
           queryParams,
           valueList);
 
       return valueList;
-    });
+    }));
   }
 
   @Override
   public Response<List<GetValue>> getKVValues(String keyPrefix, String token, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<GetValue>> valueList = getRetryConsulClient(context).getKVValues(keyPrefix, token,
+    List<Object> key = flightKey("getKVValues", keyPrefix, tokenKey(token), queryParams);
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<GetValue>> valueList = getRetryConsulClient(context, queryParams).getKVValues(keyPrefix, token,
           queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getKVValues => keyPrefix: {}  ===  token: {}  ===  queryParams: {}  ===  valueList: {} <<<",
           keyPrefix,
           token, queryParams, valueList);
 
+      return valueList;
+    }));
+  }
+
+  /**
+   * 从响应流解析前缀下的KV，不满足keyFilter的条目跳过其value(不创建字符串)
+   *
+   * @param keyFilter - 解析时按key过滤，为null时不过滤
+   */
+  public Response<List<GetValue>> getKVValues(String keyPrefix, String token, QueryParams queryParams,
+      Predicate<String> keyFilter) {
+    return this.retryTemplate.execute(context -> {
+      Response<List<GetValue>> valueList = getRetryStreamingClient(context, queryParams).getKVValues(keyPrefix,
+          queryParams, token, keyFilter);
+      log.debug(
+          CommonConstant.LOG_PREFIX + ">>> function getKVValues => keyPrefix: {}  ===  queryParams: {}  ===  valueList: {} <<<",
+          keyPrefix, queryParams, valueList);
+
       return valueList;
     });
   }
 
+  /**
+   * 从响应流解析前缀下的KV，value保留base64编码，访问时才解码
+   *
+   * @param keyFilter - 解析时按key过滤，为null时不过滤
+   */
+  public Response<List<ConsulKVEntry>> getKVEntries(String keyPrefix, String token, QueryParams queryParams,
+      Predicate<String> keyFilter) {
+    return this.retryTemplate.execute(context -> {
+      Response<List<ConsulKVEntry>> entryList = getRetryStreamingClient(context, queryParams).getKVEntries(keyPrefix,
+          queryParams, token, keyFilter);
+      log.debug(
+          CommonConstant.LOG_PREFIX + ">>> function getKVEntries => keyPrefix: {}  ===  queryParams: {}  ===  entryList: {} <<<",
+          keyPrefix, queryParams, entryList);
+
+      return entryList;
+    });
+  }
+
   @Override
   public Response<List<GetBinaryValue>> getKVBinaryValues(String keyPrefix) {
     return this.retryTemplate.execute(context -> {
@@ -822,7 +1879,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<GetBinaryValue>> getKVBinaryValues(String keyPrefix, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<GetBinaryValue>> binaryValueList = getRetryConsulClient(context).getKVBinaryValues(keyPrefix,
+      Response<List<GetBinaryValue>> binaryValueList = getRetryConsulClient(context, queryParams).getKVBinaryValues(keyPrefix,
           queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVBinaryValues => keyPrefix: {}  ===  queryParams: {}  ===  binaryValueList: {} <<<",
           keyPrefix,
@@ -836,7 +1893,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<GetBinaryValue>> getKVBinaryValues(String keyPrefix, String token, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<GetBinaryValue>> binaryValueList = getRetryConsulClient(context).getKVBinaryValues(keyPrefix, token, queryParams);
+      Response<List<GetBinaryValue>> binaryValueList = getRetryConsulClient(context, queryParams).getKVBinaryValues(keyPrefix, token, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function getKVBinaryValues => keyPrefix: {}  ===  token: {}  ===  queryParams: {}  ===  binaryValueList: {} <<<",
@@ -872,7 +1929,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<String>> getKVKeysOnly(String keyPrefix, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<String>> keyList = getRetryConsulClient(context).getKVKeysOnly(keyPrefix, queryParams);
+      Response<List<String>> keyList = getRetryConsulClient(context, queryParams).getKVKeysOnly(keyPrefix, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getKVKeysOnly => keyPrefix: {}  ===  queryParams: {} ===  keyList: {} <<<",
           keyPrefix, queryParams, keyList);
 
@@ -883,7 +1940,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<String>> getKVKeysOnly(String keyPrefix, String separator, String token, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<String>> keyList = getRetryConsulClient(context).getKVKeysOnly(keyPrefix,
+      Response<List<String>> keyList = getRetryConsulClient(context, queryParams).getKVKeysOnly(keyPrefix,
           separator, token, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -908,12 +1965,16 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Boolean> setKVValue(String key, String value, PutParams putParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, putParams);
+      Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, resolvedPutParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function setKVValue => key: {}  ===  value: {}  ===  putParams: {} ===  result: {} <<<",
           key, value, putParams, result);
 
+      this.sessionRegistry.trackLock(key, value, null, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -921,13 +1982,17 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Boolean> setKVValue(String key, String value, String token,
       PutParams putParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
       Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, token,
-          putParams);
+          resolvedPutParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function setKVValue => key: {}  ===  value: {}  ===  token: {}  ===  putParams: {} ===  result: {} <<<",
           key, value, token, putParams, result);
 
+      this.sessionRegistry.trackLock(key, value, token, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -935,7 +2000,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Boolean> setKVValue(String key, String value, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVValue(key, value, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function setKVValue => key: {}  ===  value: {}  ===  queryParams: {} ===  result: {} <<<",
           key, value, queryParams, result);
@@ -946,13 +2011,17 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Boolean> setKVValue(String key, String value, PutParams putParams, QueryParams queryParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, putParams, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVValue(key, value, resolvedPutParams, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function setKVValue => key: {}  ===  value: {}  ===  putParams: {}  ===  queryParams: {} ===  result: {} <<<",
           key, value, putParams, queryParams, result);
 
+      this.sessionRegistry.trackLock(key, value, null, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -960,14 +2029,18 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Boolean> setKVValue(String key, String value, String token,
       PutParams putParams, QueryParams queryParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVValue(key, value, token,
-          putParams, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVValue(key, value, token,
+          resolvedPutParams, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function setKVValue => key: {}  ===  value: {}  ===  token: {}   ===  putParams: {}  ===  queryParams: {} ===  result: {} <<<",
           key, value, token, putParams, queryParams, result);
 
+      this.sessionRegistry.trackLock(key, value, token, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -986,26 +2059,34 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Boolean> setKVBinaryValue(String key, byte[] value, PutParams putParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value, putParams);
+      Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value, resolvedPutParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function setKVBinaryValue => key: {}  ===  value: {}  ===  putParams: {}  ===  result: {} <<<",
           key, value, putParams, result);
 
+      this.sessionRegistry.trackLock(key, value, null, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
 
   @Override
   public Response<Boolean> setKVBinaryValue(String key, byte[] value, String token, PutParams putParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
       Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value,
-          token, putParams);
+          token, resolvedPutParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function setKVBinaryValue => key: {}  ===  value: {}  ===  token: {}  ===  putParams: {}  ===  result: {} <<<",
           key, value, token, putParams, result);
 
+      this.sessionRegistry.trackLock(key, value, token, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -1013,7 +2094,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Boolean> setKVBinaryValue(String key, byte[] value, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVBinaryValue(key, value, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function setKVBinaryValue => key: {}  ===  value: {}  ===  queryParams: {}  ===  result: {} <<<",
           key, value, queryParams, result);
@@ -1024,13 +2105,17 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Boolean> setKVBinaryValue(String key, byte[] value, PutParams putParams, QueryParams queryParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value, putParams, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVBinaryValue(key, value, resolvedPutParams, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function setKVBinaryValue => key: {}  ===  value: {}  ===  putParams: {}   ===  queryParams: {}  ===  result: {} <<<",
           key, value, putParams, queryParams, result);
 
+      this.sessionRegistry.trackLock(key, value, null, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
@@ -1038,108 +2123,136 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<Boolean> setKVBinaryValue(String key, byte[] value, String token,
       PutParams putParams, QueryParams queryParams) {
+    PutParams resolvedPutParams = this.sessionRegistry.resolvePutParams(putParams);
+
     return this.retryTemplate.execute(context -> {
-      Response<Boolean> result = getRetryConsulClient(context).setKVBinaryValue(key, value,
-          token, putParams, queryParams);
+      Response<Boolean> result = getRetryConsulClient(context, queryParams).setKVBinaryValue(key, value,
+          token, resolvedPutParams, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function setKVBinaryValue => key: {}  ===  value: {}  ===  putParams: {}   ===  queryParams: {}  ===  result: {} <<<",
           key, value, putParams, queryParams, result);
 
+      this.sessionRegistry.trackLock(key, value, token, resolvedPutParams, result.getValue());
+
       return result;
     });
   }
 
   @Override
   public Response<Void> deleteKVValue(String key) {
-    return this.retryTemplate.execute(context -> {
+    Response<Void> response = this.retryTemplate.execute(context -> {
       Response<Void> result = getRetryConsulClient(context).deleteKVValue(key);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValue => key: {} ===  result: {} <<<", key, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLock(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValue(String key, String token) {
-    return this.retryTemplate.execute(context -> {
+    Response<Void> response = this.retryTemplate.execute(context -> {
       Response<Void> result = getRetryConsulClient(context).deleteKVValue(key, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValue => key: {}  ===  token: {}  ===  result: {} <<<", key, token, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLock(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValue(String key, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Void> result = getRetryConsulClient(context).deleteKVValue(key, queryParams);
+    Response<Void> response = this.retryTemplate.execute(context -> {
+      Response<Void> result = getRetryConsulClient(context, queryParams).deleteKVValue(key, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValue => key: {}  ===  queryParams: {}  ===  result: {} <<<", key, queryParams,
           result);
 
       return result;
     });
+    this.sessionRegistry.untrackLock(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValue(String key, String token, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Void> result = getRetryConsulClient(context).deleteKVValue(key, token, queryParams);
+    Response<Void> response = this.retryTemplate.execute(context -> {
+      Response<Void> result = getRetryConsulClient(context, queryParams).deleteKVValue(key, token, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValue => key: {}  ===  token: {}  ===  queryParams: {}  ===  result: {} <<<", key,
           token,
           queryParams, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLock(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValues(String key) {
-    return this.retryTemplate.execute(context -> {
+    Response<Void> response = this.retryTemplate.execute(context -> {
       Response<Void> result = getRetryConsulClient(context).deleteKVValues(key);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValues => key: {}  ===  result: {} <<<", key, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLocks(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValues(String key, String token) {
-    return this.retryTemplate.execute(context -> {
+    Response<Void> response = this.retryTemplate.execute(context -> {
       Response<Void> result = getRetryConsulClient(context).deleteKVValues(key, token);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValues => key: {}  ===  token: {}  ===  result: {} <<<", key, token, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLocks(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValues(String key, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Void> result = getRetryConsulClient(context).deleteKVValues(key, queryParams);
+    Response<Void> response = this.retryTemplate.execute(context -> {
+      Response<Void> result = getRetryConsulClient(context, queryParams).deleteKVValues(key, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValues => key: {}  ===  queryParams: {}  ===  result: {} <<<", key, queryParams,
           result);
 
       return result;
     });
+    this.sessionRegistry.untrackLocks(key);
+
+    return response;
   }
 
   @Override
   public Response<Void> deleteKVValues(String key, String token, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Void> result = getRetryConsulClient(context).deleteKVValues(key, token, queryParams);
+    Response<Void> response = this.retryTemplate.execute(context -> {
+      Response<Void> result = getRetryConsulClient(context, queryParams).deleteKVValues(key, token, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function deleteKVValues => key: {}  ===  token: {}  ===  queryParams: {}  ===  result: {} <<<", key,
           token,
           queryParams, result);
 
       return result;
     });
+    this.sessionRegistry.untrackLocks(key);
+
+    return response;
   }
 
   @Override
   public Response<List<Check>> getHealthChecksForNode(String nodeName, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Check>> checkList = getRetryConsulClient(context).getHealthChecksForNode(nodeName, queryParams);
+      Response<List<Check>> checkList = getRetryConsulClient(context, queryParams).getHealthChecksForNode(nodeName, queryParams);
       log.debug(CommonConstant.LOG_PREFIX + ">>> function getHealthChecksForNode => nodeName: {}  ===  queryParams: {}  ===  checkList: {} <<<",
           nodeName,
           queryParams, checkList);
@@ -1151,7 +2264,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Check>> getHealthChecksForService(String serviceName, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Check>> checkList = getRetryConsulClient(context).getHealthChecksForService(serviceName, queryParams);
+      Response<List<Check>> checkList = getRetryConsulClient(context, queryParams).getHealthChecksForService(serviceName, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getHealthChecksForService => serviceName: {}  ===  queryParams: {}  ===  checkList: {} <<<",
           serviceName,
@@ -1164,8 +2277,9 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<HealthService>> getHealthServices(String serviceName,
       boolean onlyPassing, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context)
+    List<Object> key = flightKey("getHealthServices", serviceName, null, onlyPassing, queryParams, null);
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context, queryParams)
           .getHealthServices(serviceName, onlyPassing, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1173,14 +2287,15 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
           serviceName, onlyPassing, queryParams, healthServiceList);
 
       return healthServiceList;
-    });
+    }));
   }
 
   @Override
   public Response<List<HealthService>> getHealthServices(String serviceName, String tag,
       boolean onlyPassing, QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context).getHealthServices(
+    List<Object> key = flightKey("getHealthServices", serviceName, tag, onlyPassing, queryParams, null);
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context, queryParams).getHealthServices(
           serviceName, tag, onlyPassing, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1188,14 +2303,15 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
           serviceName, tag, onlyPassing, queryParams, healthServiceList);
 
       return healthServiceList;
-    });
+    }));
   }
 
   @Override
   public Response<List<HealthService>> getHealthServices(String serviceName,
       boolean onlyPassing, QueryParams queryParams, String token) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context).getHealthServices(
+    List<Object> key = flightKey("getHealthServices", serviceName, null, onlyPassing, queryParams, tokenKey(token));
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context, queryParams).getHealthServices(
           serviceName, onlyPassing, queryParams, token);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1203,28 +2319,72 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
           serviceName, onlyPassing, queryParams, token, healthServiceList);
 
       return healthServiceList;
-    });
+    }));
   }
 
   @Override
   public Response<List<HealthService>> getHealthServices(String serviceName, String tag,
       boolean onlyPassing, QueryParams queryParams, String token) {
-    return this.retryTemplate.execute(context -> {
-      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context).getHealthServices(
+    List<Object> key = flightKey("getHealthServices", serviceName, tag, onlyPassing, queryParams, tokenKey(token));
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context, queryParams).getHealthServices(
           serviceName, tag, onlyPassing, queryParams, token);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function getHealthServices => serviceName: {}  ===  tag: {}  ===  onlyPassing: {}  ===  queryParams: {}  ===  token: {}  ===  healthServiceList: {} <<<",
           serviceName, tag, onlyPassing, queryParams, token, healthServiceList);
 
+      return healthServiceList;
+    }));
+  }
+
+  /**
+   * 不经过请求合并、同主机共享缓存及旧数据降级读取服务的健康列表，用于watch感知变化后必须读到最新值的查询
+   */
+  public Response<List<HealthService>> getHealthServicesUncached(String serviceName, boolean onlyPassing,
+      String token) {
+    return this.retryTemplate.execute(context -> {
+      Response<List<HealthService>> healthServiceList = getRetryConsulClient(context).getHealthServices(serviceName,
+          onlyPassing, QueryParams.DEFAULT, token);
+      log.debug(
+          CommonConstant.LOG_PREFIX
+              + ">>> function getHealthServicesUncached => serviceName: {}  ===  onlyPassing: {}  ===  healthServiceList: {} <<<",
+          serviceName, onlyPassing, healthServiceList);
+
       return healthServiceList;
     });
   }
 
+  /**
+   * 服务最近一次变化的index，不解析响应体
+   */
+  public Long getHealthServiceIndex(String serviceName, String token) {
+    return this.retryTemplate.execute(context -> getRetryStreamingClient(context, QueryParams.DEFAULT)
+        .getHealthServiceIndex(serviceName, QueryParams.DEFAULT, token));
+  }
+
+  /**
+   * 服务的健康实例：从响应流直接解析为紧凑的ConsulInstance，只读取路由需要的字段，解析时去重
+   */
+  public Response<List<ConsulInstance>> getHealthInstances(String serviceName, String tag,
+      boolean onlyPassing, QueryParams queryParams, String token) {
+    List<Object> key = flightKey("getHealthInstances", serviceName, tag, onlyPassing, queryParams, tokenKey(token));
+    return coalesce(key, queryParams, () -> executeRead(key, queryParams, context -> {
+      Response<List<ConsulInstance>> instanceList = getRetryStreamingClient(context, queryParams).getHealthInstances(
+          serviceName, tag, onlyPassing, queryParams, token, null);
+      log.debug(
+          CommonConstant.LOG_PREFIX
+              + ">>> function getHealthInstances => serviceName: {}  ===  tag: {}  ===  onlyPassing: {}  ===  queryParams: {}  ===  instanceList: {} <<<",
+          serviceName, tag, onlyPassing, queryParams, instanceList);
+
+      return instanceList;
+    }));
+  }
+
   @Override
   public Response<List<Check>> getHealthChecksState(QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Check>> checkList = getRetryConsulClient(context).getHealthChecksState(queryParams);
+      Response<List<Check>> checkList = getRetryConsulClient(context, queryParams).getHealthChecksState(queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getHealthChecksState =>  queryParams: {}  ===  checkList: {} <<<",
           queryParams, checkList);
@@ -1236,7 +2396,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Check>> getHealthChecksState(CheckStatus checkStatus, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Check>> checkList = getRetryConsulClient(context).getHealthChecksState(checkStatus, queryParams);
+      Response<List<Check>> checkList = getRetryConsulClient(context, queryParams).getHealthChecksState(checkStatus, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getHealthChecksState =>  checkStatus: {}  ===  queryParams: {}  ===  checkList: {} <<<",
           checkStatus, queryParams, checkList);
@@ -1245,10 +2405,25 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     });
   }
 
+  /**
+   * 带ACL token查询所有状态的健康检查，从响应流解析，只保留节点、检查ID、服务及状态
+   */
+  public Response<List<Check>> getHealthChecksState(QueryParams queryParams, String token) {
+    return this.retryTemplate.execute(context -> {
+      Response<List<Check>> checkList = getRetryStreamingClient(context, queryParams).getHealthChecksState(null,
+          queryParams, token);
+      log.debug(
+          CommonConstant.LOG_PREFIX + ">>> function getHealthChecksState =>  queryParams: {}  ===  checkList: {} <<<",
+          queryParams, checkList);
+
+      return checkList;
+    });
+  }
+
   @Override
   public Response<Event> eventFire(String event, String payload, EventParams eventParams, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<Event> eventFire = getRetryConsulClient(context).eventFire(event, payload, eventParams, queryParams);
+      Response<Event> eventFire = getRetryConsulClient(context, queryParams).eventFire(event, payload, eventParams, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
               + ">>> function eventFire =>  event: {}  ===  payload: {}  ===  eventParams: {} ===  queryParams: {}  ===  eventFire: {} <<<",
@@ -1261,7 +2436,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Event>> eventList(QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Event>> eventList = getRetryConsulClient(context).eventList(queryParams);
+      Response<List<Event>> eventList = getRetryConsulClient(context, queryParams).eventList(queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function eventList =>  queryParams: {}  ===  eventList: {} <<<",
           queryParams, eventList);
@@ -1273,7 +2448,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Event>> eventList(String event, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Event>> eventList = getRetryConsulClient(context).eventList(event, queryParams);
+      Response<List<Event>> eventList = getRetryConsulClient(context, queryParams).eventList(event, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function eventList =>  event: {}  ===  queryParams: {}  ===  eventList: {} <<<",
           event, queryParams, eventList);
@@ -1297,7 +2472,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<Node>> getNodes(QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<Node>> nodeList = getRetryConsulClient(context).getNodes(queryParams);
+      Response<List<Node>> nodeList = getRetryConsulClient(context, queryParams).getNodes(queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getNodes =>  queryParams: {}  === nodeList: {} <<<",
           queryParams, nodeList);
@@ -1357,7 +2532,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<com.ecwid.consul.v1.catalog.model.Node>> getCatalogNodes(QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<com.ecwid.consul.v1.catalog.model.Node>> catalogNodeList = getRetryConsulClient(context)
+      Response<List<com.ecwid.consul.v1.catalog.model.Node>> catalogNodeList = getRetryConsulClient(context, queryParams)
           .getCatalogNodes(queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getCatalogNodes =>  queryParams: {}  ===  catalogNodeList: {} <<<",
@@ -1369,8 +2544,8 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Map<String, List<String>>> getCatalogServices(QueryParams queryParams) {
-    return this.retryTemplate.execute(context -> {
-      Response<Map<String, List<String>>> catalogServiceMap = getRetryConsulClient(context)
+    return executeRead(flightKey("getCatalogServices", null, queryParams), queryParams, context -> {
+      Response<Map<String, List<String>>> catalogServiceMap = getRetryConsulClient(context, queryParams)
           .getCatalogServices(queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getCatalogServices =>  queryParams: {}  ===  catalogServiceMap: {} <<<",
@@ -1382,8 +2557,8 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
 
   @Override
   public Response<Map<String, List<String>>> getCatalogServices(QueryParams queryParams, String token) {
-    return this.retryTemplate.execute(context -> {
-      Response<Map<String, List<String>>> catalogServiceMap = getRetryConsulClient(context)
+    return executeRead(flightKey("getCatalogServices", tokenKey(token), queryParams), queryParams, context -> {
+      Response<Map<String, List<String>>> catalogServiceMap = getRetryConsulClient(context, queryParams)
           .getCatalogServices(queryParams, token);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getCatalogServices =>  queryParams: {}  ===  token: {}  ===  catalogServiceMap: {} <<<",
@@ -1396,7 +2571,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   @Override
   public Response<List<CatalogService>> getCatalogService(String serviceName, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context)
+      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context, queryParams)
           .getCatalogService(serviceName, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getCatalogService =>  serviceName: {}  ===  queryParams: {}  ===  catalogServiceList: {} <<<",
@@ -1410,7 +2585,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   public Response<List<CatalogService>> getCatalogService(String serviceName,
       String tag, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context)
+      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context, queryParams)
           .getCatalogService(serviceName, tag, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1425,7 +2600,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   public Response<List<CatalogService>> getCatalogService(String serviceName,
       QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context)
+      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context, queryParams)
           .getCatalogService(serviceName, queryParams, token);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1440,7 +2615,7 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
   public Response<List<CatalogService>> getCatalogService(String serviceName,
       String tag, QueryParams queryParams, String token) {
     return this.retryTemplate.execute(context -> {
-      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context)
+      Response<List<CatalogService>> catalogServiceList = getRetryConsulClient(context, queryParams)
           .getCatalogService(serviceName, tag, queryParams, token);
       log.debug(
           CommonConstant.LOG_PREFIX
@@ -1451,10 +2626,29 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     });
   }
 
+  /**
+   * 服务目录中的实例：从响应流直接解析为紧凑的ConsulInstance，解析时去重及过滤
+   *
+   * @param filter - 解析时过滤实例，为null时不过滤
+   */
+  public Response<List<ConsulInstance>> getCatalogInstances(String serviceName, String tag,
+      QueryParams queryParams, String token, Predicate<ConsulInstance> filter) {
+    return this.retryTemplate.execute(context -> {
+      Response<List<ConsulInstance>> instanceList = getRetryStreamingClient(context, queryParams)
+          .getCatalogInstances(serviceName, tag, queryParams, token, filter);
+      log.debug(
+          CommonConstant.LOG_PREFIX
+              + ">>> function getCatalogInstances =>  serviceName: {}  ===  tag: {} ===  queryParams: {}  ===  instanceList: {} <<<",
+          serviceName, tag, queryParams, instanceList);
+
+      return instanceList;
+    });
+  }
+
   @Override
   public Response<CatalogNode> getCatalogNode(String nodeName, QueryParams queryParams) {
     return this.retryTemplate.execute(context -> {
-      Response<CatalogNode> catalogNode = getRetryConsulClient(context).getCatalogNode(nodeName, queryParams);
+      Response<CatalogNode> catalogNode = getRetryConsulClient(context, queryParams).getCatalogNode(nodeName, queryParams);
       log.debug(
           CommonConstant.LOG_PREFIX + ">>> function getCatalogNode =>  nodeName: {}  ===  queryParams: {}  ===  catalogNode: {} <<<",
           nodeName, queryParams, catalogNode);
@@ -1919,6 +3113,311 @@ public class ClusterConsulClient extends ConsulClient implements AclClient, Agen
     return response;
   }
 
+  /**
+   * 异步向可用节点注册服务，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.register(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceRegisterAsync(NewService newService) {
+    this.currentNewService = newService;
+
+    return fanOutAsync("agentServiceRegister", true,
+        consulClient -> consulClient.agentServiceRegister(newService));
+  }
+
+  /**
+   * 异步向可用节点注册服务，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.register(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceRegisterAsync(NewService newService, String token) {
+    this.currentNewService = newService;
+    this.currentToken = token;
+
+    return fanOutAsync("agentServiceRegister", true,
+        consulClient -> consulClient.agentServiceRegister(newService, token));
+  }
+
+  /**
+   * 异步向可用节点注销服务，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.deregister(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceDeregisterAsync(String serviceId) {
+    return fanOutAsync("agentServiceDeregister", true,
+        consulClient -> consulClient.agentServiceDeregister(serviceId));
+  }
+
+  /**
+   * 异步向可用节点注销服务，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.deregister(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceDeregisterAsync(String serviceId, String token) {
+    return fanOutAsync("agentServiceDeregister", true,
+        consulClient -> consulClient.agentServiceDeregister(serviceId, token));
+  }
+
+  /**
+   * 异步向可用节点执行setMaintenance，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.setStatus(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceSetMaintenanceAsync(String serviceId, boolean maintenanceEnabled) {
+    return fanOutAsync("agentServiceSetMaintenance", true,
+        consulClient -> consulClient.agentServiceSetMaintenance(serviceId, maintenanceEnabled));
+  }
+
+  /**
+   * 异步向可用节点执行setMaintenance，返回每个节点的执行结果
+   *
+   * see ConsulServiceRegistry.setStatus(...)
+   */
+  public CompletableFuture<ClusterResult> agentServiceSetMaintenanceAsync(String serviceId,
+      boolean maintenanceEnabled, String reason) {
+    return fanOutAsync("agentServiceSetMaintenance", true,
+        consulClient -> consulClient.agentServiceSetMaintenance(serviceId, maintenanceEnabled, reason));
+  }
+
+  /**
+   * 尽最大努力异步向每个节点报告自身的健康状况，返回每个节点的执行结果
+   */
+  public CompletableFuture<ClusterResult> agentCheckPassAsync(String checkId) {
+    return fanOutAsync("agentCheckPass", false, consulClient -> consulClient.agentCheckPass(checkId));
+  }
+
+  /**
+   * 尽最大努力异步向每个节点报告自身的健康状况，返回每个节点的执行结果
+   */
+  public CompletableFuture<ClusterResult> agentCheckPassAsync(String checkId, String note) {
+    return fanOutAsync("agentCheckPass", false, consulClient -> consulClient.agentCheckPass(checkId, note));
+  }
+
+  /**
+   * 尽最大努力异步向每个节点报告自身的健康状况，返回每个节点的执行结果
+   */
+  public CompletableFuture<ClusterResult> agentCheckPassAsync(String checkId, String note, String token) {
+    return fanOutAsync("agentCheckPass", false,
+        consulClient -> consulClient.agentCheckPass(checkId, note, token));
+  }
+
+  /**
+   * 尽最大努力异步在每个节点上执行agentReload()操作，返回每个节点的执行结果
+   */
+  public CompletableFuture<ClusterResult> agentReloadAsync() {
+    return fanOutAsync("agentReload", false, ConsulClient::agentReload);
+  }
+
+  /**
+   * 在多个节点上并发执行广播操作
+   *
+   * 全部节点返回或者到达fanOutTimeout时完成，超时仍未返回的节点以TimeoutException记为失败并取消其任务，
+   * 因此调用方不会因为个别不可达的节点而被阻塞；线程池已满时该节点以RejectedExecutionException记为失败
+   *
+   * @param operation - 操作名称
+   * @param onlyHealthy - 是否仅在健康节点上执行
+   * @param function - 在单个节点上执行的操作
+   */
+  protected CompletableFuture<ClusterResult> fanOutAsync(String operation, boolean onlyHealthy,
+      Function<ConsulClient, Response<Void>> function) {
+    List<ConsulClientHolder> targetClients = this.consulClients.stream()
+        .filter(consulClient -> !onlyHealthy || consulClient.isHealthy())
+        .collect(Collectors.toList());
+    Map<String, ClusterResult.NodeResult> nodeResultMap = Maps.newConcurrentMap();
+    long startTime = System.currentTimeMillis();
+
+    CompletableFuture<?>[] nodeFutures = new CompletableFuture<?>[targetClients.size()];
+    List<Future<?>> nodeTasks = new ArrayList<>(targetClients.size());
+    for (int i = 0; i < targetClients.size(); i++) {
+      ConsulClientHolder consulClient = targetClients.get(i);
+      String clientId = consulClient.getClientId();
+      CompletableFuture<Void> nodeFuture = new CompletableFuture<>();
+      nodeFutures[i] = nodeFuture;
+      try {
+        nodeTasks.add(this.fanOutExecutor.submit(() -> {
+          try {
+            fanOut(operation, consulClient, function, nodeResultMap);
+          } finally {
+            nodeFuture.complete(null);
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> function {} rejected on {} : fan-out executor is full <<<",
+            operation, clientId);
+        nodeResultMap.put(clientId, new ClusterResult.NodeResult(clientId, null, 0L, e));
+        nodeFuture.complete(null);
+      }
+    }
+
+    CompletableFuture<ClusterResult> resultFuture = new CompletableFuture<>();
+    CompletableFuture.allOf(nodeFutures).whenComplete((ignored, throwable) -> resultFuture
+        .complete(createClusterResult(operation, targetClients, nodeResultMap, startTime)));
+    ScheduledFuture<?> timeoutFuture = this.consulClientsExecutor.schedule(() -> resultFuture
+            .complete(createClusterResult(operation, targetClients, nodeResultMap, startTime)),
+        this.clusterConsulProperties.getFanOutTimeout(), TimeUnit.MILLISECONDS);
+    resultFuture.whenComplete((clusterResult, throwable) -> {
+      timeoutFuture.cancel(false);
+      // 取消超时仍未返回的节点任务(尚未开始的直接移出队列，执行中的中断)
+      nodeTasks.forEach(nodeTask -> nodeTask.cancel(true));
+      this.fanOutExecutor.purge();
+      log.debug(CommonConstant.LOG_PREFIX + ">>> function {}Async => clusterResult: {} <<<", operation,
+          clusterResult);
+    });
+
+    return resultFuture;
+  }
+
+  private void fanOut(String operation, ConsulClientHolder consulClient, Function<ConsulClient, Response<Void>> function,
+      Map<String, ClusterResult.NodeResult> nodeResultMap) {
+    String clientId = consulClient.getClientId();
+    ConsulNodeStats nodeStats = getNodeStats(clientId);
+    long begin = System.currentTimeMillis();
+    long beginNanos = nodeStats.begin();
+    try {
+      Response<Void> response = function.apply(consulClient.getClient());
+      nodeStats.end(beginNanos, null);
+      nodeResultMap.put(clientId,
+          new ClusterResult.NodeResult(clientId, response, System.currentTimeMillis() - begin, null));
+    } catch (Exception e) {
+      nodeStats.end(beginNanos, e);
+      log.warn(CommonConstant.LOG_PREFIX + ">>> function {} failed on {} : {} <<<", operation, clientId,
+          e.getMessage());
+      nodeResultMap.put(clientId,
+          new ClusterResult.NodeResult(clientId, null, System.currentTimeMillis() - begin, e));
+    }
+  }
+
+  private ClusterResult createClusterResult(String operation, List<ConsulClientHolder> targetClients,
+      Map<String, ClusterResult.NodeResult> nodeResultMap, long startTime) {
+    long elapsed = System.currentTimeMillis() - startTime;
+    List<ClusterResult.NodeResult> nodeResults = targetClients.stream()
+        .map(ConsulClientHolder::getClientId)
+        .map(clientId -> nodeResultMap.getOrDefault(clientId, new ClusterResult.NodeResult(clientId, null, elapsed,
+            new TimeoutException(operation + " timed out after " + elapsed + "ms"))))
+        .collect(Collectors.toList());
+
+    return new ClusterResult(operation, nodeResults);
+  }
+
+  /**
+   * 使用consul事务批量写入KV，等待全部批次执行完成
+   */
+  public KVTxnResult setKVValuesInTxn(List<KVTxnOperation> operations, String token) {
+    return setKVValuesInTxnAsync(operations, token).join();
+  }
+
+  /**
+   * 使用consul事务批量写入KV
+   *
+   * 操作按txn.batchSize(不超过64)分批，每批作为一个事务提交；最多txn.maxInFlightBatches个批次同时在途
+   * (在txnExecutor中执行，多次调用共享该上限)，批次执行失败时由RetryTemplate切换到其他节点重试
+   */
+  public CompletableFuture<KVTxnResult> setKVValuesInTxnAsync(List<KVTxnOperation> operations, String token) {
+    ClusterConsulProperties.TxnConfig txnConfig = this.clusterConsulProperties.getTxn();
+    int batchSize = Math.max(1, Math.min(MAX_TXN_OPERATIONS, txnConfig.getBatchSize()));
+    List<List<KVTxnOperation>> batches = Lists.partition(operations, batchSize);
+    int lanes = Math.max(1, Math.min(txnConfig.getMaxInFlightBatches(), batches.size()));
+    KVTxnResult.BatchResult[] batchResults = new KVTxnResult.BatchResult[batches.size()];
+
+    // 每条通道顺序执行分配给它的批次，通道之间并行
+    CompletableFuture<?>[] laneFutures = new CompletableFuture<?>[lanes];
+    for (int lane = 0; lane < lanes; lane++) {
+      CompletableFuture<Void> laneFuture = CompletableFuture.completedFuture(null);
+      for (int i = lane; i < batches.size(); i += lanes) {
+        int batchIndex = i;
+        laneFuture = laneFuture.thenRunAsync(() -> batchResults[batchIndex] = executeTxnBatch(batchIndex,
+            batches.get(batchIndex), token), this.txnExecutor);
+      }
+      laneFutures[lane] = laneFuture;
+    }
+
+    return CompletableFuture.allOf(laneFutures).thenApply(ignored -> {
+      KVTxnResult result = new KVTxnResult(Arrays.asList(batchResults));
+      log.debug(CommonConstant.LOG_PREFIX + ">>> function setKVValuesInTxn => operations: {}  ===  result: {} <<<",
+          operations.size(), result);
+
+      return result;
+    });
+  }
+
+  /**
+   * 提交一个批次
+   *
+   * 前一次请求可能已在服务端提交而响应丢失，此时重放cas操作必然冲突，需校验其是否已经生效
+   */
+  protected KVTxnResult.BatchResult executeTxnBatch(int batchIndex, List<KVTxnOperation> batch, String token) {
+    String payload = KVTxnOperation.toPayload(batch);
+    long begin = System.currentTimeMillis();
+    try {
+      return this.retryTemplate.execute(context -> {
+        ConsulClientHolder consulClient = getRetryConsulClientHolder(context);
+        RawResponse rawResponse = ObjectUtils.isNotEmpty(token)
+            ? consulClient.getRawClient().makePutRequest(TXN_ENDPOINT, payload, new SingleUrlParameters("token", token))
+            : consulClient.getRawClient().makePutRequest(TXN_ENDPOINT, payload);
+        long latency = System.currentTimeMillis() - begin;
+
+        if (rawResponse.getStatusCode() == HttpURLConnection.HTTP_OK) {
+          return new KVTxnResult.BatchResult(batchIndex, batch, consulClient.getClientId(), true, null, null, latency);
+        }
+        if (rawResponse.getStatusCode() == HttpURLConnection.HTTP_CONFLICT) {
+          boolean applied = context.getRetryCount() > 0 && isTxnBatchApplied(consulClient, batch, token);
+          List<String> errors = applied ? null : parseTxnErrors(rawResponse.getContent());
+          if (!applied) {
+            log.warn(CommonConstant.LOG_PREFIX + ">>> Txn batch {} rolled back on {} : {} <<<", batchIndex,
+                consulClient.getClientId(), errors);
+          }
+
+          return new KVTxnResult.BatchResult(batchIndex, batch, consulClient.getClientId(), applied, errors, null,
+              latency);
+        }
+
+        throw new OperationException(rawResponse);
+      });
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Txn batch {} failed on all consul clients : {} <<<", batchIndex,
+          e.getMessage());
+
+      return new KVTxnResult.BatchResult(batchIndex, batch, null, false, null, e,
+          System.currentTimeMillis() - begin);
+    }
+  }
+
+  /**
+   * 批次中的cas/delete-cas操作是否都已生效(即之前的请求已提交)
+   */
+  private boolean isTxnBatchApplied(ConsulClientHolder consulClient, List<KVTxnOperation> batch, String token) {
+    for (KVTxnOperation operation : batch) {
+      if (!operation.isCheckAndSet()) {
+        continue;
+      }
+      GetBinaryValue current = consulClient.getClient().getKVBinaryValue(operation.getKey(), token).getValue();
+      boolean applied = operation.getVerb() == KVTxnOperation.Verb.DELETE_CAS
+          ? current == null
+          : current != null && current.getFlags() == operation.getFlags()
+              && Arrays.equals(current.getValue(), operation.getValue());
+      if (!applied) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private List<String> parseTxnErrors(String content) {
+    try {
+      JsonArray errors = GsonFactory.getGson().fromJson(content, JsonObject.class).getAsJsonArray("Errors");
+      List<String> result = new ArrayList<>();
+      for (JsonElement error : errors) {
+        JsonObject errorObject = error.getAsJsonObject();
+        result.add("op " + errorObject.get("OpIndex") + ": " + errorObject.get("What").getAsString());
+      }
+
+      return result;
+    } catch (Exception e) {
+      return Collections.singletonList(content);
+    }
+  }
+
   @Override
   public Response<String> aclCreate(NewAcl newAcl, String token) {
     return this.retryTemplate.execute(context -> {
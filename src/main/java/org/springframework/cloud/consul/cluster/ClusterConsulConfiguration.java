@@ -32,6 +32,13 @@ public class ClusterConsulConfiguration {
   @Getter
   private String nodes;
 
+  /**
+   * 本服务所在的可用区，与节点配置中的zone对应
+   */
+  @Setter
+  @Getter
+  private String zone;
+
   @Getter
   private List<String> clusterNodes;
 
@@ -51,11 +58,11 @@ public class ClusterConsulConfiguration {
     }
 
     this.clusterNodes.forEach(clusterNode -> {
-      List<String> parts = Arrays.stream(clusterNode.split(CommonConstant.SEPARATOR_COLON)).filter(StringUtils::isNotEmpty)
-          .collect(Collectors.toList());
-      if (CollectionUtils.isEmpty(parts)) {
-        log.error(CommonConstant.LOG_PREFIX + ">>> spring.cloud.consul.cluster.nodes config error. For example: example.com:8500,192.168.1.1:8080 <<<");
-        throw new BadConfigException("spring.cloud.consul.cluster.nodes config error.");
+      try {
+        ConsulNodeSpec.parse(clusterNode);
+      } catch (BadConfigException e) {
+        log.error(CommonConstant.LOG_PREFIX + ">>> spring.cloud.consul.cluster.nodes config error. For example: example.com:8500;zone=az1;weight=2,192.168.1.1:8080 <<<");
+        throw e;
       }
     });
   }
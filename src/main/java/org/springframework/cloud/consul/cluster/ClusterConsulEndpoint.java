@@ -0,0 +1,162 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+/**
+ * 集群状态actuator端点: /actuator/consulcluster
+ *
+ * 读操作返回当前节点及每个节点的健康状况、熔断状态、请求统计及最近一次健康检测结果；
+ * 写操作支持强制切换当前节点(failover)、摘除节点(drain)及恢复节点(undrain)
+ */
+@Endpoint(id = "consulcluster")
+public class ClusterConsulEndpoint {
+
+  public static final String ACTION_FAILOVER = "failover";
+
+  public static final String ACTION_DRAIN = "drain";
+
+  public static final String ACTION_UNDRAIN = "undrain";
+
+  private final ClusterConsulClient clusterConsulClient;
+
+  public ClusterConsulEndpoint(ClusterConsulClient clusterConsulClient) {
+    this.clusterConsulClient = clusterConsulClient;
+  }
+
+  @ReadOperation
+  public Map<String, Object> cluster() {
+    ConsulClientHolder currentClient = this.clusterConsulClient.getCurrentClient();
+    List<Map<String, Object>> nodes = this.clusterConsulClient.getConsulClients().stream()
+        .map(this::describe).collect(Collectors.toList());
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("current", currentClient == null ? null : currentClient.getClientId());
+    result.put("nodes", nodes);
+    SingleFlight<List<Object>> readFlight = this.clusterConsulClient.getReadFlight();
+    Map<String, Object> coalescedReads = new LinkedHashMap<>();
+    coalescedReads.put("inFlight", readFlight.getInFlight());
+    coalescedReads.put("executed", readFlight.getExecuted());
+    coalescedReads.put("shared", readFlight.getShared());
+    result.put("coalescedReads", coalescedReads);
+    ConsulRetryBudget retryBudget = this.clusterConsulClient.getRetryBudget();
+    Map<String, Object> budget = new LinkedHashMap<>();
+    budget.put("balance", retryBudget.getBalance());
+    budget.put("withdrawn", retryBudget.getWithdrawn());
+    budget.put("exhausted", retryBudget.getExhausted());
+    result.put("retryBudget", budget);
+    ConsulStaleCache staleCache = this.clusterConsulClient.getStaleCache();
+    if (staleCache != null) {
+      Map<String, Object> stale = new LinkedHashMap<>();
+      stale.put("size", staleCache.getSize());
+      stale.put("served", staleCache.getServed());
+      stale.put("missed", staleCache.getMissed());
+      result.put("staleCache", stale);
+    }
+    ConsulSnapshotStore snapshotStore = this.clusterConsulClient.getSnapshotStore();
+    if (snapshotStore != null) {
+      Map<String, Object> snapshot = new LinkedHashMap<>();
+      snapshot.put("path", String.valueOf(snapshotStore.getPath()));
+      snapshot.put("loaded", snapshotStore.getLoaded());
+      snapshot.put("lastWriteTime", snapshotStore.getLastWriteTime());
+      result.put("snapshot", snapshot);
+    }
+    ConsulHostSharedCache hostSharedCache = this.clusterConsulClient.getHostSharedCache();
+    if (hostSharedCache != null) {
+      Map<String, Object> hostCache = new LinkedHashMap<>();
+      hostCache.put("path", String.valueOf(hostSharedCache.getPath()));
+      hostCache.put("seq", hostSharedCache.getSeq());
+      hostCache.put("size", hostSharedCache.getSize());
+      hostCache.put("hits", hostSharedCache.getHits());
+      hostCache.put("misses", hostSharedCache.getMisses());
+      hostCache.put("published", hostSharedCache.getPublished());
+      result.put("hostCache", hostCache);
+    }
+
+    return result;
+  }
+
+  /**
+   * @param action - failover | drain | undrain
+   * @param clientId - 目标节点(host:port)，failover时可为空；failover到其他可用区的节点后不会自动切回本可用区
+   */
+  @WriteOperation
+  public Map<String, Object> operate(String action, @Nullable String clientId) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("action", action);
+    if (!ACTION_UNDRAIN.equals(action) && this.clusterConsulClient.getCurrentClient() == null) {
+      result.put("success", false);
+      result.put("message", "no current consul client, the cluster is unreachable");
+    } else if (clientId != null && !ACTION_UNDRAIN.equals(action)
+        && this.clusterConsulClient.findConsulClient(clientId) == null) {
+      result.put("success", false);
+      result.put("message", "unknown clientId: " + clientId);
+    } else if (ACTION_FAILOVER.equals(action)) {
+      ConsulClientHolder target = this.clusterConsulClient.forceFailover(clientId);
+      result.put("success", target != null);
+      if (target == null) {
+        result.put("message", "no available target");
+      }
+    } else if (ACTION_DRAIN.equals(action) && clientId != null) {
+      result.put("success", this.clusterConsulClient.drain(clientId));
+    } else if (ACTION_UNDRAIN.equals(action) && clientId != null) {
+      boolean success = this.clusterConsulClient.undrain(clientId);
+      result.put("success", success);
+      if (!success) {
+        result.put("message", "unknown clientId: " + clientId);
+      }
+    } else {
+      result.put("success", false);
+      result.put("message", "unsupported action or missing clientId");
+    }
+    ConsulClientHolder currentClient = this.clusterConsulClient.getCurrentClient();
+    result.put("current", currentClient == null ? null : currentClient.getClientId());
+
+    return result;
+  }
+
+  private Map<String, Object> describe(ConsulClientHolder consulClient) {
+    String clientId = consulClient.getClientId();
+    ConsulNodeStats nodeStats = this.clusterConsulClient.getNodeStats(clientId);
+
+    Map<String, Object> lastProbe = new LinkedHashMap<>();
+    lastProbe.put("time", consulClient.getLastProbeTime());
+    lastProbe.put("latencyMillis", consulClient.getLastProbeLatency());
+    lastProbe.put("error", consulClient.getLastProbeError());
+
+    ConsulNodeBulkhead nodeBulkhead = this.clusterConsulClient.getBulkhead(clientId);
+    Map<String, Object> bulkhead = new LinkedHashMap<>();
+    bulkhead.put("maxConcurrentRequests", nodeBulkhead.getMaxConcurrentRequests());
+    bulkhead.put("inFlight", nodeBulkhead.getInFlight());
+    bulkhead.put("waiting", nodeBulkhead.getWaiting());
+    bulkhead.put("rejected", nodeBulkhead.getRejected());
+
+    Map<String, Object> node = new LinkedHashMap<>();
+    node.put("clientId", clientId);
+    node.put("zone", consulClient.getZone());
+    node.put("weight", consulClient.getWeight());
+    node.put("current", consulClient == this.clusterConsulClient.getCurrentClient());
+    node.put("healthy", consulClient.isHealthy());
+    node.put("drained", this.clusterConsulClient.isDrained(clientId));
+    node.put("standby", this.clusterConsulClient.getStandbyClientIds().contains(clientId));
+    // 不健康的节点在下一次健康检测成功之前不会被选中
+    node.put("circuit", consulClient.isHealthy() ? "CLOSED" : "OPEN");
+    node.put("inFlight", nodeStats.getInFlight());
+    node.put("requests", nodeStats.getRequests());
+    node.put("failures", nodeStats.getFailures());
+    node.put("latencyMicros", nodeStats.getLatencyPercentiles());
+    node.put("lastError", nodeStats.getLastError());
+    node.put("lastErrorTime", nodeStats.getLastErrorTime());
+    node.put("lastProbe", lastProbe);
+    node.put("bulkhead", bulkhead);
+
+    return node;
+  }
+}
@@ -0,0 +1,32 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * 故障转移时间线actuator端点: /actuator/consulfailover
+ */
+@Endpoint(id = "consulfailover")
+public class ClusterConsulFailoverEndpoint {
+
+  private final FailoverTimelineRecorder failoverRecorder;
+
+  public ClusterConsulFailoverEndpoint(ClusterConsulClient clusterConsulClient) {
+    this.failoverRecorder = clusterConsulClient.getFailoverRecorder();
+  }
+
+  @ReadOperation
+  public Map<String, Object> failover() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("openIncidents", this.failoverRecorder.getOpenIncidents().stream().map(FailoverTimeline::toMap)
+        .collect(Collectors.toList()));
+    result.put("history", this.failoverRecorder.getHistory().stream().map(FailoverTimeline::toMap)
+        .collect(Collectors.toList()));
+
+    return result;
+  }
+}
@@ -0,0 +1,296 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * 基于consul session的分布式锁
+ *
+ * 由ClusterConsulLockManager创建：getLock(...)返回普通的锁，elect(...)返回参与leader选举的锁。
+ * 等待锁释放时不轮询，而是由管理器的阻塞查询在锁释放时唤醒
+ */
+@Slf4j
+public class ClusterConsulLock {
+
+  private final ClusterConsulLockManager manager;
+
+  /**
+   * 锁的KV路径
+   */
+  @Getter
+  private final String key;
+
+  /**
+   * leader选举监听器，普通的锁为null
+   */
+  private final ClusterConsulLockManager.LeaderListener listener;
+
+  /**
+   * 锁当前使用的session
+   */
+  @Getter
+  @Setter(AccessLevel.PACKAGE)
+  private volatile String sessionId;
+
+  /**
+   * 是否持有锁
+   */
+  @Getter
+  private volatile boolean held;
+
+  /**
+   * 是否正在等待获取锁
+   */
+  private volatile boolean contending;
+
+  private CompletableFuture<Boolean> acquireFuture;
+
+  private ScheduledFuture<?> renewFuture;
+
+  /**
+   * 尚未处理的最新持有者(Optional.empty()表示锁已释放)，null表示没有待处理的变化
+   */
+  private final AtomicReference<Optional<String>> pendingHolder = new AtomicReference<>();
+
+  private final AtomicBoolean dispatching = new AtomicBoolean(false);
+
+  ClusterConsulLock(ClusterConsulLockManager manager, String key, ClusterConsulLockManager.LeaderListener listener) {
+    this.manager = manager;
+    this.key = key;
+    this.listener = listener;
+  }
+
+  /**
+   * 尝试获取锁，不等待
+   */
+  public synchronized boolean tryLock() {
+    return tryAcquire(this.contending);
+  }
+
+  /**
+   * @param keepSession - 获取失败时是否保留session(随后等待锁释放)
+   */
+  private boolean tryAcquire(boolean keepSession) {
+    if (this.held) {
+      return true;
+    }
+    ensureSession();
+    if (this.manager.acquire(this.key, this.sessionId)) {
+      granted();
+      return true;
+    }
+    if (!keepSession) {
+      closeSession();
+    }
+
+    return false;
+  }
+
+  /**
+   * 获取锁，锁被占用时等待其释放直到超时；等待期间被中断时放弃获取并抛出InterruptedException
+   */
+  public boolean lock(long timeout, TimeUnit unit) throws InterruptedException {
+    CompletableFuture<Boolean> future;
+    synchronized (this) {
+      // 获取失败时保留session用于等待
+      if (tryAcquire(true)) {
+        return true;
+      }
+      this.contending = true;
+      this.acquireFuture = new CompletableFuture<>();
+      future = this.acquireFuture;
+      this.manager.activate(this);
+    }
+
+    try {
+      return future.get(timeout, unit);
+    } catch (TimeoutException | ExecutionException e) {
+      synchronized (this) {
+        if (this.held) {
+          return true;
+        }
+        abandon();
+        return false;
+      }
+    } catch (InterruptedException e) {
+      synchronized (this) {
+        // 调用方已放弃等待，中断前刚好获取到的锁也要释放
+        if (this.held) {
+          unlock();
+        } else {
+          abandon();
+        }
+      }
+      Thread.currentThread().interrupt();
+      throw e;
+    }
+  }
+
+  /**
+   * 放弃等待：不再由watch线程获取锁，并销毁session
+   */
+  private void abandon() {
+    this.contending = false;
+    this.acquireFuture = null;
+    this.manager.deactivate(this);
+    closeSession();
+  }
+
+  /**
+   * 释放锁；对于leader选举即放弃leader身份并退出选举
+   */
+  public synchronized void unlock() {
+    this.contending = false;
+    if (this.held) {
+      try {
+        this.manager.release(this.key, this.sessionId);
+      } finally {
+        this.held = false;
+        if (ObjectUtils.isNotEmpty(this.listener)) {
+          this.listener.onRevoked(this);
+        }
+      }
+    }
+    this.manager.deactivate(this);
+    closeSession();
+  }
+
+  /**
+   * 参与leader选举
+   */
+  synchronized void contend() {
+    this.contending = true;
+    this.manager.activate(this);
+    try {
+      tryLock();
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Contend lock {} failed: {} <<<", this.key, e.getMessage());
+    }
+  }
+
+  /**
+   * 由管理器的watch线程提交持有者变化，在executor中处理；处理期间的多次变化只保留最新的一次
+   */
+  void offerHolder(String holder, Executor executor) {
+    this.pendingHolder.set(Optional.ofNullable(holder));
+    if (this.dispatching.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::dispatchHolders);
+      } catch (RejectedExecutionException e) {
+        this.dispatching.set(false);
+      }
+    }
+  }
+
+  private void dispatchHolders() {
+    do {
+      Optional<String> holder;
+      while ((holder = this.pendingHolder.getAndSet(null)) != null) {
+        try {
+          onHolderChanged(holder.orElse(null));
+        } catch (Exception e) {
+          log.warn(CommonConstant.LOG_PREFIX + ">>> Handle holder change of lock {} failed: {} <<<", this.key,
+              e.getMessage());
+        }
+      }
+      this.dispatching.set(false);
+      // 释放标记后又有新的变化时继续处理
+    } while (this.pendingHolder.get() != null && this.dispatching.compareAndSet(false, true));
+  }
+
+  /**
+   * 阻塞查询感知到锁的持有者发生变化，由管理器的工作线程调用
+   *
+   * @param holder - 当前持有锁的session，为null表示锁已释放
+   */
+  synchronized void onHolderChanged(String holder) {
+    if (this.held && !this.manager.isHeldBy(this, holder)) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Lock {} lost, current holder: {} <<<", this.key, holder);
+      lost();
+    }
+    if (!this.held && this.contending && ObjectUtils.isEmpty(holder)) {
+      try {
+        tryAcquire(true);
+      } catch (Exception e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Acquire lock {} failed: {} <<<", this.key, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * session已被consul判定失效，由管理器的工作线程调用
+   */
+  synchronized void onSessionLost() {
+    if (this.renewFuture != null) {
+      this.renewFuture.cancel(false);
+      this.renewFuture = null;
+    }
+    this.sessionId = null;
+    if (this.held) {
+      lost();
+    }
+  }
+
+  private void granted() {
+    this.held = true;
+    this.manager.activate(this);
+    log.info(CommonConstant.LOG_PREFIX + ">>> Lock {} acquired with session {} <<<", this.key, this.sessionId);
+    if (ObjectUtils.isNotEmpty(this.listener)) {
+      this.listener.onGranted(this);
+    } else {
+      this.contending = false;
+      if (this.acquireFuture != null) {
+        this.acquireFuture.complete(Boolean.TRUE);
+        this.acquireFuture = null;
+      }
+    }
+  }
+
+  private void lost() {
+    this.held = false;
+    if (ObjectUtils.isNotEmpty(this.listener)) {
+      // leader选举失去leader身份后继续参与选举
+      this.listener.onRevoked(this);
+    } else {
+      this.manager.deactivate(this);
+      closeSession();
+    }
+  }
+
+  private void ensureSession() {
+    if (ObjectUtils.isEmpty(this.sessionId)) {
+      this.sessionId = this.manager.createSession(this);
+      this.renewFuture = this.manager.scheduleRenew(this);
+    }
+  }
+
+  private void closeSession() {
+    if (this.renewFuture != null) {
+      this.renewFuture.cancel(false);
+      this.renewFuture = null;
+    }
+    if (ObjectUtils.isNotEmpty(this.sessionId)) {
+      this.manager.destroySession(this.sessionId);
+      this.sessionId = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "{ key = " + key + ", sessionId = " + sessionId + ", held = " + held + " }";
+  }
+}
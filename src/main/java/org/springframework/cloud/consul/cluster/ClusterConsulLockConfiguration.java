@@ -0,0 +1,34 @@
+package org.springframework.cloud.consul.cluster;
+
+import com.ecwid.consul.v1.ConsulClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
+import org.springframework.cloud.consul.ConsulProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分布式锁及leader选举配置
+ */
+@Slf4j
+@Configuration
+@ConditionalOnConsulEnabled
+public class ClusterConsulLockConfiguration {
+
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnMissingBean
+  public ClusterConsulLockManager clusterConsulLockManager(ConsulClient consulClient,
+      ConsulProperties consulProperties, InetUtils inetUtils) {
+    ClusterConsulProperties.LockConfig lockConfig = consulProperties instanceof ClusterConsulProperties
+        ? ((ClusterConsulProperties) consulProperties).getLock()
+        : new ClusterConsulProperties.LockConfig();
+    String ownerId = inetUtils.findFirstNonLoopbackHostInfo().getIpAddress();
+    ClusterConsulLockManager lockManager = new ClusterConsulLockManager(consulClient, lockConfig, ownerId);
+    log.info(CommonConstant.LOG_PREFIX + ">>> ClusterConsulLockManager created : {}, owner: {} <<<", lockConfig,
+        ownerId);
+
+    return lockManager;
+  }
+}
@@ -0,0 +1,343 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.ecwid.consul.v1.ConsistencyMode;
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.OperationException;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.ecwid.consul.v1.session.model.NewSession;
+import com.ecwid.consul.v1.session.model.Session;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * 基于consul session的分布式锁及leader选举管理器
+ *
+ * 1、所有锁的session由同一个调度线程定期发起续约，续约在有限的工作线程中异步执行并有超时时间，
+ * 个别慢请求不会拖延其他session的续约；
+ *
+ * 2、同一前缀下所有等待中及已持有的锁共用一个阻塞查询(blocking query)感知锁的释放与丢失，
+ * 而不是每个锁各自轮询，因此进程内成百上千个锁也只占用固定的几个线程；持有者变化在工作线程中按锁分发，
+ * 同一个锁只保留最新的持有者，某个锁的处理(网络请求)较慢时不会阻塞其他锁
+ *
+ * 3、使用ClusterConsulClient时，session所在节点失效后由ClusterConsulClient在其他节点上重建session并重新获取锁，
+ * 管理器通过SessionFailoverListener同步更新锁持有的sessionId
+ */
+@Slf4j
+public class ClusterConsulLockManager implements ConsulSessionRegistry.SessionFailoverListener {
+
+  @Getter
+  private final ConsulClient consulClient;
+
+  @Getter
+  private final ClusterConsulProperties.LockConfig lockConfig;
+
+  /**
+   * 锁的持有者标识，写入锁的value中
+   */
+  @Getter
+  private final String ownerId;
+
+  private final ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("consul-lock-renew-%d").setDaemon(true).build());
+
+  private final ExecutorService watchExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("consul-lock-watch-%d").setDaemon(true).build());
+
+  /**
+   * 执行session续约及锁持有者变化的处理
+   */
+  private final ExecutorService workerExecutor;
+
+  /**
+   * 等待中及已持有的锁
+   */
+  private final Set<ClusterConsulLock> activeLocks = ConcurrentHashMap.newKeySet();
+
+  private final AtomicBoolean watching = new AtomicBoolean(false);
+
+  private volatile long watchIndex;
+
+  private volatile boolean shutdown;
+
+  public ClusterConsulLockManager(ConsulClient consulClient, ClusterConsulProperties.LockConfig lockConfig,
+      String ownerId) {
+    this.consulClient = consulClient;
+    this.lockConfig = lockConfig;
+    this.ownerId = ownerId;
+    this.workerExecutor = Executors.newFixedThreadPool(Math.max(1, lockConfig.getWorkerThreads()),
+        new ThreadFactoryBuilder().setNameFormat("consul-lock-worker-%d").setDaemon(true).build());
+    if (consulClient instanceof ClusterConsulClient) {
+      ((ClusterConsulClient) consulClient).getSessionRegistry().addListener(this);
+    }
+  }
+
+  /**
+   * 获取一个分布式锁
+   *
+   * @param name - 锁名称，实际的KV路径为 prefix + name
+   */
+  public ClusterConsulLock getLock(String name) {
+    return new ClusterConsulLock(this, this.lockConfig.getPrefix() + name, null);
+  }
+
+  /**
+   * 参与leader选举，成为leader或失去leader身份时回调listener，失去leader身份后自动重新参与选举
+   *
+   * @param name - 选举名称，实际的KV路径为 prefix + name
+   */
+  public ClusterConsulLock elect(String name, LeaderListener listener) {
+    ClusterConsulLock lock = new ClusterConsulLock(this, this.lockConfig.getPrefix() + name, listener);
+    lock.contend();
+
+    return lock;
+  }
+
+  /**
+   * 关闭管理器，释放全部锁并销毁session
+   */
+  public void shutdown() {
+    this.shutdown = true;
+    for (ClusterConsulLock lock : this.activeLocks) {
+      try {
+        lock.unlock();
+      } catch (Exception e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Release lock {} failed: {} <<<", lock.getKey(), e.getMessage());
+      }
+    }
+    this.renewExecutor.shutdownNow();
+    this.watchExecutor.shutdownNow();
+    this.workerExecutor.shutdownNow();
+    if (this.consulClient instanceof ClusterConsulClient) {
+      ((ClusterConsulClient) this.consulClient).getSessionRegistry().removeListener(this);
+    }
+  }
+
+  @Override
+  public void onSessionRecreated(String oldSessionId, String newSessionId) {
+    this.activeLocks.stream().filter(lock -> oldSessionId.equals(lock.getSessionId()))
+        .forEach(lock -> lock.setSessionId(newSessionId));
+  }
+
+  /**
+   * consul中锁的持有者是否是该锁当前使用的session
+   *
+   * 阻塞查询的结果可能早于锁的获取，不一致时以一致性读取的持有者再确认一次，无法读取时视为仍然持有
+   *
+   * @param holder - 阻塞查询返回的持有者
+   */
+  boolean isHeldBy(ClusterConsulLock lock, String holder) {
+    if (isSameSession(lock, holder)) {
+      return true;
+    }
+    try {
+      GetValue current = this.consulClient instanceof ClusterConsulClient
+          ? ((ClusterConsulClient) this.consulClient).getKVValueConsistent(lock.getKey(), null).getValue()
+          : this.consulClient.getKVValue(lock.getKey(), new QueryParams(ConsistencyMode.CONSISTENT)).getValue();
+
+      return isSameSession(lock, ObjectUtils.isEmpty(current) ? null : current.getSession());
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Read holder of lock {} failed: {} <<<", lock.getKey(), e.getMessage());
+      return true;
+    }
+  }
+
+  /**
+   * session故障转移后，consul报告的持有者可能仍是重建前的旧session(同一个session记录)，
+   * 也可能在旧session销毁后、新session重新获取前短暂为空，这两种情况都视为同一个session
+   */
+  private boolean isSameSession(ClusterConsulLock lock, String holder) {
+    String sessionId = lock.getSessionId();
+    if (ObjectUtils.isEmpty(sessionId)) {
+      return false;
+    }
+    if (sessionId.equals(holder)) {
+      return true;
+    }
+    if (!(this.consulClient instanceof ClusterConsulClient)) {
+      return false;
+    }
+    ConsulSessionRegistry sessionRegistry = ((ClusterConsulClient) this.consulClient).getSessionRegistry();
+    ConsulSessionRegistry.SessionRecord sessionRecord = sessionRegistry.getSessionRecord(sessionId);
+    if (ObjectUtils.isEmpty(sessionRecord)) {
+      return false;
+    }
+    if (ObjectUtils.isEmpty(holder)) {
+      ConsulSessionRegistry.LockRecord lockRecord = sessionRecord.getLocks().get(lock.getKey());
+      return ObjectUtils.isNotEmpty(lockRecord) && lockRecord.isPending();
+    }
+
+    return sessionRegistry.getSessionRecord(holder) == sessionRecord;
+  }
+
+  /**
+   * 创建锁使用的session，并由续约线程定期续约
+   */
+  String createSession(ClusterConsulLock lock) {
+    NewSession newSession = new NewSession();
+    newSession.setName("lock:" + lock.getKey());
+    newSession.setTtl(this.lockConfig.getSessionTtl() + "s");
+    newSession.setLockDelay(this.lockConfig.getLockDelay());
+    newSession.setBehavior(Session.Behavior.RELEASE);
+
+    return this.consulClient.sessionCreate(newSession, QueryParams.DEFAULT).getValue();
+  }
+
+  /**
+   * 定期在工作线程中续约，上一次续约未完成时跳过本周期，超过renewTimeout仍未完成时中断
+   */
+  ScheduledFuture<?> scheduleRenew(ClusterConsulLock lock) {
+    long period = Math.max(1000L, this.lockConfig.getSessionTtl() * 1000L / 2);
+    AtomicBoolean renewing = new AtomicBoolean(false);
+
+    return this.renewExecutor.scheduleAtFixedRate(() -> {
+      String sessionId = lock.getSessionId();
+      if (ObjectUtils.isEmpty(sessionId) || !renewing.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        Future<?> renewFuture = this.workerExecutor.submit(() -> {
+          try {
+            renew(lock, sessionId);
+          } finally {
+            renewing.set(false);
+          }
+        });
+        this.renewExecutor.schedule(() -> {
+          if (!renewFuture.isDone()) {
+            log.warn(CommonConstant.LOG_PREFIX + ">>> Renew session {} of lock {} timed out after {}ms <<<",
+                sessionId, lock.getKey(), this.lockConfig.getRenewTimeout());
+            renewFuture.cancel(true);
+            renewing.set(false);
+          }
+        }, this.lockConfig.getRenewTimeout(), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        renewing.set(false);
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void renew(ClusterConsulLock lock, String sessionId) {
+    try {
+      this.consulClient.renewSession(sessionId, QueryParams.DEFAULT);
+    } catch (OperationException e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Renew session {} of lock {} failed: {} <<<", sessionId,
+          lock.getKey(), e.getMessage());
+      // session已被consul判定失效
+      if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+        lock.onSessionLost();
+      }
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Renew session {} of lock {} failed: {} <<<", sessionId,
+          lock.getKey(), e.getMessage());
+    }
+  }
+
+  void destroySession(String sessionId) {
+    try {
+      this.consulClient.sessionDestroy(sessionId, QueryParams.DEFAULT);
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Destroy session {} failed: {} <<<", sessionId, e.getMessage());
+    }
+  }
+
+  boolean acquire(String key, String sessionId) {
+    PutParams putParams = new PutParams();
+    putParams.setAcquireSession(sessionId);
+
+    return Boolean.TRUE.equals(this.consulClient.setKVValue(key, this.ownerId, putParams).getValue());
+  }
+
+  void release(String key, String sessionId) {
+    PutParams putParams = new PutParams();
+    putParams.setReleaseSession(sessionId);
+    this.consulClient.setKVValue(key, this.ownerId, putParams);
+  }
+
+  /**
+   * 锁进入等待或持有状态，由阻塞查询感知其变化
+   */
+  void activate(ClusterConsulLock lock) {
+    this.activeLocks.add(lock);
+    if (!this.shutdown && this.watching.compareAndSet(false, true)) {
+      this.watchExecutor.execute(this::watchLoop);
+    }
+  }
+
+  void deactivate(ClusterConsulLock lock) {
+    this.activeLocks.remove(lock);
+  }
+
+  /**
+   * 对锁前缀执行阻塞查询，将每次变化分发给等待中及已持有的锁
+   */
+  private void watchLoop() {
+    try {
+      while (!this.shutdown && !this.activeLocks.isEmpty()) {
+        try {
+          Response<List<GetValue>> response = this.consulClient.getKVValues(this.lockConfig.getPrefix(),
+              new QueryParams(this.lockConfig.getWatchWaitTime(), this.watchIndex));
+          Long consulIndex = response.getConsulIndex();
+          // index回退时(例如consul重建了raft状态)重新开始阻塞查询
+          this.watchIndex = (consulIndex == null || consulIndex < this.watchIndex) ? 0 : consulIndex;
+
+          List<GetValue> values = ObjectUtils.isEmpty(response.getValue()) ? Collections.emptyList() : response.getValue();
+          Map<String, String> holders = values.stream().filter(value -> ObjectUtils.isNotEmpty(value.getSession()))
+              .collect(Collectors.toMap(GetValue::getKey, GetValue::getSession, (oldValue, newValue) -> newValue));
+          for (ClusterConsulLock lock : this.activeLocks) {
+            lock.offerHolder(holders.get(lock.getKey()), this.workerExecutor);
+          }
+        } catch (Exception e) {
+          log.warn(CommonConstant.LOG_PREFIX + ">>> Watch locks under {} failed: {} <<<", this.lockConfig.getPrefix(),
+              e.getMessage());
+          this.watchIndex = 0;
+          TimeUnit.MILLISECONDS.sleep(1000L);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      this.watching.set(false);
+      if (!this.shutdown && !this.activeLocks.isEmpty() && this.watching.compareAndSet(false, true)) {
+        this.watchExecutor.execute(this::watchLoop);
+      }
+    }
+  }
+
+  /**
+   * leader选举监听器
+   */
+  public interface LeaderListener {
+
+    /**
+     * 成为leader
+     */
+    void onGranted(ClusterConsulLock lock);
+
+    /**
+     * 失去leader身份
+     */
+    void onRevoked(ClusterConsulLock lock);
+  }
+}
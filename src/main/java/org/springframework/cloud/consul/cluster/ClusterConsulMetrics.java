@@ -0,0 +1,51 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * ClusterConsulClient的micrometer指标
+ *
+ * consul.cluster.failover: 从首次失败到各阶段(detect/switch/reregister/recover)的耗时直方图
+ */
+public class ClusterConsulMetrics implements MeterBinder, FailoverTimelineRecorder.PhaseListener {
+
+  private final ClusterConsulClient clusterConsulClient;
+
+  private final Map<FailoverTimeline.Phase, Timer> failoverTimers = Maps.newEnumMap(FailoverTimeline.Phase.class);
+
+  public ClusterConsulMetrics(ClusterConsulClient clusterConsulClient) {
+    this.clusterConsulClient = clusterConsulClient;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (FailoverTimeline.Phase phase : FailoverTimeline.Phase.values()) {
+      this.failoverTimers.put(phase, Timer.builder("consul.cluster.failover")
+          .description("Time from the first failure of a consul node to each failover phase")
+          .tag("phase", phase.getValue())
+          .publishPercentileHistogram()
+          .register(registry));
+    }
+    Gauge.builder("consul.cluster.failover.open", this.clusterConsulClient.getFailoverRecorder(),
+        recorder -> recorder.getOpenIncidents().size())
+        .description("Failover incidents not yet recovered")
+        .register(registry);
+    this.clusterConsulClient.getFailoverRecorder().addListener(this);
+  }
+
+  @Override
+  public void onPhase(FailoverTimeline timeline, FailoverTimeline.Phase phase, long durationMillis) {
+    Timer timer = this.failoverTimers.get(phase);
+    if (timer != null && durationMillis >= 0) {
+      timer.record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -27,6 +27,13 @@ public class ClusterConsulProperties extends ConsulProperties {
   @Getter
   private List<String> clusterNodes;
 
+  /**
+   * 本服务所在的可用区，优先选择同可用区的节点
+   */
+  @Setter
+  @Getter
+  private String zone;
+
   /**
    * 集群ConsulClient客户端一致性哈希算法的Key 建议与spring.cloud.client.ip-address对应的值一致
    */
@@ -42,6 +49,48 @@ public class ClusterConsulProperties extends ConsulProperties {
   @Setter
   private long healthCheckInterval;
 
+  /**
+   * 集群广播(fan-out)异步操作的超时时间(毫秒)，超时仍未返回的节点记为失败
+   */
+  @Getter
+  @Setter
+  private long fanOutTimeout = 5000L;
+
+  /**
+   * 集群广播(fan-out)使用的线程数，与健康检测等后台任务的线程池隔离
+   */
+  @Getter
+  @Setter
+  private int fanOutThreads = 8;
+
+  /**
+   * 集群广播(fan-out)等待执行的任务上限，超出时该节点直接记为失败
+   */
+  @Getter
+  @Setter
+  private int fanOutQueueSize = 256;
+
+  /**
+   * 启动时等待第一个健康节点的最长时间(毫秒)，其余节点在后台完成健康检测后加入
+   */
+  @Getter
+  @Setter
+  private long bootstrapTimeout = 5000L;
+
+  /**
+   * 保留的已结束故障转移时间线数量
+   */
+  @Getter
+  @Setter
+  private int failoverHistorySize = 50;
+
+  /**
+   * 是否合并相同的并发读请求(getHealthServices/getKVValues)，合并的结果只读，一致性读取不合并
+   */
+  @Getter
+  @Setter
+  private boolean coalesceReads = true;
+
   /**
    * 重试其他集群节点的前提条件(异常)
    */
@@ -51,14 +100,444 @@ public class ClusterConsulProperties extends ConsulProperties {
       TransportException.class, OperationException.class, IOException.class,
       ConnectException.class, TimeoutException.class, SocketTimeoutException.class);
 
+  /**
+   * 所有集群节点共享的HTTP连接池配置
+   */
+  @Getter
+  @Setter
+  private TransportConfig transport = new TransportConfig();
+
+  /**
+   * 分布式锁及leader选举配置
+   */
+  @Getter
+  @Setter
+  private LockConfig lock = new LockConfig();
+
+  /**
+   * KV批量写入(consul事务)配置
+   */
+  @Getter
+  @Setter
+  private TxnConfig txn = new TxnConfig();
+
+  /**
+   * 单节点并发请求隔离(bulkhead)配置
+   */
+  @Getter
+  @Setter
+  private BulkheadConfig bulkhead = new BulkheadConfig();
+
+  /**
+   * 重试预算、截止时间及退避配置
+   */
+  @Getter
+  @Setter
+  private RetryPolicyConfig retryPolicy = new RetryPolicyConfig();
+
+  /**
+   * 集群不可用时降级返回旧数据的配置
+   */
+  @Getter
+  @Setter
+  private StaleCacheConfig staleCache = new StaleCacheConfig();
+
+  /**
+   * 读请求结果的本地快照配置
+   */
+  @Getter
+  @Setter
+  private SnapshotConfig snapshot = new SnapshotConfig();
+
+  /**
+   * 同主机多进程共享的读请求缓存配置
+   */
+  @Getter
+  @Setter
+  private HostCacheConfig hostCache = new HostCacheConfig();
+
+  /**
+   * 多服务watch复用配置
+   */
+  @Getter
+  @Setter
+  private WatchConfig watch = new WatchConfig();
+
   @Override
   public String toString() {
     return "ClusterConsulProperties{" + "clusterNodes='" + getClusterNodes() + '\''
+        + ", zone=" + getZone()
         + ", scheme=" + getScheme() + ", tls=" + getTls()
         + ", enabled=" + isEnabled()
         + ", clusterClientKey="
         + getClusterClientKey() + ", healthCheckInterval="
-        + getHealthCheckInterval() + ", retryableExceptions="
-        + getRetryableExceptions() + '}';
+        + getHealthCheckInterval() + ", fanOutTimeout="
+        + getFanOutTimeout() + ", fanOutThreads=" + getFanOutThreads() + ", fanOutQueueSize="
+        + getFanOutQueueSize() + ", bootstrapTimeout=" + getBootstrapTimeout() + ", failoverHistorySize="
+        + getFailoverHistorySize() + ", coalesceReads=" + isCoalesceReads() + ", retryableExceptions="
+        + getRetryableExceptions() + ", transport=" + getTransport() + ", lock=" + getLock() + ", txn=" + getTxn()
+        + ", bulkhead=" + getBulkhead() + ", retryPolicy=" + getRetryPolicy()
+        + ", staleCache=" + getStaleCache() + ", snapshot=" + getSnapshot()
+        + ", hostCache=" + getHostCache() + ", watch=" + getWatch() + '}';
+  }
+
+  /**
+   * HTTP连接池配置
+   *
+   * 普通请求与阻塞查询(long-poll watch)使用两个独立的连接池，避免阻塞查询占满连接导致普通请求饥饿
+   */
+  @Getter
+  @Setter
+  public static class TransportConfig {
+
+    /**
+     * 每个节点普通请求的最大连接数
+     */
+    private int maxConnectionsPerNode = 20;
+
+    /**
+     * 每个节点阻塞查询(watch)的最大连接数
+     */
+    private int maxWatchConnectionsPerNode = 50;
+
+    /**
+     * 建立连接超时时间(毫秒)
+     */
+    private int connectTimeout = 3000;
+
+    /**
+     * 从连接池获取连接的超时时间(毫秒)
+     */
+    private int connectionRequestTimeout = 3000;
+
+    /**
+     * 普通请求的读超时时间(毫秒)
+     */
+    private int readTimeout = 10000;
+
+    /**
+     * 阻塞查询的读超时时间(毫秒)，需大于consul阻塞查询的最大等待时间(10分钟)
+     */
+    private int watchReadTimeout = 660000;
+
+    /**
+     * 连接保活时间(毫秒)
+     */
+    private long keepAlive = 30000L;
+
+    /**
+     * 空闲连接的回收时间(毫秒)
+     */
+    private long idleTimeout = 60000L;
+
+    /**
+     * 保持预热连接的备用节点数(按故障转移时的选择顺序)，0表示不预热
+     */
+    private int standbyNodes = 2;
+
+    /**
+     * 每个备用节点保持的预热连接数
+     */
+    private int standbyConnections = 1;
+
+    /**
+     * 备用节点连接的预热间隔(毫秒)，需小于keepAlive
+     */
+    private long standbyWarmInterval = 10000L;
+
+    @Override
+    public String toString() {
+      return "TransportConfig{" + "maxConnectionsPerNode=" + maxConnectionsPerNode
+          + ", maxWatchConnectionsPerNode=" + maxWatchConnectionsPerNode
+          + ", connectTimeout=" + connectTimeout + ", connectionRequestTimeout=" + connectionRequestTimeout
+          + ", readTimeout=" + readTimeout + ", watchReadTimeout=" + watchReadTimeout
+          + ", keepAlive=" + keepAlive + ", idleTimeout=" + idleTimeout + ", standbyNodes=" + standbyNodes
+          + ", standbyConnections=" + standbyConnections + ", standbyWarmInterval=" + standbyWarmInterval + '}';
+    }
+  }
+
+  /**
+   * 分布式锁及leader选举配置
+   */
+  @Getter
+  @Setter
+  public static class LockConfig {
+
+    /**
+     * 锁的KV路径前缀，同一前缀下的锁共用一个阻塞查询
+     */
+    private String prefix = "locks/";
+
+    /**
+     * 锁session的TTL(秒)
+     */
+    private int sessionTtl = 15;
+
+    /**
+     * 锁session的lock-delay(秒)，越小锁释放后可被重新获取的等待时间越短
+     */
+    private int lockDelay = 1;
+
+    /**
+     * 等待锁释放时阻塞查询的最长等待时间(秒)
+     */
+    private int watchWaitTime = 55;
+
+    /**
+     * 续约session及处理锁持有者变化的线程数，单个慢请求不会阻塞其他锁
+     */
+    private int workerThreads = 4;
+
+    /**
+     * 单次session续约的超时时间(毫秒)，超时后放弃本次续约，由下一周期重试
+     */
+    private long renewTimeout = 3000L;
+
+    @Override
+    public String toString() {
+      return "LockConfig{" + "prefix=" + prefix + ", sessionTtl=" + sessionTtl + ", lockDelay=" + lockDelay
+          + ", watchWaitTime=" + watchWaitTime + ", workerThreads=" + workerThreads + ", renewTimeout="
+          + renewTimeout + '}';
+    }
+  }
+
+  /**
+   * KV批量写入(consul事务)配置
+   */
+  @Getter
+  @Setter
+  public static class TxnConfig {
+
+    /**
+     * 每个事务包含的最大操作数，consul限制单个事务最多64个操作
+     */
+    private int batchSize = 64;
+
+    /**
+     * 同时在途(pipelined)的事务数
+     */
+    private int maxInFlightBatches = 4;
+
+    @Override
+    public String toString() {
+      return "TxnConfig{" + "batchSize=" + batchSize + ", maxInFlightBatches=" + maxInFlightBatches + '}';
+    }
+  }
+
+  /**
+   * 单节点并发请求隔离(bulkhead)配置
+   *
+   * 限制同时发往单个节点的普通请求数(阻塞查询不受限制)，超出时短暂排队，
+   * 排队超时或排队已满时快速失败并由RetryTemplate转到其他节点执行
+   */
+  @Getter
+  @Setter
+  public static class BulkheadConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * 单个节点同时在途的最大请求数，不应超过transport.maxConnectionsPerNode
+     */
+    private int maxConcurrentRequests = 20;
+
+    /**
+     * 单个节点最多排队等待的请求数，超出时立即拒绝
+     */
+    private int maxWaitingRequests = 100;
+
+    /**
+     * 排队等待的最长时间(毫秒)，0表示不排队
+     */
+    private long maxWaitMillis = 50L;
+
+    @Override
+    public String toString() {
+      return "BulkheadConfig{" + "enabled=" + enabled + ", maxConcurrentRequests=" + maxConcurrentRequests
+          + ", maxWaitingRequests=" + maxWaitingRequests + ", maxWaitMillis=" + maxWaitMillis + '}';
+    }
+  }
+
+  /**
+   * 重试预算、截止时间及退避配置
+   */
+  @Getter
+  @Setter
+  public static class RetryPolicyConfig {
+
+    /**
+     * 每次成功调用存入的重试令牌数，即重试量最多为成功调用量的该比例
+     */
+    private double budgetRatio = 0.2D;
+
+    /**
+     * 每秒固定补充的重试令牌数
+     */
+    private int minRetriesPerSecond = 10;
+
+    /**
+     * 单次调用(包括全部重试)的截止时间(毫秒)，超过后不再重试，阻塞查询不受限制
+     */
+    private long deadline = 15000L;
+
+    /**
+     * 首次重试的最大退避时间(毫秒)，之后每次翻倍，实际退避时间在[0, 该值]之间随机
+     */
+    private long initialBackoff = 10L;
+
+    /**
+     * 最大退避时间(毫秒)
+     */
+    private long maxBackoff = 200L;
+
+    @Override
+    public String toString() {
+      return "RetryPolicyConfig{" + "budgetRatio=" + budgetRatio + ", minRetriesPerSecond=" + minRetriesPerSecond
+          + ", deadline=" + deadline + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff + '}';
+    }
+  }
+
+  /**
+   * 集群不可用时降级返回旧数据的配置
+   *
+   * 适用于getHealthServices、getCatalogServices、getKVValue、getKVValues的非阻塞查询
+   */
+  @Getter
+  @Setter
+  public static class StaleCacheConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * 旧数据的最大年龄(毫秒)，超过后不再返回
+     */
+    private long maxStaleness = 600000L;
+
+    /**
+     * 缓存的最大请求数
+     */
+    private long maxEntries = 10000L;
+
+    @Override
+    public String toString() {
+      return "StaleCacheConfig{" + "enabled=" + enabled + ", maxStaleness=" + maxStaleness + ", maxEntries="
+          + maxEntries + '}';
+    }
+  }
+
+  /**
+   * 读请求结果的本地快照配置
+   *
+   * 将旧数据缓存(staleCache)中的KV配置及服务健康列表定期写入本地文件，启动时先加载，
+   * consul不可用时服务仍可读取配置、发现服务并完成启动，连接到集群后由实时数据覆盖
+   */
+  @Getter
+  @Setter
+  public static class SnapshotConfig {
+
+    private boolean enabled = false;
+
+    /**
+     * 快照文件路径
+     */
+    private String path = System.getProperty("java.io.tmpdir") + "/consul-cluster-snapshot.bin";
+
+    /**
+     * 检查数据变化并写入快照的周期(毫秒)
+     */
+    private long flushInterval = 5000L;
+
+    /**
+     * 快照数据的最大年龄(毫秒)，超过后启动时不再加载
+     */
+    private long maxAge = 604800000L;
+
+    @Override
+    public String toString() {
+      return "SnapshotConfig{" + "enabled=" + enabled + ", path=" + path + ", flushInterval=" + flushInterval
+          + ", maxAge=" + maxAge + '}';
+    }
+  }
+
+  /**
+   * 同主机多进程共享的读请求缓存配置
+   *
+   * 同一主机上的多个进程通过内存映射文件共享getHealthServices、getHealthInstances、getCatalogServices、getKVValue、getKVValues
+   * 的非阻塞查询结果，某个进程发布结果后，其他进程在ttl内不再为同一请求访问consul agent。
+   * 多个进程同时未命中时仍会各自请求，其他进程正在写入时放弃本次发布，因此只能减少而不能保证每个ttl只请求一次
+   */
+  @Getter
+  @Setter
+  public static class HostCacheConfig {
+
+    private boolean enabled = false;
+
+    /**
+     * 共享文件路径，同主机需要共享缓存的进程配置为同一路径，建议使用内存文件系统(如/dev/shm)
+     */
+    private String path = System.getProperty("java.io.tmpdir") + "/consul-cluster-host-cache.bin";
+
+    /**
+     * 共享数据的有效期(毫秒)
+     */
+    private long ttl = 2000L;
+
+    /**
+     * 共享文件大小(字节)，超出时丢弃最早的数据
+     */
+    private int capacity = 8 * 1024 * 1024;
+
+    @Override
+    public String toString() {
+      return "HostCacheConfig{" + "enabled=" + enabled + ", path=" + path + ", ttl=" + ttl + ", capacity="
+          + capacity + '}';
+    }
+  }
+
+  /**
+   * 多服务watch复用配置
+   *
+   * 通过服务目录及健康检查状态两个阻塞查询感知变化，只查询发生变化的服务
+   */
+  @Getter
+  @Setter
+  public static class WatchConfig {
+
+    /**
+     * 阻塞查询的等待时间(秒)
+     */
+    private long waitTime = 55L;
+
+    /**
+     * 同时查询的服务数
+     */
+    private int maxConcurrentFetches = 8;
+
+    /**
+     * 是否只返回健康检查通过的实例
+     */
+    private boolean onlyPassing = true;
+
+    /**
+     * 查询失败后的重试间隔(毫秒)
+     */
+    private long errorDelay = 1000L;
+
+    /**
+     * 服务目录变化但健康检查没有变化时，延迟多久(毫秒)读取被watch服务的index，期间的多次变化合并为一轮
+     */
+    private long probeDelay = 1000L;
+
+    /**
+     * 每轮最多读取index的服务数，其余服务在下一轮读取
+     */
+    private int maxProbes = 32;
+
+    @Override
+    public String toString() {
+      return "WatchConfig{" + "waitTime=" + waitTime + ", maxConcurrentFetches=" + maxConcurrentFetches
+          + ", onlyPassing=" + onlyPassing + ", errorDelay=" + errorDelay + ", probeDelay=" + probeDelay
+          + ", maxProbes=" + maxProbes + '}';
+    }
   }
 }
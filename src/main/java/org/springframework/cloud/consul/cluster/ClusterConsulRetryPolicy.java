@@ -0,0 +1,127 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.function.BooleanSupplier;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryPolicy;
+import org.springframework.retry.context.RetryContextSupport;
+
+/**
+ * 集群ConsulClient的重试策略，替代SimpleRetryPolicy(maxAttempts = 节点数)
+ *
+ * 在最大尝试次数之外，满足以下任一条件即停止重试：
+ *
+ * 1、异常不可重试(见ConsulErrorClassifier，例如4xx)；
+ *
+ * 2、超过本次调用的截止时间(阻塞查询除外)；
+ *
+ * 3、没有可用(健康且未被摘除)的节点，已知不健康的节点不再重试；
+ *
+ * 4、集群重试预算不足
+ */
+public class ClusterConsulRetryPolicy implements RetryPolicy {
+
+  /**
+   * 本次调用的截止时间(毫秒时间戳)
+   */
+  public static final String DEADLINE_KEY = "deadline";
+
+  /**
+   * 阻塞查询不受截止时间限制
+   */
+  public static final String BLOCKING_QUERY_KEY = "blockingQuery";
+
+  private static final String BUDGET_GRANTED_KEY = "budgetGranted";
+
+  private final int maxAttempts;
+
+  private final long deadlineMillis;
+
+  private final ConsulErrorClassifier errorClassifier;
+
+  private final ConsulRetryBudget retryBudget;
+
+  private final BooleanSupplier availableNodeSupplier;
+
+  /**
+   * @param maxAttempts - 最大尝试次数
+   * @param deadlineMillis - 单次调用(包括全部重试)的最长时间，小于等于0表示不限制
+   * @param errorClassifier - 错误分类
+   * @param retryBudget - 集群重试预算
+   * @param availableNodeSupplier - 是否还有可用节点
+   */
+  public ClusterConsulRetryPolicy(int maxAttempts, long deadlineMillis,
+      ConsulErrorClassifier errorClassifier, ConsulRetryBudget retryBudget,
+      BooleanSupplier availableNodeSupplier) {
+    this.maxAttempts = maxAttempts;
+    this.deadlineMillis = deadlineMillis;
+    this.errorClassifier = errorClassifier;
+    this.retryBudget = retryBudget;
+    this.availableNodeSupplier = availableNodeSupplier;
+  }
+
+  @Override
+  public boolean canRetry(RetryContext context) {
+    Throwable throwable = context.getLastThrowable();
+    int retryCount = context.getRetryCount();
+    if (throwable == null) {
+      return true;
+    }
+    if (retryCount >= this.maxAttempts || !this.errorClassifier.isRetryable(throwable)) {
+      return false;
+    }
+    if (isDeadlineExceeded(context) || !this.availableNodeSupplier.getAsBoolean()) {
+      return false;
+    }
+
+    // RetryTemplate在一次失败后会多次调用canRetry，每次重试只申请一次预算
+    Object budgetGranted = context.getAttribute(BUDGET_GRANTED_KEY);
+    if (budgetGranted != null && (Integer) budgetGranted == retryCount) {
+      return true;
+    }
+    if (!this.retryBudget.tryWithdraw()) {
+      return false;
+    }
+    context.setAttribute(BUDGET_GRANTED_KEY, retryCount);
+
+    return true;
+  }
+
+  /**
+   * 是否已超过截止时间
+   */
+  public static boolean isDeadlineExceeded(RetryContext context) {
+    return getRemainingMillis(context) <= 0;
+  }
+
+  /**
+   * 距离截止时间的剩余毫秒数，不限制时返回Long.MAX_VALUE
+   */
+  public static long getRemainingMillis(RetryContext context) {
+    Object deadline = context.getAttribute(DEADLINE_KEY);
+    if (deadline == null || Boolean.TRUE.equals(context.getAttribute(BLOCKING_QUERY_KEY))) {
+      return Long.MAX_VALUE;
+    }
+
+    return (Long) deadline - System.currentTimeMillis();
+  }
+
+  @Override
+  public RetryContext open(RetryContext parent) {
+    RetryContextSupport context = new RetryContextSupport(parent);
+    if (this.deadlineMillis > 0) {
+      context.setAttribute(DEADLINE_KEY, System.currentTimeMillis() + this.deadlineMillis);
+    }
+
+    return context;
+  }
+
+  @Override
+  public void close(RetryContext context) {
+  }
+
+  @Override
+  public void registerThrowable(RetryContext context, Throwable throwable) {
+    ((RetryContextSupport) context).registerThrowable(throwable);
+  }
+}
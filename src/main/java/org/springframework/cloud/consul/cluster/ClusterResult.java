@@ -0,0 +1,114 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.ecwid.consul.v1.Response;
+import lombok.Getter;
+
+/**
+ * 集群广播(fan-out)操作的执行结果
+ *
+ * 记录每个节点的执行结果、耗时及异常，便于调用方(例如shutdown hook)判断哪些节点执行成功
+ */
+public class ClusterResult {
+
+  /**
+   * 操作名称
+   */
+  @Getter
+  private final String operation;
+
+  /**
+   * 每个节点的执行结果
+   */
+  @Getter
+  private final List<NodeResult> nodeResults;
+
+  public ClusterResult(String operation, List<NodeResult> nodeResults) {
+    this.operation = operation;
+    this.nodeResults = Collections.unmodifiableList(new ArrayList<>(nodeResults));
+  }
+
+  /**
+   * 执行成功的节点
+   */
+  public List<NodeResult> getSucceeded() {
+    return this.nodeResults.stream().filter(NodeResult::isSuccess).collect(Collectors.toList());
+  }
+
+  /**
+   * 执行失败(包括超时)的节点
+   */
+  public List<NodeResult> getFailed() {
+    return this.nodeResults.stream().filter(nodeResult -> !nodeResult.isSuccess()).collect(Collectors.toList());
+  }
+
+  /**
+   * 是否全部节点都执行成功
+   */
+  public boolean isAllSucceeded() {
+    return !this.nodeResults.isEmpty() && this.nodeResults.stream().allMatch(NodeResult::isSuccess);
+  }
+
+  /**
+   * 是否至少一个节点执行成功
+   */
+  public boolean isAnySucceeded() {
+    return this.nodeResults.stream().anyMatch(NodeResult::isSuccess);
+  }
+
+  @Override
+  public String toString() {
+    return "{ operation = " + operation + ", nodeResults = " + nodeResults + " }";
+  }
+
+  /**
+   * 单个节点的执行结果
+   */
+  public static class NodeResult {
+
+    /**
+     * 节点标识
+     */
+    @Getter
+    private final String clientId;
+
+    /**
+     * 节点返回的响应，执行失败时为null
+     */
+    @Getter
+    private final Response<Void> response;
+
+    /**
+     * 执行耗时(毫秒)
+     */
+    @Getter
+    private final long latencyMillis;
+
+    /**
+     * 执行失败时的异常，超时时为TimeoutException
+     */
+    @Getter
+    private final Throwable error;
+
+    public NodeResult(String clientId, Response<Void> response, long latencyMillis, Throwable error) {
+      this.clientId = clientId;
+      this.response = response;
+      this.latencyMillis = latencyMillis;
+      this.error = error;
+    }
+
+    public boolean isSuccess() {
+      return this.error == null;
+    }
+
+    @Override
+    public String toString() {
+      return "{ clientId = " + clientId + ", success = " + isSuccess() + ", latencyMillis = " + latencyMillis
+          + ", error = " + (error == null ? null : error.toString()) + " }";
+    }
+  }
+}
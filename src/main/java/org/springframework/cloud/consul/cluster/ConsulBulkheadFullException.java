@@ -0,0 +1,20 @@
+package org.springframework.cloud.consul.cluster;
+
+
+import lombok.Getter;
+
+/**
+ * 节点并发请求数已满，请求被bulkhead拒绝
+ *
+ * 可重试：RetryTemplate会将本次请求转到其他节点，但不会将该节点标记为不健康
+ */
+public class ConsulBulkheadFullException extends RuntimeException {
+
+  @Getter
+  private final String clientId;
+
+  public ConsulBulkheadFullException(String clientId, String message) {
+    super(message);
+    this.clientId = clientId;
+  }
+}
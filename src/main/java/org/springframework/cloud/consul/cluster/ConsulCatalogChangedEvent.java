@@ -0,0 +1,36 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Set;
+
+import lombok.Getter;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+
+/**
+ * 服务目录变化事件
+ *
+ * 服务目录的内容(服务名及标签)确实发生变化时才发布，state为变化后的consul index，并附带新增、删除、标签变化的服务。
+ * 继承HeartbeatEvent，原有监听心跳事件刷新服务列表的组件(如gateway路由)无需修改
+ */
+@Getter
+public class ConsulCatalogChangedEvent extends HeartbeatEvent {
+
+  private final Set<String> added;
+
+  private final Set<String> removed;
+
+  private final Set<String> changed;
+
+  public ConsulCatalogChangedEvent(Object source, long index, Set<String> added, Set<String> removed,
+      Set<String> changed) {
+    super(source, index);
+    this.added = added;
+    this.removed = removed;
+    this.changed = changed;
+  }
+
+  @Override
+  public String toString() {
+    return "ConsulCatalogChangedEvent{" + "index=" + getValue() + ", added=" + added + ", removed=" + removed
+        + ", changed=" + changed + '}';
+  }
+}
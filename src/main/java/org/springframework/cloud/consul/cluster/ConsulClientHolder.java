@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.ConsulRawClient;
 import com.ecwid.consul.v1.QueryParams;
 import com.ecwid.consul.v1.Response;
 import lombok.Getter;
@@ -30,6 +31,24 @@ public class ConsulClientHolder implements Comparable<ConsulClientHolder> {
   @Getter
   private final ConsulClient client;
 
+  /**
+   * 阻塞查询(watch)使用的Consul客户端，与client连接同一节点但使用独立的连接池
+   */
+  @Getter
+  private final ConsulClient watchClient;
+
+  /**
+   * 与client连接同一节点的ConsulRawClient，用于consul-api未封装的接口(例如/v1/txn)
+   */
+  @Getter
+  private final ConsulRawClient rawClient;
+
+  /**
+   * 与client连接同一节点、从响应流解析的客户端，未使用共享传输层时为null
+   */
+  @Getter
+  private final ConsulStreamingClient streamingClient;
+
   /**
    * 当前ConsulClient是否是健康的
    */
@@ -37,10 +56,55 @@ public class ConsulClientHolder implements Comparable<ConsulClientHolder> {
   @Setter
   private boolean healthy = true;
 
+  /**
+   * 节点所在可用区，未配置时为null
+   */
+  @Getter
+  @Setter
+  private String zone;
+
+  /**
+   * 节点权重，权重越大被选为当前节点的概率越大
+   */
+  @Getter
+  @Setter
+  private int weight = 1;
+
+  /**
+   * 最近一次健康检测的时间、耗时(毫秒)及失败原因
+   */
+  @Getter
+  private volatile long lastProbeTime;
+
+  @Getter
+  private volatile long lastProbeLatency;
+
+  @Getter
+  private volatile String lastProbeError;
+
   public ConsulClientHolder(ConsulProperties properties) {
+    this(properties, null);
+  }
+
+  /**
+   * @param properties - 节点配置
+   * @param transportFactory - 共享的HTTP传输层，为null时使用consul-api默认的传输层
+   */
+  public ConsulClientHolder(ConsulProperties properties, ConsulTransportFactory transportFactory) {
     super();
     this.properties = properties;
-    this.client = ConsulClientUtil.createConsulClient(properties);
+    if (ObjectUtils.isNotEmpty(transportFactory)) {
+      this.client = ConsulClientUtil.createConsulClient(properties, transportFactory.getHttpClient());
+      this.watchClient = ConsulClientUtil.createConsulClient(properties, transportFactory.getWatchHttpClient());
+      this.rawClient = ConsulClientUtil.createConsulRawClient(properties, transportFactory.getHttpClient());
+      this.streamingClient = new ConsulStreamingClient(transportFactory.getHttpClient(),
+          transportFactory.getWatchHttpClient(), ConsulClientUtil.getAgentUrl(properties));
+    } else {
+      this.client = ConsulClientUtil.createConsulClient(properties);
+      this.watchClient = this.client;
+      this.rawClient = ConsulClientUtil.createConsulRawClient(properties, null);
+      this.streamingClient = null;
+    }
     if (ObjectUtils.isNotEmpty(this.client)) {
       log.debug(CommonConstant.LOG_PREFIX + ">>> Cluster ConsulClient[{}] created! <<<", this.getClientId());
       this.checkHealth(); // 创建时做一次健康检测
@@ -59,15 +123,21 @@ public class ConsulClientHolder implements Comparable<ConsulClientHolder> {
   public void checkHealth() {
 
     boolean tmpHealthy = false;
+    String probeError = null;
+    long begin = System.currentTimeMillis();
     if (ObjectUtils.isNotEmpty(this.client)) {
       try {
         Response<Map<String, List<String>>> response = this.client.getCatalogServices(QueryParams.DEFAULT);
         tmpHealthy = !response.getValue().isEmpty();
       } catch (Exception e) {
+        probeError = String.valueOf(e);
         log.error(CommonConstant.LOG_PREFIX + ">>> Check consul client health failed : {} <<<",
             e.getMessage());
       }
     }
+    this.lastProbeTime = begin;
+    this.lastProbeLatency = System.currentTimeMillis() - begin;
+    this.lastProbeError = probeError;
     this.setHealthy(tmpHealthy);
     log.info(CommonConstant.LOG_PREFIX + ">>> Cluster consul client health check finished: {} <<<", this);
   }
@@ -82,7 +152,7 @@ public class ConsulClientHolder implements Comparable<ConsulClientHolder> {
 
   @Override
   public String toString() {
-    return "{ clientId = " + getClientId() + ", healthy = " + healthy + " }";
+    return "{ clientId = " + getClientId() + ", zone = " + zone + ", healthy = " + healthy + " }";
   }
 }
 
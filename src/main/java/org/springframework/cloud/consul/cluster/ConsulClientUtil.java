@@ -4,17 +4,20 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ToIntFunction;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 
 import com.ecwid.consul.transport.TLSConfig;
 import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.ConsulRawClient;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.HttpClient;
 import org.springframework.cloud.consul.ConsulProperties;
 
 /**
@@ -53,15 +56,40 @@ public class ConsulClientUtil {
     return null;
   }
 
+  /**
+   * 按权重通过一致性算法选择节点，权重为n的节点在哈希环上占n个连续位置(按累计权重定位，不展开节点列表)
+   *
+   * @param key - 客户端提供的散列key
+   * @param clients - 在每次调用之前请确保clients的顺序是一致的
+   * @param weightFunction - 节点权重
+   */
+  public static <T> T chooseClient(String key, List<T> clients, ToIntFunction<T> weightFunction) {
+    if (CollectionUtils.isEmpty(clients)) {
+      return null;
+    }
+    long totalWeight = 0;
+    for (T client : clients) {
+      totalWeight += Math.max(1, weightFunction.applyAsInt(client));
+    }
+    int prime = 31; // always used in hashcode method
+    int hitIndex = Hashing.consistentHash(Hashing.murmur3_128(prime).hashString(key, DEFAULT_CHARSET),
+        (int) Math.min(Integer.MAX_VALUE, totalWeight));
+    for (T client : clients) {
+      hitIndex -= Math.max(1, weightFunction.applyAsInt(client));
+      if (hitIndex < 0) {
+        return client;
+      }
+    }
+
+    return clients.get(clients.size() - 1);
+  }
+
   /**
    * 创建 ConsulClient, copy from ConsulAutoConfiguration
    */
   public static ConsulClient createConsulClient(ConsulProperties consulProperties) {
     final int agentPort = consulProperties.getPort();
-    final String agentHost = StringUtils.isEmpty(consulProperties.getScheme())
-        ? consulProperties.getHost()
-        : consulProperties.getScheme() + CommonConstant.SEPARATOR_COLON + StringUtils.repeat(CommonConstant.SEPARATOR_VIRGULE, 2) + consulProperties
-            .getHost();
+    final String agentHost = getAgentHost(consulProperties);
 
     ConsulClient consulClient = null;
 
@@ -91,4 +119,62 @@ public class ConsulClientUtil {
 
     return consulClient;
   }
+
+  /**
+   * 使用给定的(共享的)HttpClient创建 ConsulClient
+   */
+  public static ConsulClient createConsulClient(ConsulProperties consulProperties, HttpClient httpClient) {
+    final int agentPort = consulProperties.getPort();
+    final String agentHost = getAgentHost(consulProperties);
+
+    ConsulClient consulClient = null;
+    try {
+      consulClient = new ConsulClient(new ConsulRawClient(agentHost, agentPort, httpClient));
+      log.debug(CommonConstant.LOG_PREFIX + ">>> createConsulClient Success. agentHost: " + agentHost + "      agentPort: " + agentPort
+          + "     with shared http client <<<");
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> createConsulClient Fail. agentHost: " + agentHost + "      agentPort: " + agentPort + "  {}  <<<", e.getMessage());
+    }
+
+    return consulClient;
+  }
+
+  /**
+   * 创建 ConsulRawClient，用于consul-api未封装的接口(例如/v1/txn)
+   *
+   * @param httpClient - 共享的HttpClient，为null时使用consul-api默认的传输层
+   */
+  public static ConsulRawClient createConsulRawClient(ConsulProperties consulProperties, HttpClient httpClient) {
+    final int agentPort = consulProperties.getPort();
+    final String agentHost = getAgentHost(consulProperties);
+
+    if (httpClient != null) {
+      return new ConsulRawClient(agentHost, agentPort, httpClient);
+    }
+    if (consulProperties.getTls() != null) {
+      ConsulProperties.TLSConfig tls = consulProperties.getTls();
+      return new ConsulRawClient(agentHost, agentPort, new TLSConfig(tls.getKeyStoreInstanceType(),
+          tls.getCertificatePath(), tls.getCertificatePassword(),
+          tls.getKeyStorePath(), tls.getKeyStorePassword()));
+    }
+
+    return new ConsulRawClient(agentHost, agentPort);
+  }
+
+  /**
+   * 节点地址，例如 http://127.0.0.1:8500
+   */
+  public static String getAgentUrl(ConsulProperties consulProperties) {
+    String scheme = StringUtils.isEmpty(consulProperties.getScheme()) ? "http" : consulProperties.getScheme();
+
+    return scheme + CommonConstant.SEPARATOR_COLON + StringUtils.repeat(CommonConstant.SEPARATOR_VIRGULE, 2)
+        + consulProperties.getHost() + CommonConstant.SEPARATOR_COLON + consulProperties.getPort();
+  }
+
+  private static String getAgentHost(ConsulProperties consulProperties) {
+    return StringUtils.isEmpty(consulProperties.getScheme())
+        ? consulProperties.getHost()
+        : consulProperties.getScheme() + CommonConstant.SEPARATOR_COLON + StringUtils.repeat(CommonConstant.SEPARATOR_VIRGULE, 2) + consulProperties
+            .getHost();
+  }
 }
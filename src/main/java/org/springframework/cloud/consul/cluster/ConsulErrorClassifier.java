@@ -0,0 +1,98 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Map;
+
+import com.ecwid.consul.v1.OperationException;
+import lombok.Getter;
+import org.springframework.classify.BinaryExceptionClassifier;
+
+/**
+ * consul请求错误分类
+ *
+ * 1、CLIENT_ERROR：4xx(408除外，例如403 ACL拒绝、404 session不存在)及不可重试的异常，
+ * 换节点重试结果相同，直接失败且不影响节点健康状态；
+ *
+ * 2、NODE_BUSY：429及bulkhead拒绝，仅本次请求转到其他节点重试，节点仍视为健康；
+ *
+ * 3、NODE_FAILURE：5xx、408、连接失败及超时等，将节点标记为不健康并在其他节点重试
+ */
+public class ConsulErrorClassifier {
+
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  private static final int HTTP_REQUEST_TIMEOUT = 408;
+
+  /**
+   * 错误类型
+   */
+  public enum ErrorType {
+
+    CLIENT_ERROR("client_error"),
+
+    NODE_BUSY("node_busy"),
+
+    NODE_FAILURE("node_failure");
+
+    @Getter
+    private final String value;
+
+    ErrorType(String value) {
+      this.value = value;
+    }
+  }
+
+  private final BinaryExceptionClassifier retryableClassifier;
+
+  /**
+   * @param retryableExceptions - 可重试的异常类型，不在其中的异常视为CLIENT_ERROR
+   */
+  public ConsulErrorClassifier(Map<Class<? extends Throwable>, Boolean> retryableExceptions) {
+    this.retryableClassifier = new BinaryExceptionClassifier(retryableExceptions, false);
+    this.retryableClassifier.setTraverseCauses(true);
+  }
+
+  public ErrorType classify(Throwable throwable) {
+    OperationException operationException = findCause(throwable, OperationException.class);
+    if (operationException != null) {
+      return classifyStatus(operationException.getStatusCode());
+    }
+    if (findCause(throwable, ConsulBulkheadFullException.class) != null) {
+      return ErrorType.NODE_BUSY;
+    }
+
+    return this.retryableClassifier.classify(throwable) ? ErrorType.NODE_FAILURE : ErrorType.CLIENT_ERROR;
+  }
+
+  /**
+   * 按HTTP状态码分类
+   */
+  protected ErrorType classifyStatus(int statusCode) {
+    if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+      return ErrorType.NODE_BUSY;
+    }
+    if (statusCode >= 400 && statusCode < 500 && statusCode != HTTP_REQUEST_TIMEOUT) {
+      return ErrorType.CLIENT_ERROR;
+    }
+
+    return ErrorType.NODE_FAILURE;
+  }
+
+  /**
+   * 是否应在其他节点重试
+   */
+  public boolean isRetryable(Throwable throwable) {
+    return classify(throwable) != ErrorType.CLIENT_ERROR;
+  }
+
+  private static <T extends Throwable> T findCause(Throwable throwable, Class<T> type) {
+    Throwable cause = throwable;
+    while (cause != null) {
+      if (type.isInstance(cause)) {
+        return type.cast(cause);
+      }
+      cause = cause.getCause() == cause ? null : cause.getCause();
+    }
+
+    return null;
+  }
+}
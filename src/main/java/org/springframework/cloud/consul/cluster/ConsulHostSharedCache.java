@@ -0,0 +1,458 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import com.ecwid.consul.v1.Response;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 同一主机上多个进程共享的读请求缓存
+ *
+ * 缓存保存在内存映射文件中，任一进程从consul读取到的结果(服务健康列表、KV等)写入该文件，
+ * 同主机的其他进程在ttl内直接从映射内存读取，不再请求consul agent。
+ *
+ * 数据区是只追加的日志：每次发布只在末尾追加一条数据，同一key以最后一条为准；空间不足时才压缩，
+ * 只保留每个key未过期的最新数据(generation加1)。读取方记录已解析到的位置，generation不变时只解析新追加的数据。
+ *
+ * 写入时持有文件锁(进程间互斥)，并按seqlock方式维护版本号：写入前版本号加1(奇数表示写入中)，写入后再加1；
+ * 读取不加锁，版本号未变化时直接使用上次解析的结果，读取前后版本号不一致或CRC校验失败时重新读取。
+ *
+ * 文件格式：magic(int) layoutVersion(int) seq(long) dataLength(int) count(int) generation(long) writeTime(long)，
+ * 数据区从HEADER_SIZE开始，每条数据为 time(long) consulIndex(long) keyLength(int) key(UTF-8 JSON)
+ * valueLength(int) value(UTF-8 JSON) crc(long)
+ */
+@Slf4j
+public class ConsulHostSharedCache implements AutoCloseable {
+
+  private static final int MAGIC = 0x43434843;
+
+  private static final int LAYOUT_VERSION = 2;
+
+  private static final int HEADER_SIZE = 64;
+
+  private static final int SEQ_OFFSET = 8;
+
+  private static final int LENGTH_OFFSET = 16;
+
+  private static final int COUNT_OFFSET = 20;
+
+  private static final int GENERATION_OFFSET = 24;
+
+  private static final int WRITE_TIME_OFFSET = 32;
+
+  /**
+   * 读取时遇到写入中或数据不一致的最大重试次数
+   */
+  private static final int MAX_READ_ATTEMPTS = 16;
+
+  private static final Type KEY_TYPE = new TypeToken<List<Object>>() {
+  }.getType();
+
+  private final Gson gson = ConsulSnapshotStore.GSON;
+
+  @Getter
+  private final Path path;
+
+  private final long ttlMillis;
+
+  private final int capacity;
+
+  private final FileChannel channel;
+
+  private final MappedByteBuffer buffer;
+
+  /**
+   * 最近一次解析的版本号及数据
+   */
+  private volatile View view = new View(-1L, -1L, 0, Collections.emptyMap());
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder published = new LongAdder();
+
+  public ConsulHostSharedCache(ClusterConsulProperties.HostCacheConfig hostCacheConfig) throws IOException {
+    this.path = Paths.get(hostCacheConfig.getPath());
+    this.ttlMillis = hostCacheConfig.getTtl();
+    this.capacity = Math.max(HEADER_SIZE * 2, hostCacheConfig.getCapacity());
+    Path parent = this.path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    RandomAccessFile file = new RandomAccessFile(this.path.toFile(), "rw");
+    this.channel = file.getChannel();
+    restrictPermissions(this.path);
+    if (this.channel.size() < this.capacity) {
+      file.setLength(this.capacity);
+    }
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+  }
+
+  /**
+   * 读取未超过ttl的共享数据
+   *
+   * @return 没有可用数据时返回null
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Response<T> get(List<Object> key) {
+    SharedEntry entry = read().entries.get(key);
+    long age = entry == null ? -1L : System.currentTimeMillis() - entry.time;
+    if (entry == null || age > this.ttlMillis) {
+      this.misses.increment();
+      return null;
+    }
+
+    this.hits.increment();
+    return new Response<>((T) entry.getValue(), entry.consulIndex < 0 ? null : entry.consulIndex, true, age);
+  }
+
+  /**
+   * 发布本进程读取到的结果，其他进程正在写入时放弃本次发布
+   */
+  public void put(List<Object> key, Response<?> response) {
+    Type valueType = ConsulSnapshotStore.VALUE_TYPES.get(String.valueOf(key.get(0)));
+    if (response == null || response.getValue() == null || valueType == null) {
+      return;
+    }
+    FileLock lock = null;
+    try {
+      lock = this.channel.tryLock();
+      if (lock == null) {
+        return;
+      }
+      long now = System.currentTimeMillis();
+      Long consulIndex = response.getConsulIndex();
+      SharedEntry sharedEntry = new SharedEntry(now, consulIndex == null ? -1L : consulIndex,
+          this.gson.toJson(response.getValue()).getBytes(StandardCharsets.UTF_8), valueType);
+      byte[] record = encode(key, sharedEntry);
+      if (record.length > this.capacity - HEADER_SIZE) {
+        return;
+      }
+      View current = read();
+      if (!append(current, record)) {
+        compact(current, key, sharedEntry, now);
+      }
+      this.published.increment();
+    } catch (OverlappingFileLockException e) {
+      // 同一JVM中的其他实例正在写入
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Host shared cache {} is busy <<<", this.path);
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Failed to publish to host shared cache {} : {} <<<", this.path,
+          e.toString());
+    } finally {
+      if (lock != null) {
+        try {
+          lock.release();
+        } catch (IOException e) {
+          log.debug(CommonConstant.LOG_PREFIX + ">>> Release host shared cache lock failed: {} <<<", e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * 在日志末尾追加一条数据，当前数据不是最新解析的版本(写入方异常退出)或空间不足时返回false
+   */
+  private boolean append(View current, byte[] record) {
+    if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != LAYOUT_VERSION
+        || this.buffer.getLong(SEQ_OFFSET) != current.seq
+        || current.length + record.length > this.capacity - HEADER_SIZE) {
+      return false;
+    }
+    long writingSeq = beginWrite();
+    ByteBuffer dataBuffer = this.buffer.duplicate();
+    dataBuffer.position(HEADER_SIZE + current.length);
+    dataBuffer.put(record);
+    this.buffer.putInt(LENGTH_OFFSET, current.length + record.length);
+    this.buffer.putInt(COUNT_OFFSET, this.buffer.getInt(COUNT_OFFSET) + 1);
+    endWrite(writingSeq);
+
+    return true;
+  }
+
+  /**
+   * 压缩：重写数据区，只保留每个key未过期的最新数据，按时间从新到旧写入，超出容量时丢弃最早的数据
+   */
+  private void compact(View current, List<Object> key, SharedEntry sharedEntry, long now) throws IOException {
+    List<Map.Entry<List<Object>, SharedEntry>> sortedEntries = new ArrayList<>();
+    sortedEntries.add(new AbstractMap.SimpleImmutableEntry<>(key, sharedEntry));
+    for (Map.Entry<List<Object>, SharedEntry> entry : current.entries.entrySet()) {
+      if (now - entry.getValue().time <= this.ttlMillis && !entry.getKey().equals(key)) {
+        sortedEntries.add(entry);
+      }
+    }
+    sortedEntries.sort((a, b) -> Long.compare(b.getValue().time, a.getValue().time));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int count = 0;
+    for (Map.Entry<List<Object>, SharedEntry> entry : sortedEntries) {
+      byte[] record = encode(entry.getKey(), entry.getValue());
+      if (bytes.size() + record.length > this.capacity - HEADER_SIZE) {
+        continue;
+      }
+      bytes.write(record);
+      count++;
+    }
+    byte[] data = bytes.toByteArray();
+
+    boolean initialized = this.buffer.getInt(0) == MAGIC && this.buffer.getInt(4) == LAYOUT_VERSION;
+    long generation = initialized ? this.buffer.getLong(GENERATION_OFFSET) + 1 : 0L;
+    long writingSeq = beginWrite();
+    this.buffer.putInt(0, MAGIC);
+    this.buffer.putInt(4, LAYOUT_VERSION);
+    ByteBuffer dataBuffer = this.buffer.duplicate();
+    dataBuffer.position(HEADER_SIZE);
+    dataBuffer.put(data);
+    this.buffer.putInt(LENGTH_OFFSET, data.length);
+    this.buffer.putInt(COUNT_OFFSET, count);
+    this.buffer.putLong(GENERATION_OFFSET, generation);
+    endWrite(writingSeq);
+    log.debug(CommonConstant.LOG_PREFIX + ">>> Compacted host shared cache {} : {} entries <<<", this.path, count);
+  }
+
+  private long beginWrite() {
+    long seq = this.buffer.getInt(0) == MAGIC ? this.buffer.getLong(SEQ_OFFSET) : 0L;
+    // 奇数表示写入中(上次写入的进程异常退出时版本号可能停留在奇数)
+    long writingSeq = (seq & 1L) == 0 ? seq + 1 : seq + 2;
+    this.buffer.putLong(SEQ_OFFSET, writingSeq);
+
+    return writingSeq;
+  }
+
+  private void endWrite(long writingSeq) {
+    this.buffer.putLong(WRITE_TIME_OFFSET, System.currentTimeMillis());
+    this.buffer.putLong(SEQ_OFFSET, writingSeq + 1);
+  }
+
+  private byte[] encode(List<Object> key, SharedEntry sharedEntry) throws IOException {
+    byte[] keyBytes = this.gson.toJson(key).getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(keyBytes.length + sharedEntry.valueBytes.length + 32);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeLong(sharedEntry.time);
+      out.writeLong(sharedEntry.consulIndex);
+      out.writeInt(keyBytes.length);
+      out.write(keyBytes);
+      out.writeInt(sharedEntry.valueBytes.length);
+      out.write(sharedEntry.valueBytes);
+      CRC32 crc = new CRC32();
+      crc.update(bytes.toByteArray());
+      out.writeLong(crc.getValue());
+    }
+
+    return bytes.toByteArray();
+  }
+
+  /**
+   * 无锁读取：版本号未变化时直接返回上次解析的数据
+   */
+  private View read() {
+    for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+      if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != LAYOUT_VERSION) {
+        return this.view;
+      }
+      long seq = this.buffer.getLong(SEQ_OFFSET);
+      View current = this.view;
+      if (seq == current.seq) {
+        return current;
+      }
+      if ((seq & 1L) == 1L) {
+        Thread.yield();
+        continue;
+      }
+      long generation = this.buffer.getLong(GENERATION_OFFSET);
+      int length = this.buffer.getInt(LENGTH_OFFSET);
+      if (length < 0 || length > this.capacity - HEADER_SIZE) {
+        continue;
+      }
+      // generation不变时之前的数据没有变化，只读取新追加的部分
+      boolean incremental = generation == current.generation && length >= current.length;
+      int from = incremental ? current.length : 0;
+      byte[] data = new byte[length - from];
+      ByteBuffer dataBuffer = this.buffer.duplicate();
+      dataBuffer.position(HEADER_SIZE + from);
+      dataBuffer.get(data);
+      if (seq != this.buffer.getLong(SEQ_OFFSET)) {
+        continue;
+      }
+      Map<List<Object>, SharedEntry> entries = incremental ? new HashMap<>(current.entries) : new HashMap<>();
+      if (!parse(data, entries)) {
+        continue;
+      }
+      View parsed = new View(seq, generation, length, entries);
+      this.view = parsed;
+
+      return parsed;
+    }
+
+    return this.view;
+  }
+
+  /**
+   * 解析数据并加入entries，同一key后出现的数据覆盖之前的数据
+   *
+   * @return CRC校验失败或数据不完整时返回false
+   */
+  private boolean parse(byte[] data, Map<List<Object>, SharedEntry> entries) {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    CRC32 crc = new CRC32();
+    try {
+      while (buffer.hasRemaining()) {
+        int start = buffer.position();
+        long time = buffer.getLong();
+        long consulIndex = buffer.getLong();
+        byte[] keyBytes = readBytes(buffer);
+        byte[] valueBytes = readBytes(buffer);
+        crc.reset();
+        crc.update(data, start, buffer.position() - start);
+        if (crc.getValue() != buffer.getLong()) {
+          return false;
+        }
+        List<Object> key = this.gson.fromJson(new String(keyBytes, StandardCharsets.UTF_8), KEY_TYPE);
+        Type valueType = ConsulSnapshotStore.VALUE_TYPES.get(String.valueOf(key.get(0)));
+        if (valueType != null) {
+          entries.put(key, new SharedEntry(time, consulIndex, valueBytes, valueType));
+        }
+      }
+    } catch (BufferUnderflowException | JsonParseException e) {
+      return false;
+    }
+
+    return true;
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] data = new byte[length];
+    buffer.get(data);
+
+    return data;
+  }
+
+  /**
+   * 缓存中包含KV配置，仅允许当前用户读写
+   */
+  private static void restrictPermissions(Path file) {
+    try {
+      Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException | IOException e) {
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Can not restrict permissions of {} : {} <<<", file, e.toString());
+    }
+  }
+
+  /**
+   * 当前共享的数据条数
+   */
+  public int getSize() {
+    return read().entries.size();
+  }
+
+  /**
+   * 当前数据的版本号
+   */
+  public long getSeq() {
+    return read().seq;
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * 本进程发布的次数
+   */
+  public long getPublished() {
+    return this.published.sum();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  private static class View {
+
+    private final long seq;
+
+    private final long generation;
+
+    /**
+     * 已解析的数据长度
+     */
+    private final int length;
+
+    private final Map<List<Object>, SharedEntry> entries;
+
+    View(long seq, long generation, int length, Map<List<Object>, SharedEntry> entries) {
+      this.seq = seq;
+      this.generation = generation;
+      this.length = length;
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * 共享的一条数据，value在首次使用时解析
+   */
+  private class SharedEntry {
+
+    private final long time;
+
+    private final long consulIndex;
+
+    private final byte[] valueBytes;
+
+    private final Type valueType;
+
+    private volatile Object value;
+
+    SharedEntry(long time, long consulIndex, byte[] valueBytes, Type valueType) {
+      this.time = time;
+      this.consulIndex = consulIndex;
+      this.valueBytes = valueBytes;
+      this.valueType = valueType;
+    }
+
+    Object getValue() {
+      Object tmpValue = this.value;
+      if (tmpValue == null) {
+        tmpValue = gson.fromJson(new String(this.valueBytes, StandardCharsets.UTF_8), this.valueType);
+        this.value = tmpValue;
+      }
+
+      return tmpValue;
+    }
+  }
+}
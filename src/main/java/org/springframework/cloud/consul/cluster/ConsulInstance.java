@@ -0,0 +1,173 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import com.ecwid.consul.v1.health.model.Check;
+import com.ecwid.consul.v1.health.model.HealthService;
+import lombok.Getter;
+import org.apache.commons.lang3.ObjectUtils;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.consul.discovery.ConsulServerUtils;
+
+/**
+ * 紧凑的服务实例
+ *
+ * getHealthServices返回的HealthService包含节点元数据、tagged addresses、健康检查的输出等路由用不到的数据，
+ * 且服务名、标签、元数据等字符串在每个实例中各有一份。这里只保留路由需要的字段，字符串、标签列表及元数据map全局驻留(弱引用)，
+ * 相同内容的实例共享同一份对象
+ */
+@Getter
+public final class ConsulInstance implements ServiceInstance {
+
+  private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+  private static final Interner<ImmutableList<String>> TAGS = Interners.newWeakInterner();
+
+  private static final Interner<ImmutableMap<String, String>> METADATA = Interners.newWeakInterner();
+
+  private final String instanceId;
+
+  private final String serviceId;
+
+  private final String node;
+
+  /**
+   * consul返回的地址(服务地址，没有时为节点地址)
+   */
+  private final String address;
+
+  private final String host;
+
+  private final int port;
+
+  private final boolean secure;
+
+  private final List<String> tags;
+
+  private final Map<String, String> metadata;
+
+  /**
+   * 最差的健康检查状态，没有健康检查时为PASSING
+   */
+  private final Check.CheckStatus status;
+
+  /**
+   * 服务、节点及健康检查中最大的modify index，服务没有modify index时为-1
+   */
+  private final long modifyIndex;
+
+  private ConsulInstance(HealthService healthService) {
+    HealthService.Service service = healthService.getService();
+    this.instanceId = intern(service.getId());
+    this.serviceId = intern(service.getService());
+    this.node = healthService.getNode() == null ? null : intern(healthService.getNode().getNode());
+    this.address = intern(ObjectUtils.isNotEmpty(service.getAddress()) ? service.getAddress()
+        : healthService.getNode() == null ? null : healthService.getNode().getAddress());
+    this.host = intern(ConsulServerUtils.findHost(healthService));
+    this.port = service.getPort() == null ? 0 : service.getPort();
+    this.tags = service.getTags() == null ? ImmutableList.of() : TAGS.intern(
+        service.getTags().stream().filter(Objects::nonNull).map(ConsulInstance::intern).collect(ImmutableList.toImmutableList()));
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+    ConsulServerUtils.getMetadata(this.tags).forEach((key, value) -> metadata.put(intern(key), intern(value)));
+    this.metadata = METADATA.intern(metadata.build());
+    this.secure = Boolean.parseBoolean(this.metadata.get("secure"));
+    this.status = worstStatus(healthService.getChecks());
+    this.modifyIndex = modifyIndex(healthService);
+  }
+
+  public static ConsulInstance of(HealthService healthService) {
+    return new ConsulInstance(healthService);
+  }
+
+  private static String intern(String value) {
+    return value == null ? null : STRINGS.intern(value);
+  }
+
+  private static Check.CheckStatus worstStatus(List<Check> checks) {
+    Check.CheckStatus status = Check.CheckStatus.PASSING;
+    if (checks != null) {
+      for (Check check : checks) {
+        if (check.getStatus() != null && check.getStatus() != Check.CheckStatus.PASSING
+            && (status == Check.CheckStatus.PASSING || check.getStatus() == Check.CheckStatus.CRITICAL)) {
+          status = check.getStatus();
+        }
+      }
+    }
+
+    return status;
+  }
+
+  static long modifyIndex(HealthService healthService) {
+    Long serviceModifyIndex = healthService.getService().getModifyIndex();
+    if (serviceModifyIndex == null) {
+      return -1L;
+    }
+    long modifyIndex = serviceModifyIndex;
+    if (healthService.getNode() != null && healthService.getNode().getModifyIndex() != null) {
+      modifyIndex = Math.max(modifyIndex, healthService.getNode().getModifyIndex());
+    }
+    if (healthService.getChecks() != null) {
+      for (Check check : healthService.getChecks()) {
+        if (check.getModifyIndex() != null) {
+          modifyIndex = Math.max(modifyIndex, check.getModifyIndex());
+        }
+      }
+    }
+
+    return modifyIndex;
+  }
+
+  public boolean isPassing() {
+    return this.status == Check.CheckStatus.PASSING;
+  }
+
+  @Override
+  public URI getUri() {
+    return DefaultServiceInstance.getUri(this);
+  }
+
+  /**
+   * 只包含路由所需字段的HealthService，用于创建ribbon的ConsulServer
+   */
+  public HealthService toHealthService() {
+    HealthService.Node node = new HealthService.Node();
+    node.setNode(this.node);
+    node.setAddress(this.address);
+    HealthService.Service service = new HealthService.Service();
+    service.setId(this.instanceId);
+    service.setService(this.serviceId);
+    service.setTags(this.tags);
+    service.setAddress(this.address);
+    service.setPort(this.port);
+    service.setModifyIndex(this.modifyIndex < 0L ? null : this.modifyIndex);
+    HealthService healthService = new HealthService();
+    healthService.setNode(node);
+    healthService.setService(service);
+    if (isPassing()) {
+      healthService.setChecks(Collections.emptyList());
+    } else {
+      Check check = new Check();
+      check.setStatus(this.status);
+      healthService.setChecks(Collections.singletonList(check));
+    }
+
+    return healthService;
+  }
+
+  @Override
+  public String toString() {
+    return "ConsulInstance{" + "instanceId='" + instanceId + '\'' + ", serviceId='" + serviceId + '\'' + ", host='"
+        + host + '\'' + ", port=" + port + ", secure=" + secure + ", status=" + status + ", metadata=" + metadata
+        + '}';
+  }
+}
@@ -0,0 +1,116 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.ecwid.consul.v1.kv.model.GetValue;
+import lombok.Getter;
+
+/**
+ * 延迟解码的KV条目
+ *
+ * getKVBinaryValues在解析时把前缀下所有条目的value都解码为byte[]，调用方往往只用到其中一部分。
+ * 这里保留consul返回的base64字符串，访问value时才解码，可以解码到调用方提供的缓冲区
+ */
+@Getter
+public final class ConsulKVEntry {
+
+  private final String key;
+
+  private final long flags;
+
+  private final long createIndex;
+
+  private final long modifyIndex;
+
+  private final Long lockIndex;
+
+  private final String session;
+
+  /**
+   * base64编码的value，没有value时为null
+   */
+  private final String encodedValue;
+
+  ConsulKVEntry(GetValue value) {
+    this.key = value.getKey();
+    this.flags = value.getFlags();
+    this.createIndex = value.getCreateIndex();
+    this.modifyIndex = value.getModifyIndex();
+    this.lockIndex = value.getLockIndex();
+    this.session = value.getSession();
+    this.encodedValue = value.getValue();
+  }
+
+  public boolean hasValue() {
+    return this.encodedValue != null;
+  }
+
+  /**
+   * 解码后的长度，不解码
+   */
+  public int getValueLength() {
+    if (this.encodedValue == null) {
+      return 0;
+    }
+    int length = this.encodedValue.length();
+    int padding = 0;
+    while (padding < 2 && length > padding && this.encodedValue.charAt(length - padding - 1) == '=') {
+      padding++;
+    }
+
+    return length / 4 * 3 - padding;
+  }
+
+  /**
+   * 解码value，每次调用都重新解码
+   */
+  public byte[] getValue() {
+    return this.encodedValue == null ? null : Base64.getDecoder().decode(this.encodedValue);
+  }
+
+  /**
+   * 解码value到buffer
+   *
+   * @param buffer - 调用方提供的缓冲区，容量不足或为null时分配新的缓冲区
+   * @return 解码了value的缓冲区(position为0，limit为value长度)，没有value时返回null
+   */
+  public ByteBuffer getValue(ByteBuffer buffer) {
+    if (this.encodedValue == null) {
+      return null;
+    }
+    int length = getValueLength();
+    ByteBuffer target = buffer;
+    if (target == null || length > target.capacity()) {
+      target = target != null && target.isDirect() ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+    }
+    target.clear();
+    byte[] src = this.encodedValue.getBytes(StandardCharsets.ISO_8859_1);
+    if (target.hasArray() && target.arrayOffset() == 0) {
+      target.position(Base64.getDecoder().decode(src, target.array()));
+    } else {
+      target.put(Base64.getDecoder().decode(src));
+    }
+    target.flip();
+
+    return target;
+  }
+
+  public String getValueAsString() {
+    return getValueAsString(StandardCharsets.UTF_8);
+  }
+
+  public String getValueAsString(Charset charset) {
+    byte[] value = getValue();
+
+    return value == null ? null : new String(value, charset);
+  }
+
+  @Override
+  public String toString() {
+    return "ConsulKVEntry{" + "key='" + key + '\'' + ", flags=" + flags + ", modifyIndex=" + modifyIndex
+        + ", valueLength=" + getValueLength() + '}';
+  }
+}
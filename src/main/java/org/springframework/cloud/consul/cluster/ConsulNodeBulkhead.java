@@ -0,0 +1,90 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * 单个集群节点的并发请求隔离(bulkhead)
+ *
+ * 最多maxConcurrentRequests个请求同时在途，超出的请求最多排队maxWaitMillis，
+ * 排队数超过maxWaitingRequests或等待超时则拒绝
+ */
+public class ConsulNodeBulkhead {
+
+  @Getter
+  private final String clientId;
+
+  @Getter
+  private final int maxConcurrentRequests;
+
+  private final int maxWaitingRequests;
+
+  private final long maxWaitMillis;
+
+  private final Semaphore permits;
+
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  private final LongAdder rejected = new LongAdder();
+
+  public ConsulNodeBulkhead(String clientId, ClusterConsulProperties.BulkheadConfig bulkheadConfig) {
+    this.clientId = clientId;
+    this.maxConcurrentRequests = Math.max(1, bulkheadConfig.getMaxConcurrentRequests());
+    this.maxWaitingRequests = Math.max(0, bulkheadConfig.getMaxWaitingRequests());
+    this.maxWaitMillis = Math.max(0L, bulkheadConfig.getMaxWaitMillis());
+    this.permits = new Semaphore(this.maxConcurrentRequests, true);
+  }
+
+  /**
+   * 获取一个许可，成功后必须调用release()
+   *
+   * @throws ConsulBulkheadFullException 并发数已满且排队超时(或排队已满)
+   */
+  public void acquire() {
+    if (this.permits.tryAcquire()) {
+      return;
+    }
+    if (this.maxWaitMillis > 0) {
+      try {
+        if (this.waiting.incrementAndGet() <= this.maxWaitingRequests
+            && this.permits.tryAcquire(this.maxWaitMillis, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        this.waiting.decrementAndGet();
+      }
+    }
+    this.rejected.increment();
+
+    throw new ConsulBulkheadFullException(this.clientId, "ConsulClient[" + this.clientId + "] bulkhead is full: "
+        + this.maxConcurrentRequests + " in flight, " + this.waiting.get() + " waiting");
+  }
+
+  public void release() {
+    this.permits.release();
+  }
+
+  public int getInFlight() {
+    return this.maxConcurrentRequests - this.permits.availablePermits();
+  }
+
+  public int getWaiting() {
+    return this.waiting.get();
+  }
+
+  public long getRejected() {
+    return this.rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "{ clientId = " + clientId + ", inFlight = " + getInFlight() + ", waiting = " + getWaiting()
+        + ", rejected = " + getRejected() + " }";
+  }
+}
@@ -0,0 +1,93 @@
+package org.springframework.cloud.consul.cluster;
+
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * 集群节点配置：host:port[;zone=xxx][;weight=n]
+ *
+ * 例如 192.168.1.101:8500;zone=az1;weight=2，zone为空表示未知可用区，weight默认为1
+ */
+public class ConsulNodeSpec {
+
+  private static final String ZONE = "zone";
+
+  private static final String WEIGHT = "weight";
+
+  private static final int MAX_PORT = 65535;
+
+  @Getter
+  private final String host;
+
+  @Getter
+  private final int port;
+
+  @Getter
+  private final String zone;
+
+  @Getter
+  private final int weight;
+
+  public ConsulNodeSpec(String host, int port, String zone, int weight) {
+    this.host = host;
+    this.port = port;
+    this.zone = zone;
+    this.weight = weight;
+  }
+
+  /**
+   * 解析节点配置
+   *
+   * @throws BadConfigException 配置格式错误
+   */
+  public static ConsulNodeSpec parse(String clusterNode) {
+    String[] parts = StringUtils.trimToEmpty(clusterNode).split(CommonConstant.SEPARATOR_SEMICOLON);
+    String[] connects = parts[0].trim().split(CommonConstant.SEPARATOR_COLON);
+    if (connects.length != 2 || StringUtils.isEmpty(connects[0])) {
+      throw new BadConfigException("spring.cloud.consul.cluster.nodes config error: " + clusterNode);
+    }
+    int port = parseInt(connects[1].trim(), 1, MAX_PORT, clusterNode);
+
+    String zone = null;
+    int weight = 1;
+    for (int i = 1; i < parts.length; i++) {
+      String[] attribute = parts[i].split(CommonConstant.SEPARATOR_EQUAL_SIGN, 2);
+      String name = attribute[0].trim();
+      String value = attribute.length > 1 ? attribute[1].trim() : CommonConstant.SEPARATOR_BLANK;
+      if (ZONE.equals(name) && StringUtils.isNotEmpty(value)) {
+        zone = value;
+      } else if (WEIGHT.equals(name)) {
+        weight = parseInt(value, 1, Integer.MAX_VALUE, clusterNode);
+      } else if (StringUtils.isNotEmpty(name)) {
+        throw new BadConfigException("spring.cloud.consul.cluster.nodes config error: " + clusterNode);
+      }
+    }
+
+    return new ConsulNodeSpec(connects[0].trim(), port, zone, weight);
+  }
+
+  /**
+   * 解析取值范围为[min, max]的整数，非数字、溢出或超出范围时抛出BadConfigException
+   */
+  private static int parseInt(String value, int min, int max, String clusterNode) {
+    try {
+      int result = StringUtils.isNumeric(value) ? Integer.parseInt(value) : -1;
+      if (result >= min && result <= max) {
+        return result;
+      }
+    } catch (NumberFormatException e) {
+      // 超出int范围
+    }
+
+    throw new BadConfigException("spring.cloud.consul.cluster.nodes config error: " + clusterNode);
+  }
+
+  public String getAddress() {
+    return this.host + CommonConstant.SEPARATOR_COLON + this.port;
+  }
+
+  @Override
+  public String toString() {
+    return "{ address = " + getAddress() + ", zone = " + zone + ", weight = " + weight + " }";
+  }
+}
@@ -0,0 +1,118 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * 单个集群节点的请求统计
+ *
+ * 按clientId保存在ClusterConsulClient中，节点重建(ConsulClientHolder重新创建)后统计不丢失；
+ * 延迟分位数基于最近SAMPLE_SIZE次请求计算
+ */
+public class ConsulNodeStats {
+
+  private static final int SAMPLE_SIZE = 1024;
+
+  @Getter
+  private final String clientId;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final LongAdder requests = new LongAdder();
+
+  private final LongAdder failures = new LongAdder();
+
+  /**
+   * 最近请求的耗时(微秒)环形缓冲区
+   */
+  private final AtomicLongArray latencySamples = new AtomicLongArray(SAMPLE_SIZE);
+
+  private final AtomicLong sampleCursor = new AtomicLong();
+
+  @Getter
+  private volatile String lastError;
+
+  @Getter
+  private volatile long lastErrorTime;
+
+  public ConsulNodeStats(String clientId) {
+    this.clientId = clientId;
+  }
+
+  /**
+   * 请求开始
+   *
+   * @return 开始时间(纳秒)，传给end(...)
+   */
+  public long begin() {
+    this.inFlight.incrementAndGet();
+
+    return System.nanoTime();
+  }
+
+  /**
+   * 请求结束
+   *
+   * @param error - 请求失败的异常，成功为null
+   */
+  public void end(long beginNanos, Throwable error) {
+    this.inFlight.decrementAndGet();
+    this.requests.increment();
+    long latencyMicros = (System.nanoTime() - beginNanos) / 1000L;
+    this.latencySamples.set((int) (this.sampleCursor.getAndIncrement() % SAMPLE_SIZE), latencyMicros);
+    if (error != null) {
+      this.failures.increment();
+      this.lastError = String.valueOf(error);
+      this.lastErrorTime = System.currentTimeMillis();
+    }
+  }
+
+  public int getInFlight() {
+    return this.inFlight.get();
+  }
+
+  public long getRequests() {
+    return this.requests.sum();
+  }
+
+  public long getFailures() {
+    return this.failures.sum();
+  }
+
+  /**
+   * 最近请求耗时的分位数(微秒)：p50/p90/p99/max
+   */
+  public Map<String, Long> getLatencyPercentiles() {
+    int size = (int) Math.min(SAMPLE_SIZE, this.sampleCursor.get());
+    long[] samples = new long[size];
+    for (int i = 0; i < size; i++) {
+      samples[i] = this.latencySamples.get(i);
+    }
+    Arrays.sort(samples);
+
+    Map<String, Long> percentiles = new LinkedHashMap<>();
+    percentiles.put("p50", percentile(samples, 0.50));
+    percentiles.put("p90", percentile(samples, 0.90));
+    percentiles.put("p99", percentile(samples, 0.99));
+    percentiles.put("max", size == 0 ? 0L : samples[size - 1]);
+
+    return percentiles;
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted.length == 0 ? 0L : sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)];
+  }
+
+  @Override
+  public String toString() {
+    return "{ clientId = " + clientId + ", inFlight = " + getInFlight() + ", requests = " + getRequests()
+        + ", failures = " + getFailures() + ", latency = " + getLatencyPercentiles() + " }";
+  }
+}
@@ -0,0 +1,103 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 集群级重试预算(令牌桶)
+ *
+ * 每次成功调用存入ratio个令牌(上限为maxBalance)，每次重试取出一个令牌；
+ * 另外每秒固定补充minRetriesPerSecond个令牌，保证低流量时也能重试。
+ * 部分节点故障时重试量因此被限制在正常流量的ratio倍以内，避免重试把负载放大N倍
+ */
+public class ConsulRetryBudget {
+
+  private final double ratio;
+
+  private final int minRetriesPerSecond;
+
+  private final double maxBalance;
+
+  /**
+   * 按成功调用比例存入的令牌
+   */
+  private double balance;
+
+  /**
+   * 按时间补充的令牌，最多minRetriesPerSecond个
+   */
+  private double reserve;
+
+  private long lastRefillNanos = System.nanoTime();
+
+  private final LongAdder withdrawn = new LongAdder();
+
+  private final LongAdder exhausted = new LongAdder();
+
+  public ConsulRetryBudget(double ratio, int minRetriesPerSecond) {
+    this.ratio = Math.max(0D, ratio);
+    this.minRetriesPerSecond = Math.max(0, minRetriesPerSecond);
+    // 最多积累1000次成功调用对应的重试额度
+    this.maxBalance = Math.max(1D, this.ratio * 1000D);
+    this.reserve = this.minRetriesPerSecond;
+  }
+
+  /**
+   * 调用成功
+   */
+  public synchronized void deposit() {
+    this.balance = Math.min(this.maxBalance, this.balance + this.ratio);
+  }
+
+  /**
+   * 申请一次重试
+   *
+   * @return 预算不足时返回false
+   */
+  public synchronized boolean tryWithdraw() {
+    refill();
+    if (this.reserve >= 1D) {
+      this.reserve -= 1D;
+    } else if (this.balance >= 1D) {
+      this.balance -= 1D;
+    } else {
+      this.exhausted.increment();
+      return false;
+    }
+    this.withdrawn.increment();
+
+    return true;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    double seconds = (now - this.lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1L);
+    this.lastRefillNanos = now;
+    this.reserve = Math.min(this.minRetriesPerSecond, this.reserve + seconds * this.minRetriesPerSecond);
+  }
+
+  public synchronized double getBalance() {
+    refill();
+
+    return this.balance + this.reserve;
+  }
+
+  /**
+   * 已放行的重试数
+   */
+  public long getWithdrawn() {
+    return this.withdrawn.sum();
+  }
+
+  /**
+   * 因预算不足被拒绝的重试数
+   */
+  public long getExhausted() {
+    return this.exhausted.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "{ balance = " + getBalance() + ", withdrawn = " + getWithdrawn() + ", exhausted = " + getExhausted() + " }";
+  }
+}
@@ -0,0 +1,358 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Maps;
+
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.ecwid.consul.v1.session.model.NewSession;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * Session注册表
+ *
+ * 记录每个session创建时所在的节点以及依赖该session获取的锁，
+ * 使renewSession/sessionDestroy始终路由到创建该session的节点，
+ * 并在该节点失效时由ClusterConsulClient在其他节点上重建session、重新获取锁
+ *
+ * 已销毁、已过期(超过2倍TTL未续约)或consul中已不存在的session由ClusterConsulClient定期注销，
+ * 每个session最多保留MAX_PREVIOUS_SESSION_IDS个重建前的旧sessionId
+ */
+@Slf4j
+public class ConsulSessionRegistry {
+
+  /**
+   * 每个session保留的重建前旧sessionId数量
+   */
+  static final int MAX_PREVIOUS_SESSION_IDS = 4;
+
+  /**
+   * sessionId(包括重建前的旧sessionId) -> session记录
+   */
+  private final Map<String, SessionRecord> sessionRecordMap = Maps.newConcurrentMap();
+
+  private final List<SessionFailoverListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * 注册session重建监听器
+   */
+  public void addListener(SessionFailoverListener listener) {
+    this.listeners.add(listener);
+  }
+
+  public void removeListener(SessionFailoverListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * 记录新创建的session
+   */
+  public void register(String sessionId, String clientId, NewSession newSession, QueryParams queryParams,
+      String token) {
+    SessionRecord sessionRecord = new SessionRecord(newSession, queryParams, token);
+    sessionRecord.setSessionId(sessionId);
+    sessionRecord.setClientId(clientId);
+    this.sessionRecordMap.put(sessionId, sessionRecord);
+    log.debug(CommonConstant.LOG_PREFIX + ">>> Session {} registered on {} <<<", sessionId, clientId);
+  }
+
+  /**
+   * 注销session(包括其所有的旧sessionId)
+   */
+  public void unregister(String sessionId) {
+    SessionRecord sessionRecord = this.sessionRecordMap.get(sessionId);
+    if (ObjectUtils.isNotEmpty(sessionRecord)) {
+      this.sessionRecordMap.values().removeIf(value -> value == sessionRecord);
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Session {} unregistered <<<", sessionId);
+    }
+  }
+
+  public SessionRecord getSessionRecord(String sessionId) {
+    return ObjectUtils.isEmpty(sessionId) ? null : this.sessionRecordMap.get(sessionId);
+  }
+
+  /**
+   * 将(可能已被重建的)sessionId解析为当前有效的sessionId
+   */
+  public String resolveSessionId(String sessionId) {
+    SessionRecord sessionRecord = getSessionRecord(sessionId);
+
+    return ObjectUtils.isEmpty(sessionRecord) ? sessionId : sessionRecord.getSessionId();
+  }
+
+  /**
+   * 将PutParams中(可能已被重建的)acquire/release sessionId解析为当前有效的sessionId
+   */
+  public PutParams resolvePutParams(PutParams putParams) {
+    if (ObjectUtils.isEmpty(putParams)
+        || (ObjectUtils.isEmpty(putParams.getAcquireSession()) && ObjectUtils.isEmpty(putParams.getReleaseSession()))) {
+      return putParams;
+    }
+
+    PutParams resolved = new PutParams();
+    resolved.setFlags(putParams.getFlags());
+    resolved.setCas(putParams.getCas());
+    resolved.setAcquireSession(resolveSessionId(putParams.getAcquireSession()));
+    resolved.setReleaseSession(resolveSessionId(putParams.getReleaseSession()));
+
+    return resolved;
+  }
+
+  /**
+   * 记录依赖session的锁的获取与释放
+   *
+   * @param result - setKVValue的结果
+   */
+  public void trackLock(String key, String value, String token, PutParams putParams, Boolean result) {
+    trackLock(key, ObjectUtils.isEmpty(value) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8), token,
+        putParams, result);
+  }
+
+  /**
+   * 记录依赖session的锁的获取与释放
+   *
+   * @param result - setKVBinaryValue的结果
+   */
+  public void trackLock(String key, byte[] value, String token, PutParams putParams, Boolean result) {
+    if (ObjectUtils.isEmpty(putParams) || !Boolean.TRUE.equals(result)) {
+      return;
+    }
+
+    SessionRecord acquireRecord = getSessionRecord(putParams.getAcquireSession());
+    if (ObjectUtils.isNotEmpty(acquireRecord)) {
+      acquireRecord.getLocks().put(key,
+          new LockRecord(key, ObjectUtils.isEmpty(value) ? new byte[0] : value, token, putParams.getFlags()));
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Lock {} acquired by session {} <<<", key,
+          acquireRecord.getSessionId());
+    }
+
+    SessionRecord releaseRecord = getSessionRecord(putParams.getReleaseSession());
+    if (ObjectUtils.isNotEmpty(releaseRecord)) {
+      releaseRecord.getLocks().remove(key);
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Lock {} released by session {} <<<", key,
+          releaseRecord.getSessionId());
+    }
+  }
+
+  /**
+   * 删除KV之后不再跟踪该key上的锁，避免故障转移时重新写入已被删除的key
+   */
+  public void untrackLock(String key) {
+    getSessionRecords().forEach(sessionRecord -> {
+      if (ObjectUtils.isNotEmpty(sessionRecord.getLocks().remove(key))) {
+        log.debug(CommonConstant.LOG_PREFIX + ">>> Lock {} of session {} untracked <<<", key,
+            sessionRecord.getSessionId());
+      }
+    });
+  }
+
+  /**
+   * 递归删除KV之后不再跟踪该前缀下的锁
+   */
+  public void untrackLocks(String keyPrefix) {
+    getSessionRecords().forEach(sessionRecord -> sessionRecord.getLocks().keySet()
+        .removeIf(key -> ObjectUtils.isEmpty(keyPrefix) || key.startsWith(keyPrefix)));
+  }
+
+  /**
+   * 全部有效的session记录(去重)
+   */
+  public List<SessionRecord> getSessionRecords() {
+    List<SessionRecord> sessionRecords = new ArrayList<>();
+    this.sessionRecordMap.values().forEach(sessionRecord -> {
+      if (sessionRecords.stream().noneMatch(value -> value == sessionRecord)) {
+        sessionRecords.add(sessionRecord);
+      }
+    });
+
+    return sessionRecords;
+  }
+
+  /**
+   * session在新节点上重建之后调用
+   */
+  public void onSessionRecreated(SessionRecord sessionRecord, String newSessionId, String newClientId) {
+    String oldSessionId = sessionRecord.getSessionId();
+    sessionRecord.setSessionId(newSessionId);
+    sessionRecord.setClientId(newClientId);
+    this.sessionRecordMap.put(newSessionId, sessionRecord);
+    sessionRecord.renewed();
+    String evictedSessionId = sessionRecord.addPreviousSessionId(oldSessionId);
+    if (ObjectUtils.isNotEmpty(evictedSessionId)) {
+      this.sessionRecordMap.remove(evictedSessionId, sessionRecord);
+    }
+    log.info(CommonConstant.LOG_PREFIX + ">>> Session {} recreated as {} on {} <<<", oldSessionId, newSessionId,
+        newClientId);
+
+    for (SessionFailoverListener listener : this.listeners) {
+      try {
+        listener.onSessionRecreated(oldSessionId, newSessionId);
+      } catch (Exception e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Session failover listener failed: {} <<<", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Session重建监听器
+   */
+  public interface SessionFailoverListener {
+
+    /**
+     * session所在节点失效，session已在其他节点上重建
+     *
+     * @param oldSessionId - 失效的sessionId
+     * @param newSessionId - 重建的sessionId
+     */
+    void onSessionRecreated(String oldSessionId, String newSessionId);
+  }
+
+  /**
+   * session记录
+   */
+  public static class SessionRecord {
+
+    /**
+     * 当前有效的sessionId
+     */
+    @Getter
+    @Setter
+    private volatile String sessionId;
+
+    /**
+     * 创建session的节点
+     */
+    @Getter
+    @Setter
+    private volatile String clientId;
+
+    @Getter
+    private final NewSession newSession;
+
+    @Getter
+    private final QueryParams queryParams;
+
+    @Getter
+    private final String token;
+
+    /**
+     * 依赖该session获取的锁
+     */
+    @Getter
+    private final Map<String, LockRecord> locks = Maps.newConcurrentMap();
+
+    /**
+     * 最近一次创建或续约成功的时间
+     */
+    @Getter
+    private volatile long lastRenewed = System.currentTimeMillis();
+
+    /**
+     * 重建前的旧sessionId，最多保留MAX_PREVIOUS_SESSION_IDS个
+     */
+    private final Deque<String> previousSessionIds = new ArrayDeque<>();
+
+    public SessionRecord(NewSession newSession, QueryParams queryParams, String token) {
+      this.newSession = newSession;
+      this.queryParams = queryParams;
+      this.token = token;
+    }
+
+    public void renewed() {
+      this.lastRenewed = System.currentTimeMillis();
+    }
+
+    /**
+     * session的TTL(毫秒)，没有TTL时为0
+     */
+    public long getTtlMillis() {
+      String ttl = ObjectUtils.isEmpty(this.newSession) ? null : this.newSession.getTtl();
+      if (ObjectUtils.isEmpty(ttl)) {
+        return 0L;
+      }
+      try {
+        if (ttl.endsWith("ms")) {
+          return Long.parseLong(ttl.substring(0, ttl.length() - 2));
+        }
+        if (ttl.endsWith("h")) {
+          return TimeUnit.HOURS.toMillis(Long.parseLong(ttl.substring(0, ttl.length() - 1)));
+        }
+        if (ttl.endsWith("m")) {
+          return TimeUnit.MINUTES.toMillis(Long.parseLong(ttl.substring(0, ttl.length() - 1)));
+        }
+
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(ttl.endsWith("s") ? ttl.substring(0, ttl.length() - 1) : ttl));
+      } catch (NumberFormatException e) {
+        return 0L;
+      }
+    }
+
+    /**
+     * 超过2倍TTL(consul判定失效的最长时间)未续约，session已被consul销毁
+     */
+    public boolean isExpired() {
+      long ttlMillis = getTtlMillis();
+
+      return ttlMillis > 0 && System.currentTimeMillis() - this.lastRenewed > ttlMillis * 2;
+    }
+
+    /**
+     * 记录重建前的旧sessionId
+     *
+     * @return 超出保留数量被淘汰的旧sessionId
+     */
+    synchronized String addPreviousSessionId(String sessionId) {
+      this.previousSessionIds.addLast(sessionId);
+
+      return this.previousSessionIds.size() > MAX_PREVIOUS_SESSION_IDS ? this.previousSessionIds.pollFirst() : null;
+    }
+
+    @Override
+    public String toString() {
+      return "{ sessionId = " + sessionId + ", clientId = " + clientId + ", locks = " + locks.keySet() + " }";
+    }
+  }
+
+  /**
+   * 依赖session获取的锁
+   */
+  public static class LockRecord {
+
+    @Getter
+    private final String key;
+
+    @Getter
+    private final byte[] value;
+
+    @Getter
+    private final String token;
+
+    @Getter
+    private final long flags;
+
+    /**
+     * session重建后是否仍待重新获取
+     */
+    @Getter
+    @Setter
+    private volatile boolean pending;
+
+    public LockRecord(String key, byte[] value, String token, long flags) {
+      this.key = key;
+      this.value = value;
+      this.token = token;
+      this.flags = flags;
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.reflect.TypeToken;
+
+import com.ecwid.consul.json.GsonFactory;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.HealthService;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 读请求结果的本地快照
+ *
+ * 将ConsulStaleCache中的数据(KV配置、服务健康列表等)写入本地二进制文件，启动时映射(mmap)读取并加载到ConsulStaleCache，
+ * consul不可用时服务仍可读取配置、发现服务。数据有变化时才写入，先写临时文件再原子替换，进程崩溃不会留下不完整的快照。
+ *
+ * 文件格式：magic(int) version(int) count(int)，之后每条数据为
+ * time(long) keyLength(int) key(UTF-8 JSON) valueLength(int) value(deflate压缩的JSON)
+ */
+@Slf4j
+public class ConsulSnapshotStore {
+
+  private static final int MAGIC = 0x43435350;
+
+  private static final int VERSION = 1;
+
+  private static final Type KEY_TYPE = new TypeToken<List<Object>>() {
+  }.getType();
+
+  /**
+   * 请求的方法名(key的第一项) -> 响应数据的类型
+   */
+  static final Map<String, Type> VALUE_TYPES = ImmutableMap.of(
+      "getKVValue", GetValue.class,
+      "getKVValues", new TypeToken<List<GetValue>>() {
+      }.getType(),
+      "getHealthServices", new TypeToken<List<HealthService>>() {
+      }.getType(),
+      "getHealthInstances", new TypeToken<List<ConsulInstance>>() {
+      }.getType(),
+      "getCatalogServices", new TypeToken<Map<String, List<String>>>() {
+      }.getType());
+
+  /**
+   * 快照及同主机共享缓存使用的Gson，ConsulInstance按只包含路由所需字段的HealthService读写
+   */
+  static final Gson GSON = GsonFactory.getGson().newBuilder()
+      .registerTypeAdapter(ConsulInstance.class, new ConsulInstanceAdapter()).create();
+
+  private final Gson gson = GSON;
+
+  @Getter
+  private final Path path;
+
+  private final long maxAgeMillis;
+
+  /**
+   * 最近一次写入时ConsulStaleCache的版本号
+   */
+  private volatile long writtenVersion = -1L;
+
+  /**
+   * 启动时从快照加载的数据条数
+   */
+  @Getter
+  private volatile int loaded;
+
+  @Getter
+  private volatile long lastWriteTime;
+
+  public ConsulSnapshotStore(ClusterConsulProperties.SnapshotConfig snapshotConfig) {
+    this.path = Paths.get(snapshotConfig.getPath());
+    this.maxAgeMillis = snapshotConfig.getMaxAge();
+  }
+
+  /**
+   * 加载快照到staleCache，快照不存在或损坏时忽略
+   *
+   * @return 加载的数据条数
+   */
+  public int load(ConsulStaleCache staleCache) {
+    if (!Files.isReadable(this.path)) {
+      return 0;
+    }
+    int loaded = 0;
+    long now = System.currentTimeMillis();
+    try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Ignore invalid consul snapshot {} <<<", this.path);
+        return 0;
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        long time = buffer.getLong();
+        List<Object> key = this.gson.fromJson(new String(readBytes(buffer), StandardCharsets.UTF_8), KEY_TYPE);
+        byte[] value = readBytes(buffer);
+        Type valueType = VALUE_TYPES.get(String.valueOf(key.get(0)));
+        if (valueType == null || now - time > this.maxAgeMillis) {
+          continue;
+        }
+        Object responseValue = this.gson.fromJson(new String(inflate(value), StandardCharsets.UTF_8), valueType);
+        staleCache.restore(key, new Response<>(responseValue, null, false, null), time, this.maxAgeMillis);
+        loaded++;
+      }
+      log.info(CommonConstant.LOG_PREFIX + ">>> Loaded {} entries from consul snapshot {} <<<", loaded, this.path);
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Failed to load consul snapshot {} : {} <<<", this.path, e.toString());
+    }
+    // 加载后的数据与快照一致，实时数据有变化后才需要重新写入
+    this.writtenVersion = staleCache.getVersion();
+    this.loaded = loaded;
+
+    return loaded;
+  }
+
+  /**
+   * staleCache有变化时写入快照
+   *
+   * @return 是否写入
+   */
+  public synchronized boolean flush(ConsulStaleCache staleCache) {
+    long version = staleCache.getVersion();
+    if (version == this.writtenVersion) {
+      return false;
+    }
+    try {
+      write(staleCache.entries());
+      this.writtenVersion = version;
+      this.lastWriteTime = System.currentTimeMillis();
+
+      return true;
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Failed to write consul snapshot {} : {} <<<", this.path,
+          e.toString());
+
+      return false;
+    }
+  }
+
+  private void write(Map<List<Object>, ConsulStaleCache.Entry> entries) throws IOException {
+    long now = System.currentTimeMillis();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    int count = 0;
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      for (Map.Entry<List<Object>, ConsulStaleCache.Entry> entry : entries.entrySet()) {
+        Object value = entry.getValue().getResponse().getValue();
+        if (value == null || !VALUE_TYPES.containsKey(String.valueOf(entry.getKey().get(0)))
+            || now - entry.getValue().getTime() > this.maxAgeMillis) {
+          continue;
+        }
+        out.writeLong(entry.getValue().getTime());
+        writeBytes(out, this.gson.toJson(entry.getKey()).getBytes(StandardCharsets.UTF_8));
+        writeBytes(out, deflate(this.gson.toJson(value).getBytes(StandardCharsets.UTF_8)));
+        count++;
+      }
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(count);
+    header.flip();
+    Path parent = this.path.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tmpPath = Files.createTempFile(parent, this.path.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE)) {
+        channel.write(new ByteBuffer[]{header, ByteBuffer.wrap(bytes.toByteArray())});
+        channel.force(true);
+      }
+      restrictPermissions(tmpPath);
+      Files.move(tmpPath, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmpPath);
+    }
+    log.debug(CommonConstant.LOG_PREFIX + ">>> Wrote {} entries to consul snapshot {} <<<", count, this.path);
+  }
+
+  /**
+   * 快照中包含KV配置，仅允许当前用户读写
+   */
+  private static void restrictPermissions(Path file) {
+    try {
+      Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+    } catch (UnsupportedOperationException | IOException e) {
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Can not restrict permissions of {} : {} <<<", file, e.toString());
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    byte[] data = new byte[buffer.getInt()];
+    buffer.get(data);
+
+    return data;
+  }
+
+  private static byte[] deflate(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater)) {
+      deflaterOut.write(data);
+    } finally {
+      deflater.end();
+    }
+
+    return out.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] data) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+      byte[] chunk = new byte[4096];
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(chunk);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("Truncated snapshot entry");
+        }
+        out.write(chunk, 0, inflated);
+      }
+
+      return out.toByteArray();
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static class ConsulInstanceAdapter implements JsonSerializer<ConsulInstance>,
+      JsonDeserializer<ConsulInstance> {
+
+    @Override
+    public JsonElement serialize(ConsulInstance src, Type typeOfSrc, JsonSerializationContext context) {
+      return context.serialize(src.toHealthService(), HealthService.class);
+    }
+
+    @Override
+    public ConsulInstance deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
+      return ConsulInstance.of(context.deserialize(json, HealthService.class));
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import com.ecwid.consul.v1.Response;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 读请求最近一次成功结果的缓存
+ *
+ * 所有节点都不可用、重试耗尽时返回缓存的结果(不超过maxStaleness)，使consul故障时服务发现及配置读取降级为使用旧数据而不是报错。
+ * 返回的旧数据以consul的响应头语义标记：consulKnownLeader = false，consulLastContact = 数据的年龄(毫秒)
+ */
+@Slf4j
+public class ConsulStaleCache {
+
+  private final Cache<List<Object>, Entry> entries;
+
+  private final long maxStalenessMillis;
+
+  private final ConsulErrorClassifier errorClassifier;
+
+  private final LongAdder served = new LongAdder();
+
+  private final LongAdder missed = new LongAdder();
+
+  /**
+   * 缓存内容的版本号，缓存的数据有变化时递增，供本地快照判断是否需要重新写入
+   */
+  private final AtomicLong version = new AtomicLong();
+
+  public ConsulStaleCache(ClusterConsulProperties.StaleCacheConfig staleCacheConfig,
+      ConsulErrorClassifier errorClassifier) {
+    this.entries = CacheBuilder.newBuilder().maximumSize(staleCacheConfig.getMaxEntries()).build();
+    this.maxStalenessMillis = staleCacheConfig.getMaxStaleness();
+    this.errorClassifier = errorClassifier;
+  }
+
+  /**
+   * 记录成功的响应
+   */
+  public void put(List<Object> key, Response<?> response) {
+    if (response != null) {
+      Entry oldEntry = this.entries.getIfPresent(key);
+      this.entries.put(key, new Entry(response, System.currentTimeMillis(), this.maxStalenessMillis));
+      if (oldEntry == null || oldEntry.response.getConsulIndex() == null
+          || !Objects.equals(oldEntry.response.getConsulIndex(), response.getConsulIndex())) {
+        this.version.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * 加载本地快照中的数据，已有实时数据的请求不覆盖
+   *
+   * @param time - 数据获取的时间
+   * @param maxStalenessMillis - 该数据的最大年龄
+   */
+  public void restore(List<Object> key, Response<?> response, long time, long maxStalenessMillis) {
+    this.entries.asMap().putIfAbsent(key, new Entry(response, time, maxStalenessMillis));
+  }
+
+  /**
+   * 当前缓存的全部数据
+   */
+  Map<List<Object>, Entry> entries() {
+    return ImmutableMap.copyOf(this.entries.asMap());
+  }
+
+  public long getVersion() {
+    return this.version.get();
+  }
+
+  /**
+   * 重试耗尽后的降级：返回未超过maxStaleness的旧数据，否则抛出最后一次的异常
+   *
+   * @param key - 请求的key
+   * @param throwable - 最后一次失败的异常
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Response<T> recover(List<Object> key, Throwable throwable) throws Exception {
+    Entry entry = this.entries.getIfPresent(key);
+    long age = entry == null ? -1L : System.currentTimeMillis() - entry.time;
+    if (entry == null || age > entry.maxStalenessMillis || !this.errorClassifier.isRetryable(throwable)) {
+      this.missed.increment();
+      if (throwable instanceof Exception) {
+        throw (Exception) throwable;
+      }
+      throw new IllegalStateException(throwable);
+    }
+
+    this.served.increment();
+    log.warn(CommonConstant.LOG_PREFIX + ">>> Consul cluster unavailable ({}), serving {}ms stale response for {} <<<",
+        throwable == null ? null : throwable.getMessage(), age, key);
+    Response<T> response = (Response<T>) entry.response;
+
+    return new Response<>(response.getValue(), response.getConsulIndex(), false, age);
+  }
+
+  /**
+   * 响应是否为降级返回的旧数据(consul集群本身没有leader时正常响应也会被判定为旧数据)
+   */
+  public static boolean isStale(Response<?> response) {
+    return Boolean.FALSE.equals(response.isConsulKnownLeader());
+  }
+
+  public long getSize() {
+    return this.entries.size();
+  }
+
+  /**
+   * 返回旧数据的次数
+   */
+  public long getServed() {
+    return this.served.sum();
+  }
+
+  /**
+   * 没有可用的旧数据(或已超过maxStaleness)的次数
+   */
+  public long getMissed() {
+    return this.missed.sum();
+  }
+
+  @Getter
+  @AllArgsConstructor
+  static class Entry {
+
+    private final Response<?> response;
+
+    /**
+     * 数据获取的时间
+     */
+    private final long time;
+
+    private final long maxStalenessMillis;
+  }
+}
@@ -0,0 +1,578 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import com.ecwid.consul.SingleUrlParameters;
+import com.ecwid.consul.UrlParameters;
+import com.ecwid.consul.Utils;
+import com.ecwid.consul.transport.TransportException;
+import com.ecwid.consul.v1.OperationException;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.Check;
+import com.ecwid.consul.v1.health.model.HealthService;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * 流式解析响应的Consul客户端
+ *
+ * consul-api先把响应体读成完整的字符串，再反序列化为完整的模型对象，大服务的健康列表在解析期间会占用数倍于响应体的内存。
+ * 这里直接从HTTP响应流逐条解析：只读取调用方需要的字段(其余字段跳过，不创建字符串)，解析时即去重及过滤，
+ * 服务实例直接解析为紧凑的ConsulInstance
+ *
+ * KV的二进制读取使用raw模式(?raw)，响应体即value本身，直接读入调用方提供的缓冲区，不经过JSON及base64
+ */
+public class ConsulStreamingClient {
+
+  private final HttpClient httpClient;
+
+  private final HttpClient watchHttpClient;
+
+  /**
+   * 节点地址，例如 http://127.0.0.1:8500
+   */
+  private final String agentUrl;
+
+  public ConsulStreamingClient(HttpClient httpClient, HttpClient watchHttpClient, String agentUrl) {
+    this.httpClient = httpClient;
+    this.watchHttpClient = watchHttpClient;
+    this.agentUrl = agentUrl;
+  }
+
+  /**
+   * 服务的健康实例，相同实例ID只保留第一条
+   *
+   * @param filter - 解析时过滤实例，为null时不过滤
+   */
+  public Response<List<ConsulInstance>> getHealthInstances(String serviceName, String tag, boolean onlyPassing,
+      QueryParams queryParams, String token, Predicate<ConsulInstance> filter) {
+    return get("/v1/health/service/" + serviceName, queryParams, reader -> readHealthInstances(reader, filter),
+        ObjectUtils.isEmpty(tag) ? null : new SingleUrlParameters("tag", tag),
+        onlyPassing ? new SingleUrlParameters("passing") : null, tokenParameters(token), queryParams);
+  }
+
+  /**
+   * 服务目录中的实例(不包含健康状态)，相同实例ID只保留第一条
+   *
+   * @param filter - 解析时过滤实例，为null时不过滤
+   */
+  public Response<List<ConsulInstance>> getCatalogInstances(String serviceName, String tag, QueryParams queryParams,
+      String token, Predicate<ConsulInstance> filter) {
+    return get("/v1/catalog/service/" + serviceName, queryParams, reader -> readCatalogInstances(reader, filter),
+        ObjectUtils.isEmpty(tag) ? null : new SingleUrlParameters("tag", tag), tokenParameters(token), queryParams);
+  }
+
+  /**
+   * 服务的X-Consul-Index(该服务最近一次变化的index)，响应体直接丢弃，不解析
+   */
+  public Long getHealthServiceIndex(String serviceName, QueryParams queryParams, String token) {
+    return execute("/v1/health/service/" + serviceName, queryParams, entity -> {
+      EntityUtils.consumeQuietly(entity);
+      return null;
+    }, tokenParameters(token), queryParams).getConsulIndex();
+  }
+
+  /**
+   * 指定状态的健康检查，只保留节点、检查ID、服务及状态(不保留输出)
+   *
+   * @param checkStatus - 为null时查询所有状态
+   */
+  public Response<List<Check>> getHealthChecksState(Check.CheckStatus checkStatus, QueryParams queryParams,
+      String token) {
+    String state = checkStatus == null ? "any" : checkStatus.name().toLowerCase(Locale.ROOT);
+    return get("/v1/health/state/" + state, queryParams, ConsulStreamingClient::readStateChecks,
+        tokenParameters(token), queryParams);
+  }
+
+  /**
+   * 前缀下的KV，不满足keyFilter的条目跳过其value
+   *
+   * @param keyFilter - 解析时按key过滤，为null时不过滤
+   */
+  public Response<List<GetValue>> getKVValues(String keyPrefix, QueryParams queryParams, String token,
+      Predicate<String> keyFilter) {
+    return get("/v1/kv/" + keyPrefix, queryParams, reader -> readKVValues(reader, keyFilter),
+        new SingleUrlParameters("recurse"), tokenParameters(token), queryParams);
+  }
+
+  /**
+   * 前缀下的KV，value保留base64编码，访问时才解码
+   *
+   * @param keyFilter - 解析时按key过滤，为null时不过滤
+   */
+  public Response<List<ConsulKVEntry>> getKVEntries(String keyPrefix, QueryParams queryParams, String token,
+      Predicate<String> keyFilter) {
+    return get("/v1/kv/" + keyPrefix, queryParams,
+        reader -> readKVValues(reader, keyFilter).stream().map(ConsulKVEntry::new).collect(Collectors.toList()),
+        new SingleUrlParameters("recurse"), tokenParameters(token), queryParams);
+  }
+
+  /**
+   * raw模式读取KV的value，响应体直接读入buffer
+   *
+   * raw模式的响应不包含flags、session等元数据，key不存在时返回null值
+   *
+   * @param buffer - 调用方提供的缓冲区，容量不足时分配新的缓冲区(直接缓冲区仍分配直接缓冲区)，为null时按响应长度分配
+   * @return 读取了value的缓冲区(position为0，limit为value长度)，调用方下次读取时可以传入复用
+   */
+  public Response<ByteBuffer> getKVRawValue(String key, QueryParams queryParams, String token, ByteBuffer buffer) {
+    return execute("/v1/kv/" + key, queryParams, entity -> readFully(entity, buffer),
+        new SingleUrlParameters("raw"), tokenParameters(token), queryParams);
+  }
+
+  private static UrlParameters tokenParameters(String token) {
+    return ObjectUtils.isEmpty(token) ? null : new SingleUrlParameters("token", token);
+  }
+
+  /**
+   * 执行GET请求并从响应流解析JSON
+   */
+  protected <T> Response<T> get(String path, QueryParams queryParams, Decoder<T> decoder,
+      UrlParameters... parameters) {
+    return execute(path, queryParams, entity -> {
+      try (JsonReader reader = new JsonReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+        return decoder.decode(reader);
+      }
+    }, parameters);
+  }
+
+  /**
+   * 执行GET请求并读取响应体，阻塞查询使用独立的连接池，404时返回null值
+   */
+  protected <T> Response<T> execute(String path, QueryParams queryParams, EntityReader<T> entityReader,
+      UrlParameters... parameters) {
+    HttpClient client = ObjectUtils.isNotEmpty(queryParams) && queryParams.getIndex() > 0 ? this.watchHttpClient
+        : this.httpClient;
+    HttpGet request = new HttpGet(Utils.generateUrl(this.agentUrl + path, parameters));
+    try {
+      return client.execute(request, response -> {
+        int statusCode = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (statusCode == 404) {
+          EntityUtils.consumeQuietly(entity);
+          return toResponse(response, null);
+        }
+        if (statusCode != 200) {
+          throw new OperationException(statusCode, response.getStatusLine().getReasonPhrase(),
+              entity == null ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8));
+        }
+        return toResponse(response, entityReader.read(entity));
+      });
+    } catch (IOException e) {
+      throw new TransportException(e);
+    }
+  }
+
+  private static <T> Response<T> toResponse(HttpResponse response, T value) {
+    Header index = response.getFirstHeader("X-Consul-Index");
+    Header knownLeader = response.getFirstHeader("X-Consul-Knownleader");
+    Header lastContact = response.getFirstHeader("X-Consul-Lastcontact");
+
+    return new Response<>(value, index == null ? null : Utils.parseUnsignedLong(index.getValue()),
+        knownLeader == null ? null : Boolean.valueOf(knownLeader.getValue()),
+        lastContact == null ? null : Long.valueOf(lastContact.getValue()));
+  }
+
+  /**
+   * 把响应体读入buffer，已知长度时一次分配足够的容量，未知长度时按需翻倍扩容
+   */
+  static ByteBuffer readFully(HttpEntity entity, ByteBuffer buffer) throws IOException {
+    long length = entity == null ? 0L : entity.getContentLength();
+    ByteBuffer target = buffer;
+    if (target == null || length > target.capacity()) {
+      int capacity = length >= 0 ? (int) length : 4096;
+      target = target != null && target.isDirect() ? ByteBuffer.allocateDirect(capacity)
+          : ByteBuffer.allocate(capacity);
+    }
+    target.clear();
+    if (entity == null) {
+      target.flip();
+      return target;
+    }
+    try (InputStream in = entity.getContent(); ReadableByteChannel channel = Channels.newChannel(in)) {
+      while (length < 0 || target.position() < length) {
+        if (!target.hasRemaining()) {
+          target = grow(target);
+        }
+        if (channel.read(target) < 0) {
+          break;
+        }
+      }
+    }
+    target.flip();
+
+    return target;
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer) {
+    int capacity = Math.max(buffer.capacity() << 1, 4096);
+    ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    buffer.flip();
+    grown.put(buffer);
+
+    return grown;
+  }
+
+  static List<ConsulInstance> readHealthInstances(JsonReader reader, Predicate<ConsulInstance> filter)
+      throws IOException {
+    List<ConsulInstance> instances = new ArrayList<>();
+    Set<String> instanceIds = new HashSet<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      HealthService healthService = new HealthService();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "Node":
+            healthService.setNode(readNode(reader));
+            break;
+          case "Service":
+            healthService.setService(readService(reader));
+            break;
+          case "Checks":
+            healthService.setChecks(readChecks(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      addInstance(instances, instanceIds, healthService, filter);
+    }
+    reader.endArray();
+
+    return instances;
+  }
+
+  static List<ConsulInstance> readCatalogInstances(JsonReader reader, Predicate<ConsulInstance> filter)
+      throws IOException {
+    List<ConsulInstance> instances = new ArrayList<>();
+    Set<String> instanceIds = new HashSet<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      HealthService.Node node = new HealthService.Node();
+      HealthService.Service service = new HealthService.Service();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "Node":
+            node.setNode(nextString(reader));
+            break;
+          case "Address":
+            node.setAddress(nextString(reader));
+            break;
+          case "ServiceID":
+            service.setId(nextString(reader));
+            break;
+          case "ServiceName":
+            service.setService(nextString(reader));
+            break;
+          case "ServiceTags":
+            service.setTags(nextStrings(reader));
+            break;
+          case "ServiceAddress":
+            service.setAddress(nextString(reader));
+            break;
+          case "ServicePort":
+            service.setPort(nextInteger(reader));
+            break;
+          case "ModifyIndex":
+            service.setModifyIndex(nextLong(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      HealthService healthService = new HealthService();
+      healthService.setNode(node);
+      healthService.setService(service);
+      healthService.setChecks(Collections.emptyList());
+      addInstance(instances, instanceIds, healthService, filter);
+    }
+    reader.endArray();
+
+    return instances;
+  }
+
+  private static void addInstance(List<ConsulInstance> instances, Set<String> instanceIds,
+      HealthService healthService, Predicate<ConsulInstance> filter) {
+    if (healthService.getService() == null || healthService.getService().getId() == null
+        || !instanceIds.add(healthService.getService().getId())) { // 去重
+      return;
+    }
+    ConsulInstance instance = ConsulInstance.of(healthService);
+    if (filter == null || filter.test(instance)) {
+      instances.add(instance);
+    }
+  }
+
+  static List<GetValue> readKVValues(JsonReader reader, Predicate<String> keyFilter) throws IOException {
+    List<GetValue> values = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      GetValue value = new GetValue();
+      boolean accepted = true;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (!accepted) {
+          reader.skipValue();
+          continue;
+        }
+        switch (name) {
+          case "Key":
+            value.setKey(nextString(reader));
+            accepted = keyFilter == null || keyFilter.test(value.getKey());
+            break;
+          case "Value":
+            value.setValue(nextString(reader));
+            break;
+          case "Flags":
+            value.setFlags(reader.nextLong());
+            break;
+          case "CreateIndex":
+            value.setCreateIndex(reader.nextLong());
+            break;
+          case "ModifyIndex":
+            value.setModifyIndex(reader.nextLong());
+            break;
+          case "LockIndex":
+            value.setLockIndex(nextLong(reader));
+            break;
+          case "Session":
+            value.setSession(nextString(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      if (accepted) {
+        values.add(value);
+      }
+    }
+    reader.endArray();
+
+    return values;
+  }
+
+  private static HealthService.Node readNode(JsonReader reader) throws IOException {
+    if (skipNull(reader)) {
+      return null;
+    }
+    HealthService.Node node = new HealthService.Node();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "Node":
+          node.setNode(nextString(reader));
+          break;
+        case "Address":
+          node.setAddress(nextString(reader));
+          break;
+        case "ModifyIndex":
+          node.setModifyIndex(nextLong(reader));
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    return node;
+  }
+
+  private static HealthService.Service readService(JsonReader reader) throws IOException {
+    if (skipNull(reader)) {
+      return null;
+    }
+    HealthService.Service service = new HealthService.Service();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "ID":
+          service.setId(nextString(reader));
+          break;
+        case "Service":
+          service.setService(nextString(reader));
+          break;
+        case "Tags":
+          service.setTags(nextStrings(reader));
+          break;
+        case "Address":
+          service.setAddress(nextString(reader));
+          break;
+        case "Port":
+          service.setPort(nextInteger(reader));
+          break;
+        case "ModifyIndex":
+          service.setModifyIndex(nextLong(reader));
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    return service;
+  }
+
+  /**
+   * 健康检查只保留状态及modify index(不保留输出)
+   */
+  private static List<Check> readChecks(JsonReader reader) throws IOException {
+    if (skipNull(reader)) {
+      return null;
+    }
+    List<Check> checks = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      Check check = new Check();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "Status":
+            check.setStatus(toCheckStatus(nextString(reader)));
+            break;
+          case "ModifyIndex":
+            check.setModifyIndex(nextLong(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      checks.add(check);
+    }
+    reader.endArray();
+
+    return checks;
+  }
+
+  static List<Check> readStateChecks(JsonReader reader) throws IOException {
+    List<Check> checks = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      Check check = new Check();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case "Node":
+            check.setNode(nextString(reader));
+            break;
+          case "CheckID":
+            check.setCheckId(nextString(reader));
+            break;
+          case "ServiceID":
+            check.setServiceId(nextString(reader));
+            break;
+          case "ServiceName":
+            check.setServiceName(nextString(reader));
+            break;
+          case "Status":
+            check.setStatus(toCheckStatus(nextString(reader)));
+            break;
+          case "ModifyIndex":
+            check.setModifyIndex(nextLong(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      checks.add(check);
+    }
+    reader.endArray();
+
+    return checks;
+  }
+
+  private static Check.CheckStatus toCheckStatus(String status) {
+    if (status == null) {
+      return null;
+    }
+    try {
+      return Check.CheckStatus.valueOf(status.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return Check.CheckStatus.UNKNOWN;
+    }
+  }
+
+  private static boolean skipNull(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return true;
+    }
+
+    return false;
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    return skipNull(reader) ? null : reader.nextString();
+  }
+
+  private static Long nextLong(JsonReader reader) throws IOException {
+    return skipNull(reader) ? null : reader.nextLong();
+  }
+
+  private static Integer nextInteger(JsonReader reader) throws IOException {
+    return skipNull(reader) ? null : reader.nextInt();
+  }
+
+  private static List<String> nextStrings(JsonReader reader) throws IOException {
+    if (skipNull(reader)) {
+      return null;
+    }
+    List<String> values = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      values.add(nextString(reader));
+    }
+    reader.endArray();
+
+    return values;
+  }
+
+  /**
+   * 从响应流解析响应体
+   */
+  @FunctionalInterface
+  protected interface Decoder<T> {
+
+    T decode(JsonReader reader) throws IOException;
+  }
+
+  /**
+   * 读取响应体
+   */
+  @FunctionalInterface
+  protected interface EntityReader<T> {
+
+    T read(HttpEntity entity) throws IOException;
+  }
+}
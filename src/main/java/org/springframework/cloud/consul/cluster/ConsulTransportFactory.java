@@ -0,0 +1,140 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.ecwid.consul.transport.TransportException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.cloud.consul.ConsulProperties;
+
+/**
+ * 所有集群节点共享的HTTP传输层
+ *
+ * 普通请求与阻塞查询(watch)分别使用独立的连接池，每个连接池按节点(route)限制最大连接数，
+ * 由ClusterConsulClient定期回收过期及空闲连接
+ */
+@Slf4j
+public class ConsulTransportFactory {
+
+  private final ClusterConsulProperties.TransportConfig transportConfig;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+
+  private final PoolingHttpClientConnectionManager watchConnectionManager;
+
+  /**
+   * 普通请求使用的HttpClient
+   */
+  @Getter
+  private final HttpClient httpClient;
+
+  /**
+   * 阻塞查询使用的HttpClient
+   */
+  @Getter
+  private final HttpClient watchHttpClient;
+
+  public ConsulTransportFactory(ClusterConsulProperties clusterConsulProperties) {
+    this.transportConfig = clusterConsulProperties.getTransport();
+    int nodeCount = Math.max(1, clusterConsulProperties.getClusterNodes().size());
+    Registry<ConnectionSocketFactory> registry = createRegistry(clusterConsulProperties.getTls());
+
+    this.connectionManager = createConnectionManager(registry, this.transportConfig.getMaxConnectionsPerNode(),
+        nodeCount);
+    this.watchConnectionManager = createConnectionManager(registry,
+        this.transportConfig.getMaxWatchConnectionsPerNode(), nodeCount);
+    this.httpClient = createHttpClient(this.connectionManager, this.transportConfig.getReadTimeout());
+    this.watchHttpClient = createHttpClient(this.watchConnectionManager, this.transportConfig.getWatchReadTimeout());
+
+    log.info(CommonConstant.LOG_PREFIX + ">>> Shared consul transport created: {} <<<", this.transportConfig);
+  }
+
+  /**
+   * 回收过期及空闲的连接
+   */
+  public void evictIdleConnections() {
+    this.connectionManager.closeExpiredConnections();
+    this.connectionManager.closeIdleConnections(this.transportConfig.getIdleTimeout(), TimeUnit.MILLISECONDS);
+    this.watchConnectionManager.closeExpiredConnections();
+    this.watchConnectionManager.closeIdleConnections(this.transportConfig.getIdleTimeout(), TimeUnit.MILLISECONDS);
+    log.debug(CommonConstant.LOG_PREFIX + ">>> Evict idle connections. pool: {}  ===  watch pool: {} <<<",
+        this.connectionManager.getTotalStats(), this.watchConnectionManager.getTotalStats());
+  }
+
+  private PoolingHttpClientConnectionManager createConnectionManager(Registry<ConnectionSocketFactory> registry,
+      int maxPerNode, int nodeCount) {
+    PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry);
+    manager.setDefaultMaxPerRoute(maxPerNode);
+    manager.setMaxTotal(maxPerNode * nodeCount);
+
+    return manager;
+  }
+
+  private HttpClient createHttpClient(PoolingHttpClientConnectionManager manager, int readTimeout) {
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(this.transportConfig.getConnectTimeout())
+        .setConnectionRequestTimeout(this.transportConfig.getConnectionRequestTimeout())
+        .setSocketTimeout(readTimeout)
+        .build();
+
+    return HttpClientBuilder.create()
+        .setConnectionManager(manager)
+        .setConnectionManagerShared(true)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy((response, context) -> this.transportConfig.getKeepAlive())
+        .useSystemProperties()
+        .build();
+  }
+
+  /**
+   * 创建支持http及https的连接工厂, copy from DefaultHttpsTransport
+   */
+  private Registry<ConnectionSocketFactory> createRegistry(ConsulProperties.TLSConfig tls) {
+    RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory());
+    if (tls == null) {
+      return registryBuilder.build();
+    }
+
+    try {
+      KeyStore clientStore = KeyStore.getInstance(tls.getKeyStoreInstanceType().name());
+      try (InputStream in = new FileInputStream(tls.getCertificatePath())) {
+        clientStore.load(in, tls.getCertificatePassword().toCharArray());
+      }
+      KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keyManagerFactory.init(clientStore, tls.getCertificatePassword().toCharArray());
+
+      KeyStore trustStore = KeyStore.getInstance(tls.getKeyStoreInstanceType().name());
+      try (InputStream in = new FileInputStream(tls.getKeyStorePath())) {
+        trustStore.load(in, tls.getKeyStorePassword().toCharArray());
+      }
+      TrustManagerFactory trustManagerFactory = TrustManagerFactory
+          .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(trustStore);
+
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+      return registryBuilder.register("https", new SSLConnectionSocketFactory(sslContext)).build();
+    } catch (Exception e) {
+      throw new TransportException(e);
+    }
+  }
+}
@@ -0,0 +1,504 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.Check;
+import com.ecwid.consul.v1.health.model.HealthService;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * 多服务watch的复用器
+ *
+ * 无论watch多少个服务，只通过两个阻塞查询感知变化：服务目录(getCatalogServices)及健康检查状态(getHealthChecksState)。
+ * 根据两次结果的差异得出发生变化的服务，再以有限的并发(maxConcurrentFetches)只查询这些服务，内容有变化时通知订阅者；
+ * 服务目录有变化但服务列表不变时(例如已有服务新增了实例)，由健康检查的变化确定具体服务(带健康检查的实例注册、注销时
+ * 健康检查同时变化)；健康检查没有变化时，延迟probeDelay合并多次变化，再读取被watch服务的index(不解析响应体)，
+ * 每轮最多maxProbes个服务，只重新查询index有变化的服务。
+ * 连接数及线程数与被watch的服务数无关。
+ *
+ * ACL token、不经过缓存的查询及index读取需要ClusterConsulClient，其他ConsulClient查询健康检查时不带token
+ */
+@Slf4j
+public class ConsulWatchMultiplexer implements AutoCloseable {
+
+  private static final int RECENT_CHECKS_INDEXES = 64;
+
+  private final ConsulClient consulClient;
+
+  /**
+   * consulClient不是ClusterConsulClient时为null
+   */
+  private final ClusterConsulClient clusterConsulClient;
+
+  private final ClusterConsulProperties.WatchConfig watchConfig;
+
+  private final String aclToken;
+
+  /**
+   * serviceName -> 被watch的服务
+   */
+  private final Map<String, WatchedService> watchedServices = Maps.newConcurrentMap();
+
+  /**
+   * 已提交查询、尚未开始查询的服务
+   */
+  private final Set<String> pendingServices = Sets.newConcurrentHashSet();
+
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  private volatile boolean running = true;
+
+  private final ExecutorService watchExecutor;
+
+  private final ScheduledExecutorService fetchExecutor;
+
+  @Getter
+  private volatile long catalogIndex;
+
+  @Getter
+  private volatile long checksIndex;
+
+  private final LongAdder fetches = new LongAdder();
+
+  private final LongAdder notifications = new LongAdder();
+
+  private final LongAdder probes = new LongAdder();
+
+  /**
+   * 等待读取index的服务，以下集合均由probeBacklog同步
+   */
+  private final Set<String> probeBacklog = new LinkedHashSet<>();
+
+  /**
+   * 无法确定具体服务的服务目录变化的index
+   */
+  private final Set<Long> unattributedCatalogIndexes = new HashSet<>();
+
+  /**
+   * 最近健康检查有变化的index，只保留最近RECENT_CHECKS_INDEXES个
+   */
+  private final Set<Long> changedChecksIndexes = new LinkedHashSet<>();
+
+  private final AtomicBoolean probeScheduled = new AtomicBoolean();
+
+  public ConsulWatchMultiplexer(ConsulClient consulClient, ClusterConsulProperties.WatchConfig watchConfig,
+      String aclToken) {
+    this.consulClient = consulClient;
+    this.clusterConsulClient = consulClient instanceof ClusterConsulClient ? (ClusterConsulClient) consulClient : null;
+    this.watchConfig = watchConfig;
+    this.aclToken = aclToken;
+    if (this.clusterConsulClient == null && ObjectUtils.isNotEmpty(aclToken)) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> {} does not support ACL token for health checks, "
+          + "check changes may not be visible <<<", consulClient.getClass().getSimpleName());
+    }
+    this.watchExecutor = Executors.newFixedThreadPool(2,
+        new ThreadFactoryBuilder().setNameFormat("consul-watch-%d").setDaemon(true).build());
+    this.fetchExecutor = Executors.newScheduledThreadPool(Math.max(1, watchConfig.getMaxConcurrentFetches()),
+        new ThreadFactoryBuilder().setNameFormat("consul-watch-fetch-%d").setDaemon(true).build());
+  }
+
+  /**
+   * 订阅服务的健康实例列表，首次订阅时立即查询一次，之后仅在内容变化时通知
+   *
+   * @param serviceName - 服务名
+   * @param listener - 服务已有查询结果时在调用方线程中立即通知一次，之后在查询线程中调用，不应阻塞
+   */
+  public Subscription subscribe(String serviceName, Consumer<List<HealthService>> listener) {
+    WatchedService watchedService = this.watchedServices.computeIfAbsent(serviceName, WatchedService::new);
+    watchedService.listeners.add(listener);
+    List<HealthService> lastValue = watchedService.lastValue;
+    if (lastValue != null) {
+      listener.accept(lastValue);
+    } else {
+      refresh(Collections.singleton(serviceName));
+    }
+    if (this.started.compareAndSet(false, true)) {
+      this.watchExecutor.execute(this::watchCatalog);
+      this.watchExecutor.execute(this::watchChecks);
+    }
+
+    return new Subscription(serviceName, listener);
+  }
+
+  /**
+   * 被watch的服务
+   */
+  public Set<String> getWatchedServices() {
+    return Collections.unmodifiableSet(this.watchedServices.keySet());
+  }
+
+  /**
+   * 查询服务的次数
+   */
+  public long getFetches() {
+    return this.fetches.sum();
+  }
+
+  /**
+   * 读取服务index的次数
+   */
+  public long getProbes() {
+    return this.probes.sum();
+  }
+
+  /**
+   * 内容变化并通知订阅者的次数
+   */
+  public long getNotifications() {
+    return this.notifications.sum();
+  }
+
+  @Override
+  public void close() {
+    this.running = false;
+    this.watchExecutor.shutdownNow();
+    this.fetchExecutor.shutdownNow();
+  }
+
+  private void watchCatalog() {
+    Map<String, List<String>> lastServices = null;
+    while (this.running) {
+      try {
+        Response<Map<String, List<String>>> response = this.consulClient.getCatalogServices(
+            new QueryParams(this.watchConfig.getWaitTime(), this.catalogIndex), this.aclToken);
+        long index = indexOf(response);
+        if (index <= 0L) {
+          throw new IllegalStateException("Missing X-Consul-Index");
+        }
+        if (index == this.catalogIndex) {
+          continue;
+        }
+        // consul重建等情况下index可能回退，此时从头开始
+        this.catalogIndex = index < this.catalogIndex ? 0L : index;
+        Map<String, List<String>> services = response.getValue() == null ? Collections.emptyMap() : response.getValue();
+        if (lastServices != null) {
+          Map<String, List<String>> previous = lastServices;
+          Set<String> changedServices = Sets.union(services.keySet(), previous.keySet()).stream()
+              .filter(serviceName -> !Objects.equals(services.get(serviceName), previous.get(serviceName)))
+              .collect(Collectors.toSet());
+          if (changedServices.isEmpty()) {
+            // 服务列表没有变化时无法确定是哪个服务的实例发生了变化，由健康检查的变化或各服务的index判断
+            probe(index, this.watchedServices.keySet());
+          } else {
+            refresh(changedServices);
+          }
+        }
+        lastServices = services;
+      } catch (Exception e) {
+        onWatchError("catalog", e);
+      }
+    }
+  }
+
+  private void watchChecks() {
+    Map<String, Long> lastFingerprints = null;
+    while (this.running) {
+      try {
+        Response<List<Check>> response = getHealthChecksState(
+            new QueryParams(this.watchConfig.getWaitTime(), this.checksIndex));
+        long index = indexOf(response);
+        if (index <= 0L) {
+          throw new IllegalStateException("Missing X-Consul-Index");
+        }
+        if (index == this.checksIndex) {
+          continue;
+        }
+        this.checksIndex = index < this.checksIndex ? 0L : index;
+        Map<String, Long> fingerprints = checkFingerprints(response.getValue());
+        if (lastFingerprints != null) {
+          Map<String, Long> previous = lastFingerprints;
+          Set<String> changedServices = Sets.union(fingerprints.keySet(), previous.keySet()).stream()
+              .filter(serviceName -> !Objects.equals(fingerprints.get(serviceName), previous.get(serviceName)))
+              .collect(Collectors.toSet());
+          if (!changedServices.isEmpty()) {
+            onChecksChanged(index);
+          }
+          refresh(changedServices);
+        }
+        lastFingerprints = fingerprints;
+      } catch (Exception e) {
+        onWatchError("checks", e);
+      }
+    }
+  }
+
+  private Response<List<Check>> getHealthChecksState(QueryParams queryParams) {
+    if (this.clusterConsulClient != null) {
+      return this.clusterConsulClient.getHealthChecksState(queryParams, this.aclToken);
+    }
+
+    return this.consulClient.getHealthChecksState(queryParams);
+  }
+
+  /**
+   * 按服务汇总健康检查的状态及修改index
+   */
+  private static Map<String, Long> checkFingerprints(List<Check> checks) {
+    Map<String, Hasher> hashers = Maps.newHashMap();
+    if (ObjectUtils.isNotEmpty(checks)) {
+      checks.stream().filter(check -> ObjectUtils.isNotEmpty(check.getServiceName()))
+          .sorted((a, b) -> (a.getNode() + a.getCheckId()).compareTo(b.getNode() + b.getCheckId()))
+          .forEach(check -> hashers.computeIfAbsent(check.getServiceName(), key -> Hashing.murmur3_128().newHasher())
+              .putUnencodedChars(check.getNode() + CommonConstant.SEPARATOR_COLON + check.getCheckId())
+              .putUnencodedChars(String.valueOf(check.getStatus()))
+              .putLong(check.getModifyIndex() == null ? 0L : check.getModifyIndex()));
+    }
+
+    return hashers.entrySet().stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().hash().asLong()));
+  }
+
+  private void onWatchError(String watch, Exception e) {
+    if (!this.running) {
+      return;
+    }
+    log.warn(CommonConstant.LOG_PREFIX + ">>> Watch {} failed, retry in {}ms: {} <<<", watch,
+        this.watchConfig.getErrorDelay(), e.toString());
+    try {
+      TimeUnit.MILLISECONDS.sleep(this.watchConfig.getErrorDelay());
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      this.running = false;
+    }
+  }
+
+  private static long indexOf(Response<?> response) {
+    return response.getConsulIndex() == null ? 0L : response.getConsulIndex();
+  }
+
+  /**
+   * 提交被watch的服务的查询，已在等待查询的服务不重复提交
+   */
+  private void refresh(Collection<String> serviceNames) {
+    for (String serviceName : new ArrayList<>(serviceNames)) {
+      if (this.watchedServices.containsKey(serviceName) && this.pendingServices.add(serviceName)) {
+        this.fetchExecutor.execute(() -> fetch(serviceName));
+      }
+    }
+  }
+
+  /**
+   * 延迟probeDelay后读取被watch的服务的index，与上次查询时不同才重新查询；不支持读取index时直接重新查询
+   */
+  private void probe(long catalogIndex, Collection<String> serviceNames) {
+    if (this.clusterConsulClient == null) {
+      refresh(serviceNames);
+      return;
+    }
+    synchronized (this.probeBacklog) {
+      this.unattributedCatalogIndexes.add(catalogIndex);
+      this.probeBacklog.addAll(serviceNames);
+    }
+    scheduleProbes();
+  }
+
+  private void onChecksChanged(long checksIndex) {
+    synchronized (this.probeBacklog) {
+      this.changedChecksIndexes.add(checksIndex);
+      Iterator<Long> iterator = this.changedChecksIndexes.iterator();
+      while (this.changedChecksIndexes.size() > RECENT_CHECKS_INDEXES) {
+        iterator.next();
+        iterator.remove();
+      }
+    }
+  }
+
+  private void scheduleProbes() {
+    if (this.running && this.probeScheduled.compareAndSet(false, true)) {
+      this.fetchExecutor.schedule(this::probeRound, this.watchConfig.getProbeDelay(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 一轮读取：服务目录与健康检查在同一index变化时(同一次注册、注销)，变化的服务已由健康检查watch确定，不再读取
+   */
+  private void probeRound() {
+    this.probeScheduled.set(false);
+    List<String> serviceNames = new ArrayList<>();
+    boolean remaining;
+    synchronized (this.probeBacklog) {
+      this.unattributedCatalogIndexes.removeAll(this.changedChecksIndexes);
+      if (this.unattributedCatalogIndexes.isEmpty()) {
+        this.probeBacklog.clear();
+        return;
+      }
+      Iterator<String> iterator = this.probeBacklog.iterator();
+      while (iterator.hasNext() && serviceNames.size() < Math.max(1, this.watchConfig.getMaxProbes())) {
+        serviceNames.add(iterator.next());
+        iterator.remove();
+      }
+      remaining = !this.probeBacklog.isEmpty();
+      if (!remaining) {
+        this.unattributedCatalogIndexes.clear();
+      }
+    }
+    for (String serviceName : serviceNames) {
+      WatchedService watchedService = this.watchedServices.get(serviceName);
+      if (watchedService != null && !this.pendingServices.contains(serviceName)) {
+        this.fetchExecutor.execute(() -> probe(watchedService));
+      }
+    }
+    if (remaining) {
+      scheduleProbes();
+    }
+  }
+
+  private void probe(WatchedService watchedService) {
+    if (!this.running) {
+      return;
+    }
+    try {
+      this.probes.increment();
+      Long index = this.clusterConsulClient.getHealthServiceIndex(watchedService.serviceName, this.aclToken);
+      if (index == null || index != watchedService.lastIndex) {
+        refresh(Collections.singleton(watchedService.serviceName));
+      }
+    } catch (Exception e) {
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Probe watched service {} failed: {} <<<",
+          watchedService.serviceName, e.toString());
+      refresh(Collections.singleton(watchedService.serviceName));
+    }
+  }
+
+  private void fetch(String serviceName) {
+    // 查询开始前移出，查询期间再次变化时重新提交
+    this.pendingServices.remove(serviceName);
+    WatchedService watchedService = this.watchedServices.get(serviceName);
+    if (watchedService == null || !this.running) {
+      return;
+    }
+    try {
+      this.fetches.increment();
+      Response<List<HealthService>> response = this.clusterConsulClient != null
+          ? this.clusterConsulClient.getHealthServicesUncached(serviceName, this.watchConfig.isOnlyPassing(),
+              this.aclToken)
+          : this.consulClient.getHealthServices(serviceName, this.watchConfig.isOnlyPassing(), QueryParams.DEFAULT,
+              this.aclToken);
+      watchedService.lastIndex = indexOf(response);
+      watchedService.update(response.getValue() == null ? Collections.emptyList() : response.getValue());
+    } catch (Exception e) {
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Fetch watched service {} failed, retry in {}ms: {} <<<", serviceName,
+          this.watchConfig.getErrorDelay(), e.toString());
+      this.fetchExecutor.schedule(() -> refresh(Collections.singleton(serviceName)), this.watchConfig.getErrorDelay(),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 实例列表的指纹：节点、实例、地址、端口、标签及健康检查状态
+   */
+  private static long fingerprint(List<HealthService> healthServices) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    healthServices.stream().map(healthService -> {
+      StringBuilder builder = new StringBuilder();
+      HealthService.Service service = healthService.getService();
+      builder.append(healthService.getNode() == null ? null : healthService.getNode().getNode())
+          .append(CommonConstant.SEPARATOR_COLON).append(service == null ? null : service.getId())
+          .append(CommonConstant.SEPARATOR_COLON).append(service == null ? null : service.getAddress())
+          .append(CommonConstant.SEPARATOR_COLON).append(service == null ? null : service.getPort())
+          .append(CommonConstant.SEPARATOR_COLON).append(service == null ? null : service.getTags());
+      if (healthService.getChecks() != null) {
+        healthService.getChecks().forEach(check -> builder.append(check.getCheckId()).append(check.getStatus()));
+      }
+      return builder.toString();
+    }).sorted().forEach(hasher::putUnencodedChars);
+
+    return hasher.hash().asLong();
+  }
+
+  /**
+   * 被watch的服务及其订阅者
+   */
+  private class WatchedService {
+
+    private final String serviceName;
+
+    private final List<Consumer<List<HealthService>>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile List<HealthService> lastValue;
+
+    private volatile long lastFingerprint;
+
+    /**
+     * 上次查询时服务的index
+     */
+    private volatile long lastIndex;
+
+    WatchedService(String serviceName) {
+      this.serviceName = serviceName;
+    }
+
+    synchronized void update(List<HealthService> healthServices) {
+      long newFingerprint = fingerprint(healthServices);
+      if (this.lastValue != null && newFingerprint == this.lastFingerprint) {
+        return;
+      }
+      this.lastValue = healthServices;
+      this.lastFingerprint = newFingerprint;
+      notifications.increment();
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Watched service {} changed: {} instances <<<", this.serviceName,
+          healthServices.size());
+      for (Consumer<List<HealthService>> listener : this.listeners) {
+        try {
+          listener.accept(healthServices);
+        } catch (Exception e) {
+          log.warn(CommonConstant.LOG_PREFIX + ">>> Watch listener of {} failed: {} <<<", this.serviceName,
+              e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * 订阅，关闭后不再通知；服务没有订阅者时停止watch
+   */
+  public class Subscription implements AutoCloseable {
+
+    @Getter
+    private final String serviceName;
+
+    private final Consumer<List<HealthService>> listener;
+
+    Subscription(String serviceName, Consumer<List<HealthService>> listener) {
+      this.serviceName = serviceName;
+      this.listener = listener;
+    }
+
+    @Override
+    public void close() {
+      watchedServices.computeIfPresent(this.serviceName, (key, watchedService) -> {
+        watchedService.listeners.remove(this.listener);
+        return watchedService.listeners.isEmpty() ? null : watchedService;
+      });
+    }
+  }
+}
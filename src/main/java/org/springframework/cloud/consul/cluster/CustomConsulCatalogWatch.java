@@ -0,0 +1,149 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+import org.springframework.cloud.consul.discovery.ConsulCatalogWatch;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * 自定义ConsulCatalogWatch
+ *
+ * 默认的ConsulCatalogWatch每次轮询都发布HeartbeatEvent，即使服务目录没有变化也会触发各监听者刷新。
+ * 这里使用阻塞查询等待index变化，index变化后再比较服务目录内容(服务名及标签)的指纹，内容确实变化时才发布ConsulCatalogChangedEvent
+ */
+@Slf4j
+public class CustomConsulCatalogWatch extends ConsulCatalogWatch {
+
+  private final ConsulDiscoveryProperties properties;
+
+  private final ConsulClient consulClient;
+
+  private ApplicationEventPublisher publisher;
+
+  private volatile long catalogIndex = -1L;
+
+  private volatile Map<String, List<String>> lastServices;
+
+  private volatile long lastFingerprint;
+
+  private final LongAdder published = new LongAdder();
+
+  private final LongAdder suppressed = new LongAdder();
+
+  public CustomConsulCatalogWatch(ConsulDiscoveryProperties properties, ConsulClient consulClient) {
+    super(properties, consulClient);
+    this.properties = properties;
+    this.consulClient = consulClient;
+  }
+
+  @Override
+  public void setApplicationEventPublisher(ApplicationEventPublisher publisher) {
+    super.setApplicationEventPublisher(publisher);
+    this.publisher = publisher;
+  }
+
+  @Override
+  public synchronized void catalogServicesWatch() {
+    try {
+      long index = this.catalogIndex;
+      Response<Map<String, List<String>>> response = this.consulClient.getCatalogServices(
+          new QueryParams(this.properties.getCatalogServicesWatchTimeout(), index), this.properties.getAclToken());
+      Long consulIndex = response.getConsulIndex();
+      if (consulIndex != null) {
+        if (consulIndex == index) {
+          return;
+        }
+        this.catalogIndex = consulIndex;
+      }
+
+      Map<String, List<String>> services = normalize(response.getValue());
+      long fingerprint = fingerprint(services);
+      Map<String, List<String>> previous = this.lastServices;
+      if (previous != null && fingerprint == this.lastFingerprint) {
+        this.suppressed.increment();
+        log.trace(CommonConstant.LOG_PREFIX + ">>> Catalog index changed to {} but services unchanged <<<", consulIndex);
+        return;
+      }
+      this.lastServices = services;
+      this.lastFingerprint = fingerprint;
+
+      ConsulCatalogChangedEvent event = diff(consulIndex == null ? -1L : consulIndex,
+          previous == null ? Collections.emptyMap() : previous, services);
+      log.debug(CommonConstant.LOG_PREFIX + ">>> Catalog services changed : {} <<<", event);
+      this.published.increment();
+      this.publisher.publishEvent(event);
+    } catch (Exception e) {
+      log.error(CommonConstant.LOG_PREFIX + ">>> Error watching consul catalog services <<<", e);
+    }
+  }
+
+  private ConsulCatalogChangedEvent diff(long index, Map<String, List<String>> previous,
+      Map<String, List<String>> services) {
+    Set<String> added = ImmutableSet.copyOf(Sets.difference(services.keySet(), previous.keySet()));
+    Set<String> removed = ImmutableSet.copyOf(Sets.difference(previous.keySet(), services.keySet()));
+    Set<String> changed = Sets.intersection(services.keySet(), previous.keySet()).stream()
+        .filter(serviceName -> !Objects.equals(services.get(serviceName), previous.get(serviceName)))
+        .collect(ImmutableSet.toImmutableSet());
+
+    return new ConsulCatalogChangedEvent(this, index, added, removed, changed);
+  }
+
+  /**
+   * 服务名及标签排序，使指纹与consul返回的顺序无关
+   */
+  private static Map<String, List<String>> normalize(Map<String, List<String>> services) {
+    Map<String, List<String>> normalized = new TreeMap<>();
+    if (ObjectUtils.isNotEmpty(services)) {
+      services.forEach((serviceName, tags) -> normalized.put(serviceName, tags == null ? Collections.emptyList()
+          : tags.stream().sorted().collect(Collectors.toList())));
+    }
+
+    return normalized;
+  }
+
+  private static long fingerprint(Map<String, List<String>> services) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    services.forEach((serviceName, tags) -> {
+      hasher.putInt(serviceName.length()).putUnencodedChars(serviceName).putInt(tags.size());
+      tags.forEach(tag -> hasher.putInt(tag.length()).putUnencodedChars(tag));
+    });
+
+    return hasher.hash().asLong();
+  }
+
+  public long getCatalogIndex() {
+    return this.catalogIndex;
+  }
+
+  /**
+   * 发布变化事件的次数
+   */
+  public long getPublished() {
+    return this.published.sum();
+  }
+
+  /**
+   * index变化但内容没有变化、未发布事件的次数
+   */
+  public long getSuppressed() {
+    return this.suppressed.sum();
+  }
+}
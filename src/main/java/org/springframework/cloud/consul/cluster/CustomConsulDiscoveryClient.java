@@ -1,12 +1,16 @@
 package org.springframework.cloud.consul.cluster;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.HealthService;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.cloud.client.ServiceInstance;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
@@ -15,30 +19,64 @@ import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
  * 自定义的ConsulDiscoveryClient
  *
  * 解决微服务在不同consul节点上重复注册导致getInstances方法返回的结果集重复问题
+ *
+ * 返回紧凑的ConsulInstance，不保留完整的HealthService
  */
 @Slf4j
 public class CustomConsulDiscoveryClient extends ConsulDiscoveryClient {
 
+  private final ConsulClient client;
+
+  private final ConsulDiscoveryProperties properties;
+
   public CustomConsulDiscoveryClient(ConsulClient client,
       ConsulDiscoveryProperties properties) {
     super(client, properties);
+    this.client = client;
+    this.properties = properties;
+  }
+
+  @Override
+  public List<ServiceInstance> getInstances(String serviceId) {
+    return getInstances(serviceId, QueryParams.DEFAULT);
   }
 
   /**
    * 重写getInstances方法去重
    */
   @Override
-  public List<ServiceInstance> getInstances(String serviceId) {
-    List<ServiceInstance> instances = super.getInstances(serviceId);
-    log.info(CommonConstant.LOG_PREFIX + ">>> Before distinct:  Get instances of service({}) from consul : {} <<<", serviceId,
-        instances);
-    Map<String, ServiceInstance> filteredInstances = new HashMap<>();
-    for (ServiceInstance instance : instances) { // 去重
-      filteredInstances.putIfAbsent(instance.getInstanceId(), instance);
+  public List<ServiceInstance> getInstances(String serviceId, QueryParams queryParams) {
+    String aclToken = this.properties.getAclToken();
+    if (this.client instanceof ClusterConsulClient) {
+      // 从响应流直接解析为ConsulInstance
+      List<ConsulInstance> instanceList = ((ClusterConsulClient) this.client).getHealthInstances(serviceId,
+          this.properties.getDefaultQueryTag(), this.properties.isQueryPassing(), queryParams, aclToken).getValue();
+      List<ServiceInstance> result = instanceList == null ? new ArrayList<>() : new ArrayList<>(instanceList);
+      log.info(CommonConstant.LOG_PREFIX + ">>> Get instances of service({}) from consul : {} <<<", serviceId, result);
+
+      return result;
     }
-    instances = new ArrayList<>(filteredInstances.values());
-    log.info(CommonConstant.LOG_PREFIX + ">>> After distinct:  Get instances of service({}) from consul : {} <<<", serviceId,
-        instances);
+    Response<List<HealthService>> response = StringUtils.isNotBlank(aclToken)
+        ? this.client.getHealthServices(serviceId, this.properties.getDefaultQueryTag(),
+        this.properties.isQueryPassing(), queryParams, aclToken)
+        : this.client.getHealthServices(serviceId, this.properties.getDefaultQueryTag(),
+            this.properties.isQueryPassing(), queryParams);
+    Map<String, ServiceInstance> instances = new LinkedHashMap<>();
+    if (response.getValue() != null) {
+      for (HealthService service : response.getValue()) { // 去重
+        instances.computeIfAbsent(service.getService().getId(), instanceId -> ConsulInstance.of(service));
+      }
+    }
+    List<ServiceInstance> result = new ArrayList<>(instances.values());
+    log.info(CommonConstant.LOG_PREFIX + ">>> Get instances of service({}) from consul : {} <<<", serviceId, result);
+
+    return result;
+  }
+
+  @Override
+  public List<ServiceInstance> getAllInstances() {
+    List<ServiceInstance> instances = new ArrayList<>();
+    getServices().forEach(serviceId -> instances.addAll(getInstances(serviceId)));
 
     return instances;
   }
@@ -5,6 +5,9 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
+import org.springframework.cloud.consul.ConsulProperties;
+import org.springframework.cloud.consul.discovery.ConsulCatalogWatch;
+import org.springframework.cloud.consul.discovery.ConsulCatalogWatchAutoConfiguration;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryClient;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryClientConfiguration;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
@@ -21,7 +24,7 @@ import com.ecwid.consul.v1.ConsulClient;
 @ConditionalOnConsulEnabled
 @ConditionalOnClass(ConsulDiscoveryProperties.class)
 @ConditionalOnProperty(value = "spring.cloud.consul.discovery.enabled", matchIfMissing = true)
-@AutoConfigureBefore(ConsulDiscoveryClientConfiguration.class)
+@AutoConfigureBefore({ConsulDiscoveryClientConfiguration.class, ConsulCatalogWatchAutoConfiguration.class})
 @RibbonClients(defaultConfiguration = CustomConsulRibbonClientConfiguration.class)
 public class CustomConsulDiscoveryClientConfiguration {
 
@@ -35,4 +38,29 @@ public class CustomConsulDiscoveryClientConfiguration {
     return new CustomConsulDiscoveryClient(consulClient, discoveryProperties);
   }
 
+  /**
+   * 自定义的ConsulCatalogWatch，服务目录内容变化时才发布事件
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(name = "spring.cloud.consul.discovery.catalog-services-watch.enabled", matchIfMissing = true)
+  public ConsulCatalogWatch consulCatalogWatch(ConsulDiscoveryProperties discoveryProperties,
+      ConsulClient consulClient) {
+    return new CustomConsulCatalogWatch(discoveryProperties, consulClient);
+  }
+
+  /**
+   * 多服务watch复用器，首次订阅时才开始watch
+   */
+  @Bean(destroyMethod = "close")
+  @ConditionalOnMissingBean
+  public ConsulWatchMultiplexer consulWatchMultiplexer(ConsulClient consulClient, ConsulProperties consulProperties,
+      ConsulDiscoveryProperties discoveryProperties) {
+    ClusterConsulProperties.WatchConfig watchConfig = consulProperties instanceof ClusterConsulProperties
+        ? ((ClusterConsulProperties) consulProperties).getWatch()
+        : new ClusterConsulProperties.WatchConfig();
+
+    return new ConsulWatchMultiplexer(consulClient, watchConfig, discoveryProperties.getAclToken());
+  }
+
 }
@@ -1,12 +1,17 @@
 package org.springframework.cloud.consul.cluster;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.Response;
 import com.ecwid.consul.v1.health.model.HealthService;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
 import org.springframework.cloud.consul.discovery.ConsulServer;
@@ -16,12 +21,38 @@ import org.springframework.cloud.consul.discovery.ConsulServerList;
  * 自定义ConsulServerList
  *
  * 解决微服务在不同consul节点上重复注册导致ServerList结果集重复问题
+ *
+ * 增量更新：响应的consul index没有变化时直接返回上次的结果；实例的modify index(服务、节点及健康检查中最大的)没有变化时复用上次的ConsulServer，
+ * 每次更新的新增、删除、变化的实例记录在getLastDelta()中，用于日志及调用方查询；
+ * Ribbon的负载均衡器仍然使用getUpdatedListOfServers()返回的完整列表，不消费该增量
  */
 @Slf4j
 public class CustomConsulServerList extends ConsulServerList {
 
   private final ConsulDiscoveryProperties properties;
 
+  /**
+   * 上次响应的consul index
+   */
+  private long lastIndex = -1L;
+
+  private List<ConsulServer> lastServers;
+
+  /**
+   * instanceId -> 上次的ConsulServer
+   */
+  private Map<String, CachedServer> cachedServers = Collections.emptyMap();
+
+  /**
+   * 最近一次更新的变化，仅供查询，负载均衡器不使用
+   */
+  @Getter
+  private volatile ServerListDelta lastDelta = ServerListDelta.EMPTY;
+
+  private final LongAdder skipped = new LongAdder();
+
+  private final LongAdder reused = new LongAdder();
+
   public CustomConsulServerList(ConsulClient client,
       ConsulDiscoveryProperties properties) {
     super(client, properties);
@@ -30,7 +61,7 @@ public class CustomConsulServerList extends ConsulServerList {
 
   @Override
   public List<ConsulServer> getInitialListOfServers() {
-    List<ConsulServer> servers = super.getInitialListOfServers();
+    List<ConsulServer> servers = getServers();
     log.info(CommonConstant.LOG_PREFIX + ">>> Get initial servers : {} <<<", servers);
 
     return servers;
@@ -38,27 +69,85 @@ public class CustomConsulServerList extends ConsulServerList {
 
   @Override
   public List<ConsulServer> getUpdatedListOfServers() {
-    List<ConsulServer> servers = super.getUpdatedListOfServers();
-    log.info(CommonConstant.LOG_PREFIX + ">>> Get update servers : {} <<<", servers);
+    List<ConsulServer> servers = getServers();
+    log.info(CommonConstant.LOG_PREFIX + ">>> Get update servers : {} , delta : {} <<<", servers, this.lastDelta);
 
     return servers;
   }
 
+  private synchronized List<ConsulServer> getServers() {
+    if (getClient() == null) {
+      return Collections.emptyList();
+    }
+    Response<List<HealthService>> response = getClient().getHealthServices(getServiceId(), getTag(),
+        this.properties.isQueryPassing(), createQueryParamsForClientRequest(), this.properties.getAclToken());
+    Long index = response.getConsulIndex();
+    if (index != null && index == this.lastIndex && this.lastServers != null) {
+      this.skipped.increment();
+      this.lastDelta = ServerListDelta.EMPTY;
+
+      return new ArrayList<>(this.lastServers);
+    }
+
+    List<ConsulServer> servers = transformResponse(
+        response.getValue() == null ? Collections.emptyList() : response.getValue());
+    this.lastIndex = index == null ? -1L : index;
+    this.lastServers = servers;
+
+    return new ArrayList<>(servers);
+  }
+
   @Override
-  protected List<ConsulServer> transformResponse(List<HealthService> healthServices) {
-    Map<String, ConsulServer> servers = new HashMap<>();
+  protected synchronized List<ConsulServer> transformResponse(List<HealthService> healthServices) {
+    Map<String, CachedServer> servers = new LinkedHashMap<>();
+    List<ConsulServer> added = new ArrayList<>();
+    List<ConsulServer> changed = new ArrayList<>();
     for (HealthService service : healthServices) {
       String instanceId = service.getService().getId();
-      ConsulServer server = new ConsulServer(service);
-      if (server.getMetadata()
-          .containsKey(this.properties.getDefaultZoneMetadataName())) {
-        server.setZone(server.getMetadata()
-            .get(this.properties.getDefaultZoneMetadataName()));
+      if (servers.containsKey(instanceId)) { // 去重
+        continue;
+      }
+      long modifyIndex = ConsulInstance.modifyIndex(service);
+      CachedServer cachedServer = this.cachedServers.get(instanceId);
+      if (cachedServer != null && modifyIndex > 0L && cachedServer.modifyIndex == modifyIndex) {
+        this.reused.increment();
+      } else {
+        ConsulInstance instance = ConsulInstance.of(service);
+        ConsulServer server = createServer(instance);
+        (cachedServer == null ? added : changed).add(server);
+        cachedServer = new CachedServer(server, modifyIndex);
       }
-      servers.putIfAbsent(instanceId, server); // 去重
+      servers.put(instanceId, cachedServer);
+    }
+
+    List<ConsulServer> removed = new ArrayList<>();
+    this.cachedServers.forEach((instanceId, cachedServer) -> {
+      if (!servers.containsKey(instanceId)) {
+        removed.add(cachedServer.server);
+      }
+    });
+    this.cachedServers = servers;
+    this.lastDelta = added.isEmpty() && removed.isEmpty() && changed.isEmpty() ? ServerListDelta.EMPTY
+        : new ServerListDelta(added, removed, changed);
+
+    List<ConsulServer> result = new ArrayList<>(servers.size());
+    servers.values().forEach(cachedServer -> result.add(cachedServer.server));
+
+    return result;
+  }
+
+  /**
+   * 使用紧凑的实例创建ConsulServer，不保留完整的HealthService
+   */
+  private ConsulServer createServer(ConsulInstance instance) {
+    ConsulServer server = new ConsulServer(instance.toHealthService());
+    if (server.getMetadata()
+        .containsKey(this.properties.getDefaultZoneMetadataName())) {
+      server.setZone(server.getMetadata()
+          .get(this.properties.getDefaultZoneMetadataName()));
     }
 
-    return new ArrayList<>(servers.values());
+    return server;
   }
 
   @Override
@@ -66,4 +155,52 @@ public class CustomConsulServerList extends ConsulServerList {
     return properties;
   }
 
+  /**
+   * consul index没有变化、跳过处理的次数
+   */
+  public long getSkipped() {
+    return this.skipped.sum();
+  }
+
+  /**
+   * 复用ConsulServer的次数
+   */
+  public long getReused() {
+    return this.reused.sum();
+  }
+
+  @AllArgsConstructor
+  private static class CachedServer {
+
+    private final ConsulServer server;
+
+    private final long modifyIndex;
+  }
+
+  /**
+   * 一次更新中新增、删除、变化(重新创建)的实例
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class ServerListDelta {
+
+    static final ServerListDelta EMPTY = new ServerListDelta(Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyList());
+
+    private final List<ConsulServer> added;
+
+    private final List<ConsulServer> removed;
+
+    private final List<ConsulServer> changed;
+
+    public boolean isEmpty() {
+      return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return "ServerListDelta{" + "added=" + added + ", removed=" + removed + ", changed=" + changed + '}';
+    }
+  }
+
 }
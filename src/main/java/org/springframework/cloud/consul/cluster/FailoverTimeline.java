@@ -0,0 +1,177 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * 一次节点故障(incident)的时间线
+ *
+ * 首次失败 -> 节点被标记为不健康 -> 选出新的当前节点 -> 完成重新注册 -> 节点恢复，
+ * 各阶段记录时间戳(毫秒)，未发生的阶段为0
+ */
+public class FailoverTimeline {
+
+  /**
+   * 时间线的阶段
+   */
+  public enum Phase {
+
+    /**
+     * 节点被标记为不健康
+     */
+    DETECT("detect"),
+
+    /**
+     * 选出新的当前节点
+     */
+    SWITCH("switch"),
+
+    /**
+     * 完成重新注册
+     */
+    REREGISTER("reregister"),
+
+    /**
+     * 节点恢复
+     */
+    RECOVER("recover");
+
+    @Getter
+    private final String value;
+
+    Phase(String value) {
+      this.value = value;
+    }
+  }
+
+  @Getter
+  private final long incidentId;
+
+  /**
+   * 故障节点
+   */
+  @Getter
+  private final String clientId;
+
+  /**
+   * 故障发生时该节点是否为当前节点
+   */
+  @Getter
+  private final boolean current;
+
+  @Getter
+  private final long firstFailureTime;
+
+  /**
+   * 首次失败的原因
+   */
+  @Getter
+  private final String cause;
+
+  @Getter
+  private volatile long markedUnhealthyTime;
+
+  @Getter
+  private volatile long switchedTime;
+
+  /**
+   * 切换后的当前节点
+   */
+  @Getter
+  private volatile String switchedTo;
+
+  @Getter
+  private volatile long reregisteredTime;
+
+  @Getter
+  private volatile long recoveredTime;
+
+  public FailoverTimeline(long incidentId, String clientId, boolean current, long firstFailureTime, String cause) {
+    this.incidentId = incidentId;
+    this.clientId = clientId;
+    this.current = current;
+    this.firstFailureTime = firstFailureTime;
+    this.cause = cause;
+  }
+
+  void markUnhealthy(long time) {
+    if (this.markedUnhealthyTime == 0) {
+      this.markedUnhealthyTime = time;
+    }
+  }
+
+  void switched(long time, String newClientId) {
+    if (this.switchedTime == 0) {
+      this.switchedTime = time;
+      this.switchedTo = newClientId;
+    }
+  }
+
+  void reregistered(long time) {
+    if (this.reregisteredTime == 0) {
+      this.reregisteredTime = time;
+    }
+  }
+
+  void recovered(long time) {
+    this.recoveredTime = time;
+  }
+
+  public boolean isClosed() {
+    return this.recoveredTime > 0;
+  }
+
+  /**
+   * 从首次失败到该阶段的耗时(毫秒)，该阶段未发生时返回-1
+   */
+  public long getDuration(Phase phase) {
+    long time;
+    switch (phase) {
+      case DETECT:
+        time = this.markedUnhealthyTime;
+        break;
+      case SWITCH:
+        time = this.switchedTime;
+        break;
+      case REREGISTER:
+        time = this.reregisteredTime;
+        break;
+      default:
+        time = this.recoveredTime;
+        break;
+    }
+
+    return time == 0 ? -1 : time - this.firstFailureTime;
+  }
+
+  /**
+   * 供actuator输出
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("incidentId", this.incidentId);
+    map.put("clientId", this.clientId);
+    map.put("current", this.current);
+    map.put("cause", this.cause);
+    map.put("firstFailureTime", this.firstFailureTime);
+    map.put("switchedTo", this.switchedTo);
+    Map<String, Long> durations = new LinkedHashMap<>();
+    for (Phase phase : Phase.values()) {
+      durations.put(phase.getValue(), getDuration(phase));
+    }
+    map.put("durations", durations);
+    map.put("closed", isClosed());
+
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return "{ incidentId = " + incidentId + ", clientId = " + clientId + ", current = " + current
+        + ", cause = " + cause + ", detect = " + getDuration(Phase.DETECT) + "ms, switch = "
+        + getDuration(Phase.SWITCH) + "ms, reregister = " + getDuration(Phase.REREGISTER) + "ms, recover = "
+        + getDuration(Phase.RECOVER) + "ms }";
+  }
+}
@@ -0,0 +1,156 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Maps;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+
+/**
+ * 故障转移时间线记录器
+ *
+ * 由ClusterConsulClient在重试失败、健康检测、重新选择节点、重新注册时调用，
+ * 每个故障节点对应一个进行中的时间线，节点恢复后移入历史记录
+ */
+@Slf4j
+public class FailoverTimelineRecorder {
+
+  private final int historySize;
+
+  private final AtomicLong incidentIdGenerator = new AtomicLong();
+
+  /**
+   * clientId -> 进行中的时间线
+   */
+  private final Map<String, FailoverTimeline> openIncidents = Maps.newConcurrentMap();
+
+  private final Deque<FailoverTimeline> history = new LinkedList<>();
+
+  private final List<PhaseListener> listeners = new CopyOnWriteArrayList<>();
+
+  public FailoverTimelineRecorder(int historySize) {
+    this.historySize = historySize;
+  }
+
+  public void addListener(PhaseListener listener) {
+    this.listeners.add(listener);
+  }
+
+  public void removeListener(PhaseListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  /**
+   * 节点请求失败，开始一个新的时间线(已有进行中的时间线时忽略)
+   */
+  public void onFailure(String clientId, boolean current, String cause) {
+    this.openIncidents.computeIfAbsent(clientId, key -> {
+      FailoverTimeline timeline = new FailoverTimeline(this.incidentIdGenerator.incrementAndGet(), clientId, current,
+          System.currentTimeMillis(), cause);
+      log.warn(CommonConstant.LOG_PREFIX + ">>> Failover incident {} opened for {} : {} <<<",
+          timeline.getIncidentId(), clientId, cause);
+
+      return timeline;
+    });
+  }
+
+  /**
+   * 节点被标记为不健康
+   */
+  public void onMarkedUnhealthy(String clientId, boolean current, String cause) {
+    onFailure(clientId, current, cause);
+    FailoverTimeline timeline = this.openIncidents.get(clientId);
+    if (ObjectUtils.isNotEmpty(timeline) && timeline.getMarkedUnhealthyTime() == 0) {
+      timeline.markUnhealthy(System.currentTimeMillis());
+      fire(timeline, FailoverTimeline.Phase.DETECT);
+    }
+  }
+
+  /**
+   * 当前节点由oldClientId切换为newClientId
+   */
+  public void onSwitched(String oldClientId, String newClientId) {
+    FailoverTimeline timeline = this.openIncidents.get(oldClientId);
+    if (ObjectUtils.isNotEmpty(timeline) && timeline.getSwitchedTime() == 0) {
+      timeline.switched(System.currentTimeMillis(), newClientId);
+      fire(timeline, FailoverTimeline.Phase.SWITCH);
+    }
+  }
+
+  /**
+   * 服务已在可用节点上重新注册
+   */
+  public void onReregistered() {
+    long now = System.currentTimeMillis();
+    for (FailoverTimeline timeline : this.openIncidents.values()) {
+      if (timeline.getReregisteredTime() == 0) {
+        timeline.reregistered(now);
+        fire(timeline, FailoverTimeline.Phase.REREGISTER);
+      }
+    }
+  }
+
+  /**
+   * 节点恢复健康，结束其时间线
+   */
+  public void onRecovered(String clientId) {
+    FailoverTimeline timeline = this.openIncidents.remove(clientId);
+    if (ObjectUtils.isEmpty(timeline)) {
+      return;
+    }
+    timeline.recovered(System.currentTimeMillis());
+    fire(timeline, FailoverTimeline.Phase.RECOVER);
+    log.info(CommonConstant.LOG_PREFIX + ">>> Failover incident closed: {} <<<", timeline);
+
+    synchronized (this.history) {
+      this.history.addFirst(timeline);
+      while (this.history.size() > this.historySize) {
+        this.history.removeLast();
+      }
+    }
+  }
+
+  public List<FailoverTimeline> getOpenIncidents() {
+    return new ArrayList<>(this.openIncidents.values());
+  }
+
+  /**
+   * 已结束的时间线，最近的在前
+   */
+  public List<FailoverTimeline> getHistory() {
+    synchronized (this.history) {
+      return new ArrayList<>(this.history);
+    }
+  }
+
+  private void fire(FailoverTimeline timeline, FailoverTimeline.Phase phase) {
+    long duration = timeline.getDuration(phase);
+    log.info(CommonConstant.LOG_PREFIX + ">>> Failover incident {} of {} : {} after {}ms <<<",
+        timeline.getIncidentId(), timeline.getClientId(), phase.getValue(), duration);
+    for (PhaseListener listener : this.listeners) {
+      try {
+        listener.onPhase(timeline, phase, duration);
+      } catch (Exception e) {
+        log.warn(CommonConstant.LOG_PREFIX + ">>> Failover phase listener failed: {} <<<", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * 时间线阶段监听器，例如导出为直方图
+   */
+  public interface PhaseListener {
+
+    /**
+     * @param durationMillis - 从首次失败到该阶段的耗时
+     */
+    void onPhase(FailoverTimeline timeline, FailoverTimeline.Phase phase, long durationMillis);
+  }
+}
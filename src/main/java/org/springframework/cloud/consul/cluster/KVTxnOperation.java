@@ -0,0 +1,127 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.ecwid.consul.json.GsonFactory;
+import lombok.Getter;
+
+/**
+ * consul事务(/v1/txn)中的单个KV操作
+ *
+ * set/delete是幂等的，批次重试时可直接重放；cas/delete-cas依赖ModifyIndex，
+ * 批次重试时由ClusterConsulClient校验其是否已经生效，避免把自身已提交的写入误报为冲突
+ */
+public class KVTxnOperation {
+
+  /**
+   * 操作类型
+   */
+  public enum Verb {
+
+    SET("set"), CAS("cas"), DELETE("delete"), DELETE_CAS("delete-cas");
+
+    @Getter
+    private final String value;
+
+    Verb(String value) {
+      this.value = value;
+    }
+  }
+
+  @Getter
+  private final Verb verb;
+
+  @Getter
+  private final String key;
+
+  /**
+   * 写入的值，删除操作为null
+   */
+  @Getter
+  private final byte[] value;
+
+  @Getter
+  private final long flags;
+
+  /**
+   * cas/delete-cas操作期望的ModifyIndex
+   */
+  @Getter
+  private final long index;
+
+  private KVTxnOperation(Verb verb, String key, byte[] value, long flags, long index) {
+    this.verb = verb;
+    this.key = key;
+    this.value = value;
+    this.flags = flags;
+    this.index = index;
+  }
+
+  public static KVTxnOperation set(String key, String value) {
+    return set(key, value.getBytes(StandardCharsets.UTF_8), 0L);
+  }
+
+  public static KVTxnOperation set(String key, byte[] value, long flags) {
+    return new KVTxnOperation(Verb.SET, key, value, flags, 0L);
+  }
+
+  public static KVTxnOperation cas(String key, String value, long index) {
+    return cas(key, value.getBytes(StandardCharsets.UTF_8), 0L, index);
+  }
+
+  public static KVTxnOperation cas(String key, byte[] value, long flags, long index) {
+    return new KVTxnOperation(Verb.CAS, key, value, flags, index);
+  }
+
+  public static KVTxnOperation delete(String key) {
+    return new KVTxnOperation(Verb.DELETE, key, null, 0L, 0L);
+  }
+
+  public static KVTxnOperation deleteCas(String key, long index) {
+    return new KVTxnOperation(Verb.DELETE_CAS, key, null, 0L, index);
+  }
+
+  /**
+   * 是否依赖ModifyIndex(非幂等)
+   */
+  public boolean isCheckAndSet() {
+    return this.verb == Verb.CAS || this.verb == Verb.DELETE_CAS;
+  }
+
+  /**
+   * 转换为consul事务中的一个操作: {"KV": {"Verb": ..., "Key": ..., ...}}
+   */
+  public Map<String, Object> toTxnOp() {
+    Map<String, Object> kv = new LinkedHashMap<>();
+    kv.put("Verb", this.verb.getValue());
+    kv.put("Key", this.key);
+    if (this.value != null) {
+      kv.put("Value", Base64.getEncoder().encodeToString(this.value));
+      kv.put("Flags", this.flags);
+    }
+    if (isCheckAndSet()) {
+      kv.put("Index", this.index);
+    }
+
+    return ImmutableMap.of("KV", kv);
+  }
+
+  /**
+   * 将一批操作编码为/v1/txn的请求体
+   */
+  public static String toPayload(List<KVTxnOperation> operations) {
+    return GsonFactory.getGson().toJson(operations.stream().map(KVTxnOperation::toTxnOp).collect(Collectors.toList()));
+  }
+
+  @Override
+  public String toString() {
+    return "{ verb = " + verb.getValue() + ", key = " + key + ", index = " + index + " }";
+  }
+}
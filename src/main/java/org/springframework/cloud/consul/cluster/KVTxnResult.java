@@ -0,0 +1,114 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+
+/**
+ * KV批量写入的执行结果
+ *
+ * 每个批次对应一个consul事务，批次内的操作要么全部生效要么全部回滚
+ */
+public class KVTxnResult {
+
+  /**
+   * 每个批次的执行结果，按批次顺序排列
+   */
+  @Getter
+  private final List<BatchResult> batchResults;
+
+  public KVTxnResult(List<BatchResult> batchResults) {
+    this.batchResults = Collections.unmodifiableList(new ArrayList<>(batchResults));
+  }
+
+  /**
+   * 是否全部批次都已提交
+   */
+  public boolean isAllCommitted() {
+    return this.batchResults.stream().allMatch(BatchResult::isCommitted);
+  }
+
+  /**
+   * 未提交(回滚或执行失败)的批次
+   */
+  public List<BatchResult> getFailed() {
+    return this.batchResults.stream().filter(batchResult -> !batchResult.isCommitted())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * 未生效的操作
+   */
+  public List<KVTxnOperation> getFailedOperations() {
+    return getFailed().stream().flatMap(batchResult -> batchResult.getOperations().stream())
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public String toString() {
+    return "{ batches = " + batchResults.size() + ", failed = " + getFailed() + " }";
+  }
+
+  /**
+   * 单个批次(事务)的执行结果
+   */
+  public static class BatchResult {
+
+    /**
+     * 批次序号
+     */
+    @Getter
+    private final int batchIndex;
+
+    @Getter
+    private final List<KVTxnOperation> operations;
+
+    /**
+     * 最终执行该批次的节点
+     */
+    @Getter
+    private final String clientId;
+
+    /**
+     * 事务是否已提交
+     */
+    @Getter
+    private final boolean committed;
+
+    /**
+     * 事务回滚的原因(consul返回的Errors)，例如cas冲突
+     */
+    @Getter
+    private final List<String> errors;
+
+    /**
+     * 所有节点都执行失败时的异常
+     */
+    @Getter
+    private final Throwable error;
+
+    @Getter
+    private final long latencyMillis;
+
+    public BatchResult(int batchIndex, List<KVTxnOperation> operations, String clientId, boolean committed,
+        List<String> errors, Throwable error, long latencyMillis) {
+      this.batchIndex = batchIndex;
+      this.operations = operations;
+      this.clientId = clientId;
+      this.committed = committed;
+      this.errors = errors == null ? Collections.emptyList() : errors;
+      this.error = error;
+      this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "{ batchIndex = " + batchIndex + ", size = " + operations.size() + ", clientId = " + clientId
+          + ", committed = " + committed + ", errors = " + errors
+          + (error == null ? "" : ", error = " + error.getMessage()) + ", latencyMillis = " + latencyMillis + " }";
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 相同请求合并(single-flight)
+ *
+ * 同一个key同时只有一个调用真正执行，执行期间到达的相同调用等待并共享其结果(或异常)；
+ * 执行结束后立即移除，不做缓存
+ *
+ * @param <K> - 请求的key，需实现equals/hashCode
+ */
+public class SingleFlight<K> {
+
+  /**
+   * key -> 正在执行的调用
+   */
+  private final Map<K, CompletableFuture<Object>> inFlightCalls = Maps.newConcurrentMap();
+
+  private final LongAdder executed = new LongAdder();
+
+  private final LongAdder shared = new LongAdder();
+
+  /**
+   * 执行调用，已有相同key的调用正在执行时等待并返回其结果
+   */
+  @SuppressWarnings("unchecked")
+  public <V> V execute(K key, Supplier<V> supplier) {
+    CompletableFuture<Object> call = new CompletableFuture<>();
+    CompletableFuture<Object> inFlightCall = this.inFlightCalls.putIfAbsent(key, call);
+    if (inFlightCall != null) {
+      this.shared.increment();
+      try {
+        return (V) inFlightCall.join();
+      } catch (CompletionException e) {
+        throw propagate(e.getCause());
+      }
+    }
+
+    this.executed.increment();
+    try {
+      V value = supplier.get();
+      call.complete(value);
+
+      return value;
+    } catch (RuntimeException | Error e) {
+      call.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.inFlightCalls.remove(key, call);
+    }
+  }
+
+  private static RuntimeException propagate(Throwable throwable) {
+    if (throwable instanceof Error) {
+      throw (Error) throwable;
+    }
+
+    return throwable instanceof RuntimeException ? (RuntimeException) throwable : new CompletionException(throwable);
+  }
+
+  public int getInFlight() {
+    return this.inFlightCalls.size();
+  }
+
+  /**
+   * 真正执行的调用数
+   */
+  public long getExecuted() {
+    return this.executed.sum();
+  }
+
+  /**
+   * 共享了其他调用结果的调用数
+   */
+  public long getShared() {
+    return this.shared.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "{ inFlight = " + getInFlight() + ", executed = " + getExecuted() + ", shared = " + getShared() + " }";
+  }
+}
@@ -0,0 +1,464 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ecwid.consul.transport.TransportException;
+import com.ecwid.consul.v1.ConsistencyMode;
+import com.ecwid.consul.v1.OperationException;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.agent.model.NewService;
+import com.ecwid.consul.v1.health.model.HealthService;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 基于模拟consul集群的ClusterConsulClient故障转移测试
+ */
+@Slf4j
+public class ClusterConsulClientFailoverTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    this.cluster = new FakeConsulCluster(3);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(500L);
+    properties.getTransport().setConnectTimeout(500);
+    properties.getTransport().setReadTimeout(1000);
+    this.client = new ClusterConsulClient(properties);
+    awaitConsulClients(this.client, 3);
+    this.client.setKVValue("failover/key", "value");
+  }
+
+  /**
+   * 等待后台完成启动的节点加入
+   */
+  static void awaitConsulClients(ClusterConsulClient consulClient, int count) {
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (consulClient.getConsulClients().size() < count && System.currentTimeMillis() < deadline) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(10L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    Assertions.assertEquals(count, consulClient.getConsulClients().size());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private FakeConsulAgent currentAgent() {
+    return this.cluster.getAgent(this.client.getCurrentClient().getClientId());
+  }
+
+  @Test
+  public void testFailoverOnAgentDown() {
+    FakeConsulAgent agent = currentAgent();
+    agent.stop();
+
+    long begin = System.currentTimeMillis();
+    Assertions.assertEquals("value", this.client.getKVValue("failover/key").getValue().getDecodedValue());
+    long elapsed = System.currentTimeMillis() - begin;
+    log.info("failover on agent down took {}ms", elapsed);
+
+    Assertions.assertNotSame(agent, currentAgent());
+    Assertions.assertTrue(elapsed < 1000L, "failover took " + elapsed + "ms");
+
+    FailoverTimeline timeline = this.client.getFailoverRecorder().getOpenIncidents().stream()
+        .filter(incident -> incident.getClientId().equals(agent.getAddress())).findFirst().orElse(null);
+    Assertions.assertNotNull(timeline);
+    Assertions.assertTrue(timeline.isCurrent());
+    Assertions.assertTrue(timeline.getDuration(FailoverTimeline.Phase.DETECT) >= 0);
+    Assertions.assertTrue(timeline.getDuration(FailoverTimeline.Phase.SWITCH) >= 0);
+    Assertions.assertEquals(currentAgent().getAddress(), timeline.getSwitchedTo());
+  }
+
+  @Test
+  public void testFailoverOnBlackhole() {
+    FakeConsulAgent agent = currentAgent();
+    agent.setBlackhole(true);
+
+    long begin = System.currentTimeMillis();
+    Assertions.assertEquals("value", this.client.getKVValue("failover/key").getValue().getDecodedValue());
+    long elapsed = System.currentTimeMillis() - begin;
+    log.info("failover on blackhole took {}ms", elapsed);
+    agent.setBlackhole(false);
+
+    Assertions.assertNotSame(agent, currentAgent());
+    // 黑洞节点需等待读超时(1000ms)后才能切换
+    Assertions.assertTrue(elapsed < 2500L, "failover took " + elapsed + "ms");
+  }
+
+  @Test
+  public void testClientErrorDoesNotFailover() {
+    FakeConsulAgent agent = currentAgent();
+    agent.setErrorStatus(403);
+    agent.setErrorRate(1D);
+    ConsulNodeStats nodeStats = this.client.getNodeStats(agent.getAddress());
+    long requests = nodeStats.getRequests();
+
+    OperationException exception = Assertions.assertThrows(OperationException.class,
+        () -> this.client.getKVValue("failover/key"));
+    agent.setErrorRate(0D);
+
+    Assertions.assertEquals(403, exception.getStatusCode());
+    // 4xx不重试、不切换节点
+    Assertions.assertSame(agent, currentAgent());
+    Assertions.assertTrue(this.client.getCurrentClient().isHealthy());
+    Assertions.assertEquals(requests + 1, nodeStats.getRequests());
+  }
+
+  @Test
+  public void testStandbyConnectionsWarmed() throws Exception {
+    this.client.warmStandbyConnections();
+    List<String> standbyClientIds = this.client.getStandbyClientIds();
+    Assertions.assertEquals(2, standbyClientIds.size());
+    Assertions.assertFalse(standbyClientIds.contains(currentAgent().getAddress()));
+
+    // 当前节点故障时切换到第一个备用节点
+    String firstStandby = standbyClientIds.get(0);
+    currentAgent().stop();
+    this.client.getKVValue("failover/key");
+    Assertions.assertEquals(firstStandby, this.client.getCurrentClient().getClientId());
+  }
+
+  @Test
+  public void testDrainAndForceFailover() {
+    FakeConsulAgent agent = currentAgent();
+    this.client.drain(agent.getAddress());
+    Assertions.assertNotSame(agent, currentAgent());
+    this.client.getKVValue("failover/key");
+    Assertions.assertTrue(this.client.getNodeStats(currentAgent().getAddress()).getRequests() > 0);
+
+    // 被摘除的节点不能作为切换目标
+    Assertions.assertNull(this.client.forceFailover(agent.getAddress()));
+    this.client.undrain(agent.getAddress());
+    Assertions.assertNotNull(this.client.forceFailover(agent.getAddress()));
+    Assertions.assertSame(agent, currentAgent());
+
+    // 不存在的节点
+    Assertions.assertFalse(this.client.drain("127.0.0.1:1"));
+    Assertions.assertFalse(this.client.undrain("127.0.0.1:1"));
+    Assertions.assertFalse(this.client.isDrained("127.0.0.1:1"));
+    ClusterConsulEndpoint endpoint = new ClusterConsulEndpoint(this.client);
+    Map<String, Object> result = endpoint.operate(ClusterConsulEndpoint.ACTION_DRAIN, "127.0.0.1:1");
+    Assertions.assertEquals(false, result.get("success"));
+    Assertions.assertEquals(agent.getAddress(), result.get("current"));
+    result = endpoint.operate(ClusterConsulEndpoint.ACTION_FAILOVER, "127.0.0.1:1");
+    Assertions.assertEquals(false, result.get("success"));
+    Assertions.assertSame(agent, currentAgent());
+  }
+
+  @Test
+  public void testCoalescedReads() throws Exception {
+    currentAgent().setLatencyMillis(300L);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      // 合并的调用方共享只读的结果
+      long shared = this.client.getReadFlight().getShared();
+      List<Future<Response<List<GetValue>>>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        futures.add(executor.submit(() -> this.client.getKVValues("failover")));
+      }
+      for (Future<Response<List<GetValue>>> future : futures) {
+        List<GetValue> values = future.get(5, TimeUnit.SECONDS).getValue();
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> values.add(new GetValue()));
+      }
+      Assertions.assertEquals(shared + 1, this.client.getReadFlight().getShared());
+
+      // 一致性读取不合并
+      QueryParams consistent = new QueryParams(ConsistencyMode.CONSISTENT);
+      futures.clear();
+      for (int i = 0; i < 2; i++) {
+        futures.add(executor.submit(() -> this.client.getKVValues("failover", consistent)));
+      }
+      for (Future<Response<List<GetValue>>> future : futures) {
+        Assertions.assertEquals("value", future.get(5, TimeUnit.SECONDS).getValue().get(0).getDecodedValue());
+      }
+      Assertions.assertEquals(shared + 1, this.client.getReadFlight().getShared());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBulkheadSpillover() throws Exception {
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(500L);
+    properties.getBulkhead().setMaxConcurrentRequests(1);
+    properties.getBulkhead().setMaxWaitMillis(0L);
+    ClusterConsulClient limitedClient = new ClusterConsulClient(properties);
+    awaitConsulClients(limitedClient, 3);
+    try {
+      ConsulClientHolder current = limitedClient.getCurrentClient();
+      this.cluster.getAgent(current.getClientId()).setLatencyMillis(300L);
+
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        futures.add(executor.submit(() -> limitedClient.getKVValue("failover/key").getValue().getDecodedValue()));
+      }
+      for (Future<String> future : futures) {
+        Assertions.assertEquals("value", future.get(5, TimeUnit.SECONDS));
+      }
+      executor.shutdownNow();
+
+      // 繁忙节点不会被标记为不健康，当前节点保持不变
+      Assertions.assertSame(current, limitedClient.getCurrentClient());
+      Assertions.assertTrue(current.isHealthy());
+      Assertions.assertTrue(limitedClient.getBulkhead(current.getClientId()).getRejected() > 0);
+    } finally {
+      limitedClient.getConsulClientsExecutor().shutdownNow();
+    }
+  }
+
+  @Test
+  public void testZonePreference() throws Exception {
+    List<String> addresses = this.cluster.getAddresses();
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(Arrays.asList(addresses.get(0) + ";zone=az1", addresses.get(1) + ";zone=az1",
+        addresses.get(2) + ";zone=az2"));
+    properties.setZone("az2");
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(300L);
+    ClusterConsulClient zoneClient = new ClusterConsulClient(properties);
+    awaitConsulClients(zoneClient, 3);
+    try {
+      FakeConsulAgent localAgent = this.cluster.getAgent(addresses.get(2));
+      Assertions.assertEquals(localAgent.getAddress(), zoneClient.getCurrentClient().getClientId());
+
+      // 本可用区节点故障时跨可用区
+      localAgent.stop();
+      Assertions.assertEquals("value", zoneClient.getKVValue("failover/key").getValue().getDecodedValue());
+      Assertions.assertEquals("az1", zoneClient.getCurrentClient().getZone());
+
+      // 本可用区节点恢复后切换回来
+      localAgent.start();
+      long deadline = System.currentTimeMillis() + 5000L;
+      while (!"az2".equals(zoneClient.getCurrentClient().getZone()) && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50L);
+      }
+      Assertions.assertEquals(localAgent.getAddress(), zoneClient.getCurrentClient().getClientId());
+
+      // 强制切换到其他可用区后不会被健康检测切回
+      Assertions.assertNotNull(zoneClient.forceFailover(addresses.get(0)));
+      TimeUnit.MILLISECONDS.sleep(1000L);
+      Assertions.assertEquals(addresses.get(0), zoneClient.getCurrentClient().getClientId());
+      // 目标节点不可用后恢复本可用区优先
+      this.cluster.getAgent(addresses.get(0)).stop();
+      zoneClient.getKVValue("failover/key");
+      deadline = System.currentTimeMillis() + 5000L;
+      while (!"az2".equals(zoneClient.getCurrentClient().getZone()) && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50L);
+      }
+      Assertions.assertEquals(localAgent.getAddress(), zoneClient.getCurrentClient().getClientId());
+    } finally {
+      zoneClient.getConsulClientsExecutor().shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBootstrapWithSlowAgent() throws Exception {
+    FakeConsulAgent slowAgent = this.cluster.getAgents().get(0);
+    slowAgent.setLatencyMillis(1500L);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(60000L);
+
+    long begin = System.currentTimeMillis();
+    ClusterConsulClient bootstrapClient = new ClusterConsulClient(properties);
+    long elapsed = System.currentTimeMillis() - begin;
+    try {
+      log.info("bootstrap with slow agent took {}ms", elapsed);
+      Assertions.assertTrue(elapsed < 1000L, "bootstrap took " + elapsed + "ms");
+      Assertions.assertNotNull(bootstrapClient.getCurrentClient());
+      Assertions.assertEquals("value", bootstrapClient.getKVValue("failover/key").getValue().getDecodedValue());
+
+      // 慢节点在后台完成健康检测后加入
+      long deadline = System.currentTimeMillis() + 5000L;
+      while (bootstrapClient.getConsulClients().size() < 3 && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50L);
+      }
+      Assertions.assertEquals(3, bootstrapClient.getConsulClients().size());
+    } finally {
+      slowAgent.setLatencyMillis(0L);
+      bootstrapClient.getConsulClientsExecutor().shutdownNow();
+    }
+  }
+
+  @Test
+  public void testServeStaleWhenClusterDown() {
+    Assertions.assertEquals("value", this.client.getKVValue("failover/key").getValue().getDecodedValue());
+    this.cluster.getAgents().forEach(FakeConsulAgent::stop);
+
+    Response<GetValue> response = this.client.getKVValue("failover/key");
+    Assertions.assertEquals("value", response.getValue().getDecodedValue());
+    Assertions.assertTrue(ConsulStaleCache.isStale(response));
+    Assertions.assertTrue(response.getConsulLastContact() >= 0);
+    Assertions.assertEquals(1, this.client.getStaleCache().getServed());
+
+    // 没有旧数据的请求仍然失败
+    Assertions.assertThrows(TransportException.class, () -> this.client.getKVValue("failover/missing"));
+  }
+
+  @Test
+  public void testBootFromSnapshotWhenClusterDown() throws Exception {
+    Path snapshotPath = Files.createTempDirectory("consul-snapshot").resolve("snapshot.bin");
+    NewService newService = new NewService();
+    newService.setId("svc-1");
+    newService.setName("svc");
+    newService.setPort(8080);
+    this.client.agentServiceRegister(newService);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(300L);
+    properties.setBootstrapTimeout(500L);
+    properties.getSnapshot().setEnabled(true);
+    properties.getSnapshot().setPath(snapshotPath.toString());
+
+    ClusterConsulClient snapshotClient = new ClusterConsulClient(properties);
+    try {
+      snapshotClient.getKVValues("failover", "acl-token");
+      snapshotClient.getHealthServices("svc", true, QueryParams.DEFAULT);
+      snapshotClient.getHealthInstances("svc", null, true, QueryParams.DEFAULT, null);
+      Assertions.assertTrue(snapshotClient.getSnapshotStore().flush(snapshotClient.getStaleCache()));
+      // 数据没有变化时不重复写入
+      Assertions.assertFalse(snapshotClient.getSnapshotStore().flush(snapshotClient.getStaleCache()));
+    } finally {
+      snapshotClient.getConsulClientsExecutor().shutdownNow();
+    }
+
+    // 集群不可用时由快照完成启动
+    this.cluster.getAgents().forEach(FakeConsulAgent::stop);
+    ClusterConsulClient bootClient = new ClusterConsulClient(properties);
+    try {
+      Assertions.assertEquals(3, bootClient.getSnapshotStore().getLoaded());
+      Assertions.assertNull(bootClient.getCurrentClient());
+      Map<String, Object> result = new ClusterConsulEndpoint(bootClient)
+          .operate(ClusterConsulEndpoint.ACTION_DRAIN, this.cluster.getAddresses().get(0));
+      Assertions.assertEquals(false, result.get("success"));
+      Assertions.assertNull(result.get("current"));
+      Response<List<GetValue>> values = bootClient.getKVValues("failover", "acl-token");
+      Assertions.assertTrue(ConsulStaleCache.isStale(values));
+      Assertions.assertEquals("value", values.getValue().get(0).getDecodedValue());
+      Response<List<HealthService>> services = bootClient.getHealthServices("svc", true, QueryParams.DEFAULT);
+      Assertions.assertEquals(8080, services.getValue().get(0).getService().getPort().intValue());
+      // 服务发现使用的紧凑实例
+      Response<List<ConsulInstance>> instances = bootClient.getHealthInstances("svc", null, true,
+          QueryParams.DEFAULT, null);
+      Assertions.assertTrue(ConsulStaleCache.isStale(instances));
+      Assertions.assertEquals(1, instances.getValue().size());
+      Assertions.assertEquals("svc-1", instances.getValue().get(0).getInstanceId());
+      Assertions.assertEquals(8080, instances.getValue().get(0).getPort());
+      Assertions.assertTrue(instances.getValue().get(0).isPassing());
+      // token不同的请求不使用快照
+      Assertions.assertThrows(TransportException.class, () -> bootClient.getKVValues("failover", "other-token"));
+
+      // 集群恢复后由实时数据覆盖
+      for (FakeConsulAgent agent : this.cluster.getAgents()) {
+        agent.start();
+      }
+      long deadline = System.currentTimeMillis() + 5000L;
+      while (bootClient.getCurrentClient() == null && System.currentTimeMillis() < deadline) {
+        TimeUnit.MILLISECONDS.sleep(50L);
+      }
+      Assertions.assertNotNull(bootClient.getCurrentClient());
+      Assertions.assertFalse(ConsulStaleCache.isStale(bootClient.getKVValues("failover", "acl-token")));
+    } finally {
+      bootClient.getConsulClientsExecutor().shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFanOutWithAgentDown() throws Exception {
+    FakeConsulAgent agent = this.cluster.getAgents().get(0);
+    agent.stop();
+
+    NewService newService = new NewService();
+    newService.setId("svc-1");
+    newService.setName("svc");
+    newService.setPort(8080);
+    ClusterResult result = this.client.agentServiceRegisterAsync(newService).get(5, TimeUnit.SECONDS);
+    log.info("fan out result: {}", result);
+
+    Assertions.assertEquals(2, result.getSucceeded().size());
+    Assertions.assertEquals(2, this.cluster.healthServices("svc").size());
+  }
+
+  @Test
+  public void testFanOutTimeoutCancelsPendingTasks() throws Exception {
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("failover-test");
+    properties.setHealthCheckInterval(60000L);
+    properties.setFanOutTimeout(300L);
+    properties.setFanOutThreads(1);
+    properties.getTransport().setReadTimeout(5000);
+    ClusterConsulClient fanOutClient = new ClusterConsulClient(properties);
+    awaitConsulClients(fanOutClient, 3);
+    FakeConsulAgent slowAgent = this.cluster.getAgent(fanOutClient.getConsulClients().get(0).getClientId());
+    try {
+      // 唯一的线程被慢节点占用，其余节点的任务在队列中等待
+      slowAgent.setBlackhole(true);
+      ClusterResult result = fanOutClient.agentCheckPassAsync("check-1").get(5, TimeUnit.SECONDS);
+      Assertions.assertEquals(3, result.getFailed().size());
+      result.getFailed().forEach(nodeResult -> Assertions.assertTrue(nodeResult.getError() instanceof TimeoutException));
+      // 超时后取消的任务移出队列，不再占用线程池
+      Assertions.assertTrue(fanOutClient.getFanOutExecutor().getQueue().isEmpty());
+
+      slowAgent.setBlackhole(false);
+      result = fanOutClient.agentCheckPassAsync("check-1").get(5, TimeUnit.SECONDS);
+      Assertions.assertTrue(result.isAllSucceeded(), result.toString());
+    } finally {
+      slowAgent.setBlackhole(false);
+      fanOutClient.getFanOutExecutor().shutdownNow();
+      fanOutClient.getConsulClientsExecutor().shutdownNow();
+    }
+  }
+
+  @Test
+  public void testThroughputDuringOutage() throws Exception {
+    ScheduledExecutorService chaos = Executors.newSingleThreadScheduledExecutor();
+    FakeConsulAgent agent = currentAgent();
+    chaos.schedule(agent::stop, 500L, TimeUnit.MILLISECONDS);
+
+    ClusterLoadGenerator.LoadReport report = new ClusterLoadGenerator(4, 1500L)
+        .run("getKVValue", () -> this.client.getKVValue("failover/key"));
+    chaos.shutdownNow();
+
+    Assertions.assertTrue(report.getSucceeded() > 0);
+    Assertions.assertEquals(0, report.getErrors());
+    Assertions.assertTrue(report.getMaxStallMillis() < 1000L, "max stall " + report.getMaxStallMillis() + "ms");
+  }
+}
@@ -0,0 +1,192 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 基于模拟consul集群的分布式锁及leader选举测试
+ */
+public class ClusterConsulLockTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  private ClusterConsulLockManager manager;
+
+  private ClusterConsulLockManager otherManager;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(3);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("lock-test");
+    properties.setHealthCheckInterval(60000L);
+    properties.getTransport().setConnectTimeout(500);
+    properties.getLock().setWatchWaitTime(1);
+    this.client = new ClusterConsulClient(properties);
+    ClusterConsulClientFailoverTest.awaitConsulClients(this.client, 3);
+    this.manager = new ClusterConsulLockManager(this.client, properties.getLock(), "owner-1");
+    this.otherManager = new ClusterConsulLockManager(this.client, properties.getLock(), "owner-2");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.executor.shutdownNow();
+    this.manager.shutdown();
+    this.otherManager.shutdown();
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(20L);
+    }
+    Assertions.assertTrue(condition.getAsBoolean());
+  }
+
+  private String holder(String key) {
+    return this.client.getKVValueConsistent(key, null).getValue().getSession();
+  }
+
+  @Test
+  public void testLockWaitsForRelease() throws Exception {
+    ClusterConsulLock lock = this.manager.getLock("a");
+    Assertions.assertTrue(lock.tryLock());
+    ClusterConsulLock waiting = this.otherManager.getLock("a");
+    Assertions.assertFalse(waiting.tryLock());
+    // tryLock失败时销毁session
+    Assertions.assertNull(waiting.getSessionId());
+
+    Future<Boolean> acquired = this.executor.submit(() -> waiting.lock(5, TimeUnit.SECONDS));
+    await(() -> waiting.getSessionId() != null);
+    String waitingSession = waiting.getSessionId();
+    lock.unlock();
+
+    Assertions.assertTrue(acquired.get(5, TimeUnit.SECONDS));
+    // 等待期间使用同一个session
+    Assertions.assertEquals(waitingSession, waiting.getSessionId());
+    Assertions.assertEquals(waitingSession, holder("locks/a"));
+    Assertions.assertEquals(1, this.cluster.getSessionCount());
+    waiting.unlock();
+    Assertions.assertEquals(0, this.cluster.getSessionCount());
+  }
+
+  @Test
+  public void testInterruptedLockIsAbandoned() throws Exception {
+    ClusterConsulLock lock = this.manager.getLock("b");
+    Assertions.assertTrue(lock.tryLock());
+    ClusterConsulLock waiting = this.otherManager.getLock("b");
+
+    Future<Boolean> acquired = this.executor.submit(() -> waiting.lock(30, TimeUnit.SECONDS));
+    await(() -> waiting.getSessionId() != null);
+    acquired.cancel(true);
+    await(() -> waiting.getSessionId() == null);
+
+    // 中断后锁释放也不会被已放弃等待的调用方获取
+    lock.unlock();
+    TimeUnit.MILLISECONDS.sleep(300L);
+    Assertions.assertFalse(waiting.isHeld());
+    Assertions.assertNull(holder("locks/b"));
+    Assertions.assertEquals(0, this.cluster.getSessionCount());
+  }
+
+  @Test
+  public void testLockSurvivesSessionFailover() throws Exception {
+    ClusterConsulLock lock = this.manager.getLock("c");
+    Assertions.assertTrue(lock.tryLock());
+    AtomicInteger granted = new AtomicInteger();
+    AtomicInteger revoked = new AtomicInteger();
+    ClusterConsulLock leader = this.manager.elect("leader", new ClusterConsulLockManager.LeaderListener() {
+      @Override
+      public void onGranted(ClusterConsulLock lock) {
+        granted.incrementAndGet();
+      }
+
+      @Override
+      public void onRevoked(ClusterConsulLock lock) {
+        revoked.incrementAndGet();
+      }
+    });
+    Assertions.assertTrue(leader.isHeld());
+    String oldSession = lock.getSessionId();
+    ConsulSessionRegistry.SessionRecord sessionRecord = this.client.getSessionRegistry().getSessionRecord(oldSession);
+
+    this.cluster.getAgent(sessionRecord.getClientId()).stop();
+    this.client.checkConsulClientsHealth();
+
+    Assertions.assertNotEquals(oldSession, lock.getSessionId());
+    await(() -> lock.getSessionId().equals(holder("locks/c")));
+    await(() -> leader.getSessionId().equals(holder("locks/leader")));
+    // watch线程处理完变化之后仍然持有锁，重建的session没有被销毁
+    TimeUnit.MILLISECONDS.sleep(1500L);
+    Assertions.assertTrue(lock.isHeld());
+    Assertions.assertTrue(leader.isHeld());
+    Assertions.assertTrue(this.cluster.hasSession(lock.getSessionId()));
+    Assertions.assertNotNull(this.client.getSessionRegistry().getSessionRecord(lock.getSessionId()));
+    Assertions.assertEquals(1, granted.get());
+    Assertions.assertEquals(0, revoked.get());
+  }
+
+  @Test
+  public void testSlowLockDoesNotBlockOthers() throws Exception {
+    ClusterConsulLock slowHeld = this.manager.getLock("slow");
+    ClusterConsulLock fastHeld = this.manager.getLock("fast");
+    Assertions.assertTrue(slowHeld.tryLock());
+    Assertions.assertTrue(fastHeld.tryLock());
+    CountDownLatch slowRelease = new CountDownLatch(1);
+    AtomicInteger fastGranted = new AtomicInteger();
+    this.otherManager.elect("slow", new ClusterConsulLockManager.LeaderListener() {
+      @Override
+      public void onGranted(ClusterConsulLock lock) {
+        try {
+          slowRelease.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void onRevoked(ClusterConsulLock lock) {
+      }
+    });
+    ClusterConsulLock fast = this.otherManager.elect("fast", new ClusterConsulLockManager.LeaderListener() {
+      @Override
+      public void onGranted(ClusterConsulLock lock) {
+        fastGranted.incrementAndGet();
+      }
+
+      @Override
+      public void onRevoked(ClusterConsulLock lock) {
+      }
+    });
+
+    try {
+      // 处理slow锁的线程阻塞时，fast锁的变化仍然及时处理
+      slowHeld.unlock();
+      TimeUnit.MILLISECONDS.sleep(300L);
+      fastHeld.unlock();
+      long begin = System.currentTimeMillis();
+      await(() -> fastGranted.get() == 1);
+      Assertions.assertTrue(System.currentTimeMillis() - begin < 3000L);
+      Assertions.assertTrue(fast.isHeld());
+    } finally {
+      slowRelease.countDown();
+    }
+  }
+}
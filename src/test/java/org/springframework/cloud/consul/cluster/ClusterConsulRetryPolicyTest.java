@@ -0,0 +1,67 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.retry.RetryContext;
+
+/**
+ * 集群重试策略 单元测试
+ */
+public class ClusterConsulRetryPolicyTest {
+
+  private static ClusterConsulRetryPolicy createPolicy(long deadlineMillis, ConsulRetryBudget retryBudget,
+      AtomicBoolean available) {
+    return new ClusterConsulRetryPolicy(3, deadlineMillis, new ConsulErrorClassifier(Collections.singletonMap(IOException.class, true)),
+        retryBudget, available::get);
+  }
+
+  @Test
+  public void testBudgetLimitsRetries() {
+    ConsulRetryBudget retryBudget = new ConsulRetryBudget(0.5D, 0);
+    ClusterConsulRetryPolicy policy = createPolicy(0L, retryBudget, new AtomicBoolean(true));
+
+    RetryContext context = policy.open(null);
+    policy.registerThrowable(context, new IOException("connection refused"));
+    Assertions.assertFalse(policy.canRetry(context));
+    Assertions.assertEquals(1, retryBudget.getExhausted());
+
+    // 两次成功调用存入一个令牌
+    retryBudget.deposit();
+    retryBudget.deposit();
+    context = policy.open(null);
+    policy.registerThrowable(context, new IOException("connection refused"));
+    Assertions.assertTrue(policy.canRetry(context));
+    // 同一次重试多次调用canRetry只申请一次预算
+    Assertions.assertTrue(policy.canRetry(context));
+    Assertions.assertEquals(1, retryBudget.getWithdrawn());
+    policy.registerThrowable(context, new IOException("connection refused"));
+    Assertions.assertFalse(policy.canRetry(context));
+  }
+
+  @Test
+  public void testStopsWithoutAvailableNodeOrAfterDeadline() {
+    AtomicBoolean available = new AtomicBoolean(true);
+    ClusterConsulRetryPolicy policy = createPolicy(60000L, new ConsulRetryBudget(0D, 100), available);
+
+    RetryContext context = policy.open(null);
+    policy.registerThrowable(context, new IllegalStateException("not retryable"));
+    Assertions.assertFalse(policy.canRetry(context));
+
+    context = policy.open(null);
+    policy.registerThrowable(context, new IOException("connection refused"));
+    available.set(false);
+    Assertions.assertFalse(policy.canRetry(context));
+    available.set(true);
+    Assertions.assertTrue(policy.canRetry(context));
+
+    context.setAttribute(ClusterConsulRetryPolicy.DEADLINE_KEY, System.currentTimeMillis() - 1L);
+    Assertions.assertFalse(policy.canRetry(context));
+    // 阻塞查询不受截止时间限制
+    context.setAttribute(ClusterConsulRetryPolicy.BLOCKING_QUERY_KEY, true);
+    Assertions.assertTrue(policy.canRetry(context));
+  }
+}
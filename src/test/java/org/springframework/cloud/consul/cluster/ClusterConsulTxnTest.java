@@ -0,0 +1,111 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 基于模拟consul集群的KV批量写入(consul事务)测试
+ */
+public class ClusterConsulTxnTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(3);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("txn-test");
+    properties.setHealthCheckInterval(60000L);
+    properties.getTransport().setConnectTimeout(500);
+    // 超过consul的限制时按64分批
+    properties.getTxn().setBatchSize(100);
+    this.client = new ClusterConsulClient(properties);
+    ClusterConsulClientFailoverTest.awaitConsulClients(this.client, 3);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private FakeConsulAgent currentAgent() {
+    return this.cluster.getAgent(this.client.getCurrentClient().getClientId());
+  }
+
+  private long modifyIndex(String key) {
+    return this.client.getKVValueConsistent(key, null).getValue().getModifyIndex();
+  }
+
+  private String value(String key) {
+    return this.client.getKVValueConsistent(key, null).getValue().getDecodedValue();
+  }
+
+  @Test
+  public void testSplitIntoBatches() {
+    List<KVTxnOperation> operations = new ArrayList<>();
+    for (int i = 0; i < 150; i++) {
+      operations.add(KVTxnOperation.set("txn/split/" + i, String.valueOf(i)));
+    }
+
+    KVTxnResult result = this.client.setKVValuesInTxn(operations, null);
+    Assertions.assertTrue(result.isAllCommitted(), result.toString());
+    Assertions.assertEquals(3, result.getBatchResults().size());
+    Assertions.assertEquals(64, result.getBatchResults().get(0).getOperations().size());
+    Assertions.assertEquals(64, result.getBatchResults().get(1).getOperations().size());
+    Assertions.assertEquals(22, result.getBatchResults().get(2).getOperations().size());
+    Assertions.assertEquals(150, this.cluster.getKeys("txn/split/").size());
+    // 批次在事务专用线程池中执行
+    Assertions.assertEquals(3, this.client.getTxnExecutor().getTaskCount());
+  }
+
+  @Test
+  public void testRetryOnOtherNode() {
+    FakeConsulAgent agent = currentAgent();
+    agent.stop();
+
+    KVTxnResult result = this.client.setKVValuesInTxn(
+        Collections.singletonList(KVTxnOperation.set("txn/retry", "1")), null);
+    Assertions.assertTrue(result.isAllCommitted(), result.toString());
+    Assertions.assertNotEquals(agent.getAddress(), result.getBatchResults().get(0).getClientId());
+    Assertions.assertEquals("1", value("txn/retry"));
+  }
+
+  @Test
+  public void testCasConflictNotCommitted() {
+    this.client.setKVValue("txn/conflict", "0");
+    long staleIndex = modifyIndex("txn/conflict");
+    this.client.setKVValue("txn/conflict", "concurrent");
+
+    KVTxnResult result = this.client.setKVValuesInTxn(
+        Collections.singletonList(KVTxnOperation.cas("txn/conflict", "1", staleIndex)), null);
+    Assertions.assertFalse(result.isAllCommitted());
+    KVTxnResult.BatchResult batchResult = result.getBatchResults().get(0);
+    Assertions.assertFalse(batchResult.isCommitted());
+    Assertions.assertEquals(1, batchResult.getErrors().size());
+    Assertions.assertEquals("concurrent", value("txn/conflict"));
+  }
+
+  @Test
+  public void testReplayedCasBatchAlreadyCommitted() {
+    this.client.setKVValue("txn/replay", "0");
+    long index = modifyIndex("txn/replay");
+    // 第一次请求已提交但响应丢失，重试时cas冲突
+    currentAgent().setLoseNextTxnResponse(true);
+
+    KVTxnResult result = this.client.setKVValuesInTxn(
+        Collections.singletonList(KVTxnOperation.cas("txn/replay", "1", index)), null);
+    Assertions.assertTrue(result.isAllCommitted(), result.toString());
+    Assertions.assertTrue(result.getBatchResults().get(0).getErrors().isEmpty());
+    Assertions.assertEquals("1", value("txn/replay"));
+  }
+}
@@ -0,0 +1,135 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 压测驱动：多个线程在给定时间内持续执行同一操作，统计吞吐量、延迟分布及最长中断时间
+ *
+ * 最长中断时间(maxStallMillis)即相邻两次成功之间的最大间隔，可用于衡量故障转移耗时
+ */
+@Slf4j
+public class ClusterLoadGenerator {
+
+  private final int threads;
+
+  private final long durationMillis;
+
+  public ClusterLoadGenerator(int threads, long durationMillis) {
+    this.threads = threads;
+    this.durationMillis = durationMillis;
+  }
+
+  public LoadReport run(String name, Callable<?> operation) throws InterruptedException {
+    Queue<long[]> samples = new ConcurrentLinkedQueue<>();
+    AtomicLong errors = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(this.threads);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+
+    for (int i = 0; i < this.threads; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          while (System.nanoTime() < deadline) {
+            long begin = System.nanoTime();
+            try {
+              operation.call();
+              long end = System.nanoTime();
+              samples.add(new long[]{end, end - begin});
+            } catch (Exception e) {
+              errors.incrementAndGet();
+            }
+          }
+        } finally {
+          done.countDown();
+        }
+      }, "load-" + name + "-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    done.await();
+
+    LoadReport report = new LoadReport(name, new ArrayList<>(samples), errors.get(), start,
+        System.nanoTime() - start);
+    log.info("load report: {}", report);
+
+    return report;
+  }
+
+  /**
+   * 压测结果
+   */
+  public static class LoadReport {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final long succeeded;
+
+    @Getter
+    private final long errors;
+
+    @Getter
+    private final double throughput;
+
+    @Getter
+    private final long p50Micros;
+
+    @Getter
+    private final long p99Micros;
+
+    @Getter
+    private final long maxMicros;
+
+    @Getter
+    private final long maxStallMillis;
+
+    LoadReport(String name, List<long[]> samples, long errors, long start, long elapsedNanos) {
+      this.name = name;
+      this.succeeded = samples.size();
+      this.errors = errors;
+      this.throughput = samples.size() * 1e9 / elapsedNanos;
+
+      long[] latencies = samples.stream().mapToLong(sample -> sample[1]).sorted().toArray();
+      this.p50Micros = percentile(latencies, 0.50);
+      this.p99Micros = percentile(latencies, 0.99);
+      this.maxMicros = latencies.length == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length - 1]);
+
+      long[] completions = samples.stream().mapToLong(sample -> sample[0]).sorted().toArray();
+      long maxStall = 0;
+      long previous = start;
+      for (long completion : completions) {
+        maxStall = Math.max(maxStall, completion - previous);
+        previous = completion;
+      }
+      // 最后一次成功到压测结束之间的停顿(例如故障后再未恢复)也计入
+      maxStall = Math.max(maxStall, start + elapsedNanos - previous);
+      this.maxStallMillis = TimeUnit.NANOSECONDS.toMillis(maxStall);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+
+      return TimeUnit.NANOSECONDS.toMicros(sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)]);
+    }
+
+    @Override
+    public String toString() {
+      return "{ name = " + name + ", succeeded = " + succeeded + ", errors = " + errors
+          + ", throughput = " + String.format("%.1f", throughput) + "/s, p50 = " + p50Micros + "us, p99 = "
+          + p99Micros + "us, max = " + maxMicros + "us, maxStall = " + maxStallMillis + "ms }";
+    }
+  }
+}
@@ -26,4 +26,49 @@ public class ConsulClientUtilTest {
     }
     Assertions.assertEquals(1, chooses.size());
   }
+
+  @Test
+  public void testChooseWeightedClient() {
+    List<String> clients = Arrays.asList("172.16.18.174:8500", "172.16.94.32:8500");
+    int heavy = 0;
+    for (int i = 0; i < 10000; i++) {
+      String choose = ConsulClientUtil.chooseClient("172.16.0." + i, clients,
+          client -> client.startsWith("172.16.94.32") ? 3 : 1);
+      if ("172.16.94.32:8500".equals(choose)) {
+        heavy++;
+      }
+    }
+    log.info("weight 3 node chosen {} times out of 10000", heavy);
+    Assertions.assertTrue(heavy > 7000 && heavy < 8000);
+
+    // 与按权重展开节点列表的选择结果一致
+    List<String> expanded = Arrays.asList("172.16.18.174:8500", "172.16.94.32:8500", "172.16.94.32:8500",
+        "172.16.94.32:8500");
+    for (int i = 0; i < 1000; i++) {
+      Assertions.assertEquals(ConsulClientUtil.chooseClient("172.16.1." + i, expanded),
+          ConsulClientUtil.chooseClient("172.16.1." + i, clients, client -> client.startsWith("172.16.94.32") ? 3 : 1));
+    }
+  }
+
+  @Test
+  public void testParseNodeSpec() {
+    ConsulNodeSpec nodeSpec = ConsulNodeSpec.parse("192.168.1.101:8500;zone=az1;weight=2");
+    Assertions.assertEquals("192.168.1.101:8500", nodeSpec.getAddress());
+    Assertions.assertEquals("az1", nodeSpec.getZone());
+    Assertions.assertEquals(2, nodeSpec.getWeight());
+
+    nodeSpec = ConsulNodeSpec.parse("example.com:8500");
+    Assertions.assertNull(nodeSpec.getZone());
+    Assertions.assertEquals(1, nodeSpec.getWeight());
+
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com"));
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com:8500;region=a"));
+    // 溢出及超出范围的端口、权重
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com:99999999999"));
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com:0"));
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com:65536"));
+    Assertions.assertThrows(BadConfigException.class, () -> ConsulNodeSpec.parse("example.com:8500;weight=0"));
+    Assertions.assertThrows(BadConfigException.class,
+        () -> ConsulNodeSpec.parse("example.com:8500;weight=99999999999"));
+  }
 }
@@ -0,0 +1,209 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ecwid.consul.v1.ConsistencyMode;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.model.HealthService;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 同主机共享缓存 单元测试，多个实例映射同一文件以模拟多个进程
+ */
+public class ConsulHostSharedCacheTest {
+
+  private static ClusterConsulProperties.HostCacheConfig config(String path, long ttl) {
+    ClusterConsulProperties.HostCacheConfig config = new ClusterConsulProperties.HostCacheConfig();
+    config.setEnabled(true);
+    config.setPath(path);
+    config.setTtl(ttl);
+    config.setCapacity(1024 * 1024);
+
+    return config;
+  }
+
+  private static List<Object> key(String kvKey) {
+    return Arrays.asList("getKVValue", kvKey, null, null);
+  }
+
+  private static Response<GetValue> response(String kvKey, String value, long index) {
+    GetValue getValue = new GetValue();
+    getValue.setKey(kvKey);
+    getValue.setValue(Base64.getEncoder().encodeToString(value.getBytes()));
+    getValue.setModifyIndex(index);
+
+    return new Response<>(getValue, index, true, 0L);
+  }
+
+  @Test
+  public void testShareBetweenProcesses() throws Exception {
+    String path = Files.createTempDirectory("consul-host-cache").resolve("cache.bin").toString();
+    try (ConsulHostSharedCache writer = new ConsulHostSharedCache(config(path, 300L));
+        ConsulHostSharedCache reader = new ConsulHostSharedCache(config(path, 300L))) {
+      Assertions.assertNull(reader.get(key("config/a")));
+
+      writer.put(key("config/a"), response("config/a", "1", 10L));
+      Response<GetValue> response = reader.get(key("config/a"));
+      Assertions.assertEquals("1", response.getValue().getDecodedValue());
+      Assertions.assertEquals(10L, response.getConsulIndex().longValue());
+      Assertions.assertEquals(1, reader.getHits());
+
+      // 更新后读取方看到新版本
+      long seq = reader.getSeq();
+      writer.put(key("config/a"), response("config/a", "2", 11L));
+      Assertions.assertEquals("2", reader.<GetValue>get(key("config/a")).getValue().getDecodedValue());
+      Assertions.assertTrue(reader.getSeq() > seq);
+      Assertions.assertEquals(0, reader.getSeq() % 2);
+
+      // 超过ttl后不再返回
+      TimeUnit.MILLISECONDS.sleep(400L);
+      Assertions.assertNull(reader.get(key("config/a")));
+    }
+  }
+
+  @Test
+  public void testAppendAndCompact() throws Exception {
+    String path = Files.createTempDirectory("consul-host-cache").resolve("cache.bin").toString();
+    ClusterConsulProperties.HostCacheConfig config = config(path, 10000L);
+    config.setCapacity(4096);
+    try (ConsulHostSharedCache writer = new ConsulHostSharedCache(config);
+        ConsulHostSharedCache reader = new ConsulHostSharedCache(config)) {
+      writer.put(key("config/a"), response("config/a", "a", 1L));
+      GetValue first = reader.<GetValue>get(key("config/a")).getValue();
+
+      // 其他key的发布只追加数据，已解析的数据不会重新解析
+      writer.put(key("config/b"), response("config/b", "b", 2L));
+      Assertions.assertEquals("b", reader.<GetValue>get(key("config/b")).getValue().getDecodedValue());
+      Assertions.assertSame(first, reader.<GetValue>get(key("config/a")).getValue());
+
+      // 空间不足时压缩，只保留每个key最新的数据
+      for (int i = 0; i < 100; i++) {
+        writer.put(key("config/b"), response("config/b", "b" + i, i));
+      }
+      Assertions.assertEquals(100, writer.getPublished() - 2);
+      Assertions.assertEquals(2, reader.getSize());
+      Assertions.assertEquals("b99", reader.<GetValue>get(key("config/b")).getValue().getDecodedValue());
+      Assertions.assertEquals("a", reader.<GetValue>get(key("config/a")).getValue().getDecodedValue());
+    }
+  }
+
+  @Test
+  public void testShareHealthInstances() throws Exception {
+    String path = Files.createTempDirectory("consul-host-cache").resolve("cache.bin").toString();
+    HealthService.Service service = new HealthService.Service();
+    service.setId("svc-1");
+    service.setService("svc");
+    service.setAddress("10.0.0.1");
+    service.setPort(8080);
+    service.setTags(Collections.singletonList("secure=true"));
+    service.setModifyIndex(7L);
+    HealthService healthService = new HealthService();
+    healthService.setService(service);
+    healthService.setChecks(Collections.emptyList());
+    List<Object> key = Arrays.asList("getHealthInstances", "svc", null, true, null, null);
+    try (ConsulHostSharedCache writer = new ConsulHostSharedCache(config(path, 10000L));
+        ConsulHostSharedCache reader = new ConsulHostSharedCache(config(path, 10000L))) {
+      writer.put(key, new Response<>(Collections.singletonList(ConsulInstance.of(healthService)), 7L, true, 0L));
+      Assertions.assertEquals(1, writer.getPublished());
+
+      Response<List<ConsulInstance>> response = reader.get(key);
+      ConsulInstance instance = response.getValue().get(0);
+      Assertions.assertEquals("svc-1", instance.getInstanceId());
+      Assertions.assertEquals("10.0.0.1", instance.getHost());
+      Assertions.assertEquals(8080, instance.getPort());
+      Assertions.assertTrue(instance.isSecure());
+      Assertions.assertTrue(instance.isPassing());
+      Assertions.assertEquals(7L, instance.getModifyIndex());
+    }
+  }
+
+  @Test
+  public void testConcurrentWritersAndReaders() throws Exception {
+    String path = Files.createTempDirectory("consul-host-cache").resolve("cache.bin").toString();
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong reads = new AtomicLong();
+    try (ConsulHostSharedCache writer1 = new ConsulHostSharedCache(config(path, 10000L));
+        ConsulHostSharedCache writer2 = new ConsulHostSharedCache(config(path, 10000L));
+        ConsulHostSharedCache reader = new ConsulHostSharedCache(config(path, 10000L))) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (ConsulHostSharedCache writer : Arrays.asList(writer1, writer2)) {
+        futures.add(executor.submit(() -> {
+          for (long i = 0; running.get(); i++) {
+            String kvKey = "config/" + (i % 8);
+            writer.put(key(kvKey), response(kvKey, kvKey + "=" + i, i));
+          }
+        }));
+      }
+      futures.add(executor.submit(() -> {
+        while (running.get()) {
+          for (int i = 0; i < 8; i++) {
+            String kvKey = "config/" + i;
+            Response<GetValue> response = reader.get(key(kvKey));
+            if (response != null) {
+              // 读取到的数据总是完整的
+              Assertions.assertEquals(kvKey, response.getValue().getKey());
+              Assertions.assertTrue(response.getValue().getDecodedValue().startsWith(kvKey + "="));
+              reads.incrementAndGet();
+            }
+          }
+        }
+      }));
+      TimeUnit.MILLISECONDS.sleep(1000L);
+      running.set(false);
+      for (Future<?> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      Assertions.assertTrue(reads.get() > 0);
+      Assertions.assertTrue(writer1.getPublished() + writer2.getPublished() > 0);
+      Assertions.assertEquals(8, reader.getSize());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConsistentReadBypassesSharedCache() throws Exception {
+    String path = Files.createTempDirectory("consul-host-cache").resolve("cache.bin").toString();
+    FakeConsulCluster cluster = new FakeConsulCluster(1);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(cluster.getAddresses());
+    properties.setClusterClientKey("host-cache-test");
+    properties.setHealthCheckInterval(60000L);
+    properties.setHostCache(config(path, 10000L));
+    ClusterConsulClient client = new ClusterConsulClient(properties);
+    QueryParams consistent = new QueryParams(ConsistencyMode.CONSISTENT);
+    try (ConsulHostSharedCache otherProcess = new ConsulHostSharedCache(config(path, 10000L))) {
+      client.setKVValue("config/a", "live");
+      otherProcess.put(ClusterConsulClient.flightKey("getKVValue", "config/a", null, QueryParams.DEFAULT),
+          response("config/a", "cached", 1L));
+      otherProcess.put(ClusterConsulClient.flightKey("getKVValue", "config/a", null, consistent),
+          response("config/a", "cached", 1L));
+      Assertions.assertEquals("cached", client.getKVValue("config/a", QueryParams.DEFAULT).getValue().getDecodedValue());
+
+      // 一致性读取总是请求agent，结果也不发布给其他进程
+      long requests = cluster.getAgents().get(0).getRequestCount();
+      long published = client.getHostSharedCache().getPublished();
+      Assertions.assertEquals("live", client.getKVValue("config/a", consistent).getValue().getDecodedValue());
+      Assertions.assertTrue(cluster.getAgents().get(0).getRequestCount() > requests);
+      Assertions.assertEquals(published, client.getHostSharedCache().getPublished());
+    } finally {
+      client.getConsulClientsExecutor().shutdownNow();
+      cluster.shutdown();
+    }
+  }
+}
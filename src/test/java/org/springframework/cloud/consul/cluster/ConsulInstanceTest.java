@@ -0,0 +1,64 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.List;
+
+import com.google.gson.reflect.TypeToken;
+
+import com.ecwid.consul.json.GsonFactory;
+import com.ecwid.consul.v1.health.model.HealthService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.consul.discovery.ConsulServer;
+
+/**
+ * 紧凑的服务实例 测试
+ */
+public class ConsulInstanceTest {
+
+  private static final String HEALTH_SERVICES = "["
+      + "{\"Node\":{\"Node\":\"agent-0\",\"Address\":\"10.0.0.1\",\"Meta\":{\"rack\":\"r1\"}},"
+      + "\"Service\":{\"ID\":\"svc-a-1\",\"Service\":\"svc-a\",\"Tags\":[\"zone=z1\",\"secure=true\"],"
+      + "\"Address\":\"10.0.1.1\",\"Port\":8081,\"ModifyIndex\":10},"
+      + "\"Checks\":[{\"CheckID\":\"serfHealth\",\"Status\":\"passing\",\"Output\":\"Agent alive\",\"ModifyIndex\":5},"
+      + "{\"CheckID\":\"service:svc-a-1\",\"Status\":\"warning\",\"Output\":\"slow\",\"ModifyIndex\":12}]},"
+      + "{\"Node\":{\"Node\":\"agent-1\",\"Address\":\"10.0.0.2\"},"
+      + "\"Service\":{\"ID\":\"svc-a-2\",\"Service\":\"svc-a\",\"Tags\":[\"zone=z1\",\"secure=true\"],"
+      + "\"Port\":8082,\"ModifyIndex\":11},\"Checks\":[]}]";
+
+  private static List<HealthService> healthServices() {
+    return GsonFactory.getGson().fromJson(HEALTH_SERVICES, new TypeToken<List<HealthService>>() {
+    }.getType());
+  }
+
+  @Test
+  public void testSharedFields() {
+    List<HealthService> first = healthServices();
+    List<HealthService> second = healthServices();
+    ConsulInstance instance1 = ConsulInstance.of(first.get(0));
+    ConsulInstance instance2 = ConsulInstance.of(first.get(1));
+    ConsulInstance copy = ConsulInstance.of(second.get(0));
+
+    Assertions.assertSame(instance1.getServiceId(), copy.getServiceId());
+    Assertions.assertSame(instance1.getTags(), instance2.getTags());
+    Assertions.assertSame(instance1.getMetadata(), instance2.getMetadata());
+    Assertions.assertEquals("z1", instance1.getMetadata().get("zone"));
+    Assertions.assertTrue(instance1.isSecure());
+    Assertions.assertEquals("10.0.1.1", instance1.getHost());
+    Assertions.assertEquals("10.0.0.2", instance2.getHost());
+    Assertions.assertEquals(12L, instance1.getModifyIndex());
+    Assertions.assertFalse(instance1.isPassing());
+    Assertions.assertTrue(instance2.isPassing());
+  }
+
+  @Test
+  public void testToConsulServer() {
+    List<HealthService> healthServices = healthServices();
+    ConsulServer server = new ConsulServer(ConsulInstance.of(healthServices.get(0)).toHealthService());
+    ConsulServer original = new ConsulServer(healthServices.get(0));
+
+    Assertions.assertEquals(original.getHostPort(), server.getHostPort());
+    Assertions.assertEquals(original.getMetadata(), server.getMetadata());
+    Assertions.assertEquals(original.isPassingChecks(), server.isPassingChecks());
+    Assertions.assertNull(server.getHealthService().getNode().getMeta());
+  }
+}
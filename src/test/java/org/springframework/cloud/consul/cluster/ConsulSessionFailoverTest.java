@@ -0,0 +1,120 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ecwid.consul.v1.OperationException;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.ecwid.consul.v1.session.model.NewSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 基于模拟consul集群的session故障转移测试
+ */
+public class ConsulSessionFailoverTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(3);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("session-test");
+    properties.setHealthCheckInterval(60000L);
+    properties.getTransport().setConnectTimeout(500);
+    this.client = new ClusterConsulClient(properties);
+    ClusterConsulClientFailoverTest.awaitConsulClients(this.client, 3);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private String createSession(String ttl) {
+    NewSession newSession = new NewSession();
+    newSession.setName("session-test");
+    newSession.setNode("agent-0");
+    newSession.setTtl(ttl);
+
+    return this.client.sessionCreate(newSession, QueryParams.DEFAULT).getValue();
+  }
+
+  private boolean acquire(String key, String session) {
+    PutParams putParams = new PutParams();
+    putParams.setAcquireSession(session);
+
+    return this.client.setKVValue(key, "owner", putParams).getValue();
+  }
+
+  @Test
+  public void testFailoverRecreatesSessionAndReacquiresLocks() {
+    String oldSession = createSession("30s");
+    Assertions.assertTrue(acquire("locks/a", oldSession));
+    ConsulSessionRegistry.SessionRecord sessionRecord = this.client.getSessionRegistry().getSessionRecord(oldSession);
+
+    FakeConsulAgent sessionAgent = this.cluster.getAgent(sessionRecord.getClientId());
+    sessionAgent.stop();
+    this.client.checkConsulClientsHealth();
+
+    String newSession = sessionRecord.getSessionId();
+    Assertions.assertNotEquals(oldSession, newSession);
+    Assertions.assertNotEquals(sessionAgent.getAddress(), sessionRecord.getClientId());
+    // 旧session已被销毁，锁由新session重新获取
+    Assertions.assertFalse(this.cluster.hasSession(oldSession));
+    Assertions.assertEquals(newSession, this.client.getKVValueConsistent("locks/a", null).getValue().getSession());
+    Assertions.assertEquals(newSession, this.client.getSessionRegistry().resolveSessionId(oldSession));
+    Assertions.assertFalse(sessionRecord.getLocks().get("locks/a").isPending());
+
+    // 删除的key不再跟踪
+    this.client.deleteKVValue("locks/a");
+    Assertions.assertTrue(sessionRecord.getLocks().isEmpty());
+  }
+
+  @Test
+  public void testUnregisterDestroyedAndExpiredSessions() throws Exception {
+    // 通过其他客户端销毁的session
+    String destroyed = createSession("30s");
+    this.cluster.destroySession(destroyed);
+    this.client.checkConsulClientsHealth();
+    Assertions.assertNull(this.client.getSessionRegistry().getSessionRecord(destroyed));
+
+    // 续约时发现session已不存在
+    String renewed = createSession("30s");
+    this.cluster.destroySession(renewed);
+    OperationException exception = Assertions.assertThrows(OperationException.class,
+        () -> this.client.renewSession(renewed, QueryParams.DEFAULT));
+    Assertions.assertEquals(404, exception.getStatusCode());
+    Assertions.assertNull(this.client.getSessionRegistry().getSessionRecord(renewed));
+
+    // 不再续约、超过2倍TTL的session不会在故障转移时重建
+    String abandoned = createSession("100ms");
+    ConsulSessionRegistry.SessionRecord sessionRecord = this.client.getSessionRegistry().getSessionRecord(abandoned);
+    TimeUnit.MILLISECONDS.sleep(250L);
+    this.cluster.getAgent(sessionRecord.getClientId()).stop();
+    this.client.checkConsulClientsHealth();
+    Assertions.assertNull(this.client.getSessionRegistry().getSessionRecord(abandoned));
+    Assertions.assertEquals(abandoned, sessionRecord.getSessionId());
+  }
+
+  @Test
+  public void testPreviousSessionIdsBounded() {
+    String session = createSession("30s");
+    ConsulSessionRegistry registry = this.client.getSessionRegistry();
+    ConsulSessionRegistry.SessionRecord sessionRecord = registry.getSessionRecord(session);
+    for (int i = 0; i <= ConsulSessionRegistry.MAX_PREVIOUS_SESSION_IDS; i++) {
+      registry.onSessionRecreated(sessionRecord, "recreated-" + i, sessionRecord.getClientId());
+    }
+
+    Assertions.assertNull(registry.getSessionRecord(session));
+    Assertions.assertSame(sessionRecord, registry.getSessionRecord("recreated-0"));
+    Assertions.assertEquals(1, registry.getSessionRecords().size());
+  }
+}
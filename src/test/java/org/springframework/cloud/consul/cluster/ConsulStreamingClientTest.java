@@ -0,0 +1,133 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Strings;
+import com.google.gson.stream.JsonReader;
+
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.agent.model.NewService;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 流式解析 测试
+ */
+public class ConsulStreamingClientTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(2);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("streaming-test");
+    properties.setHealthCheckInterval(60000L);
+    this.client = new ClusterConsulClient(properties);
+    ClusterConsulClientFailoverTest.awaitConsulClients(this.client, 2);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private void register(String id, String name, String... tags) {
+    NewService newService = new NewService();
+    newService.setId(id);
+    newService.setName(name);
+    newService.setPort(8080);
+    newService.setTags(Arrays.asList(tags));
+    this.client.agentServiceRegister(newService);
+  }
+
+  @Test
+  public void testReadHealthInstances() throws Exception {
+    String output = Strings.repeat("x", 4096);
+    String json = "[{\"Node\":{\"Node\":\"agent-0\",\"Address\":\"10.0.0.1\",\"TaggedAddresses\":{\"lan\":\"10.0.0.1\"}},"
+        + "\"Service\":{\"ID\":\"svc-a-1\",\"Service\":\"svc-a\",\"Tags\":[\"zone=z1\"],\"Address\":\"\",\"Port\":8081,"
+        + "\"Meta\":{\"k\":\"v\"},\"ModifyIndex\":7},"
+        + "\"Checks\":[{\"CheckID\":\"serfHealth\",\"Status\":\"critical\",\"Output\":\"" + output + "\",\"ModifyIndex\":9}]},"
+        + "{\"Node\":{\"Node\":\"agent-1\",\"Address\":\"10.0.0.2\"},"
+        + "\"Service\":{\"ID\":\"svc-a-1\",\"Service\":\"svc-a\",\"Tags\":null,\"Port\":8081},\"Checks\":null}]";
+
+    List<ConsulInstance> instances = ConsulStreamingClient.readHealthInstances(new JsonReader(new StringReader(json)),
+        null);
+    Assertions.assertEquals(1, instances.size());
+    ConsulInstance instance = instances.get(0);
+    Assertions.assertEquals("10.0.0.1", instance.getHost());
+    Assertions.assertEquals("z1", instance.getMetadata().get("zone"));
+    Assertions.assertFalse(instance.isPassing());
+    Assertions.assertEquals(9L, instance.getModifyIndex());
+  }
+
+  @Test
+  public void testStreamingReads() {
+    register("svc-a-1", "svc-a", "v1");
+    register("svc-a-2", "svc-a", "v2");
+
+    // 每个实例在两个agent上各注册一次，解析时去重
+    Response<List<ConsulInstance>> healthInstances = this.client.getHealthInstances("svc-a", null, false,
+        QueryParams.DEFAULT, null);
+    Assertions.assertEquals(2, healthInstances.getValue().size());
+    Assertions.assertEquals(this.cluster.getIndex(), healthInstances.getConsulIndex().longValue());
+
+    Response<List<ConsulInstance>> catalogInstances = this.client.getCatalogInstances("svc-a", null,
+        QueryParams.DEFAULT, null, instance -> instance.getTags().contains("v2"));
+    Assertions.assertEquals(Arrays.asList("svc-a-2"), catalogInstances.getValue().stream()
+        .map(ConsulInstance::getInstanceId).collect(Collectors.toList()));
+
+    this.client.setKVValue("config/app/a", "1");
+    this.client.setKVValue("config/app/b", "2");
+    this.client.setKVValue("config/other/c", "3");
+    Response<List<GetValue>> values = this.client.getKVValues("config/", null, QueryParams.DEFAULT,
+        key -> key.startsWith("config/app/"));
+    Assertions.assertEquals(Arrays.asList("1", "2"), values.getValue().stream().map(GetValue::getDecodedValue)
+        .collect(Collectors.toList()));
+    Assertions.assertNull(this.client.getKVValues("missing/", null, QueryParams.DEFAULT, null).getValue());
+  }
+
+  @Test
+  public void testRawAndLazyKVReads() {
+    byte[] blob = Strings.repeat("0123456789", 1000).getBytes(StandardCharsets.UTF_8);
+    this.client.setKVBinaryValue("config/blob", blob);
+    this.client.setKVValue("config/small", "abc");
+
+    // 容量不足时分配新的缓冲区，足够时复用
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    Response<ByteBuffer> rawValue = this.client.getKVRawValue("config/blob", null, QueryParams.DEFAULT, buffer);
+    Assertions.assertNotSame(buffer, rawValue.getValue());
+    Assertions.assertEquals(ByteBuffer.wrap(blob), rawValue.getValue());
+    Assertions.assertEquals(this.cluster.getIndex(), rawValue.getConsulIndex().longValue());
+    buffer = rawValue.getValue();
+    rawValue = this.client.getKVRawValue("config/small", null, QueryParams.DEFAULT, buffer);
+    Assertions.assertSame(buffer, rawValue.getValue());
+    Assertions.assertEquals("abc", StandardCharsets.UTF_8.decode(rawValue.getValue()).toString());
+    Assertions.assertNull(this.client.getKVRawValue("config/missing", null, QueryParams.DEFAULT, null).getValue());
+
+    List<ConsulKVEntry> entries = this.client.getKVEntries("config/", null, QueryParams.DEFAULT, null).getValue();
+    Assertions.assertEquals(Arrays.asList("config/blob", "config/small"), entries.stream()
+        .map(ConsulKVEntry::getKey).collect(Collectors.toList()));
+    Assertions.assertEquals(blob.length, entries.get(0).getValueLength());
+    Assertions.assertArrayEquals(blob, entries.get(0).getValue());
+    Assertions.assertEquals(3, entries.get(1).getValueLength());
+    Assertions.assertEquals("abc", entries.get(1).getValueAsString());
+    ByteBuffer decoded = entries.get(0).getValue(buffer);
+    Assertions.assertSame(buffer, decoded);
+    Assertions.assertEquals(ByteBuffer.wrap(blob), decoded);
+    Assertions.assertEquals(ByteBuffer.wrap(blob), entries.get(0).getValue(ByteBuffer.allocateDirect(8)));
+  }
+}
@@ -0,0 +1,122 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.ecwid.consul.v1.agent.model.NewService;
+import com.ecwid.consul.v1.health.model.HealthService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 多服务watch复用器 测试
+ */
+public class ConsulWatchMultiplexerTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  private ConsulWatchMultiplexer multiplexer;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(1);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("watch-test");
+    properties.setHealthCheckInterval(60000L);
+    this.client = new ClusterConsulClient(properties);
+    register("svc-a-1", "svc-a");
+    register("svc-b-1", "svc-b");
+    properties.getWatch().setWaitTime(2L);
+    properties.getWatch().setProbeDelay(100L);
+    properties.getWatch().setMaxProbes(1);
+    this.multiplexer = new ConsulWatchMultiplexer(this.client, properties.getWatch(), "watch-token");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.multiplexer.close();
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private void register(String id, String name) {
+    register(id, name, false);
+  }
+
+  private void register(String id, String name, boolean withCheck) {
+    NewService newService = new NewService();
+    newService.setId(id);
+    newService.setName(name);
+    newService.setPort(8080);
+    if (withCheck) {
+      NewService.Check check = new NewService.Check();
+      check.setTtl("30s");
+      newService.setCheck(check);
+    }
+    this.client.agentServiceRegister(newService);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(20L);
+    }
+    Assertions.assertTrue(condition.getAsBoolean());
+  }
+
+  @Test
+  public void testOnlyChangedServicesNotified() throws Exception {
+    List<List<HealthService>> updatesA = new CopyOnWriteArrayList<>();
+    List<List<HealthService>> updatesB = new CopyOnWriteArrayList<>();
+    this.multiplexer.subscribe("svc-a", updatesA::add);
+    ConsulWatchMultiplexer.Subscription subscriptionB = this.multiplexer.subscribe("svc-b", updatesB::add);
+    await(() -> updatesA.size() == 1 && updatesB.size() == 1 && this.multiplexer.getCatalogIndex() > 0);
+
+    // 健康检查状态的查询带有ACL token
+    await(() -> "watch-token".equals(this.cluster.getAgents().get(0).getChecksToken()));
+
+    // 已有服务新增实例(无健康检查)：延迟后分轮(每轮maxProbes个)读取被watch服务的index，只重新查询index变化的服务
+    long fetches = this.multiplexer.getFetches();
+    long probes = this.multiplexer.getProbes();
+    register("svc-a-2", "svc-a");
+    await(() -> updatesA.size() == 2);
+    await(() -> this.multiplexer.getProbes() >= probes + 2);
+    TimeUnit.MILLISECONDS.sleep(200L);
+    Assertions.assertEquals(2, updatesA.get(1).size());
+    Assertions.assertEquals(1, updatesB.size());
+    Assertions.assertEquals(fetches + 1, this.multiplexer.getFetches());
+
+    // 带健康检查的实例：由健康检查的变化确定服务，不读取各服务的index
+    fetches = this.multiplexer.getFetches();
+    long probesBefore = this.multiplexer.getProbes();
+    register("svc-a-3", "svc-a", true);
+    await(() -> updatesA.size() == 3);
+    TimeUnit.MILLISECONDS.sleep(300L);
+    Assertions.assertEquals(3, updatesA.get(2).size());
+    Assertions.assertEquals(1, updatesB.size());
+    Assertions.assertEquals(fetches + 1, this.multiplexer.getFetches());
+    Assertions.assertEquals(probesBefore, this.multiplexer.getProbes());
+
+    // 未被watch的服务变化时不查询
+    fetches = this.multiplexer.getFetches();
+    long catalogIndex = this.multiplexer.getCatalogIndex();
+    register("svc-c-1", "svc-c");
+    await(() -> this.multiplexer.getCatalogIndex() > catalogIndex);
+    TimeUnit.MILLISECONDS.sleep(200L);
+    Assertions.assertEquals(fetches, this.multiplexer.getFetches());
+
+    // 取消订阅后不再watch
+    subscriptionB.close();
+    Assertions.assertFalse(this.multiplexer.getWatchedServices().contains("svc-b"));
+    register("svc-b-2", "svc-b");
+    TimeUnit.MILLISECONDS.sleep(300L);
+    Assertions.assertEquals(1, updatesB.size());
+  }
+}
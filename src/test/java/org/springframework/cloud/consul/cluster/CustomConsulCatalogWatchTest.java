@@ -0,0 +1,94 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.collect.ImmutableSet;
+
+import com.ecwid.consul.v1.agent.model.NewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+
+/**
+ * 服务目录变化事件 测试
+ */
+public class CustomConsulCatalogWatchTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  private CustomConsulCatalogWatch catalogWatch;
+
+  private final List<ConsulCatalogChangedEvent> events = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(1);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("catalog-watch-test");
+    properties.setHealthCheckInterval(60000L);
+    this.client = new ClusterConsulClient(properties);
+
+    ConsulDiscoveryProperties discoveryProperties = new ConsulDiscoveryProperties(
+        new InetUtils(new InetUtilsProperties()));
+    discoveryProperties.setCatalogServicesWatchTimeout(1);
+    this.catalogWatch = new CustomConsulCatalogWatch(discoveryProperties, this.client);
+    this.catalogWatch.setApplicationEventPublisher(event -> this.events.add((ConsulCatalogChangedEvent) event));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private void register(String id, String name, String... tags) {
+    NewService newService = new NewService();
+    newService.setId(id);
+    newService.setName(name);
+    newService.setPort(8080);
+    newService.setTags(Arrays.asList(tags));
+    this.client.agentServiceRegister(newService);
+  }
+
+  @Test
+  public void testPublishOnlyOnCatalogChange() {
+    register("svc-a-1", "svc-a", "v1");
+    this.catalogWatch.catalogServicesWatch();
+    Assertions.assertEquals(1, this.events.size());
+    Assertions.assertTrue(this.events.get(0).getAdded().contains("svc-a"));
+
+    // index没有变化
+    this.catalogWatch.catalogServicesWatch();
+    Assertions.assertEquals(1, this.events.size());
+
+    // index变化但服务目录内容没有变化
+    register("svc-a-2", "svc-a", "v1");
+    this.catalogWatch.catalogServicesWatch();
+    Assertions.assertEquals(1, this.events.size());
+    Assertions.assertEquals(1, this.catalogWatch.getSuppressed());
+
+    register("svc-b-1", "svc-b");
+    this.catalogWatch.catalogServicesWatch();
+    Assertions.assertEquals(2, this.events.size());
+    Assertions.assertEquals(ImmutableSet.of("svc-b"), this.events.get(1).getAdded());
+    Assertions.assertTrue(this.events.get(1).getRemoved().isEmpty());
+    Assertions.assertTrue(this.events.get(1).getChanged().isEmpty());
+
+    register("svc-a-3", "svc-a", "v2");
+    this.client.agentServiceDeregister("svc-b-1");
+    this.catalogWatch.catalogServicesWatch();
+    Assertions.assertEquals(3, this.events.size());
+    Assertions.assertEquals(ImmutableSet.of("svc-a"), this.events.get(2).getChanged());
+    Assertions.assertEquals(ImmutableSet.of("svc-b"), this.events.get(2).getRemoved());
+    Assertions.assertEquals(this.cluster.getIndex(), this.catalogWatch.getCatalogIndex());
+  }
+}
@@ -0,0 +1,108 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.ecwid.consul.v1.agent.model.NewService;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.consul.discovery.ConsulDiscoveryProperties;
+import org.springframework.cloud.consul.discovery.ConsulServer;
+
+/**
+ * ServerList增量更新 测试
+ */
+public class CustomConsulServerListTest {
+
+  private FakeConsulCluster cluster;
+
+  private ClusterConsulClient client;
+
+  private CustomConsulServerList serverList;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    this.cluster = new FakeConsulCluster(1);
+    ClusterConsulProperties properties = new ClusterConsulProperties();
+    properties.setClusterNodes(this.cluster.getAddresses());
+    properties.setClusterClientKey("server-list-test");
+    properties.setHealthCheckInterval(60000L);
+    this.client = new ClusterConsulClient(properties);
+
+    this.serverList = new CustomConsulServerList(this.client,
+        new ConsulDiscoveryProperties(new InetUtils(new InetUtilsProperties())));
+    DefaultClientConfigImpl config = new DefaultClientConfigImpl();
+    config.setClientName("svc-a");
+    this.serverList.initWithNiwsConfig(config);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.client.getConsulClientsExecutor().shutdownNow();
+    this.cluster.shutdown();
+  }
+
+  private void register(String id, String name, int port) {
+    NewService newService = new NewService();
+    newService.setId(id);
+    newService.setName(name);
+    newService.setPort(port);
+    this.client.agentServiceRegister(newService);
+  }
+
+  private static Map<String, ConsulServer> byId(List<ConsulServer> servers) {
+    return servers.stream().collect(Collectors.toMap(server -> server.getHealthService().getService().getId(),
+        Function.identity()));
+  }
+
+  private static List<String> ids(List<ConsulServer> servers) {
+    return servers.stream().map(server -> server.getHealthService().getService().getId()).sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testIncrementalUpdate() {
+    register("svc-a-1", "svc-a", 8081);
+    register("svc-a-2", "svc-a", 8082);
+    Map<String, ConsulServer> initial = byId(this.serverList.getInitialListOfServers());
+    Assertions.assertEquals(2, initial.size());
+    Assertions.assertEquals(2, this.serverList.getLastDelta().getAdded().size());
+
+    // consul index没有变化
+    Assertions.assertEquals(initial, byId(this.serverList.getUpdatedListOfServers()));
+    Assertions.assertEquals(1, this.serverList.getSkipped());
+    Assertions.assertTrue(this.serverList.getLastDelta().isEmpty());
+
+    // 其他服务变化时本服务的index不变
+    register("svc-b-1", "svc-b", 8080);
+    Assertions.assertEquals(initial, byId(this.serverList.getUpdatedListOfServers()));
+    Assertions.assertEquals(2, this.serverList.getSkipped());
+
+    // 本服务的index变化但实例没有变化时复用ConsulServer
+    register("svc-a-tmp", "svc-a", 8089);
+    this.client.agentServiceDeregister("svc-a-tmp");
+    Map<String, ConsulServer> updated = byId(this.serverList.getUpdatedListOfServers());
+    Assertions.assertSame(initial.get("svc-a-1"), updated.get("svc-a-1"));
+    Assertions.assertSame(initial.get("svc-a-2"), updated.get("svc-a-2"));
+    Assertions.assertTrue(this.serverList.getLastDelta().isEmpty());
+    Assertions.assertEquals(2, this.serverList.getReused());
+
+    register("svc-a-1", "svc-a", 9091);
+    register("svc-a-3", "svc-a", 8083);
+    this.client.agentServiceDeregister("svc-a-2");
+    updated = byId(this.serverList.getUpdatedListOfServers());
+    CustomConsulServerList.ServerListDelta delta = this.serverList.getLastDelta();
+    Assertions.assertEquals(9091, updated.get("svc-a-1").getPort());
+    Assertions.assertEquals(Collections.singletonList("svc-a-3"), ids(delta.getAdded()));
+    Assertions.assertEquals(Collections.singletonList("svc-a-1"), ids(delta.getChanged()));
+    Assertions.assertEquals(Collections.singletonList("svc-a-2"), ids(delta.getRemoved()));
+  }
+}
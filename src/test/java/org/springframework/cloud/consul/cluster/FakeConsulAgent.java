@@ -0,0 +1,355 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import com.ecwid.consul.json.GsonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 进程内模拟的consul agent
+ *
+ * 实现ClusterConsulClient用到的HTTP接口(服务注册、健康服务查询、KV、session、事务)，
+ * 并支持注入故障：响应延迟、按比例返回错误、黑洞(接收请求但不响应)、停止/重启
+ */
+@Slf4j
+public class FakeConsulAgent {
+
+  static {
+    // 关闭Nagle算法，避免小响应被延迟确认拖慢约40ms
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  @Getter
+  private final String name;
+
+  private final FakeConsulCluster cluster;
+
+  private final int port;
+
+  private final ExecutorService executor;
+
+  private volatile HttpServer server;
+
+  /**
+   * 每个请求的附加延迟(毫秒)
+   */
+  @Getter
+  @Setter
+  private volatile long latencyMillis;
+
+  /**
+   * 返回错误的比例(0 ~ 1)
+   */
+  @Getter
+  @Setter
+  private volatile double errorRate;
+
+  /**
+   * 注入错误时返回的状态码
+   */
+  @Getter
+  @Setter
+  private volatile int errorStatus = 500;
+
+  /**
+   * 黑洞：接收请求但不响应，直到取消黑洞
+   */
+  @Getter
+  @Setter
+  private volatile boolean blackhole;
+
+  /**
+   * 下一个事务提交之后返回500(模拟已提交但响应丢失)，只生效一次
+   */
+  @Getter
+  @Setter
+  private volatile boolean loseNextTxnResponse;
+
+  /**
+   * 最近一次查询健康检查状态时的ACL token
+   */
+  @Getter
+  private volatile String checksToken;
+
+  /**
+   * 已接收的请求数
+   */
+  private final AtomicLong requestCount = new AtomicLong();
+
+  public FakeConsulAgent(String name, FakeConsulCluster cluster) throws IOException {
+    this.name = name;
+    this.cluster = cluster;
+    this.executor = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("fake-" + name + "-%d").setDaemon(true).build());
+    this.server = createServer(0);
+    this.port = this.server.getAddress().getPort();
+    this.server.start();
+  }
+
+  public String getAddress() {
+    return "127.0.0.1" + CommonConstant.SEPARATOR_COLON + this.port;
+  }
+
+  public long getRequestCount() {
+    return this.requestCount.get();
+  }
+
+  public boolean isRunning() {
+    return this.server != null;
+  }
+
+  /**
+   * 停止agent，之后的连接将被拒绝
+   */
+  public synchronized void stop() {
+    if (this.server != null) {
+      this.server.stop(0);
+      this.server = null;
+    }
+  }
+
+  /**
+   * 在原端口上重启agent
+   */
+  public synchronized void start() throws IOException {
+    if (this.server == null) {
+      this.server = createServer(this.port);
+      this.server.start();
+    }
+  }
+
+  private HttpServer createServer(int bindPort) throws IOException {
+    HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", bindPort), 0);
+    httpServer.createContext("/", this::handle);
+    httpServer.setExecutor(this.executor);
+
+    return httpServer;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    this.requestCount.incrementAndGet();
+    try {
+      if (this.blackhole) {
+        while (this.blackhole && isRunning()) {
+          TimeUnit.MILLISECONDS.sleep(50L);
+        }
+        return;
+      }
+      if (this.latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(this.latencyMillis);
+      }
+      if (this.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < this.errorRate) {
+        send(exchange, this.errorStatus, "injected error");
+        return;
+      }
+      route(exchange);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn("fake agent {} failed to handle {} : {}", this.name, exchange.getRequestURI(), e.getMessage());
+      send(exchange, 500, String.valueOf(e.getMessage()));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void route(HttpExchange exchange) throws IOException, InterruptedException {
+    String method = exchange.getRequestMethod();
+    String path = exchange.getRequestURI().getPath();
+    Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+    if (path.equals("/v1/status/leader")) {
+      sendJson(exchange, "127.0.0.1:8300");
+    } else if (path.equals("/v1/catalog/services")) {
+      blockingQuery(params);
+      sendJson(exchange, this.cluster.catalogServices());
+    } else if (path.startsWith("/v1/catalog/service/")) {
+      blockingQuery(params);
+      sendJson(exchange, this.cluster.catalogService(path.substring("/v1/catalog/service/".length())));
+    } else if (path.startsWith("/v1/health/service/")) {
+      String serviceName = path.substring("/v1/health/service/".length());
+      if (params.containsKey("index")) {
+        this.cluster.awaitService(serviceName, Long.parseLong(params.get("index")), waitMillis(params));
+      }
+      exchange.getResponseHeaders().add("X-Consul-Index", String.valueOf(this.cluster.serviceIndex(serviceName)));
+      sendJson(exchange, this.cluster.healthServices(serviceName));
+    } else if (path.startsWith("/v1/health/state/")) {
+      this.checksToken = params.get("token");
+      blockingQuery(params);
+      sendJson(exchange, this.cluster.healthChecks());
+    } else if (path.equals("/v1/agent/service/register")) {
+      this.cluster.register(this.name, GsonFactory.getGson().fromJson(readBody(exchange),
+          new TypeToken<Map<String, Object>>() {
+          }.getType()));
+      send(exchange, 200, "");
+    } else if (path.startsWith("/v1/agent/service/deregister/")) {
+      this.cluster.deregister(this.name, path.substring("/v1/agent/service/deregister/".length()));
+      send(exchange, 200, "");
+    } else if (path.equals("/v1/session/create")) {
+      sendJson(exchange, ImmutableMap.of("ID", this.cluster.createSession(this.name)));
+    } else if (path.startsWith("/v1/session/renew/")) {
+      String id = path.substring("/v1/session/renew/".length());
+      if (this.cluster.hasSession(id)) {
+        sendJson(exchange, Collections.singletonList(ImmutableMap.of("ID", id)));
+      } else {
+        send(exchange, 404, "Session id '" + id + "' not found");
+      }
+    } else if (path.startsWith("/v1/session/info/")) {
+      String id = path.substring("/v1/session/info/".length());
+      sendJson(exchange, this.cluster.hasSession(id)
+          ? Collections.singletonList(ImmutableMap.of("ID", id, "Node", this.name)) : Collections.emptyList());
+    } else if (path.startsWith("/v1/session/destroy/")) {
+      this.cluster.destroySession(path.substring("/v1/session/destroy/".length()));
+      sendJson(exchange, true);
+    } else if (path.startsWith("/v1/kv/")) {
+      handleKV(exchange, method, path.substring("/v1/kv/".length()), params);
+    } else if (path.equals("/v1/txn")) {
+      List<Map<String, Object>> operations = GsonFactory.getGson().fromJson(readBody(exchange),
+          new TypeToken<List<Map<String, Object>>>() {
+          }.getType());
+      List<Map<String, Object>> errors = this.cluster.txn(operations);
+      if (errors.isEmpty() && this.loseNextTxnResponse) {
+        this.loseNextTxnResponse = false;
+        send(exchange, 500, "txn response lost");
+      } else if (errors.isEmpty()) {
+        sendJson(exchange, ImmutableMap.of("Results", Collections.emptyList()));
+      } else {
+        send(exchange, 409, GsonFactory.getGson().toJson(ImmutableMap.of("Errors", errors)));
+      }
+    } else {
+      send(exchange, 200, "");
+    }
+  }
+
+  private void handleKV(HttpExchange exchange, String method, String key, Map<String, String> params)
+      throws IOException, InterruptedException {
+    Long cas = params.containsKey("cas") ? Long.valueOf(params.get("cas")) : null;
+    if ("PUT".equals(method)) {
+      long flags = params.containsKey("flags") ? Long.parseLong(params.get("flags")) : 0L;
+      sendJson(exchange, this.cluster.putKV(key, readBytes(exchange), flags, cas, params.get("acquire"),
+          params.get("release")));
+    } else if ("DELETE".equals(method)) {
+      sendJson(exchange, this.cluster.deleteKV(key, params.containsKey("recurse"), cas));
+    } else {
+      blockingQuery(params);
+      if (params.containsKey("keys")) {
+        sendJson(exchange, this.cluster.getKeys(key));
+        return;
+      }
+      if (params.containsKey("raw")) {
+        byte[] raw = this.cluster.getRawKV(key);
+        if (raw == null) {
+          send(exchange, 404, "");
+        } else {
+          send(exchange, 200, raw);
+        }
+        return;
+      }
+      List<Map<String, Object>> values = this.cluster.getKV(key, params.containsKey("recurse"));
+      if (values.isEmpty()) {
+        send(exchange, 404, "");
+      } else {
+        sendJson(exchange, values);
+      }
+    }
+  }
+
+  private void blockingQuery(Map<String, String> params) throws InterruptedException {
+    if (params.containsKey("index")) {
+      this.cluster.await(Long.parseLong(params.get("index")), waitMillis(params));
+    }
+  }
+
+  private static long waitMillis(Map<String, String> params) {
+    return params.containsKey("wait") ? parseWait(params.get("wait")) : FakeConsulCluster.DEFAULT_WAIT_MILLIS;
+  }
+
+  private static long parseWait(String wait) {
+    if (wait.endsWith("ms")) {
+      return Long.parseLong(wait.substring(0, wait.length() - 2));
+    }
+    if (wait.endsWith("m")) {
+      return TimeUnit.MINUTES.toMillis(Long.parseLong(wait.substring(0, wait.length() - 1)));
+    }
+
+    return TimeUnit.SECONDS.toMillis(Long.parseLong(wait.endsWith("s") ? wait.substring(0, wait.length() - 1) : wait));
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    if (query == null || query.isEmpty()) {
+      return params;
+    }
+    for (String pair : query.split(CommonConstant.SEPARATOR_AMPERSAND)) {
+      int separator = pair.indexOf(CommonConstant.SEPARATOR_EQUAL_SIGN);
+      String name = separator < 0 ? pair : pair.substring(0, separator);
+      String value = separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), CommonConstant.UTF8);
+      params.put(name, value);
+    }
+
+    return params;
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    return new String(readBytes(exchange), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readBytes(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+
+      return out.toByteArray();
+    }
+  }
+
+  private void sendJson(HttpExchange exchange, Object body) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    send(exchange, 200, GsonFactory.getGson().toJson(body));
+  }
+
+  private void send(HttpExchange exchange, int status, String body) throws IOException {
+    send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    if (!exchange.getResponseHeaders().containsKey("X-Consul-Index")) {
+      exchange.getResponseHeaders().add("X-Consul-Index", String.valueOf(this.cluster.getIndex()));
+    }
+    exchange.getResponseHeaders().add("X-Consul-Knownleader", "true");
+    exchange.getResponseHeaders().add("X-Consul-Lastcontact", "0");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+}
@@ -0,0 +1,391 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+
+import lombok.Getter;
+
+/**
+ * 进程内模拟的consul集群
+ *
+ * 多个FakeConsulAgent共享同一份数据(服务目录、KV、session)及raft index，
+ * 支持阻塞查询：数据变化时唤醒等待中的请求
+ */
+public class FakeConsulCluster {
+
+  /**
+   * 阻塞查询的默认等待时间与consul一致
+   */
+  static final long DEFAULT_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  @Getter
+  private final List<FakeConsulAgent> agents = new ArrayList<>();
+
+  /**
+   * agent名称 -> (serviceId -> 注册信息)
+   */
+  private final Map<String, Map<String, Map<String, Object>>> services = new TreeMap<>();
+
+  private final TreeMap<String, KVEntry> kv = new TreeMap<>();
+
+  private final Map<String, String> sessions = new LinkedHashMap<>();
+
+  /**
+   * 服务名 -> 该服务最近一次变化的index，与真实consul一样作为/v1/health/service/的X-Consul-Index
+   */
+  private final Map<String, Long> serviceIndexes = new HashMap<>();
+
+  private long index = 1L;
+
+  public FakeConsulCluster(int agentCount) throws IOException {
+    for (int i = 0; i < agentCount; i++) {
+      this.agents.add(new FakeConsulAgent("agent-" + i, this));
+    }
+  }
+
+  public List<String> getAddresses() {
+    return this.agents.stream().map(FakeConsulAgent::getAddress).collect(Collectors.toList());
+  }
+
+  /**
+   * 根据 host:port 查找agent
+   */
+  public FakeConsulAgent getAgent(String address) {
+    return this.agents.stream().filter(agent -> agent.getAddress().equals(address)).findFirst().orElse(null);
+  }
+
+  public void shutdown() {
+    this.agents.forEach(FakeConsulAgent::stop);
+  }
+
+  public synchronized long getIndex() {
+    return this.index;
+  }
+
+  /**
+   * 阻塞查询：index未变化时等待数据变化或超时
+   */
+  public synchronized long await(long waitIndex, long waitMillis) throws InterruptedException {
+    return await(waitIndex, waitMillis, () -> this.index);
+  }
+
+  /**
+   * 服务的阻塞查询：该服务的index未变化时等待
+   */
+  public synchronized long awaitService(String serviceName, long waitIndex, long waitMillis)
+      throws InterruptedException {
+    return await(waitIndex, waitMillis, () -> serviceIndex(serviceName));
+  }
+
+  private synchronized long await(long waitIndex, long waitMillis, LongSupplier currentIndex)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + waitMillis;
+    long remaining = waitMillis;
+    while (waitIndex > 0 && currentIndex.getAsLong() <= waitIndex && remaining > 0) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+
+    return currentIndex.getAsLong();
+  }
+
+  private void changed() {
+    this.index++;
+    notifyAll();
+  }
+
+  // ------------------------------------------------------------------ 服务目录
+
+  public synchronized void register(String agentName, Map<String, Object> service) {
+    String id = (String) (service.containsKey("ID") ? service.get("ID") : service.get("Name"));
+    Map<String, Object> registered = new LinkedHashMap<>(service);
+    this.services.computeIfAbsent(agentName, key -> new LinkedHashMap<>()).put(id, registered);
+    changed();
+    registered.put("ModifyIndex", this.index);
+    this.serviceIndexes.put((String) registered.get("Name"), this.index);
+  }
+
+  public synchronized void deregister(String agentName, String serviceId) {
+    Map<String, Map<String, Object>> agentServices = this.services.get(agentName);
+    Map<String, Object> removed = agentServices == null ? null : agentServices.remove(serviceId);
+    if (removed != null) {
+      changed();
+      this.serviceIndexes.put((String) removed.get("Name"), this.index);
+    }
+  }
+
+  public synchronized long serviceIndex(String serviceName) {
+    return this.serviceIndexes.getOrDefault(serviceName, this.index);
+  }
+
+  public synchronized Map<String, List<String>> catalogServices() {
+    Map<String, List<String>> result = new TreeMap<>();
+    result.put("consul", Collections.emptyList());
+    this.services.values().forEach(agentServices -> agentServices.values().forEach(service -> result
+        .put((String) service.get("Name"), tags(service))));
+
+    return result;
+  }
+
+  /**
+   * 与真实consul一致：同一服务注册在多个agent上时，每个agent各返回一条记录
+   */
+  public synchronized List<Map<String, Object>> healthServices(String serviceName) {
+    List<Map<String, Object>> result = new ArrayList<>();
+    this.services.forEach((agentName, agentServices) -> agentServices.values().stream()
+        .filter(service -> serviceName.equals(service.get("Name")))
+        .forEach(service -> {
+          Map<String, Object> healthService = new LinkedHashMap<>();
+          healthService.put("Node", ImmutableMap.of("Node", agentName, "Address", "127.0.0.1"));
+          Map<String, Object> instance = new LinkedHashMap<>();
+          instance.put("ID", service.containsKey("ID") ? service.get("ID") : service.get("Name"));
+          instance.put("Service", service.get("Name"));
+          instance.put("Tags", tags(service));
+          instance.put("Address", service.containsKey("Address") ? service.get("Address") : "127.0.0.1");
+          instance.put("Port", service.containsKey("Port") ? service.get("Port") : 0);
+          instance.put("ModifyIndex", service.get("ModifyIndex"));
+          healthService.put("Service", instance);
+          healthService.put("Checks", Collections.emptyList());
+          result.add(healthService);
+        }));
+
+    return result;
+  }
+
+  /**
+   * 带健康检查(Check)注册的实例各有一个passing状态的检查，与实例在同一index变化
+   */
+  public synchronized List<Map<String, Object>> healthChecks() {
+    List<Map<String, Object>> result = new ArrayList<>();
+    this.services.forEach((agentName, agentServices) -> agentServices.values().stream()
+        .filter(service -> service.containsKey("Check"))
+        .forEach(service -> {
+          Object id = service.containsKey("ID") ? service.get("ID") : service.get("Name");
+          Map<String, Object> check = new LinkedHashMap<>();
+          check.put("Node", agentName);
+          check.put("CheckID", "service:" + id);
+          check.put("ServiceID", id);
+          check.put("ServiceName", service.get("Name"));
+          check.put("Status", "passing");
+          check.put("ModifyIndex", service.get("ModifyIndex"));
+          result.add(check);
+        }));
+
+    return result;
+  }
+
+  public synchronized List<Map<String, Object>> catalogService(String serviceName) {
+    List<Map<String, Object>> result = new ArrayList<>();
+    this.services.forEach((agentName, agentServices) -> agentServices.values().stream()
+        .filter(service -> serviceName.equals(service.get("Name")))
+        .forEach(service -> {
+          Map<String, Object> catalogService = new LinkedHashMap<>();
+          catalogService.put("Node", agentName);
+          catalogService.put("Address", "127.0.0.1");
+          catalogService.put("NodeMeta", ImmutableMap.of("agent", agentName));
+          catalogService.put("ServiceID", service.containsKey("ID") ? service.get("ID") : service.get("Name"));
+          catalogService.put("ServiceName", service.get("Name"));
+          catalogService.put("ServiceTags", tags(service));
+          catalogService.put("ServiceAddress", service.containsKey("Address") ? service.get("Address") : "");
+          catalogService.put("ServicePort", service.containsKey("Port") ? service.get("Port") : 0);
+          catalogService.put("ModifyIndex", service.get("ModifyIndex"));
+          result.add(catalogService);
+        }));
+
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> tags(Map<String, Object> service) {
+    return service.containsKey("Tags") ? (List<String>) service.get("Tags") : Collections.emptyList();
+  }
+
+  // ------------------------------------------------------------------ session
+
+  public synchronized String createSession(String name) {
+    String id = UUID.randomUUID().toString();
+    this.sessions.put(id, name);
+
+    return id;
+  }
+
+  public synchronized int getSessionCount() {
+    return this.sessions.size();
+  }
+
+  public synchronized boolean hasSession(String id) {
+    return this.sessions.containsKey(id);
+  }
+
+  /**
+   * 销毁session并释放其持有的锁
+   */
+  public synchronized void destroySession(String id) {
+    if (this.sessions.remove(id) != null) {
+      this.kv.values().stream().filter(entry -> id.equals(entry.session)).forEach(entry -> entry.session = null);
+      changed();
+    }
+  }
+
+  // ------------------------------------------------------------------ KV
+
+  public synchronized List<Map<String, Object>> getKV(String key, boolean recurse) {
+    List<KVEntry> entries = recurse
+        ? new ArrayList<>(this.kv.subMap(key, true, key + Character.MAX_VALUE, true).values())
+        : (this.kv.containsKey(key) ? Collections.singletonList(this.kv.get(key)) : Collections.emptyList());
+
+    return entries.stream().map(KVEntry::toJson).collect(Collectors.toList());
+  }
+
+  public synchronized byte[] getRawKV(String key) {
+    KVEntry entry = this.kv.get(key);
+
+    return entry == null ? null : entry.value;
+  }
+
+  public synchronized List<String> getKeys(String prefix) {
+    return new ArrayList<>(this.kv.subMap(prefix, true, prefix + Character.MAX_VALUE, true).keySet());
+  }
+
+  /**
+   * 写入KV，支持cas及acquire/release
+   */
+  public synchronized boolean putKV(String key, byte[] value, long flags, Long cas, String acquire,
+      String release) {
+    KVEntry entry = this.kv.get(key);
+    if (cas != null && !casMatches(entry, cas)) {
+      return false;
+    }
+    if (acquire != null) {
+      if (!this.sessions.containsKey(acquire) || (entry != null && entry.session != null
+          && !acquire.equals(entry.session))) {
+        return false;
+      }
+    }
+    if (release != null && (entry == null || !release.equals(entry.session))) {
+      return false;
+    }
+
+    if (entry == null) {
+      entry = new KVEntry(key, this.index + 1);
+      this.kv.put(key, entry);
+    }
+    entry.value = value;
+    entry.flags = flags;
+    entry.modifyIndex = this.index + 1;
+    if (acquire != null && !acquire.equals(entry.session)) {
+      entry.session = acquire;
+      entry.lockIndex++;
+    }
+    if (release != null) {
+      entry.session = null;
+    }
+    changed();
+
+    return true;
+  }
+
+  public synchronized boolean deleteKV(String key, boolean recurse, Long cas) {
+    if (recurse) {
+      this.kv.subMap(key, true, key + Character.MAX_VALUE, true).clear();
+    } else {
+      if (cas != null && !casMatches(this.kv.get(key), cas)) {
+        return false;
+      }
+      this.kv.remove(key);
+    }
+    changed();
+
+    return true;
+  }
+
+  /**
+   * 原子地执行一个事务，返回出错的操作(为空表示已提交)
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized List<Map<String, Object>> txn(List<Map<String, Object>> operations) {
+    List<Map<String, Object>> errors = new ArrayList<>();
+    for (int i = 0; i < operations.size(); i++) {
+      Map<String, Object> op = (Map<String, Object>) operations.get(i).get("KV");
+      String verb = (String) op.get("Verb");
+      if (("cas".equals(verb) || "delete-cas".equals(verb))
+          && !casMatches(this.kv.get(op.get("Key")), ((Number) op.get("Index")).longValue())) {
+        errors.add(ImmutableMap.of("OpIndex", i, "What", "failed to " + verb + " key " + op.get("Key")));
+      }
+    }
+    if (!errors.isEmpty()) {
+      return errors;
+    }
+
+    for (Map<String, Object> operation : operations) {
+      Map<String, Object> op = (Map<String, Object>) operation.get("KV");
+      String key = (String) op.get("Key");
+      String verb = (String) op.get("Verb");
+      if (verb.startsWith("delete")) {
+        this.kv.remove(key);
+      } else {
+        KVEntry entry = this.kv.computeIfAbsent(key, k -> new KVEntry(k, this.index + 1));
+        entry.value = op.get("Value") == null ? null : Base64.getDecoder().decode((String) op.get("Value"));
+        entry.flags = op.get("Flags") == null ? 0L : ((Number) op.get("Flags")).longValue();
+        entry.modifyIndex = this.index + 1;
+      }
+    }
+    changed();
+
+    return Collections.emptyList();
+  }
+
+  private static boolean casMatches(KVEntry entry, long cas) {
+    return cas == 0 ? entry == null : entry != null && entry.modifyIndex == cas;
+  }
+
+  private static class KVEntry {
+
+    private final String key;
+
+    private final long createIndex;
+
+    private long modifyIndex;
+
+    private long lockIndex;
+
+    private long flags;
+
+    private byte[] value;
+
+    private String session;
+
+    KVEntry(String key, long createIndex) {
+      this.key = key;
+      this.createIndex = createIndex;
+    }
+
+    Map<String, Object> toJson() {
+      Map<String, Object> json = new LinkedHashMap<>();
+      json.put("Key", this.key);
+      json.put("CreateIndex", this.createIndex);
+      json.put("ModifyIndex", this.modifyIndex);
+      json.put("LockIndex", this.lockIndex);
+      json.put("Flags", this.flags);
+      json.put("Value", this.value == null ? null : Base64.getEncoder().encodeToString(this.value));
+      if (this.session != null) {
+        json.put("Session", this.session);
+      }
+
+      return json;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import com.ecwid.consul.json.GsonFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * consul事务KV操作 单元测试
+ */
+@Slf4j
+public class KVTxnOperationTest {
+
+  @Test
+  public void testToPayload() {
+    String payload = KVTxnOperation.toPayload(Arrays.asList(
+        KVTxnOperation.set("config/a", "1"),
+        KVTxnOperation.cas("config/b", "2", 42L),
+        KVTxnOperation.delete("config/c")));
+    log.info("payload: {}", payload);
+
+    JsonArray operations = GsonFactory.getGson().fromJson(payload, JsonArray.class);
+    Assertions.assertEquals(3, operations.size());
+
+    JsonObject set = operations.get(0).getAsJsonObject().getAsJsonObject("KV");
+    Assertions.assertEquals("set", set.get("Verb").getAsString());
+    Assertions.assertEquals("config/a", set.get("Key").getAsString());
+    Assertions.assertEquals("1",
+        new String(Base64.getDecoder().decode(set.get("Value").getAsString()), StandardCharsets.UTF_8));
+    Assertions.assertFalse(set.has("Index"));
+
+    JsonObject cas = operations.get(1).getAsJsonObject().getAsJsonObject("KV");
+    Assertions.assertEquals("cas", cas.get("Verb").getAsString());
+    Assertions.assertEquals(42L, cas.get("Index").getAsLong());
+
+    JsonObject delete = operations.get(2).getAsJsonObject().getAsJsonObject("KV");
+    Assertions.assertEquals("delete", delete.get("Verb").getAsString());
+    Assertions.assertFalse(delete.has("Value"));
+  }
+}
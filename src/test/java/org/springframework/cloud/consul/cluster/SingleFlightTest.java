@@ -0,0 +1,71 @@
+package org.springframework.cloud.consul.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 相同请求合并 单元测试
+ */
+public class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  @Test
+  public void testConcurrentCallsShareOneExecution() throws Exception {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (int i = 0; i < CALLERS; i++) {
+        futures.add(executor.submit(() -> singleFlight.execute("health/svc", () -> {
+          executions.incrementAndGet();
+          awaitQuietly(release);
+          return new Object();
+        })));
+      }
+      // 等待全部调用方进入合并
+      while (singleFlight.getShared() < CALLERS - 1) {
+        TimeUnit.MILLISECONDS.sleep(10L);
+      }
+      release.countDown();
+
+      Object first = futures.get(0).get(5, TimeUnit.SECONDS);
+      for (Future<Object> future : futures) {
+        Assertions.assertSame(first, future.get(5, TimeUnit.SECONDS));
+      }
+      Assertions.assertEquals(1, executions.get());
+      Assertions.assertEquals(0, singleFlight.getInFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailureIsSharedAndNotCached() {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    Assertions.assertThrows(IllegalStateException.class, () -> singleFlight.execute("kv/config", () -> {
+      throw new IllegalStateException("agent down");
+    }));
+    Assertions.assertEquals("value", singleFlight.execute("kv/config", () -> "value"));
+    Assertions.assertEquals(2, singleFlight.getExecuted());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}